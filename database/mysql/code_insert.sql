@@ -17,5 +17,25 @@ INSERT INTO wildfhirr4.code (codeName,value,intValue,description,resourceContent
 ('lastnEmptyDateValue','1900-01-01',0,'Observation $lastn empty effective date value; set value to control date sort (yyyy-MM-dd)',NULL),
 ('auditEventServiceEnabled','false',0,'Audit service enabled setting (true, false)',NULL),
 ('provenanceServiceEnabled','false',0,'Provenance service enabled setting (true, false)',NULL),
+('resourceJsonStorage','false',0,'Store a minified JSON representation of each resource version along with the XML contents setting (true, false)',NULL),
+('chainedReindexEnabled','true',2,'Background reindex of the chained search parameters of referencing resources after an update; number of workers (intValue); enabled setting (true, false)',NULL),
+('reindexEnabled','true',1,'Enable the $reindex operation (true, false)',NULL),
+('reindexParallelism','true',4,'$reindex number of parallel metadata generation tasks per chunk (intValue)',NULL),
+('reindexRowsPerSecond','true',200,'$reindex throttle; maximum resources reindexed per second (intValue); enabled setting (true, false)',NULL),
+('reindexCheckpoint','none',0,'$reindex job checkpoint: state|scope (value) and last reindexed resource row id (intValue)',NULL),
+('transactionUnitOfWork','true',1,'Process the create, update and delete entries of a transaction Bundle as a single database transaction with batched writes; conditional entries use individual processing (true, false)',NULL),
+('batchConcurrentEntries','true',4,'Batch entries processed concurrently per request (intValue); enabled setting (true, false)',NULL),
+('everythingParallelism','true',4,'$everything compartment resource types searched concurrently (intValue); enabled setting (true, false)',NULL),
+('subscriptionNotificationBatch','true',20,'Subscription notifications of a Subscription sent as one notification (intValue); enabled setting (true, false)',NULL),
+('subscriptionDispatchParallelism','true',8,'Subscription notification deliveries in progress limit (intValue); enabled setting (true, false)',NULL),
+('subscriptionEndpointConcurrentLimit','true',2,'Subscription notification deliveries in progress limit per endpoint (intValue); enabled setting (true, false)',NULL),
+('subscriptionNotificationMaxAttempts','true',8,'Subscription notification delivery attempts before dead-lettering (intValue); enabled setting (true, false)',NULL),
+('httpClientMaxConnections','true',200,'Outbound REST client pooled connections limit (intValue); enabled setting (true, false)',NULL),
+('httpClientMaxConnectionsPerHost','true',20,'Outbound REST client pooled connections limit per host (intValue); enabled setting (true, false)',NULL),
+('httpClientConnectTimeout','true',10000,'Outbound REST client connect timeout in milliseconds (intValue); enabled setting (true, false)',NULL),
+('httpClientReadTimeout','true',60000,'Outbound REST client read timeout in milliseconds (intValue); enabled setting (true, false)',NULL),
+('searchSemiJoinPlan','false',0,'Search plan for resource metadata criteria: true - single statement EXISTS semi-join, false - MEMORY temporary table (true, false)',NULL),
+('searchIndexTables','false',0,'Write and search the typed token, date, number/quantity and near coordinate index tables setting (true, false)',NULL),
 ('subscriptionServiceEnabled','false',0,'Subscription Framework support setting (true, false)',NULL),
+('txClientConcurrentLimit','true',1,'Batch/transaction concurrent requests allowed processing limit per client (intValue); enabled setting (true, false)',NULL),
 ('txConcurrentLimit','true',2,'Batch/transaction concurrent requests allowed processing limit (intValue); enabled setting (true, false)',NULL);
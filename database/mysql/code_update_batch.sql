@@ -0,0 +1,6 @@
+/*
+-- Add the batch concurrency settings to an existing database (batchConcurrentEntries, txClientConcurrentLimit settings)
+*/
+INSERT INTO wildfhirr4.code (codeName,value,intValue,description,resourceContents) VALUES
+('batchConcurrentEntries','true',4,'Batch entries processed concurrently per request (intValue); enabled setting (true, false)',NULL),
+('txClientConcurrentLimit','true',1,'Batch/transaction concurrent requests allowed processing limit per client (intValue); enabled setting (true, false)',NULL);
@@ -0,0 +1,5 @@
+/*
+-- Add the $everything concurrency setting to an existing database (everythingParallelism setting)
+*/
+INSERT INTO wildfhirr4.code (codeName,value,intValue,description,resourceContents) VALUES
+('everythingParallelism','true',4,'$everything compartment resource types searched concurrently (intValue); enabled setting (true, false)',NULL);
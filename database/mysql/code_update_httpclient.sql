@@ -0,0 +1,8 @@
+/*
+-- Add the outbound REST client connection pool settings to an existing database
+*/
+INSERT INTO wildfhirr4.code (codeName,value,intValue,description,resourceContents) VALUES
+('httpClientMaxConnections','true',200,'Outbound REST client pooled connections limit (intValue); enabled setting (true, false)',NULL),
+('httpClientMaxConnectionsPerHost','true',20,'Outbound REST client pooled connections limit per host (intValue); enabled setting (true, false)',NULL),
+('httpClientConnectTimeout','true',10000,'Outbound REST client connect timeout in milliseconds (intValue); enabled setting (true, false)',NULL),
+('httpClientReadTimeout','true',60000,'Outbound REST client read timeout in milliseconds (intValue); enabled setting (true, false)',NULL);
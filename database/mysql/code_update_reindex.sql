@@ -0,0 +1,9 @@
+/*
+-- Add the reindex settings to an existing database (chainedReindexEnabled and $reindex operation settings)
+*/
+INSERT INTO wildfhirr4.code (codeName,value,intValue,description,resourceContents) VALUES
+('chainedReindexEnabled','true',2,'Background reindex of the chained search parameters of referencing resources after an update; number of workers (intValue); enabled setting (true, false)',NULL),
+('reindexEnabled','true',1,'Enable the $reindex operation (true, false)',NULL),
+('reindexParallelism','true',4,'$reindex number of parallel metadata generation tasks per chunk (intValue)',NULL),
+('reindexRowsPerSecond','true',200,'$reindex throttle; maximum resources reindexed per second (intValue); enabled setting (true, false)',NULL),
+('reindexCheckpoint','none',0,'$reindex job checkpoint: state|scope (value) and last reindexed resource row id (intValue)',NULL);
@@ -0,0 +1,8 @@
+/*
+-- Add the subscription notification queue settings to an existing database
+*/
+INSERT INTO wildfhirr4.code (codeName,value,intValue,description,resourceContents) VALUES
+('subscriptionNotificationBatch','true',20,'Subscription notifications of a Subscription sent as one notification (intValue); enabled setting (true, false)',NULL),
+('subscriptionDispatchParallelism','true',8,'Subscription notification deliveries in progress limit (intValue); enabled setting (true, false)',NULL),
+('subscriptionEndpointConcurrentLimit','true',2,'Subscription notification deliveries in progress limit per endpoint (intValue); enabled setting (true, false)',NULL),
+('subscriptionNotificationMaxAttempts','true',8,'Subscription notification delivery attempts before dead-lettering (intValue); enabled setting (true, false)',NULL);
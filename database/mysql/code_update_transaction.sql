@@ -0,0 +1,5 @@
+/*
+-- Add the transaction single unit of work setting to an existing database (transactionUnitOfWork setting)
+*/
+INSERT INTO wildfhirr4.code (codeName,value,intValue,description,resourceContents) VALUES
+('transactionUnitOfWork','true',1,'Process the create, update and delete entries of a transaction Bundle as a single database transaction with batched writes; conditional entries use individual processing (true, false)',NULL);
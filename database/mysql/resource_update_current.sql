@@ -0,0 +1,14 @@
+/*
+-- Add the current version flag to an existing resource table and mark the latest version of each resource as current
+*/
+ALTER TABLE wildfhirr4.resource
+ADD COLUMN isCurrent TINYINT(1) NOT NULL DEFAULT 0 AFTER resourceContentsJson;
+
+CREATE INDEX idx_resource_current ON wildfhirr4.resource (resourceType ASC, resourceId ASC, isCurrent ASC);
+
+CREATE INDEX idx_resource_type_current_status ON wildfhirr4.resource (resourceType ASC, isCurrent ASC, status ASC);
+
+UPDATE wildfhirr4.resource r1
+JOIN (SELECT resourceType, resourceId, MAX(versionId) AS versionId FROM wildfhirr4.resource GROUP BY resourceType, resourceId) r2
+ON r1.resourceType = r2.resourceType AND r1.resourceId = r2.resourceId AND r1.versionId = r2.versionId
+SET r1.isCurrent = 1;
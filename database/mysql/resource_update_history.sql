@@ -0,0 +1,8 @@
+/*
+-- Add the history paging indexes to an existing resource table; history pages are read in (lastUpdate, id) order
+*/
+CREATE INDEX idx_resource_history ON wildfhirr4.resource (lastUpdate ASC, id ASC);
+
+CREATE INDEX idx_resource_history_type ON wildfhirr4.resource (resourceType ASC, lastUpdate ASC, id ASC);
+
+CREATE INDEX idx_resource_history_instance ON wildfhirr4.resource (resourceType ASC, resourceId ASC, lastUpdate ASC, id ASC);
@@ -0,0 +1,8 @@
+/*
+-- Add the optional minified JSON representation column to an existing resource table (resourceJsonStorage setting)
+*/
+ALTER TABLE wildfhirr4.resource
+ADD COLUMN resourceContentsJson LONGTEXT CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL AFTER resourceContents;
+
+INSERT INTO wildfhirr4.code (codeName,value,intValue,description,resourceContents) VALUES
+('resourceJsonStorage','false',0,'Store a minified JSON representation of each resource version along with the XML contents setting (true, false)',NULL);
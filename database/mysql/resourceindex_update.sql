@@ -0,0 +1,80 @@
+/*
+-- Add the typed search index tables to an existing database (searchIndexTables setting)
+-- Existing resources are indexed when they are next updated or reindexed
+*/
+CREATE TABLE IF NOT EXISTS wildfhirr4.resourceindextoken (
+  id INT(11) NOT NULL AUTO_INCREMENT,
+  resourceJoinId INT(11) NOT NULL,
+  paramName VARCHAR(127) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  systemValue VARCHAR(750) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
+  paramValue VARCHAR(750) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
+  paramValueU VARCHAR(750) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
+  codeValue VARCHAR(750) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
+  PRIMARY KEY (id))
+ENGINE = InnoDB
+DEFAULT CHARACTER SET = utf8mb4
+COLLATE = utf8mb4_unicode_ci
+COMMENT = 'The current valid resource token search index';
+
+CREATE INDEX idx_resourceindextoken_resource ON wildfhirr4.resourceindextoken (resourceJoinId ASC);
+
+CREATE INDEX idx_resourceindextoken_system_value ON wildfhirr4.resourceindextoken (paramName ASC, systemValue(191) ASC, paramValue(191) ASC, resourceJoinId ASC);
+
+CREATE INDEX idx_resourceindextoken_valueU ON wildfhirr4.resourceindextoken (paramName ASC, paramValueU(191) ASC, resourceJoinId ASC);
+
+CREATE TABLE IF NOT EXISTS wildfhirr4.resourceindexdate (
+  id INT(11) NOT NULL AUTO_INCREMENT,
+  resourceJoinId INT(11) NOT NULL,
+  paramName VARCHAR(127) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  paramType VARCHAR(45) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  startUtc DATETIME NULL DEFAULT NULL,
+  endUtc DATETIME NULL DEFAULT NULL,
+  startLocal DATETIME NULL DEFAULT NULL,
+  endLocal DATETIME NULL DEFAULT NULL,
+  PRIMARY KEY (id))
+ENGINE = InnoDB
+DEFAULT CHARACTER SET = utf8mb4
+COLLATE = utf8mb4_unicode_ci
+COMMENT = 'The current valid resource date and period search index';
+
+CREATE INDEX idx_resourceindexdate_resource ON wildfhirr4.resourceindexdate (resourceJoinId ASC);
+
+CREATE INDEX idx_resourceindexdate_utc ON wildfhirr4.resourceindexdate (paramName ASC, startUtc ASC, endUtc ASC, resourceJoinId ASC);
+
+CREATE INDEX idx_resourceindexdate_local ON wildfhirr4.resourceindexdate (paramName ASC, startLocal ASC, endLocal ASC, resourceJoinId ASC);
+
+CREATE TABLE IF NOT EXISTS wildfhirr4.resourceindexnumber (
+  id INT(11) NOT NULL AUTO_INCREMENT,
+  resourceJoinId INT(11) NOT NULL,
+  paramName VARCHAR(127) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  numberValue DECIMAL(30,15) NOT NULL,
+  systemValue VARCHAR(750) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
+  codeValue VARCHAR(750) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
+  PRIMARY KEY (id))
+ENGINE = InnoDB
+DEFAULT CHARACTER SET = utf8mb4
+COLLATE = utf8mb4_unicode_ci
+COMMENT = 'The current valid resource number and quantity search index';
+
+CREATE INDEX idx_resourceindexnumber_resource ON wildfhirr4.resourceindexnumber (resourceJoinId ASC);
+
+CREATE INDEX idx_resourceindexnumber_value ON wildfhirr4.resourceindexnumber (paramName ASC, numberValue ASC, resourceJoinId ASC);
+
+CREATE TABLE IF NOT EXISTS wildfhirr4.resourceindexcoordinate (
+  id INT(11) NOT NULL AUTO_INCREMENT,
+  resourceJoinId INT(11) NOT NULL,
+  paramName VARCHAR(127) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  latitude DOUBLE NOT NULL,
+  longitude DOUBLE NOT NULL,
+  PRIMARY KEY (id))
+ENGINE = InnoDB
+DEFAULT CHARACTER SET = utf8mb4
+COLLATE = utf8mb4_unicode_ci
+COMMENT = 'The current valid resource near coordinate search index';
+
+CREATE INDEX idx_resourceindexcoordinate_resource ON wildfhirr4.resourceindexcoordinate (resourceJoinId ASC);
+
+CREATE INDEX idx_resourceindexcoordinate_position ON wildfhirr4.resourceindexcoordinate (paramName ASC, latitude ASC, longitude ASC, resourceJoinId ASC);
+
+INSERT INTO wildfhirr4.code (codeName,value,intValue,description,resourceContents) VALUES
+('searchIndexTables','false',0,'Write and search the typed token, date, number/quantity and near coordinate index tables setting (true, false)',NULL);
@@ -0,0 +1,7 @@
+/*
+-- Add the resource join and parameter name index used by the EXISTS semi-join search plan (searchSemiJoinPlan setting)
+*/
+CREATE INDEX idx_resourcemetadata_joinParamName ON wildfhirr4.resourcemetadata (resourceJoinId ASC, paramName ASC);
+
+INSERT INTO wildfhirr4.code (codeName,value,intValue,description,resourceContents) VALUES
+('searchSemiJoinPlan','false',0,'Search plan for resource metadata criteria: true - single statement EXISTS semi-join, false - MEMORY temporary table (true, false)',NULL);
@@ -0,0 +1,25 @@
+/*
+-- Add the subscription notification queue table to an existing database
+*/
+CREATE TABLE IF NOT EXISTS wildfhirr4.subscriptionnotification (
+  id INT(11) NOT NULL AUTO_INCREMENT,
+  subscriptionId VARCHAR(255) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  endpoint VARCHAR(1000) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  resourceJoinId INT(11) NOT NULL,
+  resourceType VARCHAR(45) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  resourceId VARCHAR(255) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  recorded DATETIME NOT NULL,
+  status VARCHAR(45) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  attempts INT(11) NOT NULL DEFAULT 0,
+  nextAttempt DATETIME NOT NULL,
+  lastUpdate DATETIME NOT NULL,
+  lastError VARCHAR(1000) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
+  PRIMARY KEY (id))
+ENGINE = InnoDB
+DEFAULT CHARACTER SET = utf8mb4
+COLLATE = utf8mb4_unicode_ci
+COMMENT = 'Stores the outbound subscription notification queue';
+
+CREATE INDEX idx_subscriptionnotification_due ON wildfhirr4.subscriptionnotification (status ASC, nextAttempt ASC, id ASC);
+
+CREATE INDEX idx_subscriptionnotification_subscription ON wildfhirr4.subscriptionnotification (subscriptionId ASC, status ASC);
@@ -76,6 +76,8 @@ CREATE TABLE IF NOT EXISTS wildfhirr4.resource (
   lastUser VARCHAR(255) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
   lastUpdate DATETIME NOT NULL,
   resourceContents LONGTEXT CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
+  resourceContentsJson LONGTEXT CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
+  isCurrent TINYINT(1) NOT NULL DEFAULT 0,
   sort0 VARCHAR(500) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
   sort1 VARCHAR(500) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
   sort2 VARCHAR(500) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
@@ -98,6 +100,16 @@ CREATE INDEX idx_resource_version ON wildfhirr4.resource (resourceId ASC, versio
 
 CREATE INDEX idx_resource_status_type ON wildfhirr4.resource (resourceType ASC, status ASC);
 
+CREATE INDEX idx_resource_current ON wildfhirr4.resource (resourceType ASC, resourceId ASC, isCurrent ASC);
+
+CREATE INDEX idx_resource_type_current_status ON wildfhirr4.resource (resourceType ASC, isCurrent ASC, status ASC);
+
+CREATE INDEX idx_resource_history ON wildfhirr4.resource (lastUpdate ASC, id ASC);
+
+CREATE INDEX idx_resource_history_type ON wildfhirr4.resource (resourceType ASC, lastUpdate ASC, id ASC);
+
+CREATE INDEX idx_resource_history_instance ON wildfhirr4.resource (resourceType ASC, resourceId ASC, lastUpdate ASC, id ASC);
+
 
 -- -----------------------------------------------------
 -- Table wildfhirr4.resourcemetadata
@@ -130,6 +142,8 @@ CREATE INDEX idx_resourcemetadata_paramName ON wildfhirr4.resourcemetadata (para
 
 CREATE INDEX idx_resourcemetadata_paramNameType ON wildfhirr4.resourcemetadata (paramName ASC, paramType ASC);
 
+CREATE INDEX idx_resourcemetadata_joinParamName ON wildfhirr4.resourcemetadata (resourceJoinId ASC, paramName ASC);
+
 CREATE INDEX idx_resourcemetadata_paramValue ON wildfhirr4.resourcemetadata (paramValue ASC);
 
 CREATE INDEX idx_resourcemetadata_systemValue ON wildfhirr4.resourcemetadata (systemValue ASC);
@@ -143,6 +157,96 @@ CREATE INDEX idx_resourcemetadata_paramValueU ON wildfhirr4.resourcemetadata (pa
 CREATE INDEX idx_resourcemetadata_textValueU ON wildfhirr4.resourcemetadata (textValueU ASC);
 
 
+-- -----------------------------------------------------
+-- Table wildfhirr4.resourceindextoken
+-- -----------------------------------------------------
+CREATE TABLE IF NOT EXISTS wildfhirr4.resourceindextoken (
+  id INT(11) NOT NULL AUTO_INCREMENT,
+  resourceJoinId INT(11) NOT NULL,
+  paramName VARCHAR(127) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  systemValue VARCHAR(750) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
+  paramValue VARCHAR(750) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
+  paramValueU VARCHAR(750) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
+  codeValue VARCHAR(750) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
+  PRIMARY KEY (id))
+ENGINE = InnoDB
+DEFAULT CHARACTER SET = utf8mb4
+COLLATE = utf8mb4_unicode_ci
+COMMENT = 'The current valid resource token search index';
+
+CREATE INDEX idx_resourceindextoken_resource ON wildfhirr4.resourceindextoken (resourceJoinId ASC);
+
+CREATE INDEX idx_resourceindextoken_system_value ON wildfhirr4.resourceindextoken (paramName ASC, systemValue(191) ASC, paramValue(191) ASC, resourceJoinId ASC);
+
+CREATE INDEX idx_resourceindextoken_valueU ON wildfhirr4.resourceindextoken (paramName ASC, paramValueU(191) ASC, resourceJoinId ASC);
+
+
+-- -----------------------------------------------------
+-- Table wildfhirr4.resourceindexdate
+-- -----------------------------------------------------
+CREATE TABLE IF NOT EXISTS wildfhirr4.resourceindexdate (
+  id INT(11) NOT NULL AUTO_INCREMENT,
+  resourceJoinId INT(11) NOT NULL,
+  paramName VARCHAR(127) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  paramType VARCHAR(45) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  startUtc DATETIME NULL DEFAULT NULL,
+  endUtc DATETIME NULL DEFAULT NULL,
+  startLocal DATETIME NULL DEFAULT NULL,
+  endLocal DATETIME NULL DEFAULT NULL,
+  PRIMARY KEY (id))
+ENGINE = InnoDB
+DEFAULT CHARACTER SET = utf8mb4
+COLLATE = utf8mb4_unicode_ci
+COMMENT = 'The current valid resource date and period search index';
+
+CREATE INDEX idx_resourceindexdate_resource ON wildfhirr4.resourceindexdate (resourceJoinId ASC);
+
+CREATE INDEX idx_resourceindexdate_utc ON wildfhirr4.resourceindexdate (paramName ASC, startUtc ASC, endUtc ASC, resourceJoinId ASC);
+
+CREATE INDEX idx_resourceindexdate_local ON wildfhirr4.resourceindexdate (paramName ASC, startLocal ASC, endLocal ASC, resourceJoinId ASC);
+
+
+-- -----------------------------------------------------
+-- Table wildfhirr4.resourceindexnumber
+-- -----------------------------------------------------
+CREATE TABLE IF NOT EXISTS wildfhirr4.resourceindexnumber (
+  id INT(11) NOT NULL AUTO_INCREMENT,
+  resourceJoinId INT(11) NOT NULL,
+  paramName VARCHAR(127) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  numberValue DECIMAL(30,15) NOT NULL,
+  systemValue VARCHAR(750) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
+  codeValue VARCHAR(750) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
+  PRIMARY KEY (id))
+ENGINE = InnoDB
+DEFAULT CHARACTER SET = utf8mb4
+COLLATE = utf8mb4_unicode_ci
+COMMENT = 'The current valid resource number and quantity search index';
+
+CREATE INDEX idx_resourceindexnumber_resource ON wildfhirr4.resourceindexnumber (resourceJoinId ASC);
+
+CREATE INDEX idx_resourceindexnumber_value ON wildfhirr4.resourceindexnumber (paramName ASC, numberValue ASC, resourceJoinId ASC);
+
+
+-- -----------------------------------------------------
+-- Table wildfhirr4.resourceindexcoordinate
+-- -----------------------------------------------------
+CREATE TABLE IF NOT EXISTS wildfhirr4.resourceindexcoordinate (
+  id INT(11) NOT NULL AUTO_INCREMENT,
+  resourceJoinId INT(11) NOT NULL,
+  paramName VARCHAR(127) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  latitude DOUBLE NOT NULL,
+  longitude DOUBLE NOT NULL,
+  PRIMARY KEY (id))
+ENGINE = InnoDB
+DEFAULT CHARACTER SET = utf8mb4
+COLLATE = utf8mb4_unicode_ci
+COMMENT = 'The current valid resource near coordinate search index';
+
+CREATE INDEX idx_resourceindexcoordinate_resource ON wildfhirr4.resourceindexcoordinate (resourceJoinId ASC);
+
+CREATE INDEX idx_resourceindexcoordinate_position ON wildfhirr4.resourceindexcoordinate (paramName ASC, latitude ASC, longitude ASC, resourceJoinId ASC);
+
+
 -- -----------------------------------------------------
 -- Table wildfhirr4.subscriptionactivity
 -- -----------------------------------------------------
@@ -164,5 +268,32 @@ CREATE UNIQUE INDEX id_UNIQUE ON wildfhirr4.subscriptionactivity (id ASC);
 CREATE INDEX idx_resourceId_status ON wildfhirr4.subscriptionactivity (subscriptionId ASC, status ASC);
 
 
+-- -----------------------------------------------------
+-- Table wildfhirr4.subscriptionnotification
+-- -----------------------------------------------------
+CREATE TABLE IF NOT EXISTS wildfhirr4.subscriptionnotification (
+  id INT(11) NOT NULL AUTO_INCREMENT,
+  subscriptionId VARCHAR(255) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  endpoint VARCHAR(1000) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  resourceJoinId INT(11) NOT NULL,
+  resourceType VARCHAR(45) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  resourceId VARCHAR(255) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  recorded DATETIME NOT NULL,
+  status VARCHAR(45) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NOT NULL,
+  attempts INT(11) NOT NULL DEFAULT 0,
+  nextAttempt DATETIME NOT NULL,
+  lastUpdate DATETIME NOT NULL,
+  lastError VARCHAR(1000) CHARACTER SET 'utf8mb4' COLLATE 'utf8mb4_unicode_ci' NULL DEFAULT NULL,
+  PRIMARY KEY (id))
+ENGINE = InnoDB
+DEFAULT CHARACTER SET = utf8mb4
+COLLATE = utf8mb4_unicode_ci
+COMMENT = 'Stores the outbound subscription notification queue';
+
+CREATE INDEX idx_subscriptionnotification_due ON wildfhirr4.subscriptionnotification (status ASC, nextAttempt ASC, id ASC);
+
+CREATE INDEX idx_subscriptionnotification_subscription ON wildfhirr4.subscriptionnotification (subscriptionId ASC, status ASC);
+
+
 -- grant privileges to wildfhiruser
 GRANT SELECT,INSERT,UPDATE,DELETE,EXECUTE ON wildfhirr4.* to wildfhiruser;
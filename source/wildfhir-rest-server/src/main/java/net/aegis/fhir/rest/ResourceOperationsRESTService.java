@@ -43,6 +43,7 @@ import java.util.logging.Logger;
 import org.hl7.fhir.r4.formats.IParser.OutputStyle;
 import org.hl7.fhir.r4.formats.JsonParser;
 import org.hl7.fhir.r4.formats.XmlParser;
+import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.OperationOutcome;
 import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
 import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
@@ -76,6 +77,7 @@ import net.aegis.fhir.service.ResourcemetadataService;
 import net.aegis.fhir.service.TransactionService;
 import net.aegis.fhir.service.audit.AuditEventService;
 import net.aegis.fhir.service.provenance.ProvenanceService;
+import net.aegis.fhir.service.util.BundleStreamingOutput;
 import net.aegis.fhir.service.util.DebugUtil;
 import net.aegis.fhir.service.util.ServicesUtil;
 import net.aegis.fhir.service.util.UTCDateUtil;
@@ -638,7 +640,13 @@ public class ResourceOperationsRESTService {
 			builder = builder.contentLocation(resourceLocation);
 
 			// Build response
-			builder = responseStatus(producesType, output, builder);
+			if (operationName.equalsIgnoreCase("everything") && output instanceof Bundle) {
+				// Stream encode the $everything page Bundle to the response output stream; no Content-Length is set so the response is chunked
+				builder = builder.entity(new BundleStreamingOutput((Bundle) output, producesType));
+			}
+			else {
+				builder = responseStatus(producesType, output, builder);
+			}
 
 		}
 		else {
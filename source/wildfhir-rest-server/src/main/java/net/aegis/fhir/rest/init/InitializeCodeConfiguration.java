@@ -44,7 +44,10 @@ import org.slf4j.LoggerFactory;
 
 import net.aegis.fhir.model.Code;
 import net.aegis.fhir.service.CodeService;
+import net.aegis.fhir.service.reindex.ResourceReindexService;
+import net.aegis.fhir.service.util.CodeConfigurationSnapshot;
 import net.aegis.fhir.service.util.StringUtils;
+import net.aegis.fhir.service.util.WebClientHelper;
 
 /**
  * @author richard.ettema
@@ -58,11 +61,16 @@ public class InitializeCodeConfiguration extends HttpServlet {
 
 	private static final Map<String, String> envCodeMap = new HashMap<String, String>(Map.ofEntries(
 		Map.entry("WILDFHIR_BASEURL", "baseUrl"),
+		Map.entry("WILDFHIR_BATCHCONCURRENTENTRIES", "batchConcurrentEntries"),
 		Map.entry("WILDFHIR_CONDITIONALDELETE", "conditionalDelete"),
 		Map.entry("WILDFHIR_CONDITIONALREAD", "conditionalRead"),
 		Map.entry("WILDFHIR_CONDITIONALCREATE", "conditionalCreate"),
 		Map.entry("WILDFHIR_CONDITIONALUPDATE", "conditionalUpdate"),
 		Map.entry("WILDFHIR_CREATERESPONSEPAYLOAD", "createResponsePayload"),
+		Map.entry("WILDFHIR_HTTPCLIENTCONNECTTIMEOUT", "httpClientConnectTimeout"),
+		Map.entry("WILDFHIR_HTTPCLIENTMAXCONNECTIONS", "httpClientMaxConnections"),
+		Map.entry("WILDFHIR_HTTPCLIENTMAXCONNECTIONSPERHOST", "httpClientMaxConnectionsPerHost"),
+		Map.entry("WILDFHIR_HTTPCLIENTREADTIMEOUT", "httpClientReadTimeout"),
 		Map.entry("WILDFHIR_SEARCHRESPONSEPAYLOAD", "searchResponsePayload"),
 		Map.entry("WILDFHIR_UPDATERESPONSEPAYLOAD", "updateResponsePayload"),
 		Map.entry("WILDFHIR_RESOURCEPURGEALLENABLED", "resourcePurgeAllEnabled"),
@@ -70,28 +78,100 @@ public class InitializeCodeConfiguration extends HttpServlet {
 		Map.entry("WILDFHIR_LASTNEMPTYDATEVALUE", "lastnEmptyDateValue"),
 		Map.entry("WILDFHIR_AUDITEVENTSERVICEENABLED", "auditEventServiceEnabled"),
 		Map.entry("WILDFHIR_PROVENANCESERVICEENABLED", "provenanceServiceEnabled"),
+		Map.entry("WILDFHIR_SUBSCRIPTIONDISPATCHPARALLELISM", "subscriptionDispatchParallelism"),
+		Map.entry("WILDFHIR_SUBSCRIPTIONENDPOINTCONCURRENTLIMIT", "subscriptionEndpointConcurrentLimit"),
+		Map.entry("WILDFHIR_SUBSCRIPTIONNOTIFICATIONBATCH", "subscriptionNotificationBatch"),
+		Map.entry("WILDFHIR_SUBSCRIPTIONNOTIFICATIONMAXATTEMPTS", "subscriptionNotificationMaxAttempts"),
 		Map.entry("WILDFHIR_SUBSCRIPTIONSERVICEENABLED", "subscriptionServiceEnabled"),
 		Map.entry("WILDFHIR_SUBSCRIPTIONSERVICEINTERVAL", "subscriptionServiceInterval"),
+		Map.entry("WILDFHIR_TXCLIENTCONCURRENTLIMIT", "txClientConcurrentLimit"),
 		Map.entry("WILDFHIR_TXCONCURRENTLIMIT", "txConcurrentLimit")
 	));
 
 	@Inject
     CodeService codeService;
 
+	@Inject
+	ResourceReindexService resourceReindexService;
+
 	public void init() throws ServletException {
 		log.info("InitializeCodeConfiguration.init() - START");
 
 		initCodeConfiguration();
 
+		configureHttpClient();
+
+		resumeReindex();
+
 		log.info("InitializeCodeConfiguration.init() - END");
 	}
 
+	public void destroy() {
+		log.info("InitializeCodeConfiguration.destroy() - START");
+
+		// Close the shared outbound REST client and any replaced clients with their connection pools
+		WebClientHelper.shutdown();
+
+		log.info("InitializeCodeConfiguration.destroy() - END");
+	}
+
 	public void initCodeConfiguration() {
 
 		try {
 			// Iterate through environment variable code configuration map
 			envCodeMap.forEach((k, v) -> updateEnvCode(k, v));
+
+			// Load the code configuration snapshot used by all code setting checks
+			CodeConfigurationSnapshot snapshot = codeService.loadConfiguration();
+
+			log.info("Init Configuration - " + snapshot.size() + " code configuration settings loaded");
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	private void configureHttpClient() {
+
+		try {
+			// Size the shared outbound REST client connection pool from the code configuration settings
+			int maxConnections = getCodeIntValue("httpClientMaxConnections", WebClientHelper.DEFAULT_MAX_CONNECTIONS);
+			int maxConnectionsPerHost = getCodeIntValue("httpClientMaxConnectionsPerHost", WebClientHelper.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+			int connectTimeout = getCodeIntValue("httpClientConnectTimeout", WebClientHelper.DEFAULT_CONNECT_TIMEOUT_MILLIS);
+			int readTimeout = getCodeIntValue("httpClientReadTimeout", WebClientHelper.DEFAULT_READ_TIMEOUT_MILLIS);
+
+			WebClientHelper.configure(maxConnections, maxConnectionsPerHost, connectTimeout, readTimeout);
+
+			log.info("Init Configuration - http client pool max " + maxConnections + " per host " + maxConnectionsPerHost + " connect timeout " + connectTimeout + " read timeout " + readTimeout);
+		} catch (Exception e) {
+			log.error("InitializeCodeConfiguration - http client configuration error! " + e.getMessage());
+			e.printStackTrace();
+		}
+
+	}
+
+	private int getCodeIntValue(String codeName, int defaultValue) throws Exception {
+
+		if (codeService.isSupported(codeName)) {
+			Integer intValue = codeService.findCodeIntValueByName(codeName);
+
+			if (intValue != null && intValue.intValue() > 0) {
+				return intValue.intValue();
+			}
+		}
+
+		return defaultValue;
+	}
+
+	private void resumeReindex() {
+
+		try {
+			// Resume a $reindex job that was running when the server stopped
+			if (codeService.isSupported("reindexEnabled")) {
+				resourceReindexService.resume(codeService.getCodeValue("baseUrl"));
+			}
 		} catch (Exception e) {
+			log.error("InitializeCodeConfiguration - $reindex resume error! " + e.getMessage());
 			e.printStackTrace();
 		}
 
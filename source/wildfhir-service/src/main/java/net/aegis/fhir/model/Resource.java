@@ -69,6 +69,12 @@ public class Resource implements Serializable {
 
     private byte[] resourceContents;
 
+    // Optional minified JSON representation of resourceContents
+    private byte[] resourceContentsJson;
+
+    // Current version flag; only the latest version of a resource is current
+    private boolean isCurrent;
+
     // 10 Placeholder columns used for sort criteria
     private String sort0;
     private String sort1;
@@ -151,6 +157,24 @@ public class Resource implements Serializable {
 
     public void setResourceContents(byte[] resourceContents) {
         this.resourceContents = resourceContents;
+        // Any change to the XML contents invalidates the JSON representation
+        this.resourceContentsJson = null;
+    }
+
+    public byte[] getResourceContentsJson() {
+        return resourceContentsJson;
+    }
+
+    public void setResourceContentsJson(byte[] resourceContentsJson) {
+        this.resourceContentsJson = resourceContentsJson;
+    }
+
+    public boolean isCurrent() {
+        return isCurrent;
+    }
+
+    public void setCurrent(boolean isCurrent) {
+        this.isCurrent = isCurrent;
     }
 
     public String getSort0() {
@@ -285,6 +309,8 @@ public class Resource implements Serializable {
     	dst.setLastUser(this.getLastUser());
     	dst.setLastUpdate(this.getLastUpdate());
     	dst.setResourceContents(this.getResourceContents());
+    	dst.setResourceContentsJson(this.getResourceContentsJson());
+    	dst.setCurrent(this.isCurrent());
     	dst.setSort0(this.getSort0());
     	dst.setSort1(this.getSort1());
     	dst.setSort2(this.getSort2());
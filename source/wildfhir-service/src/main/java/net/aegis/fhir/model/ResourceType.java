@@ -774,6 +774,7 @@ public class ResourceType {
 		 */
 		globalOperations = new ArrayList<LabelKeyValueBean>();
 		globalOperations.add(new LabelKeyValueBean("capability-reload", "external", "", "write")); // WildFHIR global operation; does not match existing FHIR global operation
+		globalOperations.add(new LabelKeyValueBean("client-pool-status", "external", "", "read")); // WildFHIR global operation; does not match existing FHIR global operation
 		globalOperations.add(new LabelKeyValueBean("code-configuration", "external", "", "write")); // WildFHIR global operation; does not match existing FHIR global operation
 		globalOperations.add(new LabelKeyValueBean("convert", "global", "http://hl7.org/fhir/OperationDefinition/Resource-convert", "read"));
 		globalOperations.add(new LabelKeyValueBean("fhirpath-evaluate", "external", "", "read")); // WildFHIR global operation; does not match existing FHIR global operation
@@ -782,7 +783,10 @@ public class ResourceType {
 		globalOperations.add(new LabelKeyValueBean("meta-add", "mixed", "http://hl7.org/fhir/OperationDefinition/Resource-meta-add", "write"));
 		globalOperations.add(new LabelKeyValueBean("meta-delete", "mixed", "http://hl7.org/fhir/OperationDefinition/Resource-meta-delete", "write"));
 		globalOperations.add(new LabelKeyValueBean("purge-all", "external", "", "write")); // WildFHIR global operation; does not match existing FHIR global operation
+		globalOperations.add(new LabelKeyValueBean("reindex", "mixed", "", "write")); // WildFHIR global and resource type operation; does not match existing FHIR global operation
+		globalOperations.add(new LabelKeyValueBean("reindex-status", "external", "", "read")); // WildFHIR global operation; does not match existing FHIR global operation
 		globalOperations.add(new LabelKeyValueBean("validate", "mixed", "http://hl7.org/fhir/OperationDefinition/Resource-validate", "read"));
+		globalOperations.add(new LabelKeyValueBean("validation-pool-status", "external", "", "read")); // WildFHIR global operation; does not match existing FHIR global operation
 		globalOperations.add(new LabelKeyValueBean("versions", "global", "http://hl7.org/fhir/OperationDefinition/Resource-versions", "read"));
 
 		/*
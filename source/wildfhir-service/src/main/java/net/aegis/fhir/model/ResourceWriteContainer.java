@@ -0,0 +1,123 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-model
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.model;
+
+import jakarta.ws.rs.core.Response;
+
+import org.hl7.fhir.r4.model.Bundle.HTTPVerb;
+
+/**
+ * Write request and result class used by ResourceService to persist a single transaction Bundle entry as part of a
+ * single unit of work.
+ *
+ * @author richard.ettema
+ *
+ */
+public class ResourceWriteContainer {
+
+	private HTTPVerb method;
+
+	private String resourceType;
+
+	private String resourceId;
+
+	private org.hl7.fhir.r4.model.Resource resourceObject;
+
+	private Resource resource;
+
+	private Response.Status responseStatus;
+
+	public ResourceWriteContainer(HTTPVerb method, String resourceType, String resourceId, org.hl7.fhir.r4.model.Resource resourceObject) {
+		this.method = method;
+		this.resourceType = resourceType;
+		this.resourceId = resourceId;
+		this.resourceObject = resourceObject;
+	}
+
+	/**
+	 * @return the method; DELETE, POST or PUT
+	 */
+	public HTTPVerb getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the resourceType
+	 */
+	public String getResourceType() {
+		return resourceType;
+	}
+
+	/**
+	 * @return the resourceId
+	 */
+	public String getResourceId() {
+		return resourceId;
+	}
+
+	/**
+	 * @return the resource object to write; null for DELETE
+	 */
+	public org.hl7.fhir.r4.model.Resource getResourceObject() {
+		return resourceObject;
+	}
+
+	/**
+	 * @return the persisted resource version; null if no version was written
+	 */
+	public Resource getResource() {
+		return resource;
+	}
+
+	/**
+	 * @param resource the resource to set
+	 */
+	public void setResource(Resource resource) {
+		this.resource = resource;
+	}
+
+	/**
+	 * @return the responseStatus
+	 */
+	public Response.Status getResponseStatus() {
+		return responseStatus;
+	}
+
+	/**
+	 * @param responseStatus the responseStatus to set
+	 */
+	public void setResponseStatus(Response.Status responseStatus) {
+		this.responseStatus = responseStatus;
+	}
+
+}
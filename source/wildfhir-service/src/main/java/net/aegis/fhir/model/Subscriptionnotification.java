@@ -0,0 +1,222 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-model
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+
+/**
+ * The persistent class for the subscriptionnotification database table; the outbound rest-hook notification queue.
+ *
+ * @author richard.ettema
+ *
+ */
+@Entity
+@Table(name="subscriptionnotification")
+public class Subscriptionnotification implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String STATUS_PENDING = "pending";
+	public static final String STATUS_SENDING = "sending";
+	public static final String STATUS_DEAD = "dead";
+
+    @Id
+    @GeneratedValue(strategy=GenerationType.IDENTITY)
+    private Integer id;
+
+    private String subscriptionId;
+
+    private String endpoint;
+
+    private Integer resourceJoinId;
+
+    private String resourceType;
+
+    private String resourceId;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date recorded;
+
+    private String status;
+
+    private Integer attempts;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date nextAttempt;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date lastUpdate;
+
+    private String lastError;
+
+    public Subscriptionnotification() {
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+	public String getSubscriptionId() {
+		return subscriptionId;
+	}
+
+	public void setSubscriptionId(String subscriptionId) {
+		this.subscriptionId = subscriptionId;
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	public void setEndpoint(String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	public Integer getResourceJoinId() {
+		return resourceJoinId;
+	}
+
+	public void setResourceJoinId(Integer resourceJoinId) {
+		this.resourceJoinId = resourceJoinId;
+	}
+
+	public String getResourceType() {
+		return resourceType;
+	}
+
+	public void setResourceType(String resourceType) {
+		this.resourceType = resourceType;
+	}
+
+	public String getResourceId() {
+		return resourceId;
+	}
+
+	public void setResourceId(String resourceId) {
+		this.resourceId = resourceId;
+	}
+
+	public Date getRecorded() {
+		return recorded;
+	}
+
+	public void setRecorded(Date recorded) {
+		this.recorded = recorded;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public Integer getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(Integer attempts) {
+		this.attempts = attempts;
+	}
+
+	public Date getNextAttempt() {
+		return nextAttempt;
+	}
+
+	public void setNextAttempt(Date nextAttempt) {
+		this.nextAttempt = nextAttempt;
+	}
+
+	public Date getLastUpdate() {
+		return lastUpdate;
+	}
+
+	public void setLastUpdate(Date lastUpdate) {
+		this.lastUpdate = lastUpdate;
+	}
+
+	public String getLastError() {
+		return lastError;
+	}
+
+	public void setLastError(String lastError) {
+		this.lastError = lastError;
+	}
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + ((id == null) ? 0 : id.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        Subscriptionnotification other = (Subscriptionnotification) obj;
+        if (id == null) {
+            if (other.id != null)
+                return false;
+        } else if (!id.equals(other.id))
+            return false;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "Subscriptionnotification [id=" + id + ", subscriptionId=" + subscriptionId
+        		+ ", endpoint=" + endpoint + ", resourceType=" + resourceType + ", resourceId=" + resourceId
+        		+ ", status=" + status + ", attempts=" + attempts + ", nextAttempt=" + nextAttempt + "]";
+    }
+
+}
@@ -43,6 +43,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TimeZone;
 import java.util.logging.Logger;
 
 import org.apache.commons.lang3.StringUtils;
@@ -55,15 +56,12 @@ import org.hl7.fhir.r4.model.Bundle.BundleEntrySearchComponent;
 import org.hl7.fhir.r4.model.Bundle.BundleLinkComponent;
 import org.hl7.fhir.r4.model.Bundle.BundleType;
 import org.hl7.fhir.r4.model.Bundle.SearchEntryMode;
-import org.hl7.fhir.r4.model.DateTimeType;
 import org.hl7.fhir.r4.model.IntegerType;
 import org.hl7.fhir.r4.model.Meta;
 import org.hl7.fhir.r4.model.Observation;
 import org.hl7.fhir.r4.model.OperationOutcome;
 import org.hl7.fhir.r4.model.Parameters;
 import org.hl7.fhir.r4.model.Parameters.ParametersParameterComponent;
-import org.hl7.fhir.r4.model.Period;
-import org.hl7.fhir.r4.model.Timing;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.ws.rs.core.HttpHeaders;
@@ -185,10 +183,8 @@ public class ObservationLastNOperation extends ResourceOperationProxy {
 		// Get the query parameters that represent the search criteria
 		MultivaluedMap<String, String> queryParams = ServicesUtil.INSTANCE.parseRequestQuery(request);
 
-		// Define lastn parameters with initial _sort by code:asc and date:desc
+		// Define lastn parameters; the $lastn query orders by code:asc and date:desc
 		MultivaluedMap<String, String> lastnParams = new MultivaluedHashMap<String, String>();
-		lastnParams.add("_sort", "code");
-		lastnParams.add("_sort", "-date"); // FHIR-261 Change sort to use effective[x]
 
 		// Add queryParams if present
 		if (queryParams != null && !queryParams.isEmpty()) {
@@ -221,10 +217,35 @@ public class ObservationLastNOperation extends ResourceOperationProxy {
 		List<String[]> validParams = new ArrayList<String[]>();
 		List<String[]> invalidParams = new ArrayList<String[]>();
 
-		// Execute search query with lastn parameters
-		List<Resource> resources = resourceService.searchQuery(lastnParams, null, "Observation", false, _include, _includeIterate, _revinclude, validParams, invalidParams);
+		Date effectiveDefault = null;
+		String effectiveDefaultException = null;
+		if (codeService.isSupported("lastnProcessEmptyDate")) {
+			// Assign default 'early' date value so Observations without an effective value get processed
+			SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+			// Use code setting 'lastnEmptyDateValue' if defined, else 1900-01-01
+			String lastnEmptyDateValue = codeService.getCodeValue("lastnEmptyDateValue");
+			try {
+				effectiveDefault = sdf.parse(lastnEmptyDateValue);
+			}
+			catch (Exception e) {
+				effectiveDefaultException = e.getMessage();
+				effectiveDefault = sdf.parse("1900-01-01");
+			}
+		}
+
+		// Observations without an effective value are ranked with the default 'early' date value
+		String emptyDateValue = null;
+		if (effectiveDefault != null) {
+			emptyDateValue = utcDateUtil.formatDate(effectiveDefault, UTCDateUtil.DATETIME_SORT_FORMAT, TimeZone.getTimeZone(UTCDateUtil.TIME_ZONE_UTC));
+		}
+
+		// Check for count=0 or _summary=count parameter setting; if set, then only the total is needed
+		boolean isCountOnly = ((countInteger != null && countInteger.intValue() == 0) || (summaryString != null && summaryString.equals("count")));
 
-		log.fine("ObservationLastNOperation - resources.size() = " + resources.size());
+		// Execute $lastn query with lastn parameters; only the ids of the most recent max Observations per code are returned
+		List<Integer> lastnIds = resourceService.searchQueryLastNIds(lastnParams, null, _include, _includeIterate, _revinclude, validParams, invalidParams, maxValue.getValue().intValue(), emptyDateValue);
+
+		log.fine("ObservationLastNOperation - lastnIds.size() = " + lastnIds.size());
 
 		List<NameValuePair> orderedParams = URLEncodedUtils.parse(queryString, Charset.defaultCharset());
 		for (NameValuePair param : orderedParams) {
@@ -260,22 +281,6 @@ public class ObservationLastNOperation extends ResourceOperationProxy {
 			}
 		}
 
-		Date effectiveDefault = null;
-		String effectiveDefaultException = null;
-		if (codeService.isSupported("lastnProcessEmptyDate")) {
-			// Assign default 'early' date value so Observations without an effective value get processed
-			SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-			// Use code setting 'lastnEmptyDateValue' if defined, else 1900-01-01
-			String lastnEmptyDateValue = codeService.getCodeValue("lastnEmptyDateValue");
-			try {
-				effectiveDefault = sdf.parse(lastnEmptyDateValue);
-			}
-			catch (Exception e) {
-				effectiveDefaultException = e.getMessage();
-				effectiveDefault = sdf.parse("1900-01-01");
-			}
-		}
-
 		// Process any invalidParams or undefined lastnEmptyDateValue into a Bundle.entry.resource OperationOutcome
 		BundleEntryComponent bundleEntryOutcome = null;
 		if (!invalidParams.isEmpty() || effectiveDefaultException != null) {
@@ -322,25 +327,19 @@ public class ObservationLastNOperation extends ResourceOperationProxy {
 		selfLink.setUrl(selfUrl.toString());
 		bundle.getLink().add(selfLink);
 
-		if (resources != null && resources.size() > 0) {
+		if (lastnIds.size() > 0) {
+
+			// Only the Observations that survive the $lastn ranking are read
+			List<Resource> resources = new ArrayList<Resource>();
+			if (!isCountOnly) {
+				resources = resourceService.findResourcesByIds(lastnIds);
+			}
 
 			// First, populate the _matchedId list for use in _include and _revInclude duplicate check
 			for (net.aegis.fhir.model.Resource resourceEntry : resources) {
 				_matchedId.add(resourceEntry.getResourceType() + "/" + resourceEntry.getResourceId());
 			}
 
-			/*
-			 * Evaluate found Observation resources for inclusion
-			 */
-			String codeValue = "";
-			String previousCode = "";
-			Date effectiveValue = null;
-			Period effectivePeriod = null;
-			Date previousEffectiveValue = null;
-			int codeCount = 0;
-			int resourceCount = 0;
-			int maxPlusCount = 0; // Used when effectiveValue equal to previousEffectiveValue
-
 			XmlParser xmlP = new XmlParser();
 
 			ByteArrayInputStream iResource = null;
@@ -349,501 +348,395 @@ public class ObservationLastNOperation extends ResourceOperationProxy {
 
 			BundleEntryComponent bundleEntry = null;
 
-			boolean addToBundle = false;
-
 			for (Resource resourceEntry : resources) {
 				log.fine("$lastn - processing " + resourceEntry.getResourceType() + " resource [" + resourceEntry.getResourceId() + "]");
 
-				addToBundle = false;
-
 				// Convert XML contents to Resource object
 				iResource = new ByteArrayInputStream(resourceEntry.getResourceContents());
 				org.hl7.fhir.r4.model.Resource resourceObject = xmlP.parse(iResource);
 
-				// Only add Observation resource types
-				if (resourceObject.getResourceType().equals(org.hl7.fhir.r4.model.ResourceType.Observation)) {
-					// Get current code value for comparison
-					codeValue = ((Observation)resourceObject).getCode().getCodingFirstRep().getCode();
+				log.fine("	--> adding Observation");
 
-					effectiveValue = null;
-					if (((Observation)resourceObject).hasEffectiveDateTimeType()) {
-						effectiveValue = ((Observation)resourceObject).getEffectiveDateTimeType().getValue();
-					}
-					else if (((Observation)resourceObject).hasEffectiveInstantType()) {
-						effectiveValue = ((Observation)resourceObject).getEffectiveInstantType().getValue();
-					}
-					else if (((Observation)resourceObject).hasEffectivePeriod()) {
-						effectivePeriod = ((Observation)resourceObject).getEffectivePeriod();
-						if (effectivePeriod.hasEnd()) {
-							effectiveValue = effectivePeriod.getEnd();
-						}
-						else if (effectivePeriod.hasStart()) {
-							effectiveValue = effectivePeriod.getStart();
-						}
-					}
-					else if (((Observation)resourceObject).hasEffectiveTiming()) {
-						// Special logic for Timing data type - set effectiveValue to the latest event value
-						Timing effectiveTiming = ((Observation)resourceObject).getEffectiveTiming();
-
-						Date current = null;
-						if (effectiveTiming.hasEvent()) {
-							effectiveValue = effectiveTiming.getEvent().get(0).getValue();
-							for (DateTimeType event : effectiveTiming.getEvent()) {
-								current = event.getValue();
-								if (current.after(effectiveValue)) {
-									effectiveValue = current;
-								}
-							}
-						}
-					}
+				bundleEntry = new BundleEntryComponent();
 
-					if (effectiveValue == null && codeService.isSupported("lastnProcessEmptyDate")) {
-						// Assign default 'early' date value so Observations without an effective value get processed
-						effectiveValue = effectiveDefault;
-					}
+				bundleEntry.setResource(resourceObject);
 
-					// Skip Observations without a code value and without an effective[x] value
-					if (codeValue != null && effectiveValue != null) {
-						log.fine("  --> Observation code[0] = '" + codeValue + "' effectiveValue = '" + utcDateUtil.formatDate(effectiveValue, UTCDateUtil.DATE_PARAMETER_FORMAT, null) + "'");
+				// Build and set Bundle.entry.fullUrl
+				fullUrl = baseUrl + "/" + resourceEntry.getResourceId();
+				bundleEntry.setFullUrl(fullUrl);
 
-						// Increment code count
-						codeCount++;
+				BundleEntrySearchComponent bundleEntrySearch = new BundleEntrySearchComponent();
+				bundleEntrySearch.setMode(SearchEntryMode.MATCH);
+				bundleEntrySearch.setScore(new BigDecimal(1));
+				bundleEntry.setSearch(bundleEntrySearch);
 
-						if (previousCode.equals("")) {
-							log.fine("	--> previous values are empty, first one gets added");
-							// This is the first one, add to lastn bundle
-							addToBundle = true;
-						}
-						else if (codeValue.equals(previousCode)) {
-							log.fine("	--> codeValue = '" + codeValue + "'; previousCode = '" + codeValue + "'; match, check max value");
-							log.fine("	  --> maxValue = " + maxValue.getValue() + "; codeCount = " + codeCount);
-
-							// Special check for effectiveValue equal to previousEffectiveValue
-							if (previousEffectiveValue != null && effectiveValue.equals(previousEffectiveValue)) {
-								// Increment maxPlusCount to allow for additional duplicate Observation code and effective
-								maxPlusCount++;
-								log.fine("	  --> maxPlusCount = " + maxPlusCount + "; previousEffectiveValue = '" + utcDateUtil.formatDate(previousEffectiveValue, UTCDateUtil.DATE_PARAMETER_FORMAT, null) + "'");
-							}
+				bundle.getEntry().add(bundleEntry);
 
-							// This is another Observation with the same code value, check number against max value
-							if (maxValue.getValue() < 0 || codeCount <= (maxValue.getValue() + maxPlusCount)) {
-								log.fine("	  --> maxValue check true - add");
-								// If less than or equal to max value, add to lastn bundle
-								addToBundle = true;
-							}
+				// Process _include
+				if (_include != null && _include.size() > 0) {
+					log.fine("Processing _include...");
+
+					String source = null;
+					String parameter = null;
+					String type = null;
+
+					for (String[] include : _include) {
+						// Extract include parameter parts
+						source = include[0];
+						if (include.length > 1) {
+							parameter = include[1];
+						}
+						else {
+							parameter = null;
+						}
+						if (include.length > 2) {
+							type = include[2];
 						}
-						else if (!codeValue.equals(previousCode)) {
-							log.fine("	--> codeValue = '" + codeValue + "'; previousCode = '" + codeValue + "'; new code, add and reset codeCount");
-							// This Observation is the first one for a new code value, add to lastn bundle and reset code count = 1
-							addToBundle = true;
-							codeCount = 1;
-							maxPlusCount = 0;
+						else {
+							type = null;
 						}
 
-						if (addToBundle) {
-							resourceCount++;
+						log.fine("--> _include is '" + source + ":" + (parameter != null ? parameter : "null") + ":" + (type != null ? type : "null") + "'");
+
+						// Proceed only if current resource type matches include source and we have a parameter
+						if (resourceEntry.getResourceType().equals(source) && parameter != null) {
+							log.fine("-->--> _include resource type match (" + source + "); _include parameter is reference (" + parameter + ")");
+
+							boolean isParamRef = false;
+							String resolvedParameter = null;
+							int resolvedParamEnd = -1;
+
+							List<Resourcemetadata> paramMetaData = null;
 
-							/*
-							 *  Check for count=0 or _summary=count parameter setting; if set, then only return total
-							 *  without any page links and without any entries
-							 */
-							if ((countInteger != null && countInteger.intValue() == 0) || (summaryString != null && summaryString.equals("count"))) {
-								log.fine("	--> _summary=count; increment Observation count");
+							// Check for wild card parameter
+							if (parameter.equals("*")) {
+								paramMetaData = resourcemetadataService.findMetadataByResourceIdTypeLevel1Param(resourceEntry.getResourceId(), source);
 							}
 							else {
-								log.fine("	--> adding Observation");
+								// Query the resourcemetadata for the current resource parameter
+								paramMetaData = resourcemetadataService.findMetadataByResourceIdTypeParam(resourceEntry.getResourceId(), source, parameter);
+							}
 
-								bundleEntry = new BundleEntryComponent();
+							if (paramMetaData != null && paramMetaData.size() > 0) {
+								log.fine("-->-->-->--> _include parameter meta data found");
+
+								for (Resourcemetadata metadata : paramMetaData) {
+									if (parameter.equals("*")) {
+										resolvedParamEnd = metadata.getParamName().indexOf("[");
+										if (resolvedParamEnd < 0) {
+											resolvedParamEnd = metadata.getParamName().length();
+										}
+										resolvedParameter = metadata.getParamName().substring(0, resolvedParamEnd);
+									}
+									else {
+										resolvedParameter = parameter;
+									}
+									isParamRef = (net.aegis.fhir.model.ResourceType.findResourceTypeResourceCriteriaType(source, resolvedParameter).equalsIgnoreCase("REFERENCE") ? true : false);
 
-								bundleEntry.setResource(resourceObject);
+									if (isParamRef == true && !metadata.getParamValue().isEmpty()) {
+										log.fine("-->-->-->--> _include parameter (" + resolvedParameter + ") meta data reference found (" + metadata.getParamValue() + ")");
 
-								// Build and set Bundle.entry.fullUrl
-								fullUrl = baseUrl + "/" + resourceEntry.getResourceId();
-								bundleEntry.setFullUrl(fullUrl);
+										// Extract resource type and id
+										String[] refParts = metadata.getParamValue().split("/");
 
-								BundleEntrySearchComponent bundleEntrySearch = new BundleEntrySearchComponent();
-								bundleEntrySearch.setMode(SearchEntryMode.MATCH);
-								bundleEntrySearch.setScore(new BigDecimal(1));
-								bundleEntry.setSearch(bundleEntrySearch);
+										int refPartsLength = refParts.length;
+										if (refPartsLength > 1) {
+											String refResourceType = refParts[refPartsLength - 2];
+											String refResourceId = refParts[refPartsLength - 1];
 
-								bundle.getEntry().add(bundleEntry);
+											// Check already _includedId and _matchedId lists for this included resource; if found, skip
+											String refResourceCheckId = refResourceType + "/" + refResourceId;
+											if (!_includedId.contains(refResourceCheckId) && !_matchedId.contains(refResourceCheckId)) {
+												log.fine("-->-->-->-->--> _include resource (" + refResourceCheckId + ")");
 
-								// Process _include
-								if (_include != null && _include.size() > 0) {
-									log.fine("Processing _include...");
+												// If type defined, check for match
+												if (type == null || refResourceType.equals(type)) {
+													if (type != null) {
+														log.fine("-->-->-->-->--> _include type match (" + type + ")");
+													}
+													ResourceContainer refResource = resourceService.read(refResourceType, refResourceId, summaryString);
 
-									String source = null;
-									String parameter = null;
-									String type = null;
+													if (refResource.getResponseStatus().equals(Response.Status.OK)) {
+														log.fine("-->-->-->-->--> _include resource read OK (" + refResourceId + ")");
 
-									for (String[] include : _include) {
-										// Extract include parameter parts
-										source = include[0];
-										if (include.length > 1) {
-											parameter = include[1];
-										}
-										else {
-											parameter = null;
-										}
-										if (include.length > 2) {
-											type = include[2];
-										}
-										else {
-											type = null;
-										}
+														// Create and add bundle entry for included resource
+														bundleEntry = new BundleEntryComponent();
 
-										log.fine("--> _include is '" + source + ":" + (parameter != null ? parameter : "null") + ":" + (type != null ? type : "null") + "'");
+														// Set Bundle.entry.fullUrl
+														fullUrl = includeBaseUrl + refResourceType + "/" + refResourceId;
+														bundleEntry.setFullUrl(fullUrl);
 
-										// Proceed only if current resource type matches include source and we have a parameter
-										if (resourceEntry.getResourceType().equals(source) && parameter != null) {
-											log.fine("-->--> _include resource type match (" + source + "); _include parameter is reference (" + parameter + ")");
+														// Convert XML contents to Resource object
+														iResource = new ByteArrayInputStream(refResource.getResource().getResourceContents());
 
-											boolean isParamRef = false;
-											String resolvedParameter = null;
-											int resolvedParamEnd = -1;
+														resourceObject = xmlP.parse(iResource);
 
-											List<Resourcemetadata> paramMetaData = null;
+														bundleEntry.setResource(resourceObject);
 
-											// Check for wild card parameter
-											if (parameter.equals("*")) {
-												paramMetaData = resourcemetadataService.findMetadataByResourceIdTypeLevel1Param(resourceEntry.getResourceId(), source);
-											}
-											else {
-												// Query the resourcemetadata for the current resource parameter
-												paramMetaData = resourcemetadataService.findMetadataByResourceIdTypeParam(resourceEntry.getResourceId(), source, parameter);
-											}
+														bundleEntrySearch = new BundleEntrySearchComponent();
+														bundleEntrySearch.setMode(SearchEntryMode.INCLUDE);
+														bundleEntry.setSearch(bundleEntrySearch);
 
-											if (paramMetaData != null && paramMetaData.size() > 0) {
-												log.fine("-->-->-->--> _include parameter meta data found");
+														bundle.getEntry().add(bundleEntry);
 
-												for (Resourcemetadata metadata : paramMetaData) {
-													if (parameter.equals("*")) {
-														resolvedParamEnd = metadata.getParamName().indexOf("[");
-														if (resolvedParamEnd < 0) {
-															resolvedParamEnd = metadata.getParamName().length();
-														}
-														resolvedParameter = metadata.getParamName().substring(0, resolvedParamEnd);
+														// Add to _includedId
+														_includedId.add(refResourceCheckId);
 													}
 													else {
-														resolvedParameter = parameter;
-													}
-													isParamRef = (net.aegis.fhir.model.ResourceType.findResourceTypeResourceCriteriaType(source, resolvedParameter).equalsIgnoreCase("REFERENCE") ? true : false);
-
-													if (isParamRef == true && !metadata.getParamValue().isEmpty()) {
-														log.fine("-->-->-->--> _include parameter (" + resolvedParameter + ") meta data reference found (" + metadata.getParamValue() + ")");
-
-														// Extract resource type and id
-														String[] refParts = metadata.getParamValue().split("/");
-
-														int refPartsLength = refParts.length;
-														if (refPartsLength > 1) {
-															String refResourceType = refParts[refPartsLength - 2];
-															String refResourceId = refParts[refPartsLength - 1];
-
-															// Check already _includedId and _matchedId lists for this included resource; if found, skip
-															String refResourceCheckId = refResourceType + "/" + refResourceId;
-															if (!_includedId.contains(refResourceCheckId) && !_matchedId.contains(refResourceCheckId)) {
-																log.fine("-->-->-->-->--> _include resource (" + refResourceCheckId + ")");
-
-																// If type defined, check for match
-																if (type == null || refResourceType.equals(type)) {
-																	if (type != null) {
-																		log.fine("-->-->-->-->--> _include type match (" + type + ")");
-																	}
-																	ResourceContainer refResource = resourceService.read(refResourceType, refResourceId, summaryString);
-
-																	if (refResource.getResponseStatus().equals(Response.Status.OK)) {
-																		log.fine("-->-->-->-->--> _include resource read OK (" + refResourceId + ")");
-
-																		// Create and add bundle entry for included resource
-																		bundleEntry = new BundleEntryComponent();
-
-																		// Set Bundle.entry.fullUrl
-																		fullUrl = includeBaseUrl + refResourceType + "/" + refResourceId;
-																		bundleEntry.setFullUrl(fullUrl);
-
-																		// Convert XML contents to Resource object
-																		iResource = new ByteArrayInputStream(refResource.getResource().getResourceContents());
-
-																		resourceObject = xmlP.parse(iResource);
-
-																		bundleEntry.setResource(resourceObject);
-
-																		bundleEntrySearch = new BundleEntrySearchComponent();
-																		bundleEntrySearch.setMode(SearchEntryMode.INCLUDE);
-																		bundleEntry.setSearch(bundleEntrySearch);
-
-																		bundle.getEntry().add(bundleEntry);
-
-																		// Add to _includedId
-																		_includedId.add(refResourceCheckId);
-																	}
-																	else {
-																		log.fine("-->-->-->-->--> _include resource read NOT OK (" + refResourceId + ") --> " + refResource.getResponseStatus().name());
-																	}
-																}
-																else {
-																	log.fine("-->-->-->-->--> _type mismatch! refResourceType = '" + refResourceType + "', type = '" + (type != null ? type : "null") + "'");
-																}
-															}
-															else {
-																log.fine("-->-->-->-->--> _include resource (" + refResourceCheckId + ") - already included!");
-															}
-														}
+														log.fine("-->-->-->-->--> _include resource read NOT OK (" + refResourceId + ") --> " + refResource.getResponseStatus().name());
 													}
 												}
+												else {
+													log.fine("-->-->-->-->--> _type mismatch! refResourceType = '" + refResourceType + "', type = '" + (type != null ? type : "null") + "'");
+												}
+											}
+											else {
+												log.fine("-->-->-->-->--> _include resource (" + refResourceCheckId + ") - already included!");
 											}
 										}
 									}
 								}
+							}
+						}
+					}
+				}
 
-								// Process _include:iterate
-								if (_includeIterate != null && _includeIterate.size() > 0) {
-									log.fine("Processing _include:iterate...");
+				// Process _include:iterate
+				if (_includeIterate != null && _includeIterate.size() > 0) {
+					log.fine("Processing _include:iterate...");
 
-									String source = null;
-									String parameter = null;
-									String type = null;
+					String source = null;
+					String parameter = null;
+					String type = null;
 
-									for (String[] includeIterate : _includeIterate) {
-										// Extract include parameter parts
-										source = includeIterate[0];
-										if (includeIterate.length > 1) {
-											parameter = includeIterate[1];
-										}
-										else {
-											parameter = null;
-										}
-										if (includeIterate.length > 2) {
-											type = includeIterate[2];
-										}
-										else {
-											type = null;
+					for (String[] includeIterate : _includeIterate) {
+						// Extract include parameter parts
+						source = includeIterate[0];
+						if (includeIterate.length > 1) {
+							parameter = includeIterate[1];
+						}
+						else {
+							parameter = null;
+						}
+						if (includeIterate.length > 2) {
+							type = includeIterate[2];
+						}
+						else {
+							type = null;
+						}
+
+						log.fine("--> _include:iterate is '" + source + ":" + (parameter != null ? parameter : "null") + ":" + (type != null ? type : "null") + "'");
+
+						// Proceed only if current resource type matches include source and we have a parameter
+						if (resourceEntry.getResourceType().equals(source) && parameter != null) {
+							log.fine("-->--> _include:iterate resource type match (" + source + "); _include:iterate parameter is reference (" + parameter + ")");
+
+							boolean isParamRef = false;
+							String resolvedParameter = null;
+							int resolvedParamEnd = -1;
+
+							List<Resourcemetadata> paramMetaData = null;
+
+							// Check for wild card parameter
+							if (parameter.equals("*")) {
+								paramMetaData = resourcemetadataService.findMetadataByResourceIdTypeLevel1Param(resourceEntry.getResourceId(), source);
+							}
+							else {
+								// Query the resourcemetadata for the current resource parameter
+								paramMetaData = resourcemetadataService.findMetadataByResourceIdTypeParam(resourceEntry.getResourceId(), source, parameter);
+							}
+
+							if (paramMetaData != null && paramMetaData.size() > 0) {
+								log.fine("-->-->-->--> _include:iterate parameter meta data found");
+
+								for (Resourcemetadata metadata : paramMetaData) {
+									if (parameter.equals("*")) {
+										resolvedParamEnd = metadata.getParamName().indexOf("[");
+										if (resolvedParamEnd < 0) {
+											resolvedParamEnd = metadata.getParamName().length();
 										}
+										resolvedParameter = metadata.getParamName().substring(0, resolvedParamEnd);
+									}
+									else {
+										resolvedParameter = parameter;
+									}
+									isParamRef = (net.aegis.fhir.model.ResourceType.findResourceTypeResourceCriteriaType(source, resolvedParameter).equalsIgnoreCase("REFERENCE") ? true : false);
+
+									if (isParamRef == true && !metadata.getParamValue().isEmpty()) {
+										log.fine("-->-->-->--> _include:iterate parameter (" + resolvedParameter + ") meta data reference found (" + metadata.getParamValue() + ")");
+
+										// Extract resource type and id
+										String[] refParts = metadata.getParamValue().split("/");
+
+										int refPartsLength = refParts.length;
+										if (refPartsLength > 1) {
+											String refResourceType = refParts[refPartsLength - 2];
+											String refResourceId = refParts[refPartsLength - 1];
+
+											// Check already _includedId and _matchedId lists for this included resource; if found, skip
+											String refResourceCheckId = refResourceType + "/" + refResourceId;
+											if (!_includedId.contains(refResourceCheckId) && !_matchedId.contains(refResourceCheckId)) {
+												log.fine("-->-->-->-->--> _include:iterate resource (" + refResourceCheckId + ")");
 
-										log.fine("--> _include:iterate is '" + source + ":" + (parameter != null ? parameter : "null") + ":" + (type != null ? type : "null") + "'");
+												// If type defined, check for match
+												if (type == null || refResourceType.equals(type)) {
+													if (type != null) {
+														log.fine("-->-->-->-->--> _include:iterate type match (" + type + ")");
+													}
+													ResourceContainer refResource = resourceService.read(refResourceType, refResourceId, summaryString);
 
-										// Proceed only if current resource type matches include source and we have a parameter
-										if (resourceEntry.getResourceType().equals(source) && parameter != null) {
-											log.fine("-->--> _include:iterate resource type match (" + source + "); _include:iterate parameter is reference (" + parameter + ")");
+													if (refResource.getResponseStatus().equals(Response.Status.OK)) {
+														log.fine("-->-->-->-->--> _include:iterate resource read OK (" + refResourceId + ")");
 
-											boolean isParamRef = false;
-											String resolvedParameter = null;
-											int resolvedParamEnd = -1;
+														// Create and add bundle entry for included resource
+														bundleEntry = new BundleEntryComponent();
 
-											List<Resourcemetadata> paramMetaData = null;
+														// Set Bundle.entry.fullUrl
+														fullUrl = includeBaseUrl + refResourceType + "/" + refResourceId;
+														bundleEntry.setFullUrl(fullUrl);
 
-											// Check for wild card parameter
-											if (parameter.equals("*")) {
-												paramMetaData = resourcemetadataService.findMetadataByResourceIdTypeLevel1Param(resourceEntry.getResourceId(), source);
-											}
-											else {
-												// Query the resourcemetadata for the current resource parameter
-												paramMetaData = resourcemetadataService.findMetadataByResourceIdTypeParam(resourceEntry.getResourceId(), source, parameter);
-											}
+														// Convert XML contents to Resource object
+														iResource = new ByteArrayInputStream(refResource.getResource().getResourceContents());
+
+														resourceObject = xmlP.parse(iResource);
+
+														bundleEntry.setResource(resourceObject);
+
+														bundleEntrySearch = new BundleEntrySearchComponent();
+														bundleEntrySearch.setMode(SearchEntryMode.INCLUDE);
+														bundleEntry.setSearch(bundleEntrySearch);
+
+														bundle.getEntry().add(bundleEntry);
 
-											if (paramMetaData != null && paramMetaData.size() > 0) {
-												log.fine("-->-->-->--> _include:iterate parameter meta data found");
+														// Add to _includedId
+														_includedId.add(refResourceCheckId);
 
-												for (Resourcemetadata metadata : paramMetaData) {
-													if (parameter.equals("*")) {
-														resolvedParamEnd = metadata.getParamName().indexOf("[");
-														if (resolvedParamEnd < 0) {
-															resolvedParamEnd = metadata.getParamName().length();
-														}
-														resolvedParameter = metadata.getParamName().substring(0, resolvedParamEnd);
+														// Call includeIterate for this resource instance
+														includeIterate(resourceService, resourcemetadataService, bundle, _includedId, refResourceId, source, parameter, type, summaryString, baseUrl, xmlP);
 													}
 													else {
-														resolvedParameter = parameter;
-													}
-													isParamRef = (net.aegis.fhir.model.ResourceType.findResourceTypeResourceCriteriaType(source, resolvedParameter).equalsIgnoreCase("REFERENCE") ? true : false);
-
-													if (isParamRef == true && !metadata.getParamValue().isEmpty()) {
-														log.fine("-->-->-->--> _include:iterate parameter (" + resolvedParameter + ") meta data reference found (" + metadata.getParamValue() + ")");
-
-														// Extract resource type and id
-														String[] refParts = metadata.getParamValue().split("/");
-
-														int refPartsLength = refParts.length;
-														if (refPartsLength > 1) {
-															String refResourceType = refParts[refPartsLength - 2];
-															String refResourceId = refParts[refPartsLength - 1];
-
-															// Check already _includedId and _matchedId lists for this included resource; if found, skip
-															String refResourceCheckId = refResourceType + "/" + refResourceId;
-															if (!_includedId.contains(refResourceCheckId) && !_matchedId.contains(refResourceCheckId)) {
-																log.fine("-->-->-->-->--> _include:iterate resource (" + refResourceCheckId + ")");
-
-																// If type defined, check for match
-																if (type == null || refResourceType.equals(type)) {
-																	if (type != null) {
-																		log.fine("-->-->-->-->--> _include:iterate type match (" + type + ")");
-																	}
-																	ResourceContainer refResource = resourceService.read(refResourceType, refResourceId, summaryString);
-
-																	if (refResource.getResponseStatus().equals(Response.Status.OK)) {
-																		log.fine("-->-->-->-->--> _include:iterate resource read OK (" + refResourceId + ")");
-
-																		// Create and add bundle entry for included resource
-																		bundleEntry = new BundleEntryComponent();
-
-																		// Set Bundle.entry.fullUrl
-																		fullUrl = includeBaseUrl + refResourceType + "/" + refResourceId;
-																		bundleEntry.setFullUrl(fullUrl);
-
-																		// Convert XML contents to Resource object
-																		iResource = new ByteArrayInputStream(refResource.getResource().getResourceContents());
-
-																		resourceObject = xmlP.parse(iResource);
-
-																		bundleEntry.setResource(resourceObject);
-
-																		bundleEntrySearch = new BundleEntrySearchComponent();
-																		bundleEntrySearch.setMode(SearchEntryMode.INCLUDE);
-																		bundleEntry.setSearch(bundleEntrySearch);
-
-																		bundle.getEntry().add(bundleEntry);
-
-																		// Add to _includedId
-																		_includedId.add(refResourceCheckId);
-
-																		// Call includeIterate for this resource instance
-																		includeIterate(resourceService, resourcemetadataService, bundle, _includedId, refResourceId, source, parameter, type, summaryString, baseUrl, xmlP);
-																	}
-																	else {
-																		log.fine("-->-->-->-->--> _include:iterate resource read NOT OK (" + refResourceId + ") --> " + refResource.getResponseStatus().name());
-																	}
-																}
-																else {
-																	log.fine("-->-->-->-->--> _include:iterate _type mismatch! refResourceType = '" + refResourceType + "', type = '" + (type != null ? type : "null") + "'");
-																}
-															}
-															else {
-																log.fine("-->-->-->-->--> _include:iterate resource (" + refResourceCheckId + ") - already included!");
-															}
-														}
+														log.fine("-->-->-->-->--> _include:iterate resource read NOT OK (" + refResourceId + ") --> " + refResource.getResponseStatus().name());
 													}
 												}
+												else {
+													log.fine("-->-->-->-->--> _include:iterate _type mismatch! refResourceType = '" + refResourceType + "', type = '" + (type != null ? type : "null") + "'");
+												}
+											}
+											else {
+												log.fine("-->-->-->-->--> _include:iterate resource (" + refResourceCheckId + ") - already included!");
 											}
 										}
 									}
 								}
+							}
+						}
+					}
+				}
 
-								// Process _revinclude
-								if (_revinclude != null && _revinclude.size() > 0) {
-									log.fine("Processing _revinclude...");
+				// Process _revinclude
+				if (_revinclude != null && _revinclude.size() > 0) {
+					log.fine("Processing _revinclude...");
 
-									String source = null;
-									String parameter = null;
-									String type = null;
+					String source = null;
+					String parameter = null;
+					String type = null;
 
-									for (String[] revinclude : _revinclude) {
-										log.fine("--> _revinclude is '" + revinclude[0] + ":" + revinclude[1] + "'");
+					for (String[] revinclude : _revinclude) {
+						log.fine("--> _revinclude is '" + revinclude[0] + ":" + revinclude[1] + "'");
 
-										// Extract revinclude parameter parts
-										source = revinclude[0];
-										if (revinclude.length > 1) {
-											parameter = revinclude[1];
-										}
-										else {
-											parameter = null;
-										}
-										if (revinclude.length > 2) {
-											type = revinclude[2];
-										}
-										else {
-											type = null;
-										}
+						// Extract revinclude parameter parts
+						source = revinclude[0];
+						if (revinclude.length > 1) {
+							parameter = revinclude[1];
+						}
+						else {
+							parameter = null;
+						}
+						if (revinclude.length > 2) {
+							type = revinclude[2];
+						}
+						else {
+							type = null;
+						}
 
-										// Proceed based on revinclude source and current resource type
-										log.fine("-->--> _revinclude resource type (" + source + "); current resource type (" + resourceEntry.getResourceType() + ")");
+						// Proceed based on revinclude source and current resource type
+						log.fine("-->--> _revinclude resource type (" + source + "); current resource type (" + resourceEntry.getResourceType() + ")");
 
-										// Proceed only if we have a parameter
-										if (parameter != null) {
-											boolean isParamRef = (net.aegis.fhir.model.ResourceType.findResourceTypeResourceCriteriaType(source, parameter).equalsIgnoreCase("REFERENCE") ? true : false);
+						// Proceed only if we have a parameter
+						if (parameter != null) {
+							boolean isParamRef = (net.aegis.fhir.model.ResourceType.findResourceTypeResourceCriteriaType(source, parameter).equalsIgnoreCase("REFERENCE") ? true : false);
 
-											if (isParamRef) {
-												log.fine("-->-->--> _revinclude parameter is reference (" + parameter + "); current resource id entry (" + resourceEntry.getResourceId() + ")");
+							if (isParamRef) {
+								log.fine("-->-->--> _revinclude parameter is reference (" + parameter + "); current resource id entry (" + resourceEntry.getResourceId() + ")");
 
-												// If type defined, check for current resource type match
-												if (type == null || resourceEntry.getResourceType().equals(type)) {
-													if (type != null) {
-														log.fine("-->-->-->-->--> _revinclude type match (" + type + ")");
-													}
+								// If type defined, check for current resource type match
+								if (type == null || resourceEntry.getResourceType().equals(type)) {
+									if (type != null) {
+										log.fine("-->-->-->-->--> _revinclude type match (" + type + ")");
+									}
 
-													// Build reverse search parameter
-													String revSearchParameter = parameter + "=" + resourceEntry.getResourceType() + "/" + resourceEntry.getResourceId();
+									// Build reverse search parameter
+									String revSearchParameter = parameter + "=" + resourceEntry.getResourceType() + "/" + resourceEntry.getResourceId();
 
-													// Convert search parameter string into queryParams map
-													List<NameValuePair> params = URLEncodedUtils.parse(revSearchParameter, Charset.defaultCharset());
-													MultivaluedMap<String, String> revQueryParams = ServicesUtil.INSTANCE.listNameValuePairToMultivaluedMapString(params);
+									// Convert search parameter string into queryParams map
+									List<NameValuePair> params = URLEncodedUtils.parse(revSearchParameter, Charset.defaultCharset());
+									MultivaluedMap<String, String> revQueryParams = ServicesUtil.INSTANCE.listNameValuePairToMultivaluedMapString(params);
 
-													// Search for resources with reverse search
-													List<Resource> revSearch = resourceService.searchQuery(revQueryParams, null, source, false, null, null, null, null, null);
+									// Search for resources with reverse search
+									List<Resource> revSearch = resourceService.searchQuery(revQueryParams, null, source, false, null, null, null, null, null);
 
-													if (revSearch != null && revSearch.size() > 0) {
-														log.fine("-->-->-->--> _revinclude reverse search found matches (" + revSearch.size() + ")");
+									if (revSearch != null && revSearch.size() > 0) {
+										log.fine("-->-->-->--> _revinclude reverse search found matches (" + revSearch.size() + ")");
 
-														for (Resource revResource : revSearch) {
-															String revResourceCheckId = revResource.getResourceType() + "/" + revResource.getResourceId();
-															log.fine("-->-->-->-->--> _revinclude resource (" + revResourceCheckId + ")");
+										for (Resource revResource : revSearch) {
+											String revResourceCheckId = revResource.getResourceType() + "/" + revResource.getResourceId();
+											log.fine("-->-->-->-->--> _revinclude resource (" + revResourceCheckId + ")");
 
-															// Check already _revincludedId and _matchedId lists for this revincluded resource; if found, skip
-															if (!_revincludedId.contains(revResourceCheckId) && !_matchedId.contains(revResourceCheckId)) {
+											// Check already _revincludedId and _matchedId lists for this revincluded resource; if found, skip
+											if (!_revincludedId.contains(revResourceCheckId) && !_matchedId.contains(revResourceCheckId)) {
 
-																// Create and add bundle entry for included resource
-																bundleEntry = new BundleEntryComponent();
+												// Create and add bundle entry for included resource
+												bundleEntry = new BundleEntryComponent();
 
-																// Set Bundle.entry.fullUrl
-																bundleEntry.setFullUrl(includeBaseUrl + revResourceCheckId);
+												// Set Bundle.entry.fullUrl
+												bundleEntry.setFullUrl(includeBaseUrl + revResourceCheckId);
 
-																// Check for _summary
-																if (!StringUtils.isEmpty(summaryString)) {
-																	// Summary requested, modify copy of found resource
-																	Resource foundRevResource = revResource.copy();
+												// Check for _summary
+												if (!StringUtils.isEmpty(summaryString)) {
+													// Summary requested, modify copy of found resource
+													Resource foundRevResource = revResource.copy();
 
-																	SummaryUtil.INSTANCE.generateResourceSummary(foundRevResource, summaryString);
+													SummaryUtil.INSTANCE.generateResourceSummary(foundRevResource, summaryString);
 
-																	// Convert XML contents of copy to Resource object
-																	iResource = new ByteArrayInputStream(foundRevResource.getResourceContents());
-																}
-																else {
-																	// Convert XML contents to Resource object
-																	iResource = new ByteArrayInputStream(revResource.getResourceContents());
-																}
+													// Convert XML contents of copy to Resource object
+													iResource = new ByteArrayInputStream(foundRevResource.getResourceContents());
+												}
+												else {
+													// Convert XML contents to Resource object
+													iResource = new ByteArrayInputStream(revResource.getResourceContents());
+												}
 
-																resourceObject = xmlP.parse(iResource);
+												resourceObject = xmlP.parse(iResource);
 
-																bundleEntry.setResource(resourceObject);
+												bundleEntry.setResource(resourceObject);
 
-																bundleEntrySearch = new BundleEntrySearchComponent();
-																bundleEntrySearch.setMode(SearchEntryMode.INCLUDE);
-																bundleEntry.setSearch(bundleEntrySearch);
+												bundleEntrySearch = new BundleEntrySearchComponent();
+												bundleEntrySearch.setMode(SearchEntryMode.INCLUDE);
+												bundleEntry.setSearch(bundleEntrySearch);
 
-																bundle.getEntry().add(bundleEntry);
+												bundle.getEntry().add(bundleEntry);
 
-																// Add to _revincludedId
-																_revincludedId.add(revResourceCheckId);
-															}
-															else {
-																log.fine("-->-->-->-->--> _revinclude resource (" + revResourceCheckId + ") - already included!");
-															}
-														}
-													}
-												}
+												// Add to _revincludedId
+												_revincludedId.add(revResourceCheckId);
+											}
+											else {
+												log.fine("-->-->-->-->--> _revinclude resource (" + revResourceCheckId + ") - already included!");
 											}
 										}
 									}
 								}
 							}
 						}
-
-						// Set previous values for next Observation comparison
-						previousCode = codeValue;
-						previousEffectiveValue = effectiveValue;
-					}
-					else {
-						log.fine("  --> SKIP - Observation.code[0] is null or Observation.effective is empty");
 					}
 				}
 			}
@@ -855,7 +748,7 @@ public class ObservationLastNOperation extends ResourceOperationProxy {
 				bundle.getEntry().add(bundleEntryOutcome);
 			}
 
-			bundle.setTotal(resourceCount);
+			bundle.setTotal(lastnIds.size());
 		}
 
 		return bundle;
@@ -35,9 +35,10 @@ package net.aegis.fhir.operation;
 import java.io.ByteArrayInputStream;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -48,25 +49,26 @@ import org.hl7.fhir.r4.formats.XmlParser;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
 import org.hl7.fhir.r4.model.Bundle.BundleEntrySearchComponent;
+import org.hl7.fhir.r4.model.Bundle.BundleLinkComponent;
 import org.hl7.fhir.r4.model.Bundle.BundleType;
 import org.hl7.fhir.r4.model.Bundle.SearchEntryMode;
 import org.hl7.fhir.r4.model.DateType;
+import org.hl7.fhir.r4.model.InstantType;
+import org.hl7.fhir.r4.model.IntegerType;
 import org.hl7.fhir.r4.model.Meta;
 import org.hl7.fhir.r4.model.OperationOutcome;
 import org.hl7.fhir.r4.model.Parameters;
 import org.hl7.fhir.r4.model.Parameters.ParametersParameterComponent;
 import org.hl7.fhir.r4.model.Patient;
 import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.StringType;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MultivaluedHashMap;
 import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
-import net.aegis.fhir.model.LabelKeyValueBean;
-import net.aegis.fhir.model.Resource;
 import net.aegis.fhir.model.ResourceContainer;
-import net.aegis.fhir.model.ResourceType;
 import net.aegis.fhir.service.BatchService;
 import net.aegis.fhir.service.CodeService;
 import net.aegis.fhir.service.ConformanceService;
@@ -74,9 +76,9 @@ import net.aegis.fhir.service.ResourceService;
 import net.aegis.fhir.service.ResourcemetadataService;
 import net.aegis.fhir.service.TransactionService;
 import net.aegis.fhir.service.audit.AuditEventService;
-import net.aegis.fhir.service.linked.LinkedResourceProxy;
-import net.aegis.fhir.service.linked.LinkedResourceProxyObjectFactory;
 import net.aegis.fhir.service.narrative.FHIRNarrativeGeneratorClient;
+import net.aegis.fhir.service.paging.PagingSearchManager;
+import net.aegis.fhir.service.paging.SearchCursor;
 import net.aegis.fhir.service.provenance.ProvenanceService;
 import net.aegis.fhir.service.util.ServicesUtil;
 import net.aegis.fhir.service.util.UUIDUtil;
@@ -87,6 +89,9 @@ import net.aegis.fhir.service.util.UUIDUtil;
  */
 public class PatientEverything extends ResourceOperationProxy {
 
+	// Maximum number of compartment resources per page
+	private static final int MAX_PAGE_SIZE = 500;
+
 	private Logger log = Logger.getLogger("PatientEverything");
 
 	@Override
@@ -112,6 +117,9 @@ public class PatientEverything extends ResourceOperationProxy {
 			 */
 			DateType startDate = null;
 			DateType endDate = null;
+			InstantType since = null;
+			Set<String> types = new LinkedHashSet<String>();
+			Integer count = null;
 
 			if (inputParameters != null && inputParameters.hasParameter()) {
 
@@ -126,6 +134,26 @@ public class PatientEverything extends ResourceOperationProxy {
 
 						endDate = (DateType) parameter.getValue();
 					}
+
+					if (parameter.getName() != null && parameter.getName().equals("_since") && parameter.hasValue()) {
+
+						since = new InstantType(parameter.getValue().primitiveValue());
+					}
+
+					if (parameter.getName() != null && parameter.getName().equals("_type") && parameter.hasValue()) {
+
+						// One or more comma separated resource types
+						for (String type : parameter.getValue().primitiveValue().split(",")) {
+							if (!type.trim().isEmpty()) {
+								types.add(type.trim());
+							}
+						}
+					}
+
+					if (parameter.getName() != null && parameter.getName().equals("_count") && parameter.hasValue()) {
+
+						count = Integer.valueOf(parameter.getValue().primitiveValue());
+					}
 				}
 			}
 
@@ -166,7 +194,7 @@ public class PatientEverything extends ResourceOperationProxy {
 					 * Perform a search operation against all Patient Compartment resource types and combine all results into
 					 * a single searchset Bundle.
 					 */
-					everythingSearchSet = getPatientEverything(request, resourceService, patient, startDate, endDate);
+					everythingSearchSet = getPatientEverything(request, resourceService, patient, resourceContainer.getResource().getId(), startDate, endDate, since, types, count);
 				}
 			}
 			else {
@@ -208,21 +236,29 @@ public class PatientEverything extends ResourceOperationProxy {
 	}
 
 	/**
+	 * Build one page of the Patient $everything searchset. The ordered resource row ids of the compartment resources
+	 * are held in a cached search cursor; the first page also includes the Patient and its general practitioners and
+	 * managing organization.
 	 *
 	 * @param request
 	 * @param resourceService
 	 * @param patient
+	 * @param patientRowId - resource row id of the Patient; not repeated as a compartment resource
 	 * @param startDate
 	 * @param endDate
+	 * @param since - only resources last updated at or after this instant; null for all
+	 * @param types - resource types to return; empty for all
+	 * @param count - page size; null for the default
 	 * @return Constructed Bundle response
 	 * @throws Exception
 	 */
-	private Bundle getPatientEverything(HttpServletRequest request, ResourceService resourceService, Patient patient, DateType startDate, DateType endDate) throws Exception {
+	private Bundle getPatientEverything(HttpServletRequest request, ResourceService resourceService, Patient patient, Integer patientRowId, DateType startDate, DateType endDate, InstantType since, Set<String> types, Integer count) throws Exception {
 
 		log.fine("[START] PatientEverything.getPatientEverything()");
 
 		// Construct full request URL with any query parameters
 		StringBuffer requestURL = request.getRequestURL();
+		String requestPath = requestURL.toString();
 		String queryString = request.getQueryString();
 		if (queryString != null) {
 			requestURL.append("?").append(URLEncoder.encode(queryString, StandardCharsets.UTF_8));
@@ -232,104 +268,27 @@ public class PatientEverything extends ResourceOperationProxy {
 		// Extract base url from locationPath for use in Bundle.entry.fullUrl element
 		String baseUrl = ServicesUtil.INSTANCE.extractBaseURL(locationPath, "/Patient");
 
-		String everythingKey = "";
-
-		Map<String, org.hl7.fhir.r4.model.Resource> everythingResources = new LinkedHashMap<String, org.hl7.fhir.r4.model.Resource>();
-
-		LinkedResourceProxyObjectFactory linkedProxyFactory = new LinkedResourceProxyObjectFactory();
-
-		/*
-		 * Add the Patient for minimum response
-		 */
-		log.fine("Adding Patient");
-
-		everythingKey = patient.getId();
-		everythingResources.put(everythingKey, patient);
-
 		/*
-		 * Add Patient linked resources: Organization, Practitioner, etc.
+		 * Determine the page size and requested page
 		 */
-		ByteArrayInputStream iResource = null;
-		XmlParser xmlP = new XmlParser();
-		String resourceType = "";
-		ResourceContainer resourceContainer = null;
-
-		// GeneralPractitioner
-		if (patient.hasGeneralPractitioner()) {
-
-			log.fine("Processing Patient General Practitioners");
-
-			for (Reference generalPractitionerReference : patient.getGeneralPractitioner()) {
-				String generalPractitionerRef = generalPractitionerReference.getReference();
-				String generalPractitionerResourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(generalPractitionerRef);
-				if (generalPractitionerRef.contains("Organization")) {
-					resourceType = "Organization";
-				}
-				else if (generalPractitionerRef.contains("Practitioner")) {
-					resourceType = "Practitioner";
-				}
-
-				if (!resourceType.isEmpty()) {
-
-					log.fine("Processing resource type " + resourceType);
-					log.fine("Processing resource id " + generalPractitionerResourceId);
-
-					resourceContainer = resourceService.read(resourceType, generalPractitionerResourceId, null);
-
-					log.fine("Resource read status " + resourceContainer.getResponseStatus().name());
-
-					if (resourceContainer.getResponseStatus().equals(Response.Status.OK)) {
-
-						log.fine("Adding resource type " + resourceType + " to everything resources");
-
-						// Convert XML contents to Resource object
-						iResource = new ByteArrayInputStream(resourceContainer.getResource().getResourceContents());
-						org.hl7.fhir.r4.model.Resource resourceObject = xmlP.parse(iResource);
-
-						everythingKey = resourceObject.getId();
-						everythingResources.put(everythingKey, resourceObject);
-					}
-				}
-			}
+		int pageSize = MAX_PAGE_SIZE;
+		if (count != null && count.intValue() > 0) {
+			pageSize = Math.min(count.intValue(), MAX_PAGE_SIZE);
 		}
 
-		// ManagingOrganization
-		resourceType = "";
-		if (patient.hasManagingOrganization()) {
-
-			log.fine("Processing Patient Managing Organization");
-
-			String managingOrgRef = patient.getManagingOrganization().getReference();
-			String managingOrgResourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(managingOrgRef);
-			if (managingOrgRef.contains("Organization")) {
-				resourceType = "Organization";
+		int pageNum = 1;
+		MultivaluedMap<String, String> queryParams = ServicesUtil.INSTANCE.parseRequestQuery(request);
+		if (queryParams != null && queryParams.getFirst("page") != null) {
+			try {
+				pageNum = Math.max(Integer.parseInt(queryParams.getFirst("page")), 1);
 			}
-
-			if (!resourceType.isEmpty()) {
-
-				log.fine("Processing resource type " + resourceType);
-				log.fine("Processing resource id " + managingOrgResourceId);
-
-				resourceContainer = resourceService.read(resourceType, managingOrgResourceId, null);
-
-				log.fine("Resource read status " + resourceContainer.getResponseStatus().name());
-
-				if (resourceContainer.getResponseStatus().equals(Response.Status.OK)) {
-
-					log.fine("Adding resource type " + resourceType + " to everything resources");
-
-					// Convert XML contents to Resource object
-					iResource = new ByteArrayInputStream(resourceContainer.getResource().getResourceContents());
-					org.hl7.fhir.r4.model.Resource resourceObject = xmlP.parse(iResource);
-
-					everythingKey = resourceObject.getId();
-					everythingResources.put(everythingKey, resourceObject);
-				}
+			catch (NumberFormatException e) {
+				log.fine("Invalid page value '" + queryParams.getFirst("page") + "'; using the first page");
 			}
 		}
 
 		/*
-		 * Parse startDate and endDate criteria if defined
+		 * Parse startDate, endDate and _since criteria if defined
 		 */
 		String startDateCriteria = null;
 		if (startDate != null) {
@@ -343,153 +302,237 @@ public class PatientEverything extends ResourceOperationProxy {
 			endDateCriteria = "le" + endDate.getValueAsString();
 			log.fine("endDateCriteria = " + endDateCriteria);
 		}
+		String sinceCriteria = null;
+		if (since != null) {
+			log.fine("since = " + since.getValueAsString());
+			sinceCriteria = "ge" + since.getValueAsString();
+		}
 
 		/*
-		 * Perform a search operation against all Patient Compartment resource types and combine all results into
-		 * a single searchset Bundle.
+		 * Criteria of this $everything request; used for the cursor fingerprint and the paging links
+		 */
+		MultivaluedMap<String, String> everythingParams = new MultivaluedHashMap<String, String>();
+		if (startDate != null) {
+			everythingParams.add("start", startDate.getValueAsString());
+		}
+		if (endDate != null) {
+			everythingParams.add("end", endDate.getValueAsString());
+		}
+		if (since != null) {
+			everythingParams.add("_since", since.getValueAsString());
+		}
+		if (!types.isEmpty()) {
+			everythingParams.add("_type", String.join(",", types));
+		}
+		everythingParams.add("_count", String.valueOf(pageSize));
+
+		String compartmentPath = "Patient/" + patient.getIdElement().getIdPart() + "/$everything";
+		String fingerprint = PagingSearchManager.INSTANCE.fingerprint(compartmentPath, false, everythingParams, null);
+
+		/*
+		 * Perform an id only search against all Patient Compartment resource types; the resource types are searched
+		 * concurrently. The ordered ids are cached as a search cursor for the following pages.
 		 * Exclusions: AuditEvent, Provenance
 		 */
-		String patientCriteria = "Patient/" + patient.getId();
-		MultivaluedMap<String, String> queryParams = null;
-		List<Resource> resources = null;
+		SearchCursor everythingCursor = null;
+		if (pageNum > 1) {
+			everythingCursor = PagingSearchManager.INSTANCE.retrieveFromCache(fingerprint);
+		}
 
-		List<LabelKeyValueBean> compartmentResourceTypeCriteriaList = ResourceType.getCompartmentResourceTypeCriteria(patient.getResourceType().name());
+		if (everythingCursor == null) {
+			List<Integer> resultIds = resourceService.searchCompartmentEverythingIds(patient.getResourceType().name(), patient.getIdElement().getIdPart(), startDateCriteria, endDateCriteria, sinceCriteria, types);
 
-		for (LabelKeyValueBean lkvb : compartmentResourceTypeCriteriaList) {
+			// The Patient itself is always the first entry of the first page
+			resultIds.remove(patientRowId);
 
-			// Exclude: AuditEvent, Provenance
-			if (!lkvb.getKey().equals("AuditEvent") && !lkvb.getKey().equals("Provenance")) {
+			everythingCursor = new SearchCursor(fingerprint, "", resultIds.size(), resultIds, null, null, null, null, null);
 
-				log.fine("Processing resource type " + lkvb.getKey());
+			// Only cache the cursor if more than one page is needed
+			if (resultIds.size() > pageSize) {
+				PagingSearchManager.INSTANCE.putInCache(fingerprint, everythingCursor);
+			}
+		}
 
-				// Set patient criteria
-				queryParams = new MultivaluedHashMap<String, String>();
-				queryParams.add(lkvb.getValue(), patientCriteria);
+		boolean isPatientIncluded = (types.isEmpty() || types.contains("Patient"));
 
-				// Set date criteria (if defined)
-				if (startDate != null || endDate != null) {
+		Bundle bundle = new Bundle();
 
-					LabelKeyValueBean dateCriteria = ResourceType.getEverythingDateCriteria(lkvb.getKey());
-					if (dateCriteria != null) {
+		bundle.setId(UUIDUtil.getUUID());
+		Meta bundleMeta = new Meta();
+		bundleMeta.setVersionId("1");
+		bundleMeta.setLastUpdated(new Date());
+		bundle.setMeta(bundleMeta);
+		bundle.setType(BundleType.SEARCHSET);
+		bundle.setTotal(everythingCursor.getTotal() + (isPatientIncluded ? 1 : 0));
 
-						// Set startDate criteria if defined
-						if (startDateCriteria != null) {
-							queryParams.add(dateCriteria.getValue(), startDateCriteria);
-						}
-						// Set endDate criteria if defined
-						if (endDateCriteria != null) {
-							queryParams.add(dateCriteria.getValue(), endDateCriteria);
-						}
-					}
-				}
+		// Resource type/id keys of the page entries
+		Set<String> everythingKeys = new HashSet<String>();
 
-				List<String[]> validParams = new ArrayList<String[]>();
-				List<String[]> invalidParams = new ArrayList<String[]>();
+		if (pageNum == 1) {
+			String everythingKey = "";
 
-				resources = resourceService.searchQuery(queryParams, null, lkvb.getKey(), false, null, null, null, validParams, invalidParams);
+			Map<String, org.hl7.fhir.r4.model.Resource> everythingResources = new LinkedHashMap<String, org.hl7.fhir.r4.model.Resource>();
 
-				if (resources != null && resources.size() > 0) {
-					/*
-					 * Add found resources to bundle
-					 */
-					for (Resource resourceEntry : resources) {
+			/*
+			 * Add the Patient for minimum response
+			 */
+			if (isPatientIncluded) {
+				log.fine("Adding Patient");
 
-						// Convert XML contents to Resource object
-						iResource = new ByteArrayInputStream(resourceEntry.getResourceContents());
-						org.hl7.fhir.r4.model.Resource resourceObject = xmlP.parse(iResource);
+				everythingKey = patient.getResourceType().name() + "/" + patient.getIdElement().getIdPart();
+				everythingResources.put(everythingKey, patient);
+			}
 
-						everythingKey = resourceObject.getId();
+			/*
+			 * Add Patient linked resources: Organization, Practitioner, etc.
+			 */
+			ByteArrayInputStream iResource = null;
+			XmlParser xmlP = new XmlParser();
+			String resourceType = "";
+			ResourceContainer resourceContainer = null;
 
-						// Test for existing resource in everythingResources
-						if (!everythingResources.containsKey(everythingKey)) {
+			// GeneralPractitioner
+			if (patient.hasGeneralPractitioner()) {
 
-							log.fine("[1]Adding resource type " + resourceObject.getResourceType().getPath() + "; resource id " + everythingKey);
+				log.fine("Processing Patient General Practitioners");
 
-							everythingResources.put(everythingKey, resourceObject);
+				for (Reference generalPractitionerReference : patient.getGeneralPractitioner()) {
+					String generalPractitionerRef = generalPractitionerReference.getReference();
+					String generalPractitionerResourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(generalPractitionerRef);
+					if (generalPractitionerRef.contains("Organization")) {
+						resourceType = "Organization";
+					}
+					else if (generalPractitionerRef.contains("Practitioner")) {
+						resourceType = "Practitioner";
+					}
 
-							// Check for linked resources
-							LinkedResourceProxy linkedProxy = linkedProxyFactory.getLinkedResourceProxy(resourceObject.getResourceType().getPath());
+					if (!resourceType.isEmpty() && (types.isEmpty() || types.contains(resourceType))) {
 
-							if (linkedProxy != null) {
+						log.fine("Processing resource type " + resourceType);
+						log.fine("Processing resource id " + generalPractitionerResourceId);
 
-								log.fine("[2]Found Linked Resource Proxy " + linkedProxy.getClass().getName());
+						resourceContainer = resourceService.read(resourceType, generalPractitionerResourceId, null);
 
-								List<org.hl7.fhir.r4.model.Resource> linkedResources = linkedProxy.getLinkedResources(resourceService, resourceObject);
+						log.fine("Resource read status " + resourceContainer.getResponseStatus().name());
 
-								if (linkedResources != null && !linkedResources.isEmpty()) {
+						if (resourceContainer.getResponseStatus().equals(Response.Status.OK)) {
 
-									for (org.hl7.fhir.r4.model.Resource linkedResource : linkedResources) {
+							log.fine("Adding resource type " + resourceType + " to everything resources");
 
-										everythingKey = linkedResource.getId();
+							// Convert XML contents to Resource object
+							iResource = new ByteArrayInputStream(resourceContainer.getResource().getResourceContents());
+							org.hl7.fhir.r4.model.Resource resourceObject = xmlP.parse(iResource);
 
-										log.fine("[2]Adding linked resource type " + linkedResource.getResourceType().getPath() + "; resource id " + everythingKey);
+							everythingKey = resourceObject.getResourceType().name() + "/" + resourceObject.getIdElement().getIdPart();
+							everythingResources.put(everythingKey, resourceObject);
+						}
+					}
+				}
+			}
 
-										// Test for existing resource in everythingResources
-										if (!everythingResources.containsKey(everythingKey)) {
-											everythingResources.put(everythingKey, linkedResource);
-										}
-									}
-								}
-								else {
+			// ManagingOrganization
+			resourceType = "";
+			if (patient.hasManagingOrganization()) {
 
-									log.fine("[2]No Linked Resources found");
+				log.fine("Processing Patient Managing Organization");
 
-								}
-							}
-							else {
+				String managingOrgRef = patient.getManagingOrganization().getReference();
+				String managingOrgResourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(managingOrgRef);
+				if (managingOrgRef.contains("Organization")) {
+					resourceType = "Organization";
+				}
 
-								log.fine("[2]Linked Resource Proxy NOT FOUND");
+				if (!resourceType.isEmpty() && (types.isEmpty() || types.contains(resourceType))) {
 
-							}
-						}
-						else {
+					log.fine("Processing resource type " + resourceType);
+					log.fine("Processing resource id " + managingOrgResourceId);
 
-							log.fine("[1]Already in map - resource type " + resourceObject.getResourceType().getPath() + "; resource id " + everythingKey);
+					resourceContainer = resourceService.read(resourceType, managingOrgResourceId, null);
 
-						}
+					log.fine("Resource read status " + resourceContainer.getResponseStatus().name());
+
+					if (resourceContainer.getResponseStatus().equals(Response.Status.OK)) {
+
+						log.fine("Adding resource type " + resourceType + " to everything resources");
+
+						// Convert XML contents to Resource object
+						iResource = new ByteArrayInputStream(resourceContainer.getResource().getResourceContents());
+						org.hl7.fhir.r4.model.Resource resourceObject = xmlP.parse(iResource);
+
+						everythingKey = resourceObject.getResourceType().name() + "/" + resourceObject.getIdElement().getIdPart();
+						everythingResources.put(everythingKey, resourceObject);
 					}
 				}
 			}
-			else {
-				log.fine("Skipping resource type " + lkvb.getKey());
+
+			// Iterate over the everything resources map and add all as Bundle entries; only the Patient is a match
+			for (Map.Entry<String, org.hl7.fhir.r4.model.Resource> entry : everythingResources.entrySet()) {
+				BundleEntryComponent bundleEntry = new BundleEntryComponent();
+				// Build and set Bundle.entry.fullUrl
+				bundleEntry.setFullUrl(baseUrl + "/" + entry.getKey());
+				// Set resource contents
+				bundleEntry.setResource(entry.getValue());
+				// Set search mode
+				BundleEntrySearchComponent bundleEntrySearch = new BundleEntrySearchComponent();
+				bundleEntrySearch.setMode(entry.getValue() == patient ? SearchEntryMode.MATCH : SearchEntryMode.INCLUDE);
+				bundleEntry.setSearch(bundleEntrySearch);
+				bundle.getEntry().add(bundleEntry);
+
+				everythingKeys.add(entry.getKey());
 			}
 		}
 
-		Bundle bundle = new Bundle();
-
-		bundle.setId(UUIDUtil.getUUID());
-		Meta bundleMeta = new Meta();
-		bundleMeta.setVersionId("1");
-		bundleMeta.setLastUpdated(new Date());
-		bundle.setMeta(bundleMeta);
-		bundle.setType(BundleType.SEARCHSET);
+		/*
+		 * Add the compartment resources of the requested page followed by their linked resources
+		 */
+		int firstResult = (pageNum - 1) * pageSize;
 
-		int bundleTotal = 0;
+		if (firstResult < everythingCursor.getResultIdCount()) {
+			bundle.getEntry().addAll(resourceService.readCompartmentEverythingPage(everythingCursor.getPageIds(firstResult, pageSize), everythingKeys, types, baseUrl));
+		}
 
 		/*
-		 * Add the everything resources
+		 * Populate the paging links
 		 */
-		BundleEntryComponent bundleEntry = new BundleEntryComponent();
-		String fullUrl = "";
-		BundleEntrySearchComponent bundleEntrySearch = null;
-
-		// Iterate over the everything resources map and add all as Bundle entries
-		for (Map.Entry<String, org.hl7.fhir.r4.model.Resource> entry : everythingResources.entrySet()) {
-			bundleEntry = new BundleEntryComponent();
-			// Build and set Bundle.entry.fullUrl
-			fullUrl = baseUrl + "/" + entry.getValue().getResourceType() + "/" + entry.getValue().getId();
-			bundleEntry.setFullUrl(fullUrl);
-			// Set resource contents
-			bundleEntry.setResource(entry.getValue());
-			// Set search match mode
-			bundleEntrySearch = new BundleEntrySearchComponent();
-			bundleEntrySearch.setMode(SearchEntryMode.MATCH);
-			bundleEntry.setSearch(bundleEntrySearch);
-			bundle.getEntry().add(bundleEntry);
-			bundleTotal++;
+		StringBuffer selfUrl = new StringBuffer(requestPath);
+		int paramCount = 0;
+		for (Map.Entry<String, List<String>> everythingParam : everythingParams.entrySet()) {
+			selfUrl.append(paramCount == 0 ? "?" : "&").append(everythingParam.getKey()).append("=").append(URLEncoder.encode(everythingParam.getValue().get(0), StandardCharsets.UTF_8));
+			paramCount++;
 		}
 
-		bundle.setTotal(bundleTotal);
+		BundleLinkComponent selfLink = new BundleLinkComponent();
+		selfLink.setRelation("self");
+		selfLink.setUrl(selfUrl.toString() + (pageNum > 1 ? "&page=" + pageNum : ""));
+		bundle.getLink().add(selfLink);
+
+		int pageCount = Math.max((everythingCursor.getResultIdCount() + pageSize - 1) / pageSize, 1);
+
+		if (pageCount > 1) {
+			BundleLinkComponent firstPageLink = new BundleLinkComponent();
+			firstPageLink.setRelation("first");
+			firstPageLink.setUrl(selfUrl.toString());
+			bundle.getLink().add(firstPageLink);
+
+			if (pageNum > 1) {
+				BundleLinkComponent prevPageLink = new BundleLinkComponent();
+				prevPageLink.setRelation("previous");
+				prevPageLink.setUrl(selfUrl.toString() + "&page=" + (pageNum - 1));
+				bundle.getLink().add(prevPageLink);
+			}
+
+			if (pageNum < pageCount) {
+				BundleLinkComponent nextPageLink = new BundleLinkComponent();
+				nextPageLink.setRelation("next");
+				nextPageLink.setUrl(selfUrl.toString() + "&page=" + (pageNum + 1));
+				bundle.getLink().add(nextPageLink);
+			}
+
+			BundleLinkComponent lastPageLink = new BundleLinkComponent();
+			lastPageLink.setRelation("last");
+			lastPageLink.setUrl(selfUrl.toString() + "&page=" + pageCount);
+			bundle.getLink().add(lastPageLink);
+		}
 
 		return bundle;
 	}
@@ -544,6 +587,27 @@ public class PatientEverything extends ResourceOperationProxy {
 							parameter.setValue(endDate);
 							queryParameters.addParameter(parameter);
 						}
+						else if (key.equals("_since")) {
+							ParametersParameterComponent parameter = new ParametersParameterComponent();
+							parameter.setName(key);
+							parameter.setValue(new InstantType(value));
+							queryParameters.addParameter(parameter);
+						}
+						else if (key.equals("_type")) {
+							// Each _type value may hold one or more comma separated resource types
+							for (String typeValue : entry.getValue()) {
+								ParametersParameterComponent parameter = new ParametersParameterComponent();
+								parameter.setName(key);
+								parameter.setValue(new StringType(typeValue));
+								queryParameters.addParameter(parameter);
+							}
+						}
+						else if (key.equals("_count")) {
+							ParametersParameterComponent parameter = new ParametersParameterComponent();
+							parameter.setName(key);
+							parameter.setValue(new IntegerType(value));
+							queryParameters.addParameter(parameter);
+						}
 					}
 				}
 			}
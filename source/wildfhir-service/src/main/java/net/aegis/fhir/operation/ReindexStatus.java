@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.operation;
+
+import java.util.logging.Logger;
+
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.DecimalType;
+import org.hl7.fhir.r4.model.IntegerType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.StringType;
+import org.hl7.fhir.r4.model.Type;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.core.HttpHeaders;
+import net.aegis.fhir.service.BatchService;
+import net.aegis.fhir.service.CodeService;
+import net.aegis.fhir.service.ConformanceService;
+import net.aegis.fhir.service.ResourceService;
+import net.aegis.fhir.service.ResourcemetadataService;
+import net.aegis.fhir.service.TransactionService;
+import net.aegis.fhir.service.audit.AuditEventService;
+import net.aegis.fhir.service.provenance.ProvenanceService;
+import net.aegis.fhir.service.reindex.ChainedReindexQueue;
+import net.aegis.fhir.service.reindex.ResourceReindexJob;
+
+/**
+ * Global operation returning the progress and lag metrics of the background chained reindex and of the $reindex job.
+ *
+ * @author richard.ettema
+ *
+ */
+public class ReindexStatus extends ResourceOperationProxy {
+
+	private Logger log = Logger.getLogger("ReindexStatus");
+
+	@Override
+	public Parameters executeOperation(HttpServletRequest request, HttpHeaders headers, ResourceService resourceService, ResourcemetadataService resourcemetadataService, BatchService batchService, TransactionService transactionService, CodeService codeService, AuditEventService auditEventService, ProvenanceService provenanceService, ConformanceService conformanceService, String softwareVersion, String resourceType, String resourceId, Parameters inputParameters, org.hl7.fhir.r4.model.Resource inputResource, String inputString, String contentType, boolean isPost, StringBuffer returnedDirective) throws Exception {
+
+        log.fine("[START] ReindexStatus.executeOperation()");
+
+		Parameters out = new Parameters();
+
+		try {
+			// Ignore any input parameters as they are not expected
+
+			// Check for operation level of global
+			if (resourceType == null && resourceId == null) {
+				ChainedReindexQueue queue = ChainedReindexQueue.INSTANCE;
+
+				addParameter(out, "chainedActiveWorkers", new IntegerType(queue.getActiveWorkers()));
+				addParameter(out, "chainedPending", new IntegerType(queue.getPendingCount()));
+				addParameter(out, "chainedEnqueued", new DecimalType(queue.getEnqueuedCount()));
+				addParameter(out, "chainedDropped", new DecimalType(queue.getDroppedCount()));
+				addParameter(out, "chainedProcessed", new DecimalType(queue.getProcessedCount()));
+				addParameter(out, "chainedReindexedResources", new DecimalType(queue.getReindexedResourceCount()));
+				addParameter(out, "chainedFailed", new DecimalType(queue.getFailedCount()));
+				addParameter(out, "chainedOldestPendingMillis", new DecimalType(queue.getOldestPendingMillis()));
+				addParameter(out, "chainedLastLagMillis", new DecimalType(queue.getLastLagMillis()));
+				addParameter(out, "chainedMaxLagMillis", new DecimalType(queue.getMaxLagMillis()));
+				if (queue.getLastCompleted() != null) {
+					addParameter(out, "chainedLastCompleted", new DateTimeType(queue.getLastCompleted()));
+				}
+
+				ResourceReindexJob job = ResourceReindexJob.INSTANCE;
+
+				addParameter(out, "reindexRunning", new BooleanType(job.isRunning()));
+				if (job.getScope() != null) {
+					addParameter(out, "reindexScope", new StringType(job.getScope()));
+				}
+				addParameter(out, "reindexLastId", new DecimalType(job.getLastId()));
+				addParameter(out, "reindexReindexed", new DecimalType(job.getReindexedCount()));
+				addParameter(out, "reindexSkipped", new DecimalType(job.getSkippedCount()));
+				addParameter(out, "reindexFailed", new DecimalType(job.getFailedCount()));
+				addParameter(out, "reindexRowsPerSecond", new DecimalType(job.getRowsPerSecond()));
+				if (job.getStarted() != null) {
+					addParameter(out, "reindexStarted", new DateTimeType(job.getStarted()));
+				}
+				if (job.getCompleted() != null) {
+					addParameter(out, "reindexCompleted", new DateTimeType(job.getCompleted()));
+				}
+			}
+			else {
+				throw new Exception("Invalid $reindex-status operation request! Global-only operation cannot specify resource type or id.");
+			}
+
+		}
+		catch (Exception e) {
+			// Throw exceptions back
+			throw e;
+		}
+
+		return out;
+	}
+
+	private void addParameter(Parameters out, String name, Type value) {
+		out.addParameter().setName(name).setValue(value);
+	}
+
+}
@@ -52,6 +52,9 @@ public class ResourceOperationProxyObjectFactory {
 		if (operationName.equals("capability-reload")) {
 			proxy = new CapabilityStatementReload();
 		}
+		else if (operationName.equals("client-pool-status")) {
+			proxy = new ClientPoolStatus();
+		}
 		else if (operationName.equals("code-configuration")) {
 			proxy = new CodeConfiguration();
 		}
@@ -79,9 +82,18 @@ public class ResourceOperationProxyObjectFactory {
 		else if (operationName.equals("purge-all")) {
 			proxy = new ResourcePurgeAll();
 		}
+		else if (operationName.equals("reindex")) {
+			proxy = new ResourceReindex();
+		}
+		else if (operationName.equals("reindex-status")) {
+			proxy = new ReindexStatus();
+		}
 		else if (operationName.equals("validate")) {
 			proxy = new ResourceValidation();
 		}
+		else if (operationName.equals("validation-pool-status")) {
+			proxy = new ValidationPoolStatus();
+		}
 		else if (operationName.equals("versions")) {
 			proxy = new GlobalVersions();
 		}
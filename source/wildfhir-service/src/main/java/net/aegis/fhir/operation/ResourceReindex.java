@@ -0,0 +1,210 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.operation;
+
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.Parameters.ParametersParameterComponent;
+import org.hl7.fhir.r4.model.StringType;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MultivaluedMap;
+import net.aegis.fhir.service.BatchService;
+import net.aegis.fhir.service.CodeService;
+import net.aegis.fhir.service.ConformanceService;
+import net.aegis.fhir.service.ResourceService;
+import net.aegis.fhir.service.ResourcemetadataService;
+import net.aegis.fhir.service.TransactionService;
+import net.aegis.fhir.service.audit.AuditEventService;
+import net.aegis.fhir.service.narrative.FHIRNarrativeGeneratorClient;
+import net.aegis.fhir.service.provenance.ProvenanceService;
+import net.aegis.fhir.service.util.ServicesUtil;
+
+/**
+ * Global and resource type operation to regenerate the Resourcemetadata of the current resource versions in the
+ * background. Optional parameters:
+ * <ul>
+ * <li>restart - true, ignore the saved checkpoint and start from the first resource</li>
+ * <li>stop - true, stop the running job after the current chunk; the checkpoint is kept</li>
+ * </ul>
+ * Progress is reported by the $reindex-status operation.
+ *
+ * @author richard.ettema
+ *
+ */
+public class ResourceReindex extends ResourceOperationProxy {
+
+	private Logger log = Logger.getLogger("ResourceReindex");
+
+	@Override
+	public Parameters executeOperation(HttpServletRequest request, HttpHeaders headers, ResourceService resourceService, ResourcemetadataService resourcemetadataService, BatchService batchService, TransactionService transactionService, CodeService codeService, AuditEventService auditEventService, ProvenanceService provenanceService, ConformanceService conformanceService, String softwareVersion, String resourceType, String resourceId, Parameters inputParameters, org.hl7.fhir.r4.model.Resource inputResource, String inputString, String contentType, boolean isPost, StringBuffer returnedDirective) throws Exception {
+
+		log.fine("[START] ResourceReindex.executeOperation()");
+
+		Parameters out = new Parameters();
+
+		try {
+			// Check for operation level of global or resource type
+			if (resourceId == null) {
+				// Check for Resource Reindex Enabled
+				if (codeService.isSupported("reindexEnabled")) {
+					BooleanType restart = null;
+					BooleanType stop = null;
+
+					/*
+					 * If inputParameters is null, attempt to extract parameters from context
+					 */
+					if (inputParameters == null) {
+						inputParameters = getParametersFromQueryParams(request);
+					}
+
+					if (inputParameters != null && inputParameters.hasParameter()) {
+
+						for (ParametersParameterComponent parameter : inputParameters.getParameter()) {
+
+							if (parameter.getName() != null) {
+
+								if (parameter.getName().equals("restart")) {
+									restart = (BooleanType) parameter.getValue();
+								}
+								else if (parameter.getName().equals("stop")) {
+									stop = (BooleanType) parameter.getValue();
+								}
+							}
+						}
+					}
+
+					String result = null;
+
+					if (stop != null && stop.booleanValue()) {
+						result = resourceService.reindexStop();
+					}
+					else {
+						result = resourceService.reindex(resourceType, codeService.getCodeValue("baseUrl"), (restart != null && restart.booleanValue()));
+					}
+
+					ParametersParameterComponent parameter = new ParametersParameterComponent();
+					parameter.setName("result");
+					StringType resultString = new StringType(result);
+					parameter.setValue(resultString);
+					out.addParameter(parameter);
+				}
+				else {
+					OperationOutcome rOutcome = new OperationOutcome();
+					OperationOutcome.OperationOutcomeIssueComponent issue =
+							ServicesUtil.INSTANCE.getOperationOutcomeIssueComponent(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.NOTSUPPORTED,
+									"Resource $reindex not enabled!", null, null);
+
+					if (issue != null) {
+						rOutcome.setText(null);
+						rOutcome.getIssue().add(issue);
+
+						// Use RI NarrativeGenerator
+						FHIRNarrativeGeneratorClient.instance().generate(rOutcome);
+					}
+
+					ParametersParameterComponent parameter = new ParametersParameterComponent();
+					parameter.setName("return");
+					parameter.setResource(rOutcome);
+
+					out.addParameter(parameter);
+				}
+			}
+			else {
+				throw new Exception("Invalid $reindex operation request! Global or resource type operation cannot specify resource id.");
+			}
+
+		}
+		catch (Exception e) {
+			// Throw exceptions back
+			throw new Exception("Exception processing $reindex operation request! " + e.getMessage());
+		}
+
+		return out;
+	}
+
+	/**
+	 * Extract the $reindex parameters from the request query parameters
+	 *
+	 * @param request
+	 * @return <code>Parameters</code>
+	 * @throws Exception
+	 */
+	private Parameters getParametersFromQueryParams(HttpServletRequest request) throws Exception {
+
+		log.fine("[START] ResourceReindex.getParametersFromQueryParams()");
+
+		// Default empty Parameters
+		Parameters queryParameters = new Parameters();
+
+		try {
+			if (request != null) {
+				MultivaluedMap<String, String> queryParams = ServicesUtil.INSTANCE.parseRequestQuery(request);
+
+				if (queryParams != null && queryParams.size() > 0) {
+					Set<Entry<String, List<String>>> paramSet = queryParams.entrySet();
+
+					for (Entry<String, List<String>> entry : paramSet) {
+
+						String key = entry.getKey();
+						String value = entry.getValue().get(0);
+
+						if (key.equals("restart") || key.equals("stop")) {
+							ParametersParameterComponent parameter = new ParametersParameterComponent();
+							parameter.setName(key);
+							BooleanType booleanValue = new BooleanType();
+							booleanValue.setValueAsString(value);
+							parameter.setValue(booleanValue);
+							queryParameters.addParameter(parameter);
+						}
+					}
+				}
+			}
+		}
+		catch (Exception e) {
+			// Handle generic exceptions
+			log.severe(e.getMessage());
+			throw e;
+		}
+
+		return queryParameters;
+	}
+
+}
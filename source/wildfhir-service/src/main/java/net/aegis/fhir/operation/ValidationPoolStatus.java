@@ -0,0 +1,122 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.operation;
+
+import java.util.logging.Logger;
+
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.DecimalType;
+import org.hl7.fhir.r4.model.IntegerType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.Type;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.core.HttpHeaders;
+import net.aegis.fhir.service.BatchService;
+import net.aegis.fhir.service.CodeService;
+import net.aegis.fhir.service.ConformanceService;
+import net.aegis.fhir.service.ResourceService;
+import net.aegis.fhir.service.ResourcemetadataService;
+import net.aegis.fhir.service.TransactionService;
+import net.aegis.fhir.service.audit.AuditEventService;
+import net.aegis.fhir.service.provenance.ProvenanceService;
+import net.aegis.fhir.service.validation.FHIRValidatorClient;
+import net.aegis.fhir.service.validation.ValidationEnginePool;
+import net.aegis.fhir.service.validation.ValidationResultCache;
+
+/**
+ * Global operation returning the size, usage and checkout wait metrics of the FHIR Validation Engine pool and the
+ * hit rate of the validation result cache.
+ *
+ * @author richard.ettema
+ *
+ */
+public class ValidationPoolStatus extends ResourceOperationProxy {
+
+	private Logger log = Logger.getLogger("ValidationPoolStatus");
+
+	@Override
+	public Parameters executeOperation(HttpServletRequest request, HttpHeaders headers, ResourceService resourceService, ResourcemetadataService resourcemetadataService, BatchService batchService, TransactionService transactionService, CodeService codeService, AuditEventService auditEventService, ProvenanceService provenanceService, ConformanceService conformanceService, String softwareVersion, String resourceType, String resourceId, Parameters inputParameters, org.hl7.fhir.r4.model.Resource inputResource, String inputString, String contentType, boolean isPost, StringBuffer returnedDirective) throws Exception {
+
+        log.fine("[START] ValidationPoolStatus.executeOperation()");
+
+		Parameters out = new Parameters();
+
+		try {
+			// Ignore any input parameters as they are not expected
+
+			// Check for operation level of global
+			if (resourceType == null && resourceId == null) {
+				FHIRValidatorClient validatorClient = FHIRValidatorClient.instance();
+
+				ValidationEnginePool pool = validatorClient.getPool();
+
+				addParameter(out, "size", new IntegerType(pool.getSize()));
+				addParameter(out, "created", new IntegerType(pool.getCreated()));
+				addParameter(out, "inUse", new IntegerType(pool.getInUse()));
+				addParameter(out, "available", new IntegerType(pool.getAvailable()));
+				addParameter(out, "waiting", new IntegerType(pool.getWaiting()));
+				addParameter(out, "checkoutTimeoutMillis", new DecimalType(pool.getTimeoutMillis()));
+				addParameter(out, "checkouts", new DecimalType(pool.getCheckoutCount()));
+				addParameter(out, "checkoutTimeouts", new DecimalType(pool.getTimeoutCount()));
+				addParameter(out, "averageWaitMillis", new DecimalType(pool.getAverageWaitMillis()));
+				addParameter(out, "maxWaitMillis", new DecimalType(pool.getMaxWaitMillis()));
+
+				ValidationResultCache resultCache = validatorClient.getResultCache();
+
+				addParameter(out, "cacheEnabled", new BooleanType(resultCache.isEnabled()));
+				addParameter(out, "cacheMaxEntries", new IntegerType(resultCache.getMaxEntries()));
+				addParameter(out, "cacheSize", new IntegerType(resultCache.getSize()));
+				addParameter(out, "cacheHits", new DecimalType(resultCache.getHitCount()));
+				addParameter(out, "cacheMisses", new DecimalType(resultCache.getMissCount()));
+				addParameter(out, "cacheEvictions", new DecimalType(resultCache.getEvictionCount()));
+				addParameter(out, "cacheHitRate", new DecimalType(resultCache.getHitRate()));
+			}
+			else {
+				throw new Exception("Invalid $validation-pool-status operation request! Global-only operation cannot specify resource type or id.");
+			}
+
+		}
+		catch (Exception e) {
+			// Throw exceptions back
+			throw e;
+		}
+
+		return out;
+	}
+
+	private void addParameter(Parameters out, String name, Type value) {
+		out.addParameter().setName(name).setValue(value);
+	}
+
+}
@@ -36,10 +36,13 @@ import java.net.URLDecoder;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import org.apache.http.NameValuePair;
@@ -59,6 +62,7 @@ import org.hl7.fhir.r4.model.OperationOutcome;
 import org.hl7.fhir.r4.model.Resource;
 
 import jakarta.ejb.Stateless;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 import jakarta.inject.Inject;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.ws.rs.core.HttpHeaders;
@@ -67,6 +71,7 @@ import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
 import net.aegis.fhir.model.ResourceContainer;
 import net.aegis.fhir.model.ResourceType;
+import net.aegis.fhir.service.metadata.ChainedResourceResolutionCache;
 import net.aegis.fhir.service.util.ServicesUtil;
 import net.aegis.fhir.service.util.UTCDateUtil;
 import net.aegis.fhir.service.util.UUIDUtil;
@@ -90,11 +95,15 @@ public class BatchService {
 	@Inject
 	RESTResourceOps resourceOps;
 
+	@Inject
+	CodeService codeService;
+
+	@jakarta.annotation.Resource
+	ManagedExecutorService managedExecutorService;
+
 	@Inject
     UTCDateUtil utcDateUtil;
 
-	private XmlParser xmlP = new XmlParser();
-	private JsonParser jsonP = new JsonParser();
 	/**
 	 * Process the batch bundle where each bundle entry is independently executed based on the
 	 * corresponding entry request. The returned batch-response bundle will contain a bundle
@@ -117,6 +126,9 @@ public class BatchService {
 		ResourceContainer resourceContainer = new ResourceContainer();
 		Bundle bundleResponse = null;
 
+		// Referenced resources are resolved once for all batch entries
+		ChainedResourceResolutionCache.begin();
+
 		try {
 			resourceContainer.setBundle(bundleResponse);
 			resourceContainer.setResponseStatus(Response.Status.NOT_IMPLEMENTED);
@@ -138,7 +150,7 @@ public class BatchService {
 				// 02 - Pre-populate batch response bundle entries
 				log.fine("===== BatchService -  02 - Pre-populate batch response bundle entries; total entries to process [" + bundleToProcess.getEntry().size() + "]");
 
-				Map<String,String> postFullUrlMap = new HashMap<String,String>();
+				Map<String,String> postFullUrlMap = new ConcurrentHashMap<String,String>();
 				BundleEntryComponent bundleResponseEntry = null;
 				List<BundleEntryComponent> bundleResponseEntries = new ArrayList<BundleEntryComponent>();
 
@@ -162,56 +174,15 @@ public class BatchService {
 					bundleResponseEntries.add(bundleResponseEntry);
 				}
 
-				MultivaluedMap<String, String> requestHeaderParams = null;
-				MultivaluedMap<String, String> urlPathParams = null;
+				/*
+				 * Entries of the same request method are independent and are processed concurrently; POST and PUT
+				 * entries only if there are no variable references to resolve in entry order
+				 */
+				int entryConcurrency = getEntryConcurrency();
+				int writeConcurrency = (postFullUrlMap.isEmpty() ? entryConcurrency : 1);
 
 				// 03 - Process DELETE
-				int entryCount = 0;
-				for (BundleEntryComponent bundleDeleteEntry : bundleResponseEntries) {
-					/*
-					 * Only process delete requests
-					 */
-					if (bundleDeleteEntry.hasRequest() && bundleDeleteEntry.getRequest().hasMethod() && bundleDeleteEntry.getRequest().getMethod().equals(HTTPVerb.DELETE)) {
-						log.fine("===== BatchService - PROCESS DELETE - Bundle.entry[" + entryCount + "]");
-						try {
-							// Delete is based solely on the url value
-							if (bundleDeleteEntry.getRequest().hasUrl()) {
-								String urlValue = bundleDeleteEntry.getRequest().getUrl();
-
-								// extract resource id from url; should be found; if not found, treat as conditional delete
-								String resourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(urlValue);
-								if (resourceId == null || resourceId.isEmpty()) {
-									resourceId = null;
-								}
-
-								String baseUrl = ServicesUtil.INSTANCE.extractBaseURL(urlValue);
-								String resourceType = ResourceType.findValidResourceType(baseUrl);
-
-								// ignore request header params from request elements
-								//requestHeaderParams = getRequestHeaderParams(bundleDeleteEntry);
-
-								// build url params from url parameters
-								String urlParams = ServicesUtil.INSTANCE.extractURLParams(urlValue);
-								List<NameValuePair> params = URLEncodedUtils.parse(urlParams, Charset.defaultCharset());
-								urlPathParams = ServicesUtil.INSTANCE.listNameValuePairToMultivaluedMapString(params);
-
-								Response deleteResponse = resourceOps.delete(request, headers, urlPathParams, resourceId, resourceType);
-
-								setResponseParams(deleteResponse, bundleDeleteEntry, producesType, entryCount, null);
-							}
-							else {
-								// url is missing; report an error in the outcome
-								this.setErrorResponseParams(bundleDeleteEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INCOMPLETE, "request url is missing", null, "Bundle.entry[" + entryCount + "].request.url");
-							}
-						} catch (Throwable e) {
-							// record exception in outcome
-							this.setErrorResponseParams(bundleDeleteEntry, "500", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.EXCEPTION, "exception caught processing delete request", e.getMessage(), "Bundle.entry[" + entryCount + "].request");
-							log.severe(e.getMessage());
-						}
-					}
-
-					entryCount++;
-				}
+				processEntries(HTTPVerb.DELETE, bundleResponseEntries, request, headers, contentType, producesType, locationPath, postFullUrlMap, entryConcurrency);
 
 				/*
 				 *  04,05 - Wrap POST and PUT processing in a cycle in order to resolve variable references
@@ -225,245 +196,20 @@ public class BatchService {
 					log.fine("===== BatchService - PROCESS POST,PUT Cycle [" + cycleCount + "]");
 
 					// 04 - Process POST (Create/Search/Extended Operations)
-					entryCount = 0;
-					for (BundleEntryComponent bundlePostEntry : bundleResponseEntries) {
-						/*
-						 * Only process post requests - only supporting create
-						 */
-						if (bundlePostEntry.hasRequest() && bundlePostEntry.getRequest().hasMethod() && bundlePostEntry.getRequest().getMethod().equals(HTTPVerb.POST)) {
-							log.fine("===== BatchService - PROCESS POST - Bundle.entry[" + entryCount + "]");
-							try {
-								// Post is based on the resource, request.url and request header values
-								if (bundlePostEntry.getRequest().hasUrl()) {
-									String urlValue = bundlePostEntry.getRequest().getUrl();
-
-									// extract resource id from url
-									String resourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(urlValue);
-
-									if (resourceId == null || resourceId.isEmpty()) {
-										resourceId = null;
-										String baseUrl = ServicesUtil.INSTANCE.extractBaseURL(urlValue);
-										String resourceType = ResourceType.findValidResourceType(baseUrl);
-
-										// build request header params from request elements
-										requestHeaderParams = getRequestHeaderParams(bundlePostEntry);
-
-										// ignore url parameters
-										//String urlParams = ServicesUtil.INSTANCE.extractURLParams(urlValue);
-										//List<NameValuePair> params = URLEncodedUtils.parse(urlParams, Charset.defaultCharset());
-										//urlPathParams = ServicesUtil.INSTANCE.listNameValuePairToMultivaluedMapString(params);
-
-										// Check for resource
-										if (bundlePostEntry.hasResource()) {
-											/*
-											 *  Process resource contents to locate any variable references, urn:
-											 *  If all replacements are successful, continue with create; otherwise, skip
-											 *  and try again in the next cycle
-											 */
-											StringBuilder newResourceString = new StringBuilder("");
-											boolean processResult = processVariableReferences(bundlePostEntry.getResource(), postFullUrlMap, contentType, newResourceString);
-
-											if (processResult) {
-												Response createResponse = resourceOps.create(request, headers, requestHeaderParams, newResourceString.toString(), resourceType, resourceId);
-
-												setResponseParams(createResponse, bundlePostEntry, producesType, entryCount, postFullUrlMap);
-											}
-											else {
-												// variable reference map not found; report an error in the outcome as a placeholder; re-try in the next cycle
-												this.setTempErrorResponseParams(bundlePostEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.NOTFOUND, "variable resource reference '" + newResourceString.toString() + "' was not resolved in prior Bundle entry operation; required for post operation", null, "Bundle.entry[" + entryCount + "]");
-											}
-										}
-										else {
-											// resource not found; report an error in the outcome
-											this.setErrorResponseParams(bundlePostEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INCOMPLETE, "resource not found in Bundle entry; required for post operation", null, "Bundle.entry[" + entryCount + "]");
-										}
-									}
-									else {
-										// resource id found in url; report an error in the outcome
-										this.setErrorResponseParams(bundlePostEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INVALID, "resource id found in url; not allowed for create", null, "Bundle.entry[" + entryCount + "].request.url");
-									}
-								}
-								else {
-									// url is missing; report an error in the outcome
-									this.setErrorResponseParams(bundlePostEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INCOMPLETE, "request url is missing", null, "Bundle.entry[" + entryCount + "].request.url");
-								}
-							} catch (Throwable e) {
-								// record exception in outcome
-								this.setErrorResponseParams(bundlePostEntry, "500", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.EXCEPTION, "exception caught processing post request", e.getMessage(), "Bundle.entry[" + entryCount + "].request");
-								log.severe(e.getMessage());
-							}
-						}
-
-						entryCount++;
-					}
+					processEntries(HTTPVerb.POST, bundleResponseEntries, request, headers, contentType, producesType, locationPath, postFullUrlMap, writeConcurrency);
 
 					// 05 - Process PUT (Update/Create)
-					entryCount = 0;
-					for (BundleEntryComponent bundlePutEntry : bundleResponseEntries) {
-						/*
-						 * Only process put requests
-						 */
-						if (bundlePutEntry.hasRequest() && bundlePutEntry.getRequest().hasMethod() && bundlePutEntry.getRequest().getMethod().equals(HTTPVerb.PUT)) {
-							log.fine("===== BatchService - PROCESS PUT - Bundle.entry[" + entryCount + "]");
-							try {
-								// Put is based on the resource, request.url and request header values
-								if (bundlePutEntry.getRequest().hasUrl()) {
-									String urlValue = bundlePutEntry.getRequest().getUrl();
-
-									// extract resource id from url; should be found; if not found, then treat as conditional update
-									String resourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(urlValue);
-									if (resourceId == null || resourceId.isEmpty()) {
-										resourceId = null;
-									}
-
-									String baseUrl = ServicesUtil.INSTANCE.extractBaseURL(urlValue);
-									String resourceType = ResourceType.findValidResourceType(baseUrl);
-
-									// build request header params from request elements
-									requestHeaderParams = getRequestHeaderParams(bundlePutEntry);
-
-									// build url parameters
-									String urlParams = ServicesUtil.INSTANCE.extractURLParams(urlValue);
-									List<NameValuePair> params = URLEncodedUtils.parse(urlParams, Charset.defaultCharset());
-									urlPathParams = ServicesUtil.INSTANCE.listNameValuePairToMultivaluedMapString(params);
-
-									// Check for resource
-									if (bundlePutEntry.hasResource()) {
-										/*
-										 *  Process resource contents to locate any variable references, urn:
-										 *  If all replacements are successful, continue with update; otherwise, skip
-										 *  and try again in the next cycle
-										 */
-										StringBuilder newResourceString = new StringBuilder("");
-										boolean processResult = processVariableReferences(bundlePutEntry.getResource(), postFullUrlMap, contentType, newResourceString);
-
-										if (processResult) {
-											Response updateResponse = resourceOps.update(request, headers, requestHeaderParams, urlPathParams, resourceId, newResourceString.toString(), resourceType);
-
-											setResponseParams(updateResponse, bundlePutEntry, producesType, entryCount, postFullUrlMap);
-										}
-										else {
-											// variable reference map not found; report an error in the outcome
-											this.setTempErrorResponseParams(bundlePutEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.NOTFOUND, "variable resource reference '" + newResourceString.toString() + "' was not resolved in prior Bundle entry operation; required for put operation", null, "Bundle.entry[" + entryCount + "]");
-										}
-									}
-									else {
-										// resource not found; report an error in the outcome
-										this.setErrorResponseParams(bundlePutEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INCOMPLETE, "resource not found in Bundle entry; required for put operation", null, "Bundle.entry[" + entryCount + "]");
-									}
-								}
-								else {
-									// url is missing; report an error in the outcome
-									this.setErrorResponseParams(bundlePutEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INCOMPLETE, "request url is missing", null, "Bundle.entry[" + entryCount + "].request.url");
-								}
-							} catch (Throwable e) {
-								// record exception in outcome
-								this.setErrorResponseParams(bundlePutEntry, "500", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.EXCEPTION, "exception caught processing put request", e.getMessage(), "Bundle.entry[" + entryCount + "].request");
-								log.severe(e.getMessage());
-							}
-						}
-
-						entryCount++;
-					}
+					processEntries(HTTPVerb.PUT, bundleResponseEntries, request, headers, contentType, producesType, locationPath, postFullUrlMap, writeConcurrency);
 
 				} // 04,05 END CYCLE
 
 				// 06 - Process PATCH (Update)
 
 				// 07 - Process GET (History/Read/Search/VRead Operations)
-				entryCount = 0;
-				for (BundleEntryComponent bundleGetEntry : bundleResponseEntries) {
-					/*
-					 * Only process get requests
-					 */
-					if (bundleGetEntry.hasRequest() && bundleGetEntry.getRequest().hasMethod() && bundleGetEntry.getRequest().getMethod().equals(HTTPVerb.GET)) {
-						log.fine("===== BatchService - PROCESS GET - Bundle.entry[" + entryCount + "]");
-						try {
-							// Put is based on the resource, request.url and request header values
-							if (bundleGetEntry.getRequest().hasUrl()) {
-								String urlValue = bundleGetEntry.getRequest().getUrl();
-
-								// extract resource id from url; should be found for a read; if not found, treat as a search
-								String resourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(urlValue);
-								if (resourceId == null || resourceId.isEmpty()) {
-									resourceId = null;
-								}
-
-								String baseUrl = ServicesUtil.INSTANCE.extractBaseURL(urlValue);
-								String txLocationPath = urlValue;
-								String txBaseUrl = null;
-								if (!baseUrl.contains("http")) {
-									txBaseUrl = ServicesUtil.INSTANCE.extractBaseURL(locationPath, baseUrl);
-									txLocationPath = txBaseUrl + urlValue;
-								}
-								log.fine("  txLocationPath = '" + txLocationPath + "'");
-
-								String resourceType = ResourceType.findValidResourceType(baseUrl);
-
-								boolean hasHistoryInPath = baseUrl.contains("_history");
-								String versionId = null;
-								if (hasHistoryInPath == true) {
-									versionId = ServicesUtil.INSTANCE.extractVersionIdFromURL(urlValue);
-								}
-
-								// build request header params from request elements
-								requestHeaderParams = getRequestHeaderParams(bundleGetEntry);
-
-								// build url parameters
-								String urlParams = ServicesUtil.INSTANCE.extractURLParams(urlValue);
-								List<NameValuePair> params = URLEncodedUtils.parse(urlParams, Charset.defaultCharset());
-								urlPathParams = ServicesUtil.INSTANCE.listNameValuePairToMultivaluedMapString(params);
-
-								if (bundleGetEntry.hasResource()) {
-									// ignore resource (should this be an error?)
-								}
-
-								/*
-								 * Determine appropriate FHIR action: history, read, search or vread
-								 */
-								Response getResponse = null;
-
-								if (resourceType != null && resourceId != null && hasHistoryInPath == false) {
-									// Check for read operation
-									getResponse = resourceOps.resourceTypeRead(request, headers, requestHeaderParams, urlPathParams, resourceId, resourceType);
-								}
-								else if (resourceType != null && resourceId != null && hasHistoryInPath == true && versionId != null) {
-									// Check for vread operation
-									getResponse = resourceOps.resourceTypeVRead(request, headers, resourceId, versionId, resourceType);
-								}
-								else if (resourceType != null && hasHistoryInPath == true && versionId == null) {
-									// Check for history operation
-									getResponse = resourceOps.history(request, headers, urlPathParams, resourceId, resourceType);
-								}
-								else if (resourceId == null && hasHistoryInPath == false && versionId == null) {
-									// Check for search operation
-									// Use txLocationPath from transaction bundle entry request
-									getResponse = resourceOps.search(request, headers, urlPathParams, resourceType, null, txLocationPath);
-								}
-
-								if (getResponse != null) {
-									setResponseParams(getResponse, bundleGetEntry, producesType, entryCount, null);
-								}
-								else {
-									// could not determine FHIR action; record in outcome
-									this.setErrorResponseParams(bundleGetEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.UNKNOWN, "could not determine FHIR get action based on request definition", null, "Bundle.entry[" + entryCount + "].request");
-								}
-							}
-							else {
-								// url is missing; report an error in the outcome
-								this.setErrorResponseParams(bundleGetEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INCOMPLETE, "request url is missing", null, "Bundle.entry[" + entryCount + "].request.url");
-							}
-						} catch (Throwable e) {
-							// record exception in outcome
-							this.setErrorResponseParams(bundleGetEntry, "500", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.EXCEPTION, "exception caught processing get request", e.getMessage(), "Bundle.entry[" + entryCount + "].request");
-							log.severe(e.getMessage());
-						}
-					}
-
-					entryCount++;
-				}
+				processEntries(HTTPVerb.GET, bundleResponseEntries, request, headers, contentType, producesType, locationPath, postFullUrlMap, entryConcurrency);
 
 				// 08 - Process unknown
+				int entryCount = 0;
 				for (BundleEntryComponent bundleUnknownEntry : bundleResponseEntries) {
 					/*
 					 * Remove any remaining entry.request elements
@@ -525,6 +271,8 @@ public class BatchService {
 
 			log.severe(e.getMessage());
 			// Exception not thrown to allow operation to complete
+		} finally {
+			ChainedResourceResolutionCache.end();
 		}
 
 		log.fine("[END] BatchService.batch()");
@@ -533,6 +281,379 @@ public class BatchService {
 
 	}
 
+	/**
+	 * Process all entries with the request method. Up to entryConcurrency entries are processed at the same time; the
+	 * calling thread and entryConcurrency - 1 managed executor threads take the next entry in Bundle order until all
+	 * entries are processed. The entry responses are set in place so the response order is the request order.
+	 *
+	 * @param method
+	 * @param bundleEntries
+	 * @param request
+	 * @param headers
+	 * @param contentType
+	 * @param producesType
+	 * @param locationPath
+	 * @param postFullUrlMap
+	 * @param entryConcurrency
+	 * @throws Exception
+	 */
+	private void processEntries(final HTTPVerb method, final List<BundleEntryComponent> bundleEntries, final HttpServletRequest request, final HttpHeaders headers, final String contentType, final String producesType, final String locationPath, final Map<String,String> postFullUrlMap, int entryConcurrency) throws Exception {
+
+		// Bundle.entry index of each entry to process
+		final List<Integer> entryIndexes = new ArrayList<Integer>();
+
+		for (int i = 0; i < bundleEntries.size(); i++) {
+			BundleEntryComponent bundleEntry = bundleEntries.get(i);
+
+			if (bundleEntry.hasRequest() && bundleEntry.getRequest().hasMethod() && bundleEntry.getRequest().getMethod().equals(method)) {
+				entryIndexes.add(Integer.valueOf(i));
+			}
+		}
+
+		final AtomicInteger nextIndex = new AtomicInteger(0);
+
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				// Referenced resources are resolved once per worker
+				ChainedResourceResolutionCache.begin();
+
+				try {
+					int index;
+					while ((index = nextIndex.getAndIncrement()) < entryIndexes.size()) {
+						int entryCount = entryIndexes.get(index).intValue();
+
+						processEntry(method, bundleEntries.get(entryCount), entryCount, request, headers, contentType, producesType, locationPath, postFullUrlMap);
+					}
+				} finally {
+					ChainedResourceResolutionCache.end();
+				}
+			}
+		};
+
+		int workers = Math.min(entryConcurrency, entryIndexes.size());
+
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+
+		for (int i = 1; i < workers; i++) {
+			try {
+				futures.add(managedExecutorService.submit(worker));
+			} catch (RejectedExecutionException e) {
+				// Executor saturated; continue with the workers already started
+				log.warning("BatchService - entry worker rejected; continuing with " + i + " workers");
+				break;
+			}
+		}
+
+		// The calling thread always processes entries so that progress never depends on the executor
+		worker.run();
+
+		for (Future<?> future : futures) {
+			future.get();
+		}
+	}
+
+	private void processEntry(HTTPVerb method, BundleEntryComponent bundleEntry, int entryCount, HttpServletRequest request, HttpHeaders headers, String contentType, String producesType, String locationPath, Map<String,String> postFullUrlMap) {
+
+		if (method.equals(HTTPVerb.DELETE)) {
+			processDeleteEntry(bundleEntry, entryCount, request, headers, producesType);
+		}
+		else if (method.equals(HTTPVerb.POST)) {
+			processPostEntry(bundleEntry, entryCount, request, headers, contentType, producesType, postFullUrlMap);
+		}
+		else if (method.equals(HTTPVerb.PUT)) {
+			processPutEntry(bundleEntry, entryCount, request, headers, contentType, producesType, postFullUrlMap);
+		}
+		else if (method.equals(HTTPVerb.GET)) {
+			processGetEntry(bundleEntry, entryCount, request, headers, producesType, locationPath);
+		}
+	}
+
+	private void processDeleteEntry(BundleEntryComponent bundleDeleteEntry, int entryCount, HttpServletRequest request, HttpHeaders headers, String producesType) {
+
+		MultivaluedMap<String, String> urlPathParams = null;
+
+		log.fine("===== BatchService - PROCESS DELETE - Bundle.entry[" + entryCount + "]");
+		try {
+			// Delete is based solely on the url value
+			if (bundleDeleteEntry.getRequest().hasUrl()) {
+				String urlValue = bundleDeleteEntry.getRequest().getUrl();
+
+				// extract resource id from url; should be found; if not found, treat as conditional delete
+				String resourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(urlValue);
+				if (resourceId == null || resourceId.isEmpty()) {
+					resourceId = null;
+				}
+
+				String baseUrl = ServicesUtil.INSTANCE.extractBaseURL(urlValue);
+				String resourceType = ResourceType.findValidResourceType(baseUrl);
+
+				// ignore request header params from request elements
+				//requestHeaderParams = getRequestHeaderParams(bundleDeleteEntry);
+
+				// build url params from url parameters
+				String urlParams = ServicesUtil.INSTANCE.extractURLParams(urlValue);
+				List<NameValuePair> params = URLEncodedUtils.parse(urlParams, Charset.defaultCharset());
+				urlPathParams = ServicesUtil.INSTANCE.listNameValuePairToMultivaluedMapString(params);
+
+				Response deleteResponse = resourceOps.delete(request, headers, urlPathParams, resourceId, resourceType);
+
+				setResponseParams(deleteResponse, bundleDeleteEntry, producesType, entryCount, null);
+			}
+			else {
+				// url is missing; report an error in the outcome
+				this.setErrorResponseParams(bundleDeleteEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INCOMPLETE, "request url is missing", null, "Bundle.entry[" + entryCount + "].request.url");
+			}
+		} catch (Throwable e) {
+			// record exception in outcome
+			this.setErrorResponseParams(bundleDeleteEntry, "500", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.EXCEPTION, "exception caught processing delete request", e.getMessage(), "Bundle.entry[" + entryCount + "].request");
+			log.severe(e.getMessage());
+		}
+	}
+
+	private void processPostEntry(BundleEntryComponent bundlePostEntry, int entryCount, HttpServletRequest request, HttpHeaders headers, String contentType, String producesType, Map<String,String> postFullUrlMap) {
+
+		MultivaluedMap<String, String> requestHeaderParams = null;
+
+		log.fine("===== BatchService - PROCESS POST - Bundle.entry[" + entryCount + "]");
+		try {
+			// Post is based on the resource, request.url and request header values
+			if (bundlePostEntry.getRequest().hasUrl()) {
+				String urlValue = bundlePostEntry.getRequest().getUrl();
+
+				// extract resource id from url
+				String resourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(urlValue);
+
+				if (resourceId == null || resourceId.isEmpty()) {
+					resourceId = null;
+					String baseUrl = ServicesUtil.INSTANCE.extractBaseURL(urlValue);
+					String resourceType = ResourceType.findValidResourceType(baseUrl);
+
+					// build request header params from request elements
+					requestHeaderParams = getRequestHeaderParams(bundlePostEntry);
+
+					// ignore url parameters
+					//String urlParams = ServicesUtil.INSTANCE.extractURLParams(urlValue);
+					//List<NameValuePair> params = URLEncodedUtils.parse(urlParams, Charset.defaultCharset());
+					//urlPathParams = ServicesUtil.INSTANCE.listNameValuePairToMultivaluedMapString(params);
+
+					// Check for resource
+					if (bundlePostEntry.hasResource()) {
+						/*
+						 *  Process resource contents to locate any variable references, urn:
+						 *  If all replacements are successful, continue with create; otherwise, skip
+						 *  and try again in the next cycle
+						 */
+						StringBuilder newResourceString = new StringBuilder("");
+						boolean processResult = processVariableReferences(bundlePostEntry.getResource(), postFullUrlMap, contentType, newResourceString);
+
+						if (processResult) {
+							Response createResponse = resourceOps.create(request, headers, requestHeaderParams, newResourceString.toString(), resourceType, resourceId);
+
+							setResponseParams(createResponse, bundlePostEntry, producesType, entryCount, postFullUrlMap);
+						}
+						else {
+							// variable reference map not found; report an error in the outcome as a placeholder; re-try in the next cycle
+							this.setTempErrorResponseParams(bundlePostEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.NOTFOUND, "variable resource reference '" + newResourceString.toString() + "' was not resolved in prior Bundle entry operation; required for post operation", null, "Bundle.entry[" + entryCount + "]");
+						}
+					}
+					else {
+						// resource not found; report an error in the outcome
+						this.setErrorResponseParams(bundlePostEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INCOMPLETE, "resource not found in Bundle entry; required for post operation", null, "Bundle.entry[" + entryCount + "]");
+					}
+				}
+				else {
+					// resource id found in url; report an error in the outcome
+					this.setErrorResponseParams(bundlePostEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INVALID, "resource id found in url; not allowed for create", null, "Bundle.entry[" + entryCount + "].request.url");
+				}
+			}
+			else {
+				// url is missing; report an error in the outcome
+				this.setErrorResponseParams(bundlePostEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INCOMPLETE, "request url is missing", null, "Bundle.entry[" + entryCount + "].request.url");
+			}
+		} catch (Throwable e) {
+			// record exception in outcome
+			this.setErrorResponseParams(bundlePostEntry, "500", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.EXCEPTION, "exception caught processing post request", e.getMessage(), "Bundle.entry[" + entryCount + "].request");
+			log.severe(e.getMessage());
+		}
+	}
+
+	private void processPutEntry(BundleEntryComponent bundlePutEntry, int entryCount, HttpServletRequest request, HttpHeaders headers, String contentType, String producesType, Map<String,String> postFullUrlMap) {
+
+		MultivaluedMap<String, String> requestHeaderParams = null;
+		MultivaluedMap<String, String> urlPathParams = null;
+
+		log.fine("===== BatchService - PROCESS PUT - Bundle.entry[" + entryCount + "]");
+		try {
+			// Put is based on the resource, request.url and request header values
+			if (bundlePutEntry.getRequest().hasUrl()) {
+				String urlValue = bundlePutEntry.getRequest().getUrl();
+
+				// extract resource id from url; should be found; if not found, then treat as conditional update
+				String resourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(urlValue);
+				if (resourceId == null || resourceId.isEmpty()) {
+					resourceId = null;
+				}
+
+				String baseUrl = ServicesUtil.INSTANCE.extractBaseURL(urlValue);
+				String resourceType = ResourceType.findValidResourceType(baseUrl);
+
+				// build request header params from request elements
+				requestHeaderParams = getRequestHeaderParams(bundlePutEntry);
+
+				// build url parameters
+				String urlParams = ServicesUtil.INSTANCE.extractURLParams(urlValue);
+				List<NameValuePair> params = URLEncodedUtils.parse(urlParams, Charset.defaultCharset());
+				urlPathParams = ServicesUtil.INSTANCE.listNameValuePairToMultivaluedMapString(params);
+
+				// Check for resource
+				if (bundlePutEntry.hasResource()) {
+					/*
+					 *  Process resource contents to locate any variable references, urn:
+					 *  If all replacements are successful, continue with update; otherwise, skip
+					 *  and try again in the next cycle
+					 */
+					StringBuilder newResourceString = new StringBuilder("");
+					boolean processResult = processVariableReferences(bundlePutEntry.getResource(), postFullUrlMap, contentType, newResourceString);
+
+					if (processResult) {
+						Response updateResponse = resourceOps.update(request, headers, requestHeaderParams, urlPathParams, resourceId, newResourceString.toString(), resourceType);
+
+						setResponseParams(updateResponse, bundlePutEntry, producesType, entryCount, postFullUrlMap);
+					}
+					else {
+						// variable reference map not found; report an error in the outcome
+						this.setTempErrorResponseParams(bundlePutEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.NOTFOUND, "variable resource reference '" + newResourceString.toString() + "' was not resolved in prior Bundle entry operation; required for put operation", null, "Bundle.entry[" + entryCount + "]");
+					}
+				}
+				else {
+					// resource not found; report an error in the outcome
+					this.setErrorResponseParams(bundlePutEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INCOMPLETE, "resource not found in Bundle entry; required for put operation", null, "Bundle.entry[" + entryCount + "]");
+				}
+			}
+			else {
+				// url is missing; report an error in the outcome
+				this.setErrorResponseParams(bundlePutEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INCOMPLETE, "request url is missing", null, "Bundle.entry[" + entryCount + "].request.url");
+			}
+		} catch (Throwable e) {
+			// record exception in outcome
+			this.setErrorResponseParams(bundlePutEntry, "500", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.EXCEPTION, "exception caught processing put request", e.getMessage(), "Bundle.entry[" + entryCount + "].request");
+			log.severe(e.getMessage());
+		}
+	}
+
+	private void processGetEntry(BundleEntryComponent bundleGetEntry, int entryCount, HttpServletRequest request, HttpHeaders headers, String producesType, String locationPath) {
+
+		MultivaluedMap<String, String> requestHeaderParams = null;
+		MultivaluedMap<String, String> urlPathParams = null;
+
+		log.fine("===== BatchService - PROCESS GET - Bundle.entry[" + entryCount + "]");
+		try {
+			// Put is based on the resource, request.url and request header values
+			if (bundleGetEntry.getRequest().hasUrl()) {
+				String urlValue = bundleGetEntry.getRequest().getUrl();
+
+				// extract resource id from url; should be found for a read; if not found, treat as a search
+				String resourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(urlValue);
+				if (resourceId == null || resourceId.isEmpty()) {
+					resourceId = null;
+				}
+
+				String baseUrl = ServicesUtil.INSTANCE.extractBaseURL(urlValue);
+				String txLocationPath = urlValue;
+				String txBaseUrl = null;
+				if (!baseUrl.contains("http")) {
+					txBaseUrl = ServicesUtil.INSTANCE.extractBaseURL(locationPath, baseUrl);
+					txLocationPath = txBaseUrl + urlValue;
+				}
+				log.fine("  txLocationPath = '" + txLocationPath + "'");
+
+				String resourceType = ResourceType.findValidResourceType(baseUrl);
+
+				boolean hasHistoryInPath = baseUrl.contains("_history");
+				String versionId = null;
+				if (hasHistoryInPath == true) {
+					versionId = ServicesUtil.INSTANCE.extractVersionIdFromURL(urlValue);
+				}
+
+				// build request header params from request elements
+				requestHeaderParams = getRequestHeaderParams(bundleGetEntry);
+
+				// build url parameters
+				String urlParams = ServicesUtil.INSTANCE.extractURLParams(urlValue);
+				List<NameValuePair> params = URLEncodedUtils.parse(urlParams, Charset.defaultCharset());
+				urlPathParams = ServicesUtil.INSTANCE.listNameValuePairToMultivaluedMapString(params);
+
+				if (bundleGetEntry.hasResource()) {
+					// ignore resource (should this be an error?)
+				}
+
+				/*
+				 * Determine appropriate FHIR action: history, read, search or vread
+				 */
+				Response getResponse = null;
+
+				if (resourceType != null && resourceId != null && hasHistoryInPath == false) {
+					// Check for read operation
+					getResponse = resourceOps.resourceTypeRead(request, headers, requestHeaderParams, urlPathParams, resourceId, resourceType);
+				}
+				else if (resourceType != null && resourceId != null && hasHistoryInPath == true && versionId != null) {
+					// Check for vread operation
+					getResponse = resourceOps.resourceTypeVRead(request, headers, resourceId, versionId, resourceType);
+				}
+				else if (resourceType != null && hasHistoryInPath == true && versionId == null) {
+					// Check for history operation
+					getResponse = resourceOps.history(request, headers, urlPathParams, resourceId, resourceType);
+				}
+				else if (resourceId == null && hasHistoryInPath == false && versionId == null) {
+					// Check for search operation
+					// Use txLocationPath from transaction bundle entry request
+					getResponse = resourceOps.search(request, headers, urlPathParams, resourceType, null, txLocationPath);
+				}
+
+				if (getResponse != null) {
+					setResponseParams(getResponse, bundleGetEntry, producesType, entryCount, null);
+				}
+				else {
+					// could not determine FHIR action; record in outcome
+					this.setErrorResponseParams(bundleGetEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.UNKNOWN, "could not determine FHIR get action based on request definition", null, "Bundle.entry[" + entryCount + "].request");
+				}
+			}
+			else {
+				// url is missing; report an error in the outcome
+				this.setErrorResponseParams(bundleGetEntry, "400", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INCOMPLETE, "request url is missing", null, "Bundle.entry[" + entryCount + "].request.url");
+			}
+		} catch (Throwable e) {
+			// record exception in outcome
+			this.setErrorResponseParams(bundleGetEntry, "500", OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.EXCEPTION, "exception caught processing get request", e.getMessage(), "Bundle.entry[" + entryCount + "].request");
+			log.severe(e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the number of batch entries processed at the same time; 1 if the batchConcurrentEntries setting is not
+	 * supported
+	 */
+	private int getEntryConcurrency() {
+
+		int entryConcurrency = 1;
+
+		try {
+			if (codeService.isSupported("batchConcurrentEntries")) {
+				Integer configuredConcurrency = codeService.findCodeIntValueByName("batchConcurrentEntries");
+
+				if (configuredConcurrency != null && configuredConcurrency.intValue() > 1) {
+					entryConcurrency = configuredConcurrency.intValue();
+				}
+			}
+		} catch (Exception e) {
+			// Default to sequential processing
+			log.warning("BatchService - batchConcurrentEntries setting not available; " + e.getMessage());
+		}
+
+		return entryConcurrency;
+	}
+
 	/**
 	 * @param bundleEntry
 	 * @return
@@ -621,10 +742,10 @@ public class BatchService {
 		Resource newResource = oc.convert(resourceElement);
 		String resourceString = null;
 		if (contentType.indexOf("xml") >= 0) {
-			resourceString = xmlP.composeString(newResource);
+			resourceString = new XmlParser().composeString(newResource);
 		}
 		else {
-			resourceString = jsonP.composeString(newResource);
+			resourceString = new JsonParser().composeString(newResource);
 		}
 
 		if (result) {
@@ -723,15 +844,15 @@ public class BatchService {
 				}
 
 				if (response.hasEntity()) {
-					String entity = (String) response.getEntity();
+					String entity = ServicesUtil.INSTANCE.getResponseEntityString(response.getEntity());
 					Resource resource = null;
 
 					try {
 						if (producesType.indexOf("xml") >= 0) {
-							resource = xmlP.parse(entity.getBytes());
+							resource = new XmlParser().parse(entity.getBytes());
 						}
 						else {
-							resource = jsonP.parse(entity.getBytes());
+							resource = new JsonParser().parse(entity.getBytes());
 						}
 
 						// Check resource type: if OperationOutcome, set outcome; else, set resource
@@ -32,13 +32,18 @@
  */
 package net.aegis.fhir.service;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiFunction;
 import java.util.logging.Logger;
 
 /**
  * Singleton class to provide concurrency control to batch and transaction processing.
- * Initial functionality is to simply track the number of concurrent requests that are
- * currently being processed.
- * 
+ * A request must hold a server permit and a permit of its client before it is processed.
+ * The number of permits of the server and of each client is the configured limit; a
+ * limit of zero or less is no limit. Permits are acquired without waiting so that a
+ * request over a limit is rejected immediately.
+ *
  * @author richard.ettema
  *
  */
@@ -48,7 +53,9 @@ public class BatchTransactionConcurrencyService {
 
     private static BatchTransactionConcurrencyService me;
 
-    private Integer concurrentNumber = 0;
+    private final LimitSemaphore serverPermits = new LimitSemaphore();
+
+    private final ConcurrentHashMap<String, LimitSemaphore> clientPermits = new ConcurrentHashMap<String, LimitSemaphore>();
 
     public static BatchTransactionConcurrencyService instance() {
 		if (me == null) {
@@ -62,51 +69,142 @@ public class BatchTransactionConcurrencyService {
 	}
 
     /**
-     * The current concurrent number value can never be less than zero
-     * 
-     * @return Integer, new concurrent number value
+     * Try to acquire a server permit and a client permit without waiting
+     *
+     * @param clientId
+     * @param serverLimit - zero or less for no server limit
+     * @param clientLimit - zero or less for no client limit
+     * @return Permit to release when the request is complete; null if the server or client limit is reached
      */
-    public Integer decrement() {
-    	concurrentNumber--;
+    public Permit tryAcquire(String clientId, int serverLimit, int clientLimit) {
+
+    	boolean serverAcquired = false;
+
+    	if (serverLimit > 0) {
+    		serverPermits.setLimit(serverLimit);
 
-    	if (concurrentNumber < 0) {
-    		concurrentNumber = 0;
+    		if (!serverPermits.tryAcquire()) {
+    	    	log.fine("BatchTransactionConcurrencyService.tryAcquire() - server limit " + serverLimit + " reached");
+    			return null;
+    		}
+    		serverAcquired = true;
     	}
 
-    	log.fine("BatchTransactionConcurrencyService.decrement() - concurrent number is now " + concurrentNumber);
+    	String permitClientId = null;
+
+    	if (clientLimit > 0 && clientId != null) {
+    		final boolean[] clientAcquired = new boolean[1];
+
+    		// Create, resize and acquire the client semaphore atomically for the client
+    		clientPermits.compute(clientId, new BiFunction<String, LimitSemaphore, LimitSemaphore>() {
+    			@Override
+    			public LimitSemaphore apply(String key, LimitSemaphore clientSemaphore) {
+    				if (clientSemaphore == null) {
+    					clientSemaphore = new LimitSemaphore();
+    				}
+    				clientSemaphore.setLimit(clientLimit);
+    				clientAcquired[0] = clientSemaphore.tryAcquire();
+    				return clientSemaphore;
+    			}
+    		});
+
+    		if (!clientAcquired[0]) {
+    			if (serverAcquired) {
+    				serverPermits.release();
+    			}
+    	    	log.fine("BatchTransactionConcurrencyService.tryAcquire() - client " + clientId + " limit " + clientLimit + " reached");
+    			return null;
+    		}
+    		permitClientId = clientId;
+    	}
+
+    	log.fine("BatchTransactionConcurrencyService.tryAcquire() - available server permits " + serverPermits.availablePermits());
 
-    	return concurrentNumber;
+    	return new Permit(serverAcquired, permitClientId);
     }
 
     /**
-     * CAUTION - This method does not restrict the maximum value for the
-     * current concurrent number. The calling logic must manage this explicitly.
-     * 
-     * @return Integer, new concurrent number value
+     * Release the permits held by a request; the semaphore of a client without requests in progress is removed
+     *
+     * @param permit
      */
-    public Integer increment() {
-    	concurrentNumber++;
+    public void release(Permit permit) {
+
+    	if (permit != null && permit.released == false) {
+    		permit.released = true;
+
+    		if (permit.clientId != null) {
+    			clientPermits.computeIfPresent(permit.clientId, new BiFunction<String, LimitSemaphore, LimitSemaphore>() {
+    				@Override
+    				public LimitSemaphore apply(String key, LimitSemaphore clientSemaphore) {
+    					clientSemaphore.release();
+    					// Remove the semaphore when no requests of the client remain in progress
+    					return (clientSemaphore.availablePermits() >= clientSemaphore.getLimit() ? null : clientSemaphore);
+    				}
+    			});
+    		}
+
+    		if (permit.serverAcquired) {
+    			serverPermits.release();
+    		}
+
+        	log.fine("BatchTransactionConcurrencyService.release() - available server permits " + serverPermits.availablePermits());
+    	}
+    }
 
-    	log.fine("BatchTransactionConcurrencyService.increment() - concurrent number is now " + concurrentNumber);
+    /**
+     * @return the number of clients with batch or transaction requests in progress
+     */
+    public int getActiveClientCount() {
+    	return clientPermits.size();
+    }
+
+    /**
+     * Permits held by a single batch or transaction request
+     */
+    public static class Permit {
+
+    	private final boolean serverAcquired;
+
+    	private final String clientId;
+
+    	private volatile boolean released = false;
+
+    	private Permit(boolean serverAcquired, String clientId) {
+    		this.serverAcquired = serverAcquired;
+    		this.clientId = clientId;
+    	}
 
-    	return concurrentNumber;
     }
 
     /**
-     * If limit is zero, always return false; i.e. no limit
-     * Else, check current concurrent number against limit
-     * 
-     * @param limit
-     * @return boolean
+     * Semaphore whose number of permits follows a configured limit; permits in use when the limit is lowered are
+     * absorbed as they are released
      */
-    public boolean isLimitExceeded(Integer limit) {
-    	boolean isLimitExceeded = false;
+    private static class LimitSemaphore extends Semaphore {
+
+		private static final long serialVersionUID = 1L;
+
+		private int limit = 0;
+
+    	private LimitSemaphore() {
+    		super(0);
+    	}
+
+    	private synchronized void setLimit(int newLimit) {
+    		if (newLimit > limit) {
+    			release(newLimit - limit);
+    		}
+    		else if (newLimit < limit) {
+    			reducePermits(limit - newLimit);
+    		}
+    		limit = newLimit;
+    	}
 
-    	if (limit > 0 && concurrentNumber >= limit) {
-    		isLimitExceeded = true;
+    	private synchronized int getLimit() {
+    		return limit;
     	}
 
-    	return isLimitExceeded;
     }
 
 }
@@ -34,6 +34,7 @@ package net.aegis.fhir.service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 import jakarta.annotation.Resource;
@@ -51,11 +52,15 @@ import jakarta.persistence.criteria.Root;
 import jakarta.transaction.UserTransaction;
 
 import net.aegis.fhir.model.Code;
+import net.aegis.fhir.service.util.CodeConfigurationSnapshot;
 
 /**
  * Code services for basic data operations: findAll, create, delete, read and update
  * and extended operations: findAllByCodeType, findCodeByTypeName and boolean checks.
  *
+ * The code configuration settings are read from an immutable snapshot of the code table shared by all instances of
+ * this service. The snapshot is loaded on first use or at startup and is replaced after every create, update or delete.
+ *
  * The @Stateless annotation eliminates the need for manual transaction demarcation
  *
  * @author richard.ettema
@@ -76,6 +81,10 @@ public class CodeService {
 	@Inject
 	private Event<Code> codeEventSrc;
 
+	private static final AtomicReference<CodeConfigurationSnapshot> configurationSnapshot = new AtomicReference<CodeConfigurationSnapshot>();
+
+	private static final Object configurationLock = new Object();
+
 	/**
 	 * The create interaction creates a new Code record.
 	 *
@@ -105,6 +114,9 @@ public class CodeService {
 			 *  TRANSACTION COMMIT(END)
 			 */
 			userTransaction.commit();
+
+			// Publish the changed code configuration
+			loadConfiguration();
 		} catch (Exception e) {
 			// Exception caught
 			log.severe(e.getMessage());
@@ -143,6 +155,9 @@ public class CodeService {
 			 *  TRANSACTION COMMIT(END)
 			 */
 			userTransaction.commit();
+
+			// Publish the changed code configuration
+			loadConfiguration();
 		} catch (Exception e) {
 			// Exception caught
 			log.severe(e.getMessage());
@@ -220,6 +235,9 @@ public class CodeService {
 			 *  TRANSACTION COMMIT(END)
 			 */
 			userTransaction.commit();
+
+			// Publish the changed code configuration
+			loadConfiguration();
 		} catch (Exception e) {
 			// Exception caught
 			log.severe(e.getMessage());
@@ -330,45 +348,7 @@ public class CodeService {
 
 		log.fine("[START] CodeService.findCodeValueByName");
 
-		List<Code> result = new ArrayList<Code>();
-		Code resultCode = null;
-		String codeValue = null;
-
-		try {
-			/*
-			 *  TRANSACTION BEGIN
-			 */
-			userTransaction.begin();
-
-			CriteriaBuilder cb = em.getCriteriaBuilder();
-			CriteriaQuery<Code> criteria = cb.createQuery(Code.class);
-			Root<Code> rootCode = criteria.from(Code.class);
-			List<Predicate> predicateList = new ArrayList<Predicate>();
-			predicateList.add(cb.equal(rootCode.get("codeName"), codeName));
-
-			criteria.select(rootCode)
-				.where(cb.and(predicateList.toArray(new Predicate[predicateList.size()])))
-				.orderBy(cb.asc(rootCode.get("codeName")), cb.asc(rootCode.get("value")));
-
-			result = em.createQuery(criteria).getResultList();
-
-			if (result != null && result.size() > 0) {
-				// Return the first found Code; should only be one
-				resultCode = result.get(0);
-				codeValue = resultCode.getValue();
-			}
-
-			/*
-			 *  TRANSACTION COMMIT(END)
-			 */
-			userTransaction.commit();
-		} catch (Exception e) {
-			// Exception caught
-			log.severe(e.getMessage());
-			throw e;
-		}
-
-		return codeValue;
+		return getConfiguration().getValue(codeName);
 	}
 
 	/**
@@ -382,45 +362,7 @@ public class CodeService {
 
 		log.fine("[START] CodeService.findCodeIntValueByName");
 
-		List<Code> result = new ArrayList<Code>();
-		Code resultCode = null;
-		Integer codeIntValue = null;
-
-		try {
-			/*
-			 *  TRANSACTION BEGIN
-			 */
-			userTransaction.begin();
-
-			CriteriaBuilder cb = em.getCriteriaBuilder();
-			CriteriaQuery<Code> criteria = cb.createQuery(Code.class);
-			Root<Code> rootCode = criteria.from(Code.class);
-			List<Predicate> predicateList = new ArrayList<Predicate>();
-			predicateList.add(cb.equal(rootCode.get("codeName"), codeName));
-
-			criteria.select(rootCode)
-				.where(cb.and(predicateList.toArray(new Predicate[predicateList.size()])))
-				.orderBy(cb.asc(rootCode.get("codeName")), cb.asc(rootCode.get("value")));
-
-			result = em.createQuery(criteria).getResultList();
-
-			if (result != null && result.size() > 0) {
-				// Return the first found Code; should only be one
-				resultCode = result.get(0);
-				codeIntValue = resultCode.getIntValue();
-			}
-
-			/*
-			 *  TRANSACTION COMMIT(END)
-			 */
-			userTransaction.commit();
-		} catch (Exception e) {
-			// Exception caught
-			log.severe(e.getMessage());
-			throw e;
-		}
-
-		return codeIntValue;
+		return getConfiguration().getIntValue(codeName);
 	}
 
 	/**
@@ -431,9 +373,9 @@ public class CodeService {
 	public boolean isSupported(String codeName) throws Exception {
 		boolean result = false;
 
-		Code code = this.findCodeByName(codeName);
+		String value = getConfiguration().getValue(codeName);
 
-		if (code != null && code.getValue().equals("true")) {
+		if (value != null && value.equals("true")) {
 			result = true;
 		}
 
@@ -447,9 +389,9 @@ public class CodeService {
 	public boolean isValueSupported(String codeName, String codeValue) throws Exception {
 		boolean result = false;
 
-		Code code = this.findCodeByName(codeName);
+		String value = getConfiguration().getValue(codeName);
 
-		if (code != null && code.getValue().equals(codeValue)) {
+		if (value != null && value.equals(codeValue)) {
 			result = true;
 		}
 
@@ -463,10 +405,10 @@ public class CodeService {
 	public String getCodeValue(String codeName) throws Exception {
 		String result = null;
 
-		Code code = this.findCodeByName(codeName);
+		String value = getConfiguration().getValue(codeName);
 
-		if (code != null && !code.getValue().isEmpty()) {
-			result = code.getValue();
+		if (value != null && !value.isEmpty()) {
+			result = value;
 		}
 
 		return result;
@@ -477,15 +419,8 @@ public class CodeService {
 	 * @throws Exception
 	 */
 	public byte[] getCodeResourceContents(String codeName) throws Exception {
-		byte[] result = null;
-
-		Code code = this.findCodeByName(codeName);
-
-		if (code != null && code.getResourceContents() != null) {
-			result = code.getResourceContents();
-		}
 
-		return result;
+		return getConfiguration().getResourceContents(codeName);
 	}
 
 	/**
@@ -506,4 +441,67 @@ public class CodeService {
 
 		return code;
 	}
+
+	/**
+	 * Load all Code records into a new configuration snapshot and replace the current snapshot. Loads are serialized
+	 * so that the last published snapshot is never older than the last committed change.
+	 *
+	 * @return <code>CodeConfigurationSnapshot</code>
+	 * @throws Exception
+	 */
+	public CodeConfigurationSnapshot loadConfiguration() throws Exception {
+
+		log.fine("[START] CodeService.loadConfiguration");
+
+		CodeConfigurationSnapshot snapshot = null;
+
+		synchronized (configurationLock) {
+			try {
+				/*
+				 *  TRANSACTION BEGIN
+				 */
+				userTransaction.begin();
+
+				CriteriaBuilder cb = em.getCriteriaBuilder();
+				CriteriaQuery<Code> criteria = cb.createQuery(Code.class);
+				Root<Code> rootCode = criteria.from(Code.class);
+
+				criteria.select(rootCode)
+					.orderBy(cb.asc(rootCode.get("codeName")), cb.asc(rootCode.get("value")));
+
+				List<Code> result = em.createQuery(criteria).getResultList();
+
+				/*
+				 *  TRANSACTION COMMIT(END)
+				 */
+				userTransaction.commit();
+
+				snapshot = new CodeConfigurationSnapshot(result);
+				configurationSnapshot.set(snapshot);
+
+				log.fine("CodeService.loadConfiguration - " + snapshot.size() + " codes loaded");
+			} catch (Exception e) {
+				// Exception caught
+				log.severe(e.getMessage());
+				throw e;
+			}
+		}
+
+		return snapshot;
+	}
+
+	/**
+	 * @return <code>CodeConfigurationSnapshot</code> - the current configuration snapshot; loaded on first use
+	 * @throws Exception
+	 */
+	public CodeConfigurationSnapshot getConfiguration() throws Exception {
+
+		CodeConfigurationSnapshot snapshot = configurationSnapshot.get();
+
+		if (snapshot == null) {
+			snapshot = loadConfiguration();
+		}
+
+		return snapshot;
+	}
 }
@@ -84,7 +84,7 @@ public class RESTBatchTransactionOps {
 
         log.fine("[START] RESTBatchTransactionOps.batchTransaction()");
 
-        boolean txConcurrentLimitEnabled = false;
+        BatchTransactionConcurrencyService.Permit txPermit = null;
         Response.ResponseBuilder builder = null;
         String contentType = null;
         String producesType = null;
@@ -105,31 +105,34 @@ public class RESTBatchTransactionOps {
 			producesType = ServicesUtil.INSTANCE.getProducesType(headers, request);
 
 			/*
-			 * Global Batch, Transaction Concurrency Check
-			 * If concurrency limit is not enabled or
-			 *     (concurrency limit is enabled and limit is not exceeded)
-			 *   If concurrency limit is enabled
-			 *     Increment number of concurrent requests
-			 *   End If
+			 * Batch, Transaction Concurrency Check
+			 * If the server (txConcurrentLimit) and client (txClientConcurrentLimit) limits are not exceeded
+			 *   Acquire a server and a client permit
 			 *   Allow processing to continue
 			 *   When this batch/transaction process is complete
-			 *     Always decrement number of concurrent requests
+			 *     Always release the permits
 			 * Else
-			 *   If concurrency limit is enabled
-			 *     Return 503 Service Unavailable
-			 *   End If
+			 *   Return 503 Service Unavailable
 			 * End If
 			 */
+			int txConcurrentLimitValue = 0;
+			if (codeService.isSupported("txConcurrentLimit") && codeService.findCodeIntValueByName("txConcurrentLimit") != null) {
+				txConcurrentLimitValue = codeService.findCodeIntValueByName("txConcurrentLimit").intValue();
+			}
+			int txClientConcurrentLimitValue = 0;
+			if (codeService.isSupported("txClientConcurrentLimit") && codeService.findCodeIntValueByName("txClientConcurrentLimit") != null) {
+				txClientConcurrentLimitValue = codeService.findCodeIntValueByName("txClientConcurrentLimit").intValue();
+			}
 
-			txConcurrentLimitEnabled = codeService.isSupported("txConcurrentLimit");
-			Integer txConcurrentLimitValue = codeService.findCodeIntValueByName("txConcurrentLimit");
+			// Client is the authenticated user if known; otherwise, the remote address
+			String clientId = request.getRemoteAddr();
+			if (request.getUserPrincipal() != null) {
+				clientId = request.getUserPrincipal().getName();
+			}
 
-			if (txConcurrentLimitEnabled == false ||
-					(txConcurrentLimitEnabled == true && !BatchTransactionConcurrencyService.instance().isLimitExceeded(txConcurrentLimitValue))) {
+			txPermit = BatchTransactionConcurrencyService.instance().tryAcquire(clientId, txConcurrentLimitValue, txClientConcurrentLimitValue);
 
-				if (txConcurrentLimitEnabled == true) {
-					BatchTransactionConcurrencyService.instance().increment();
-				}
+			if (txPermit != null) {
 
 				// Get the content type based on the request Content-Type
 				contentType = ServicesUtil.INSTANCE.getHttpHeader(headers, HttpHeaders.CONTENT_TYPE);
@@ -218,16 +221,12 @@ public class RESTBatchTransactionOps {
 				}
 			}
 			else {
-				if (txConcurrentLimitEnabled == true) {
-			        log.warning("Concurrent processing enabled and limit exceeded, report error 503 (Service Unavailable)");
+		        log.warning("Concurrent processing limit exceeded, report error 503 (Service Unavailable)");
 
-			        // Concurrent processing enabled and limit exceeded, report error "503 (Service Unavailable)"
-					outcome = ServicesUtil.INSTANCE.getOperationOutcome(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.THROTTLED, "The request cannot be processed at this time. Too busy.", null, null, producesType);
+		        // Concurrent processing limit exceeded, report error "503 (Service Unavailable)"
+				outcome = ServicesUtil.INSTANCE.getOperationOutcome(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.THROTTLED, "The request cannot be processed at this time. Too busy.", null, null, producesType);
 
-					builder = Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(outcome).type(producesType + Constants.CHARSET_UTF8_EXT + responseFhirVersion).header("Retry-After", "120");
-
-					txConcurrentLimitEnabled = false;
-				}
+				builder = Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(outcome).type(producesType + Constants.CHARSET_UTF8_EXT + responseFhirVersion).header("Retry-After", "120");
 			}
 		}
 		catch (Exception e) {
@@ -239,10 +238,8 @@ public class RESTBatchTransactionOps {
 			e.printStackTrace();
 		}
 		finally {
-			if (txConcurrentLimitEnabled == true) {
-				// Always decrement concurrent number
-				BatchTransactionConcurrencyService.instance().decrement();
-			}
+			// Always release the concurrency permits
+			BatchTransactionConcurrencyService.instance().release(txPermit);
 		}
 
 		return builder.build();
@@ -84,7 +84,9 @@ import net.aegis.fhir.model.ResourceContainer;
 import net.aegis.fhir.model.ResourceType;
 import net.aegis.fhir.service.audit.AuditEventService;
 import net.aegis.fhir.service.narrative.FHIRNarrativeGeneratorClient;
+import net.aegis.fhir.service.paging.HistoryCursor;
 import net.aegis.fhir.service.provenance.ProvenanceService;
+import net.aegis.fhir.service.util.BundleStreamingOutput;
 import net.aegis.fhir.service.util.ServicesUtil;
 import net.aegis.fhir.service.util.StringUtils;
 import net.aegis.fhir.service.util.UTCDateUtil;
@@ -1810,7 +1812,7 @@ public class RESTResourceOps {
 							}
 							String locationPath = requestURL.toString();
 
-							resourceContainer = resourceService.search(queryParams, null, orderedParams, resourceType, locationPath, countInteger, pageInteger, summaryString, true);
+							resourceContainer = resourceService.search(queryParams, null, orderedParams, resourceType, locationPath, countInteger, pageInteger, summaryString, true, true);
 
 							builder = responseBundle(producesType, resourceContainer, locationPath, responseFhirVersion);
 						}
@@ -2020,7 +2022,7 @@ public class RESTResourceOps {
 		            builder = Response.status(Response.Status.PRECONDITION_FAILED).entity(outcome).type(producesType + Constants.CHARSET_UTF8_EXT + responseFhirVersion);
 				}
 				else {
-					ResourceContainer resourceContainer = resourceService.search(queryParams, formParams, orderedParams, resourceType, locationPath, countInteger, pageInteger, summaryString, false);
+					ResourceContainer resourceContainer = resourceService.search(queryParams, formParams, orderedParams, resourceType, locationPath, countInteger, pageInteger, summaryString, false, true);
 
 					builder = responseBundle(producesType, resourceContainer, locationPath, responseFhirVersion);
 				}
@@ -2061,8 +2063,10 @@ public class RESTResourceOps {
         String countString = null;
         Date sinceDate = null;
         String sinceString = null;
-        Integer pageInteger = null;
-        String pageString = null;
+        Date atDate = null;
+        String atString = null;
+        HistoryCursor historyCursor = null;
+        String cursorString = null;
         String summaryString = null;
         String responseFhirVersion = "";
         try {
@@ -2139,22 +2143,40 @@ public class RESTResourceOps {
 						}
 					}
 
-					// Get the page parameter if present
+					// Get the _at parameter if present
 					if (contextQueryParams != null) {
-						pageString = ServicesUtil.INSTANCE.getUriParameter("page", contextQueryParams);
+						atString = ServicesUtil.INSTANCE.getUriParameter("_at", contextQueryParams);
 					}
-					if (pageString == null) {
-						pageString = ServicesUtil.INSTANCE.getUriParameter("page", request);
+					if (atString == null) {
+						atString = ServicesUtil.INSTANCE.getUriParameter("_at", request);
 					}
 
-					if (pageString != null) {
+					if (atString != null) {
 						try {
-							pageInteger = Integer.valueOf(pageString);
-							log.fine("page number = " + pageString);
+							atDate = utcDateUtil.parseXMLDate(atString);
+							log.fine("history at = " + atString);
 						}
 						catch (Exception e) {
-							log.severe("Exception parsing page parameter to Integer! " + e.getMessage());
-							pageInteger = null;
+							log.severe("Exception parsing _at parameter to UTC Date! " + e.getMessage());
+							atDate = null;
+						}
+					}
+
+					// Get the continuation token if present
+					if (contextQueryParams != null) {
+						cursorString = ServicesUtil.INSTANCE.getUriParameter(HistoryCursor.PARAMETER_NAME, contextQueryParams);
+					}
+					if (cursorString == null) {
+						cursorString = ServicesUtil.INSTANCE.getUriParameter(HistoryCursor.PARAMETER_NAME, request);
+					}
+
+					if (cursorString != null) {
+						historyCursor = HistoryCursor.fromToken(cursorString);
+						if (historyCursor == null) {
+							log.severe("Invalid history continuation token! " + cursorString);
+						}
+						else {
+							log.fine("history cursor = " + cursorString);
 						}
 					}
 
@@ -2162,30 +2184,52 @@ public class RESTResourceOps {
 					if (contextQueryParams != null) {
 						summaryString = ServicesUtil.INSTANCE.getUriParameter("_summary", contextQueryParams);
 					}
-					if (pageString == null) {
+					if (summaryString == null) {
 						summaryString = ServicesUtil.INSTANCE.getUriParameter("_summary", request);
 					}
 					log.fine("summary = " + (summaryString != null ? summaryString : "null"));
 
-					// Construct full request URL with any query parameters
-					StringBuffer requestURL = request.getRequestURL();
-					String queryString = request.getQueryString();
-					if (queryString != null) {
-						requestURL.append("?").append(URLEncoder.encode(queryString, StandardCharsets.UTF_8));
+					if (cursorString != null && historyCursor == null) {
+						// Malformed or tampered continuation token; the client must restart the history paging
+						String outcome = ServicesUtil.INSTANCE.getOperationOutcome(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INVALID, "Invalid history continuation token " + HistoryCursor.PARAMETER_NAME + ".", null, null, producesType);
+
+						builder = Response.status(Response.Status.BAD_REQUEST).entity(outcome).type(producesType + Constants.CHARSET_UTF8_EXT + responseFhirVersion);
 					}
-					String locationPath = requestURL.toString();
+					else {
+						// Construct full request URL with any query parameters
+						StringBuffer requestURL = request.getRequestURL();
+						String queryString = request.getQueryString();
+
+						// Construct the paging URL with the query parameters except the continuation token
+						StringBuffer pagingURL = new StringBuffer(requestURL);
+						if (queryString != null) {
+							String pagingSeparator = "?";
+							for (String queryParam : queryString.split("&")) {
+								if (queryParam.length() > 0 && !queryParam.startsWith(HistoryCursor.PARAMETER_NAME + "=")) {
+									pagingURL.append(pagingSeparator).append(queryParam);
+									pagingSeparator = "&";
+								}
+							}
+						}
+						String pagingPath = pagingURL.toString();
+
+						if (queryString != null) {
+							requestURL.append("?").append(URLEncoder.encode(queryString, StandardCharsets.UTF_8));
+						}
+						String locationPath = requestURL.toString();
 
-					ResourceContainer resourceContainer = resourceService.history(id, countInteger, sinceDate, pageInteger, summaryString, locationPath, resourceType);
+						ResourceContainer resourceContainer = resourceService.history(id, countInteger, sinceDate, atDate, historyCursor, summaryString, locationPath, pagingPath, resourceType);
 
-					if (resourceContainer != null && resourceContainer.getResponseStatus().equals(Response.Status.OK)) {
+						if (resourceContainer != null && resourceContainer.getResponseStatus().equals(Response.Status.OK)) {
 
-						builder = responseBundle(producesType, resourceContainer, locationPath, responseFhirVersion);
-					}
-					else {
-						// No resource found; build OperationOutcome response resource
-						String outcome = ServicesUtil.INSTANCE.getOperationOutcome(OperationOutcome.IssueSeverity.INFORMATION, OperationOutcome.IssueType.NOTFOUND, "No resource found.", null, null, producesType);
+							builder = responseBundle(producesType, resourceContainer, locationPath, responseFhirVersion);
+						}
+						else {
+							// No resource found; build OperationOutcome response resource
+							String outcome = ServicesUtil.INSTANCE.getOperationOutcome(OperationOutcome.IssueSeverity.INFORMATION, OperationOutcome.IssueType.NOTFOUND, "No resource found.", null, null, producesType);
 
-						builder = Response.status(Response.Status.NOT_FOUND).entity(outcome).type(producesType + Constants.CHARSET_UTF8_EXT + responseFhirVersion);
+							builder = Response.status(Response.Status.NOT_FOUND).entity(outcome).type(producesType + Constants.CHARSET_UTF8_EXT + responseFhirVersion);
+						}
 					}
 				}
 				else {
@@ -2470,7 +2514,6 @@ public class RESTResourceOps {
         log.fine("[START] RESTResourceOps.responseBundle()");
 
     	Response.ResponseBuilder builder;
-        ByteArrayOutputStream oResourceSearch;
 
         if (resourceContainer != null) {
             builder = Response.status(resourceContainer.getResponseStatus()).type(producesType + Constants.CHARSET_UTF8_EXT + responseFhirVersion);
@@ -2482,25 +2525,8 @@ public class RESTResourceOps {
 
                 if (resourceContainer.getBundle() != null) {
 
-                    String sResourceSearch = "";
-
-                    if (producesType.indexOf("xml") >= 0) {
-                        // Convert Bundle to XML
-                        oResourceSearch = new ByteArrayOutputStream();
-        				XmlParser xmlParser = new XmlParser();
-        				xmlParser.setOutputStyle(OutputStyle.PRETTY);
-        				xmlParser.compose(oResourceSearch, resourceContainer.getBundle(), true);
-                        sResourceSearch = oResourceSearch.toString();
-                    } else {
-                        // Convert Bundle to JSON
-                        oResourceSearch = new ByteArrayOutputStream();
-                        JsonParser jsonParser = new JsonParser();
-                        jsonParser.setOutputStyle(OutputStyle.PRETTY);
-                        jsonParser.compose(oResourceSearch, resourceContainer.getBundle());
-                        sResourceSearch = oResourceSearch.toString();
-                    }
-
-                    builder = builder.entity(sResourceSearch).header(HttpHeaders.CONTENT_LENGTH, sResourceSearch.getBytes("UTF-8").length);
+                    // Stream encode the Bundle to the response output stream; no Content-Length is set so the response is chunked
+                    builder = builder.entity(new BundleStreamingOutput(resourceContainer.getBundle(), producesType));
 
                 } else {
                 	// Response status is not OK;; build OperationOutcome response resource
@@ -2664,9 +2690,16 @@ public class RESTResourceOps {
 
         	if (resourceContainer.getResource().getResourceContents() != null) {
 	            if (producesType.indexOf("xml") >= 0) {
-	            	String out = new String(resourceContainer.getResource().getResourceContents());
+	            	// Stored XML contents are returned as is; no decode and re-encode of the contents
+	            	byte[] out = resourceContainer.getResource().getResourceContents();
+	                builder = builder.entity(out).tag(eTag).type(producesType + Constants.CHARSET_UTF8_EXT + responseFhirVersion)
+	                		.header(HttpHeaders.CONTENT_LENGTH, out.length);
+
+	            } else if (resourceContainer.getResource().getResourceContentsJson() != null) {
+	            	// Stored JSON contents are returned as is; no conversion of the XML contents
+	            	byte[] out = resourceContainer.getResource().getResourceContentsJson();
 	                builder = builder.entity(out).tag(eTag).type(producesType + Constants.CHARSET_UTF8_EXT + responseFhirVersion)
-	                		.header(HttpHeaders.CONTENT_LENGTH, out.getBytes("UTF-8").length);
+	                		.header(HttpHeaders.CONTENT_LENGTH, out.length);
 
 	            } else {
 	                // Convert XML contents to JSON
@@ -45,7 +45,9 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TimeZone;
@@ -86,17 +88,27 @@ import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
 import jakarta.transaction.Status;
 import jakarta.transaction.UserTransaction;
+import jakarta.ws.rs.core.MultivaluedHashMap;
 import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
 import net.aegis.fhir.model.ResourceContainer;
+import net.aegis.fhir.model.ResourceWriteContainer;
 import net.aegis.fhir.model.Resourcemetadata;
-import net.aegis.fhir.service.paging.PagingHistoryManager;
+import net.aegis.fhir.service.everything.CompartmentEverythingService;
+import net.aegis.fhir.service.metadata.ChainedResourceResolutionCache;
+import net.aegis.fhir.service.paging.HistoryCursor;
 import net.aegis.fhir.service.paging.PagingSearchManager;
+import net.aegis.fhir.service.paging.SearchCursor;
+import net.aegis.fhir.service.reindex.ChainedReindexService;
+import net.aegis.fhir.service.reindex.ResourceReindexService;
 import net.aegis.fhir.service.util.JsonPatchUtil;
 import net.aegis.fhir.service.util.NullChecker;
 import net.aegis.fhir.service.util.ServicesUtil;
+import net.aegis.fhir.service.util.SqlQueryBuffer;
+import net.aegis.fhir.service.util.StoredResourceContents;
 import net.aegis.fhir.service.util.SummaryUtil;
 import net.aegis.fhir.service.util.UTCDateUtil;
 import net.aegis.fhir.service.util.UUIDUtil;
@@ -116,6 +128,9 @@ public class ResourceService {
 
     private Logger log = Logger.getLogger("ResourceService");
 
+	// Number of resources per statement when reading or clearing current versions of a transaction
+	private static final int TRANSACTION_BATCH_SIZE = 100;
+
     @PersistenceContext
 	private EntityManager em;
 
@@ -131,6 +146,18 @@ public class ResourceService {
 	@Inject
 	private ResourcemetadataService resourcemetadataService;
 
+	@Inject
+	private ResourceindexService resourceindexService;
+
+	@Inject
+	private ChainedReindexService chainedReindexService;
+
+	@Inject
+	private ResourceReindexService resourceReindexService;
+
+	@Inject
+	private CompartmentEverythingService compartmentEverythingService;
+
 	@Inject
 	private UTCDateUtil utcDateUtil;
 
@@ -243,12 +270,13 @@ public class ResourceService {
 			byte[] resourceBytes = xmlP.composeBytes(resourceObject);
 
 			newResource.setResourceContents(resourceBytes);
+			setResourceContentsJson(newResource, resourceObject);
 
 			/*
 			 *  TRANSACTION BEGIN
 			 */
 			userTransaction.begin();
-			em.persist(newResource);
+			persistCurrentVersion(newResource);
 			resourceEventSrc.fire(newResource);
 
 			// Generate the list of Resourcemetadata objects for the new Resource
@@ -307,11 +335,9 @@ public class ResourceService {
 				for (net.aegis.fhir.model.Resource resourceInstance : resourceList) {
 					log.fine("     Resource found - DELETE RESOURCE HISTORY [" + resourceInstance.getId() + "]");
 
-					List<Resourcemetadata> resourcemetadataList = resourcemetadataService.readAllForResource(resourceInstance);
+					resourcemetadataService.deleteAllForResource(resourceInstance);
 
-					for (Resourcemetadata resourcemetadata : resourcemetadataList) {
-						deleteResourcemetadata(resourcemetadata.getId());
-					}
+					resourceindexService.deleteAllForResource(resourceInstance);
 
 					em.remove(resourceInstance);
 					resourceEventSrc.fire(resourceInstance);
@@ -381,6 +407,17 @@ public class ResourceService {
 
 			result = resourcemetadataQuery.executeUpdate();
 
+			// Truncate the typed search index tables
+			for (String indexTable : ResourceindexService.INDEX_TABLES) {
+				sbQuery = new StringBuffer("truncate ").append(indexTable);
+
+				log.fine("Native Query: " + sbQuery.toString());
+
+				resourcemetadataQuery = em.createNativeQuery(sbQuery.toString());
+
+				result = resourcemetadataQuery.executeUpdate();
+			}
+
 			// Build native query for truncate resource
 			sbQuery = new StringBuffer("truncate resource");
 
@@ -423,6 +460,125 @@ public class ResourceService {
 
 	}
 
+	/**
+	 * Start a background $reindex of the Resourcemetadata of the current resource versions
+	 *
+	 * @param resourceType - null for all resource types
+	 * @param baseUrl
+	 * @param restart - true, ignore any saved checkpoint
+	 * @return <code>String</code> result message
+	 * @throws Exception
+	 */
+	public String reindex(String resourceType, String baseUrl, boolean restart) throws Exception {
+
+		log.fine("[START] ResourceService.reindex(" + resourceType + ", " + restart + ")");
+
+		return resourceReindexService.start(resourceType, baseUrl, restart);
+	}
+
+	/**
+	 * Stop the running $reindex after its current chunk
+	 *
+	 * @return <code>String</code> result message
+	 * @throws Exception
+	 */
+	public String reindexStop() throws Exception {
+
+		log.fine("[START] ResourceService.reindexStop()");
+
+		return resourceReindexService.stop();
+	}
+
+	/**
+	 * Search the resource row ids of all resource types of a compartment concurrently. Used by the $everything operation.
+	 *
+	 * @param compartmentType
+	 * @param compartmentId
+	 * @param startDateCriteria
+	 * @param endDateCriteria
+	 * @param sinceCriteria - _lastUpdated criteria; null for all
+	 * @param resourceTypes - resource types to search; null or empty for all
+	 * @return List of resource row ids ordered by compartment resource type
+	 * @throws Exception
+	 */
+	public List<Integer> searchCompartmentEverythingIds(String compartmentType, String compartmentId, String startDateCriteria, String endDateCriteria, String sinceCriteria, Set<String> resourceTypes) throws Exception {
+
+		log.fine("[START] ResourceService.searchCompartmentEverythingIds(" + compartmentType + ", " + compartmentId + ")");
+
+		return compartmentEverythingService.searchIds(compartmentType, compartmentId, startDateCriteria, endDateCriteria, sinceCriteria, resourceTypes);
+	}
+
+	/**
+	 * Build the Bundle entries of one page of compartment resources and their linked resources read in batches. Used by
+	 * the $everything operation.
+	 *
+	 * @param pageIds
+	 * @param existingKeys - resource type/id keys already in the page
+	 * @param resourceTypes - resource types of the linked resources; null or empty for all
+	 * @param baseUrl
+	 * @return List of <code>BundleEntryComponent</code>
+	 * @throws Exception
+	 */
+	public List<BundleEntryComponent> readCompartmentEverythingPage(List<Integer> pageIds, Set<String> existingKeys, Set<String> resourceTypes, String baseUrl) throws Exception {
+
+		log.fine("[START] ResourceService.readCompartmentEverythingPage(" + pageIds.size() + ")");
+
+		return compartmentEverythingService.readPage(pageIds, existingKeys, resourceTypes, baseUrl);
+	}
+
+	/**
+	 * Read the current, not deleted versions of resources of a resource type with queries of up to TRANSACTION_BATCH_SIZE
+	 * ids each
+	 *
+	 * @param resourceType
+	 * @param resourceIds
+	 * @return List of <code>Resource</code>; ids not found are not returned
+	 * @throws Exception
+	 */
+	public List<net.aegis.fhir.model.Resource> readCurrentByIds(String resourceType, List<String> resourceIds) throws Exception {
+
+		log.fine("[START] ResourceService.readCurrentByIds(" + resourceType + ", " + resourceIds.size() + ")");
+
+		Map<String, net.aegis.fhir.model.Resource> currentVersions = new LinkedHashMap<String, net.aegis.fhir.model.Resource>();
+
+		try {
+			for (int fromIndex = 0; fromIndex < resourceIds.size(); fromIndex += TRANSACTION_BATCH_SIZE) {
+				List<String> batchIds = resourceIds.subList(fromIndex, Math.min(fromIndex + TRANSACTION_BATCH_SIZE, resourceIds.size()));
+
+				CriteriaBuilder cb = em.getCriteriaBuilder();
+				CriteriaQuery<net.aegis.fhir.model.Resource> criteria = cb.createQuery(net.aegis.fhir.model.Resource.class);
+				Root<net.aegis.fhir.model.Resource> resource = criteria.from(net.aegis.fhir.model.Resource.class);
+
+				criteria.select(resource)
+					.where(cb.and(cb.equal(resource.get("resourceType"), resourceType), resource.get("resourceId").in(batchIds), cb.isTrue(resource.get("isCurrent"))));
+
+				List<net.aegis.fhir.model.Resource> resources = em.createQuery(criteria).getResultList();
+
+				for (net.aegis.fhir.model.Resource currentResource : resources) {
+					net.aegis.fhir.model.Resource foundResource = currentVersions.get(currentResource.getResourceId());
+
+					if (foundResource == null || foundResource.getVersionId().intValue() < currentResource.getVersionId().intValue()) {
+						currentVersions.put(currentResource.getResourceId(), currentResource);
+					}
+				}
+			}
+		} catch (Exception e) {
+			// Exception caught
+			log.severe(e.getMessage());
+			throw e;
+		}
+
+		List<net.aegis.fhir.model.Resource> resources = new ArrayList<net.aegis.fhir.model.Resource>();
+
+		for (net.aegis.fhir.model.Resource currentResource : currentVersions.values()) {
+			if (currentResource.getStatus() == null || !currentResource.getStatus().equalsIgnoreCase("DELETED")) {
+				resources.add(currentResource);
+			}
+		}
+
+		return resources;
+	}
+
 	/**
 	 * Delete a Resourcemetadata instance
 	 *
@@ -544,12 +700,13 @@ public class ResourceService {
 			byte[] resourceBytes = xmlP.composeBytes(resourceObject);
 
 			newResource.setResourceContents(resourceBytes);
+			setResourceContentsJson(newResource, resourceObject);
 
 			/*
 			 *  TRANSACTION BEGIN
 			 */
 			userTransaction.begin();
-			em.persist(newResource);
+			persistCurrentVersion(newResource);
 			resourceEventSrc.fire(newResource);
 
 			/*
@@ -637,7 +794,7 @@ public class ResourceService {
 					byte[] resourceBytes = xmlP.composeBytes(resourceObject);
 
 					newResource.setResourceContents(resourceBytes);
-					em.persist(newResource);
+					persistCurrentVersion(newResource);
 					resourceEventSrc.fire(newResource);
 				}
 			}
@@ -665,316 +822,202 @@ public class ResourceService {
 	 * The history interaction retrieves the history of either a particular resource, all resources of a given type,
 	 * or all resources supported by the system. Depending on the values of resourceType and resourceId, this method
 	 * returns the history for a single resource instance, a resource type, or all supported resource types in the system.
+	 * <p>
+	 * History is read from the database one page at a time, newest first, in (lastUpdate, id) order. The _since, _at
+	 * and _count parameters are part of the query; the next page is requested with the continuation token of the last
+	 * entry of the current page.
 	 *
 	 * @param resourceId
 	 * @param count_
 	 * @param since_
-	 * @param page_
+	 * @param at_
+	 * @param cursor_
 	 * @param summary_
 	 * @param locationPath
+	 * @param pagingPath
 	 * @param resourceType
 	 * @return <code>ResourceContainer</code>
 	 * @throws Exception
 	 */
-	public ResourceContainer history(String resourceId, Integer count_, Date since_, Integer page_, String summary_, String locationPath, String resourceType) throws Exception {
+	public ResourceContainer history(String resourceId, Integer count_, Date since_, Date at_, HistoryCursor cursor_, String summary_, String locationPath, String pagingPath, String resourceType) throws Exception {
 
-		log.fine("[START] ResourceService.history() - resourceId: " + resourceId + "; count_: " + count_ + "; since_: " + since_ + "; page_: " + page_ + "; summary_: " + summary_ + "; locationPath: " + locationPath + "; resourceType: " + resourceType);
+		log.fine("[START] ResourceService.history() - resourceId: " + resourceId + "; count_: " + count_ + "; since_: " + since_ + "; at_: " + at_ + "; cursor_: " + (cursor_ != null ? cursor_.toToken() : "null") + "; summary_: " + summary_ + "; locationPath: " + locationPath + "; pagingPath: " + pagingPath + "; resourceType: " + resourceType);
 
 		ResourceContainer resourceContainer = new ResourceContainer();
-		List<net.aegis.fhir.model.Resource> resources = null;
 		Integer maxCount = Integer.valueOf(500);
 
 		ByteArrayInputStream iResource = null;
 
 		try {
-			// Check for paged request; page parameter is not null
-			if (page_ != null && page_.intValue() > 0) {
-				log.fine("ResourceService.history - cached page requested");
-
-				// Retrieve page from history cache using locationPath as the key
-				Bundle bundle = PagingHistoryManager.INSTANCE.retrieveFromCache(locationPath);
-
-				if (bundle != null) {
-					resourceContainer.setBundle(bundle);
-					resourceContainer.setResponseStatus(Response.Status.OK);
-				}
-				else {
-					// Page cache has expired
-					resourceContainer.setResource(null);
-					resourceContainer.setResponseStatus(Response.Status.NOT_FOUND);
-					resourceContainer.setMessage("History page cache has expired.");
-				}
+			// Check for _count; maxCount is the upper bound for any page
+			int pageSize = maxCount.intValue();
+			if (count_ != null && count_.intValue() > 0) {
+				pageSize = Math.min(count_.intValue(), maxCount.intValue());
 			}
-			else {
-				log.fine("ResourceService.history - new history request");
 
-				CriteriaBuilder cb = em.getCriteriaBuilder();
-				CriteriaQuery<net.aegis.fhir.model.Resource> criteria = cb.createQuery(net.aegis.fhir.model.Resource.class);
-				Root<net.aegis.fhir.model.Resource> resource = criteria.from(net.aegis.fhir.model.Resource.class);
-				List<Predicate> predicateList = new ArrayList<Predicate>();
+			log.fine("ResourceService.history - pageSize = " + pageSize);
 
-				// History Resource
-				if (resourceType != null) {
-					predicateList.add(cb.equal(resource.get("resourceType"), resourceType));
-
-					// History Instance
-					if (resourceId != null) {
-						predicateList.add(cb.equal(resource.get("resourceId"), resourceId));
-					}
-				}
+			CriteriaBuilder cb = em.getCriteriaBuilder();
+			CriteriaQuery<net.aegis.fhir.model.Resource> criteria = cb.createQuery(net.aegis.fhir.model.Resource.class);
+			Root<net.aegis.fhir.model.Resource> resource = criteria.from(net.aegis.fhir.model.Resource.class);
+			List<Predicate> predicateList = new ArrayList<Predicate>();
 
-				// History Global - if both resourceId and resourceType are null
+			// History Resource
+			if (resourceType != null) {
+				predicateList.add(cb.equal(resource.get("resourceType"), resourceType));
 
-				if (since_ != null) {
-					predicateList.add(cb.greaterThan(resource.<Date> get("lastUpdate"), since_));
+				// History Instance
+				if (resourceId != null) {
+					predicateList.add(cb.equal(resource.get("resourceId"), resourceId));
 				}
+			}
 
-				criteria.select(resource)
-					.where(cb.and(predicateList.toArray(new Predicate[predicateList.size()])))
-					.orderBy(cb.desc(resource.get("resourceType")))
-					.orderBy(cb.desc(resource.get("resourceId")))
-					.orderBy(cb.desc(resource.get("versionId")));
-
-				List<net.aegis.fhir.model.Resource> historyResources = em.createQuery(criteria).getResultList();
-
-				log.fine("ResourceService.history - historyResources.size() = " + historyResources.size());
-
-				if (historyResources != null && historyResources.size() > 0) {
-					// 1 or more Resources found, build Bundle list of Element entry objects for each resource version
-
-					// Extract base url from locationPath for use in Bundle.entry.fullUrl element
-					String baseUrl = ServicesUtil.INSTANCE.extractBaseURL(locationPath, "/_history");
-					// Initialize fullUrl for use in populating Bundle.entry.fullUrl element
-					//String fullUrl = "";
-
-					if (historyResources.size() > maxCount.intValue()) {
-						// Maximum count allowed for is less than number of resources returned; reduce resources to maxCount limit
-						log.fine("Total resources returned: " + historyResources.size() + "; Maximum count allowed for: " + maxCount);
-
-						int totalCount = 0;
-						resources = new ArrayList<net.aegis.fhir.model.Resource>();
-
-						for (net.aegis.fhir.model.Resource r : historyResources) {
-							resources.add(r);
-							totalCount++;
-							if (totalCount >= maxCount.intValue()) {
-								break;
-							}
-						}
-
-					} else {
-						resources = historyResources;
-					}
-
-					// Check for _count
-					int pageSize = 0;
-					if (count_ != null && count_.intValue() > 0) {
-						// if defined use as page size; may need to support paging
-						pageSize = count_.intValue();
-					}
-					else {
-						// if not defined set page size equal to number of found resources; i.e. no paging
-						pageSize = resources.size();
-					}
-
-					log.fine("ResourceService.history - pageSize = " + pageSize);
-
-					// Test whether paging is needed
-					boolean needPaging = false;
-					int pageCount = 1;
-					int pageNum = 1;
-					if (pageSize < resources.size()) {
-						needPaging = true;
-						pageCount = this.divideAndRoundUp(resources.size(), pageSize);
-					}
-
-					log.fine("ResourceService.history - pageCount = " + pageCount + "; needPaging = " + needPaging);
-
-					String currentPage = locationPath + "&page=1";
-					String firstPage = locationPath + "&page=1";
-					String lastPage = locationPath + "&page=" + pageCount;
-					int nextPageNum = -1;
-					int prevPageNum = -1;
-
-					// Initialize first Bundle to return
-					Bundle bundle = new Bundle();
-
-					bundle.setId(UUIDUtil.getUUID());
-					Meta bundleMeta = new Meta();
-					bundleMeta.setVersionId("1");
-					bundleMeta.setLastUpdated(new Date());
-					bundle.setMeta(bundleMeta);
-					bundle.setType(BundleType.HISTORY);
-					bundle.setTotal(resources.size());
-					BundleLinkComponent selfLink = new BundleLinkComponent();
-					selfLink.setRelation("self");
-					if (needPaging) {
-						selfLink.setUrl(currentPage);
-					}
-					else {
-						selfLink.setUrl(locationPath);
-					}
-					bundle.getLink().add(selfLink);
-
-					int resourceCount = 0;
-
-					for (net.aegis.fhir.model.Resource resourceEntry : resources) {
-						resourceCount++;
-						if (resourceCount > pageSize) {
-
-							log.fine("ResourceService.history - Done with pageNum = " + pageNum);
+			// History Global - if both resourceId and resourceType are null
 
-							// Reset resourceCount for next page Bundle
-							resourceCount = 1;
+			// _since - only versions created at or after the given instant
+			if (since_ != null) {
+				predicateList.add(cb.greaterThanOrEqualTo(resource.<Date> get("lastUpdate"), since_));
+			}
 
-							// Calculate next and previous pageNum values
-							nextPageNum = pageNum + 1;
-							prevPageNum = pageNum - 1;
+			// _at - only versions that were current at the given instant; i.e. created at or before the instant and not
+			// replaced by a newer version at or before the instant
+			if (at_ != null) {
+				predicateList.add(cb.lessThanOrEqualTo(resource.<Date> get("lastUpdate"), at_));
 
-							// Populate paging links in current page Bundle
-							BundleLinkComponent firstPageLink = new BundleLinkComponent();
-							firstPageLink.setRelation("first");
-							firstPageLink.setUrl(firstPage);
-							bundle.getLink().add(firstPageLink);
+				Subquery<Integer> newerVersion = criteria.subquery(Integer.class);
+				Root<net.aegis.fhir.model.Resource> newer = newerVersion.from(net.aegis.fhir.model.Resource.class);
+				newerVersion.select(newer.<Integer> get("id"))
+					.where(cb.equal(newer.get("resourceType"), resource.get("resourceType")),
+						cb.equal(newer.get("resourceId"), resource.get("resourceId")),
+						cb.greaterThan(newer.<Integer> get("versionId"), resource.<Integer> get("versionId")),
+						cb.lessThanOrEqualTo(newer.<Date> get("lastUpdate"), at_));
 
-							if (prevPageNum >= 1) {
-								BundleLinkComponent prevPageLink = new BundleLinkComponent();
-								prevPageLink.setRelation("previous");
-								prevPageLink.setUrl(locationPath + "&page=" + prevPageNum);
-								bundle.getLink().add(prevPageLink);
-							}
+				predicateList.add(cb.not(cb.exists(newerVersion)));
+			}
 
-							if (nextPageNum <= pageCount) {
-								BundleLinkComponent nextPageLink = new BundleLinkComponent();
-								nextPageLink.setRelation("next");
-								nextPageLink.setUrl(locationPath + "&page=" + nextPageNum);
-								bundle.getLink().add(nextPageLink);
-							}
+			// Continuation token - only versions after the last entry of the previous page
+			if (cursor_ != null) {
+				predicateList.add(cb.or(cb.lessThan(resource.<Date> get("lastUpdate"), cursor_.getLastUpdate()),
+					cb.and(cb.equal(resource.get("lastUpdate"), cursor_.getLastUpdate()), cb.lessThan(resource.<Integer> get("id"), Integer.valueOf(cursor_.getId())))));
+			}
 
-							BundleLinkComponent lastPageLink = new BundleLinkComponent();
-							lastPageLink.setRelation("last");
-							lastPageLink.setUrl(lastPage);
-							bundle.getLink().add(lastPageLink);
-
-							// Cache current page Bundle
-							PagingHistoryManager.INSTANCE.putInCache(currentPage, bundle);
-
-							// Increment pageNum
-							pageNum++;
-							currentPage = locationPath + "&page=" + pageNum;
-
-							// Start new page Bundle
-							bundle = new Bundle();
-							bundle.setId(UUIDUtil.getUUID());
-							bundleMeta = new Meta();
-							bundleMeta.setVersionId("1");
-							bundleMeta.setLastUpdated(new Date());
-							bundle.setMeta(bundleMeta);
-							bundle.setType(BundleType.HISTORY);
-							bundle.setTotal(resources.size());
-							selfLink = new BundleLinkComponent();
-							selfLink.setRelation("self");
-							selfLink.setUrl(currentPage);
-							bundle.getLink().add(selfLink);
-						}
+			criteria.select(resource)
+				.where(cb.and(predicateList.toArray(new Predicate[predicateList.size()])))
+				.orderBy(cb.desc(resource.get("lastUpdate")), cb.desc(resource.get("id")));
 
-						BundleEntryComponent bundleEntry = new BundleEntryComponent();
+			// Read one row more than the page size to know if there is a next page
+			List<net.aegis.fhir.model.Resource> historyResources = em.createQuery(criteria).setMaxResults(pageSize + 1).getResultList();
 
-						// Bundle.entry.request
-						BundleEntryRequestComponent requestComponent = new BundleEntryRequestComponent();
+			log.fine("ResourceService.history - historyResources.size() = " + historyResources.size());
 
-						HTTPVerb requestMethod = HTTPVerb.PUT; // default to update
-						String requestUrl = resourceEntry.getResourceType() + "/" + resourceEntry.getResourceId();
-						if (resourceEntry.getStatus().equalsIgnoreCase("DELETED")) {
-							requestMethod = HTTPVerb.DELETE; // delete
-						}
-						if (resourceEntry.getVersionId().intValue() == 1) {
-							requestMethod = HTTPVerb.POST; // create
-							requestUrl = resourceEntry.getResourceType();
-						}
+			if (historyResources != null && historyResources.size() > 0) {
+				// 1 or more Resources found, build Bundle list of Element entry objects for each resource version
 
-						requestComponent.setMethod(requestMethod);
-						requestComponent.setUrl(requestUrl);
+				// Extract base url from locationPath for use in Bundle.entry.fullUrl element
+				String baseUrl = ServicesUtil.INSTANCE.extractBaseURL(locationPath, "/_history");
 
-						bundleEntry.setRequest(requestComponent);
+				boolean hasNextPage = false;
+				if (historyResources.size() > pageSize) {
+					hasNextPage = true;
+					historyResources = historyResources.subList(0, pageSize);
+				}
 
-						// Bundle.entry.response
-						BundleEntryResponseComponent responseComponent = new BundleEntryResponseComponent();
+				log.fine("ResourceService.history - hasNextPage = " + hasNextPage);
+
+				String pagingSeparator = (pagingPath.indexOf('?') < 0 ? "?" : "&");
+
+				// Initialize Bundle to return
+				Bundle bundle = new Bundle();
+
+				bundle.setId(UUIDUtil.getUUID());
+				Meta bundleMeta = new Meta();
+				bundleMeta.setVersionId("1");
+				bundleMeta.setLastUpdated(new Date());
+				bundle.setMeta(bundleMeta);
+				bundle.setType(BundleType.HISTORY);
+				BundleLinkComponent selfLink = new BundleLinkComponent();
+				selfLink.setRelation("self");
+				selfLink.setUrl(locationPath);
+				bundle.getLink().add(selfLink);
+
+				if (cursor_ != null || hasNextPage) {
+					BundleLinkComponent firstPageLink = new BundleLinkComponent();
+					firstPageLink.setRelation("first");
+					firstPageLink.setUrl(pagingPath);
+					bundle.getLink().add(firstPageLink);
+				}
 
-						String responseStatus = "200 (OK)";
-						if (resourceEntry.getVersionId().intValue() == 1) {
-							responseStatus = "201 (Created)";
-						}
-						responseComponent.setStatus(responseStatus);
-						responseComponent.setLastModified(resourceEntry.getLastUpdate());
+				if (hasNextPage) {
+					net.aegis.fhir.model.Resource lastEntry = historyResources.get(historyResources.size() - 1);
+					HistoryCursor nextCursor = new HistoryCursor(lastEntry.getLastUpdate(), lastEntry.getId().intValue());
 
-						bundleEntry.setResponse(responseComponent);
+					BundleLinkComponent nextPageLink = new BundleLinkComponent();
+					nextPageLink.setRelation("next");
+					nextPageLink.setUrl(pagingPath + pagingSeparator + HistoryCursor.PARAMETER_NAME + "=" + nextCursor.toToken());
+					bundle.getLink().add(nextPageLink);
+				}
 
-						// Bundle.entry.resource
-						if (!requestMethod.equals(HTTPVerb.DELETE)) {
-							// Convert XML contents to Resource object
-							iResource = new ByteArrayInputStream(resourceEntry.getResourceContents());
-							XmlParser xmlP = new XmlParser();
-							org.hl7.fhir.r4.model.Resource resourceObject = xmlP.parse(iResource);
+				for (net.aegis.fhir.model.Resource resourceEntry : historyResources) {
 
-							bundleEntry.setResource(resourceObject);
-						}
+					BundleEntryComponent bundleEntry = new BundleEntryComponent();
 
-						// Build and set Bundle.entry.fullUrl as reference to the resource id
-						//fullUrl = baseUrl + "/" + resourceEntry.getResourceId();
-						// Build and set Bundle.entry.fullUrl as unique UUID value
-						//fullUrl = UUIDUtil.getUUID(true);
-						bundleEntry.setFullUrl(baseUrl);
+					// Bundle.entry.request
+					BundleEntryRequestComponent requestComponent = new BundleEntryRequestComponent();
 
-						bundle.getEntry().add(bundleEntry);
+					HTTPVerb requestMethod = HTTPVerb.PUT; // default to update
+					String requestUrl = resourceEntry.getResourceType() + "/" + resourceEntry.getResourceId();
+					if (resourceEntry.getStatus().equalsIgnoreCase("DELETED")) {
+						requestMethod = HTTPVerb.DELETE; // delete
+					}
+					if (resourceEntry.getVersionId().intValue() == 1) {
+						requestMethod = HTTPVerb.POST; // create
+						requestUrl = resourceEntry.getResourceType();
 					}
 
-					if (needPaging) {
-						// Calculate next and previous pageNum values
-						nextPageNum = pageNum + 1;
-						prevPageNum = pageNum - 1;
+					requestComponent.setMethod(requestMethod);
+					requestComponent.setUrl(requestUrl);
 
-						// Populate paging links in current page Bundle
-						BundleLinkComponent firstPageLink = new BundleLinkComponent();
-						firstPageLink.setRelation("first");
-						firstPageLink.setUrl(firstPage);
-						bundle.getLink().add(firstPageLink);
+					bundleEntry.setRequest(requestComponent);
 
-						if (prevPageNum >= 1) {
-							BundleLinkComponent prevPageLink = new BundleLinkComponent();
-							prevPageLink.setRelation("previous");
-							prevPageLink.setUrl(locationPath + "&page=" + prevPageNum);
-							bundle.getLink().add(prevPageLink);
-						}
+					// Bundle.entry.response
+					BundleEntryResponseComponent responseComponent = new BundleEntryResponseComponent();
 
-						if (nextPageNum <= pageCount) {
-							BundleLinkComponent nextPageLink = new BundleLinkComponent();
-							nextPageLink.setRelation("next");
-							nextPageLink.setUrl(locationPath + "&page=" + nextPageNum);
-							bundle.getLink().add(nextPageLink);
-						}
+					String responseStatus = "200 (OK)";
+					if (resourceEntry.getVersionId().intValue() == 1) {
+						responseStatus = "201 (Created)";
+					}
+					responseComponent.setStatus(responseStatus);
+					responseComponent.setLastModified(resourceEntry.getLastUpdate());
 
-						BundleLinkComponent lastPageLink = new BundleLinkComponent();
-						lastPageLink.setRelation("last");
-						lastPageLink.setUrl(lastPage);
-						bundle.getLink().add(lastPageLink);
+					bundleEntry.setResponse(responseComponent);
 
-						// Cache current page Bundle
-						PagingHistoryManager.INSTANCE.putInCache(currentPage, bundle);
+					// Bundle.entry.resource
+					if (!requestMethod.equals(HTTPVerb.DELETE)) {
+						// Convert XML contents to Resource object
+						iResource = new ByteArrayInputStream(resourceEntry.getResourceContents());
+						XmlParser xmlP = new XmlParser();
+						org.hl7.fhir.r4.model.Resource resourceObject = xmlP.parse(iResource);
 
-						// Get first page from cache
-						bundle = PagingHistoryManager.INSTANCE.retrieveFromCache(firstPage);
+						bundleEntry.setResource(resourceObject);
 					}
 
-					resourceContainer.setBundle(bundle);
-					resourceContainer.setResponseStatus(Response.Status.OK);
-				}
-				else {
-					// No match found
-					resourceContainer.setResource(null);
-					resourceContainer.setResponseStatus(Response.Status.NOT_FOUND);
-					resourceContainer.setMessage("No history found.");
+					// Build and set Bundle.entry.fullUrl as reference to the resource id
+					//fullUrl = baseUrl + "/" + resourceEntry.getResourceId();
+					// Build and set Bundle.entry.fullUrl as unique UUID value
+					//fullUrl = UUIDUtil.getUUID(true);
+					bundleEntry.setFullUrl(baseUrl);
+
+					bundle.getEntry().add(bundleEntry);
 				}
+
+				resourceContainer.setBundle(bundle);
+				resourceContainer.setResponseStatus(Response.Status.OK);
+			}
+			else {
+				// No match found
+				resourceContainer.setResource(null);
+				resourceContainer.setResponseStatus(Response.Status.NOT_FOUND);
+				resourceContainer.setMessage("No history found.");
 			}
 		} catch (Exception e) {
 			log.severe(e.getMessage());
@@ -1053,6 +1096,8 @@ public class ResourceService {
 				List<Predicate> predicateList = new ArrayList<Predicate>();
 				predicateList.add(cb.equal(resource.get("resourceId"), resourceId));
 				predicateList.add(cb.equal(resource.get("resourceType"), resourceType));
+				// Only the current version row is read
+				predicateList.add(cb.isTrue(resource.get("isCurrent")));
 
 				criteria.select(resource)
 					.where(cb.and(predicateList.toArray(new Predicate[predicateList.size()])))
@@ -1453,12 +1498,13 @@ public class ResourceService {
 			byte[] resourceBytes = xmlP.composeBytes(resourceObject);
 
 			newResource.setResourceContents(resourceBytes);
+			setResourceContentsJson(newResource, resourceObject);
 
 			/*
 			 *  TRANSACTION BEGIN
 			 */
 			userTransaction.begin();
-			em.persist(newResource);
+			persistCurrentVersion(newResource);
 			resourceEventSrc.fire(newResource);
 
 			// Extract base url from update path
@@ -1515,12 +1561,13 @@ public class ResourceService {
 			byte[] resourceBytes = xmlP.composeBytes(resourceObject);
 
 			newResource.setResourceContents(resourceBytes);
+			setResourceContentsJson(newResource, resourceObject);
 
 			/*
 			 *  TRANSACTION BEGIN
 			 */
 			userTransaction.begin();
-			em.persist(newResource);
+			persistCurrentVersion(newResource);
 			resourceEventSrc.fire(newResource);
 
 			// Extract base url from update path
@@ -1539,61 +1586,209 @@ public class ResourceService {
 
 			resourceContainer.setResponseStatus(Response.Status.OK);
 			resourceContainer.setResource(newResource);
+
+			// Refresh the chained parameters of the resources referencing this resource in the background
+			chainedReindexService.submit(newResource.getResourceType(), resourceId, baseUrl);
 		}
 
 		return resourceContainer;
 	}
 
 	/**
-	 * The json patch interaction creates a new current version for an existing resource. The patch interaction is performed
-	 * by an HTTP PATCH command.
+	 * Persist the create, update and delete entries of a transaction Bundle as a single unit of work. The current
+	 * versions of the updated and deleted resources are read with batched queries, all new versions and their
+	 * Resourcemetadata are written in one transaction and the prior current versions are cleared with multi-row
+	 * statements. Any failure rolls back all writes.
 	 *
-	 * @param jsonPatchString
-	 * @param resource
-	 * @return <code>ResourceContainer</code>
+	 * @param writes - in processing order; all references of the resource objects must be resolved
+	 * @param baseUrl
 	 * @throws Exception
 	 */
-	public ResourceContainer jsonPatch(String jsonPatchString, ResourceContainer resourceContainer, String baseUrl) throws Exception {
+	public void transactionWrite(List<ResourceWriteContainer> writes, String baseUrl) throws Exception {
 
-		log.fine("[START] ResourceService.jsonPatch");
+		log.fine("[START] ResourceService.transactionWrite - writes.size(): " + writes.size());
 
-		boolean isTestOnly = false;
-		String resourceId = resourceContainer.getResource().getResourceId();
-		net.aegis.fhir.model.Resource resource = resourceContainer.getResource();
-		org.hl7.fhir.r4.model.Resource newResourceObject = null;
-		String resourceMessage = null;
-		XmlParser xmlParser = new XmlParser();
+		XmlParser xmlP = new XmlParser();
+		xmlP.setOutputStyle(OutputStyle.PRETTY);
 
-		log.fine("JSON PATCH String: " + jsonPatchString);
+		List<net.aegis.fhir.model.Resource> newResources = new ArrayList<net.aegis.fhir.model.Resource>();
+		List<Resourcemetadata> resourcemetadataList = new ArrayList<Resourcemetadata>();
+
+		// All versions written by the transaction share the same last update
+		Date updatedTime = new Date();
 
 		try {
-			// Convert XML contents to Resource object
-			ByteArrayInputStream iResource = new ByteArrayInputStream(resource.getResourceContents());
-			org.hl7.fhir.r4.model.Resource resourceObject = xmlParser.parse(iResource);
+			/*
+			 *  TRANSACTION BEGIN
+			 */
+			userTransaction.begin();
 
-			// Convert Resource object to be patched to a JSON string
-			ByteArrayOutputStream oResource = new ByteArrayOutputStream();
-			JsonParser jsonParser = new JsonParser();
-            jsonParser.setOutputStyle(OutputStyle.PRETTY);
-			jsonParser.compose(oResource, resourceObject);
-			String jsonSourceString = oResource.toString();
+			Map<String, net.aegis.fhir.model.Resource> currentVersions = readCurrentVersions(writes);
 
-			// Apply JSON Patch and get updated resource back as a JSON string
-			String jsonTargetString = JsonPatchUtil.INSTANCE.applyJsonPatch(jsonPatchString, jsonSourceString);
+			for (ResourceWriteContainer write : writes) {
+				String resourceKey = write.getResourceType() + "/" + write.getResourceId();
+				net.aegis.fhir.model.Resource currentResource = currentVersions.get(resourceKey);
+				boolean isCurrentDeleted = (currentResource != null && currentResource.getStatus() != null && currentResource.getStatus().equalsIgnoreCase("DELETED"));
 
-			// Convert the patched(updated) JSON string back to a Resource object
-			iResource = new ByteArrayInputStream(jsonTargetString.getBytes());
-			newResourceObject = jsonParser.parse(iResource);
+				org.hl7.fhir.r4.model.Resource resourceObject = null;
+				String status = "valid";
 
-			isTestOnly = JsonPatchUtil.INSTANCE.isJsonPatchTestOnly(jsonPatchString);
-		}
-		catch (Exception e) {
-			newResourceObject = null;
-			resourceMessage = "Exception applying JSON Patch! " + e.getMessage();
-			log.severe("Exception applying JSON Patch! " + e.getMessage());
-		}
+				if (write.getMethod().equals(HTTPVerb.DELETE)) {
+					if (currentResource == null) {
+						// the resource was not found
+						write.setResponseStatus(Response.Status.NO_CONTENT);
+						continue;
+					}
+					else if (isCurrentDeleted) {
+						// the current version of this resource is already deleted
+						write.setResponseStatus(Response.Status.OK);
+						continue;
+					}
 
-		if (newResourceObject != null) {
+					// Convert XML contents of the current Resource object
+					resourceObject = xmlP.parse(new ByteArrayInputStream(currentResource.getResourceContents()));
+					status = "deleted";
+					write.setResponseStatus(Response.Status.NO_CONTENT);
+				}
+				else {
+					resourceObject = write.getResourceObject();
+
+					if (write.getMethod().equals(HTTPVerb.PUT) && currentResource != null) {
+						write.setResponseStatus(Response.Status.OK);
+					}
+					else {
+						write.setResponseStatus(Response.Status.CREATED);
+					}
+				}
+
+				if (currentResource != null && !isCurrentDeleted) {
+					// Delete the Resourcemetadata objects for the current Resource
+					resourcemetadataService.deleteAllForResource(currentResource);
+				}
+
+				Integer newVersion = Integer.valueOf(currentResource != null ? currentResource.getVersionId().intValue() + 1 : 1);
+
+				net.aegis.fhir.model.Resource newResource = new net.aegis.fhir.model.Resource();
+				newResource.setResourceId(write.getResourceId());
+				newResource.setVersionId(newVersion);
+				newResource.setResourceType(write.getResourceType());
+				newResource.setStatus(status);
+				newResource.setLastUser("system");
+				newResource.setLastUpdate(updatedTime);
+
+				resourceObject.setId(write.getResourceId());
+
+				Meta resourceMeta = new Meta();
+				if (resourceObject.hasMeta()) {
+					resourceMeta = resourceObject.getMeta();
+				}
+				resourceMeta.setVersionId(newVersion.toString());
+				resourceMeta.setLastUpdated(updatedTime);
+				resourceObject.setMeta(resourceMeta);
+
+				newResource.setResourceContents(xmlP.composeBytes(resourceObject));
+				setResourceContentsJson(newResource, resourceObject);
+
+				// The prior current versions are cleared for all written resources after the loop
+				newResource.setCurrent(true);
+				em.persist(newResource);
+				ChainedResourceResolutionCache.evict(newResource.getResourceType(), newResource.getResourceId());
+				resourceEventSrc.fire(newResource);
+
+				if (!write.getMethod().equals(HTTPVerb.DELETE)) {
+					// Generate the list of Resourcemetadata objects for the new Resource
+					List<Resourcemetadata> newResourcemetadataList = resourcemetadataService.generateAllForResource(newResource, baseUrl, this);
+
+					for (Resourcemetadata resourcemetadata : newResourcemetadataList) {
+						resourcemetadata.setResource(newResource);
+					}
+					resourcemetadataList.addAll(newResourcemetadataList);
+				}
+
+				write.setResource(newResource);
+				newResources.add(newResource);
+
+				// A later entry for the same resource builds on this version
+				currentVersions.put(resourceKey, newResource);
+			}
+
+			clearPriorCurrentVersions(newResources);
+
+			// Create the new Resourcemetadata objects for all new Resources
+			resourcemetadataService.createAllForResources(resourcemetadataList);
+
+			/*
+			 *  TRANSACTION COMMIT(END)
+			 */
+			userTransaction.commit();
+
+		} catch (Exception e) {
+			// Exception caught
+			if (userTransaction.getStatus() != Status.STATUS_NO_TRANSACTION) {
+				userTransaction.rollback();
+			}
+			log.severe(e.getMessage());
+			throw e;
+		}
+
+		for (ResourceWriteContainer write : writes) {
+			if (write.getMethod().equals(HTTPVerb.PUT) && Response.Status.OK.equals(write.getResponseStatus())) {
+				// Refresh the chained parameters of the resources referencing this resource in the background
+				chainedReindexService.submit(write.getResourceType(), write.getResourceId(), baseUrl);
+			}
+		}
+	}
+
+	/**
+	 * The json patch interaction creates a new current version for an existing resource. The patch interaction is performed
+	 * by an HTTP PATCH command.
+	 *
+	 * @param jsonPatchString
+	 * @param resource
+	 * @return <code>ResourceContainer</code>
+	 * @throws Exception
+	 */
+	public ResourceContainer jsonPatch(String jsonPatchString, ResourceContainer resourceContainer, String baseUrl) throws Exception {
+
+		log.fine("[START] ResourceService.jsonPatch");
+
+		boolean isTestOnly = false;
+		String resourceId = resourceContainer.getResource().getResourceId();
+		net.aegis.fhir.model.Resource resource = resourceContainer.getResource();
+		org.hl7.fhir.r4.model.Resource newResourceObject = null;
+		String resourceMessage = null;
+		XmlParser xmlParser = new XmlParser();
+
+		log.fine("JSON PATCH String: " + jsonPatchString);
+
+		try {
+			// Convert XML contents to Resource object
+			ByteArrayInputStream iResource = new ByteArrayInputStream(resource.getResourceContents());
+			org.hl7.fhir.r4.model.Resource resourceObject = xmlParser.parse(iResource);
+
+			// Convert Resource object to be patched to a JSON string
+			ByteArrayOutputStream oResource = new ByteArrayOutputStream();
+			JsonParser jsonParser = new JsonParser();
+            jsonParser.setOutputStyle(OutputStyle.PRETTY);
+			jsonParser.compose(oResource, resourceObject);
+			String jsonSourceString = oResource.toString();
+
+			// Apply JSON Patch and get updated resource back as a JSON string
+			String jsonTargetString = JsonPatchUtil.INSTANCE.applyJsonPatch(jsonPatchString, jsonSourceString);
+
+			// Convert the patched(updated) JSON string back to a Resource object
+			iResource = new ByteArrayInputStream(jsonTargetString.getBytes());
+			newResourceObject = jsonParser.parse(iResource);
+
+			isTestOnly = JsonPatchUtil.INSTANCE.isJsonPatchTestOnly(jsonPatchString);
+		}
+		catch (Exception e) {
+			newResourceObject = null;
+			resourceMessage = "Exception applying JSON Patch! " + e.getMessage();
+			log.severe("Exception applying JSON Patch! " + e.getMessage());
+		}
+
+		if (newResourceObject != null) {
 
 			// If not test only, then apply update to repository
 			if (!isTestOnly) {
@@ -1625,12 +1820,13 @@ public class ResourceService {
 				byte[] resourceBytes = xmlParser.composeBytes(newResourceObject);
 
 				newResource.setResourceContents(resourceBytes);
+				setResourceContentsJson(newResource, newResourceObject);
 
 				/*
 				 *  TRANSACTION BEGIN
 				 */
 				userTransaction.begin();
-				em.persist(newResource);
+				persistCurrentVersion(newResource);
 				resourceEventSrc.fire(newResource);
 
 				// Generate the list of Resourcemetadata objects for the new Resource
@@ -1734,12 +1930,13 @@ public class ResourceService {
 			byte[] resourceBytes = xmlParser.composeBytes(newResourceObject);
 
 			newResource.setResourceContents(resourceBytes);
+			setResourceContentsJson(newResource, newResourceObject);
 
 			/*
 			 *  TRANSACTION BEGIN
 			 */
 			userTransaction.begin();
-			em.persist(newResource);
+			persistCurrentVersion(newResource);
 			resourceEventSrc.fire(newResource);
 
 			// Generate the list of Resourcemetadata objects for the new Resource
@@ -1782,7 +1979,30 @@ public class ResourceService {
 	 */
 	public ResourceContainer search(MultivaluedMap<String,String> parameterMap, MultivaluedMap<String,String> formMap, List<NameValuePair> orderedParams, String resourceType, String locationPath, Integer count_, Integer page_, String summary_, boolean isCompartment) throws Exception {
 
-		log.fine("[START] ResourceService.search");
+		return search(parameterMap, formMap, orderedParams, resourceType, locationPath, count_, page_, summary_, isCompartment, false);
+	}
+
+	/**
+	 * Search variant used by the RESTful search interaction. If isStoredContents is true, the Bundle entry resources are
+	 * not parsed; each entry holds the stored XML contents as a <code>StoredResourceContents</code> to be spliced into the
+	 * response by <code>BundleStreamingOutput</code>. Only use when the Bundle is returned to the client as is.
+	 *
+	 * @param parameterMap
+	 * @param formMap
+	 * @param orderedParams
+	 * @param resourceType
+	 * @param locationPath
+	 * @param count_
+	 * @param page_
+	 * @param summary_
+	 * @param isCompartment
+	 * @param isStoredContents
+	 * @return <code>ResourceContainer</code>
+	 * @throws Exception
+	 */
+	public ResourceContainer search(MultivaluedMap<String,String> parameterMap, MultivaluedMap<String,String> formMap, List<NameValuePair> orderedParams, String resourceType, String locationPath, Integer count_, Integer page_, String summary_, boolean isCompartment, boolean isStoredContents) throws Exception {
+
+		log.fine("[START] ResourceService.search - isStoredContents: " + isStoredContents);
 
 		ResourceContainer resourceContainer = new ResourceContainer();
 
@@ -1794,666 +2014,657 @@ public class ResourceService {
 		List<OperationOutcome.OperationOutcomeIssueComponent> issues = null;
 
 		try {
-			// Check for paged request; page parameter is not null
+			log.fine("ResourceService.search - search request; page is " + page_ + "; compartment is " + isCompartment);
+
+			List<String> _matchedId = new ArrayList<String>();
+			List<String[]> _include = new ArrayList<String[]>();
+			List<String> _includedId = new ArrayList<String>();
+			List<String[]> _includeIterate = new ArrayList<String[]>();
+			//List<String> _includeIteratedId = new ArrayList<String>();
+			List<String[]> _revinclude = new ArrayList<String[]>();
+			List<String> _revincludedId = new ArrayList<String>();
+			List<String[]> validParams = new ArrayList<String[]>();
+			List<String[]> invalidParams = new ArrayList<String[]>();
+
+			/*
+			 *  Determine the requested page. The first request of a search executes an id only query and caches a compact
+			 *  search cursor of the ordered resource row ids; the requested page is then built on demand from the cursor
+			 *  by reading only the rows of that page. Requests for a page beyond the ids held by the cursor fall back to
+			 *  paging in the search query.
+			 */
+			Integer maxCount = Integer.valueOf(500);
+			Integer maxCursorCount = Integer.valueOf(5000);
+
+			int pageSize = 0;
+			if (count_ != null && count_.intValue() > 0) {
+				// if defined use as page size; may need to support paging
+				pageSize = Math.min(count_.intValue(), maxCount.intValue());
+			}
+			else {
+				// if not defined set page size equal to maximum count allowed for
+				pageSize = maxCount.intValue();
+			}
+
+			int pageNum = 1;
 			if (page_ != null && page_.intValue() > 0) {
-				log.fine("ResourceService.search - cached page requested");
+				pageNum = page_.intValue();
+			}
 
-				// Retrieve page from history cache using locationPath as the key
-				Bundle bundle = PagingSearchManager.INSTANCE.retrieveFromCache(locationPath);
+			// Check for count=0 or _summary=count parameter setting; if set, then only the total is needed
+			boolean isCountOnly = ((count_ != null && count_.intValue() == 0) || (summary_ != null && summary_.equals("count")));
 
-				if (bundle != null) {
-					resourceContainer.setBundle(bundle);
-					resourceContainer.setResponseStatus(Response.Status.OK);
+			MultivaluedMap<String,String> searchParameterMap = removePageParameter(parameterMap);
+			MultivaluedMap<String,String> searchFormMap = removePageParameter(formMap);
+
+			String fingerprint = PagingSearchManager.INSTANCE.fingerprint(resourceType, isCompartment, searchParameterMap, searchFormMap);
+
+			SearchCursor searchCursor = null;
+			if (pageNum > 1 && !isCountOnly) {
+				searchCursor = PagingSearchManager.INSTANCE.retrieveFromCache(fingerprint);
+			}
+
+			int total = 0;
+			List<net.aegis.fhir.model.Resource> resources = new ArrayList<net.aegis.fhir.model.Resource>();
+
+			if (searchCursor != null) {
+				log.fine("ResourceService.search - search cursor found for fingerprint " + fingerprint);
+
+				// Restore the search criteria state from the cursor
+				validParams.addAll(searchCursor.getValidParams());
+				invalidParams.addAll(searchCursor.getInvalidParams());
+				_include.addAll(searchCursor.getInclude());
+				_includeIterate.addAll(searchCursor.getIncludeIterate());
+				_revinclude.addAll(searchCursor.getRevinclude());
+
+				total = searchCursor.getTotal();
+			}
+			else {
+				List<Integer> totalCount = new ArrayList<Integer>();
+
+				if (isCountOnly) {
+					searchQuery(searchParameterMap, searchFormMap, resourceType, isCompartment, _include, _includeIterate, _revinclude, validParams, invalidParams, null, Integer.valueOf(0), totalCount);
+
+					total = (totalCount.isEmpty() ? 0 : totalCount.get(0).intValue());
 				}
 				else {
-					// Page cache has expired
-					resourceContainer.setResource(null);
-					resourceContainer.setResponseStatus(Response.Status.NOT_FOUND);
-					resourceContainer.setMessage("Search page cache has expired.");
+					List<Integer> resultIds = searchQueryIds(searchParameterMap, searchFormMap, resourceType, isCompartment, _include, _includeIterate, _revinclude, validParams, invalidParams, maxCursorCount, totalCount);
+
+					total = (totalCount.isEmpty() ? resultIds.size() : totalCount.get(0).intValue());
+
+					searchCursor = new SearchCursor(fingerprint, getSortKeys(searchParameterMap, searchFormMap), total, resultIds, validParams, invalidParams, _include, _includeIterate, _revinclude);
+
+					// Only cache the cursor if more than one page is needed
+					if (total > pageSize) {
+						PagingSearchManager.INSTANCE.putInCache(fingerprint, searchCursor);
+					}
 				}
 			}
-			else {
-				log.fine("ResourceService.search - new search request; compartment is " + isCompartment);
-
-				List<String> _matchedId = new ArrayList<String>();
-				List<String[]> _include = new ArrayList<String[]>();
-				List<String> _includedId = new ArrayList<String>();
-				List<String[]> _includeIterate = new ArrayList<String[]>();
-				//List<String> _includeIteratedId = new ArrayList<String>();
-				List<String[]> _revinclude = new ArrayList<String[]>();
-				List<String> _revincludedId = new ArrayList<String>();
-				List<String[]> validParams = new ArrayList<String[]>();
-				List<String[]> invalidParams = new ArrayList<String[]>();
 
-				List<net.aegis.fhir.model.Resource> resources = searchQuery(parameterMap, formMap, resourceType, isCompartment, _include, _includeIterate, _revinclude, validParams, invalidParams);
+			// Build the requested page only
+			if (searchCursor != null) {
+				int firstResult = (pageNum - 1) * pageSize;
 
-				log.fine("ResourceService.search - resources.size() = " + resources.size());
+				if (firstResult < searchCursor.getResultIdCount()) {
+					resources = findResourcesByIds(searchCursor.getPageIds(firstResult, pageSize));
+				}
+				else if (firstResult < total) {
+					log.fine("ResourceService.search - requested page is beyond the search cursor; paging in the search query");
 
-				// Extract base url from locationPath for use in Bundle.entry.fullUrl element
-				String baseSelfUrl = ServicesUtil.INSTANCE.extractBaseURL(locationPath, "?");
-				// FHIR-159 - Check for trailing forward slash and remove if present
-				if (baseSelfUrl.endsWith("/")){
-					baseSelfUrl = baseSelfUrl.substring(0, baseSelfUrl.length() - 1);
+					resources = searchQuery(searchParameterMap, searchFormMap, resourceType, isCompartment, new ArrayList<String[]>(), new ArrayList<String[]>(), new ArrayList<String[]>(), new ArrayList<String[]>(), new ArrayList<String[]>(),
+							Integer.valueOf(firstResult), Integer.valueOf(pageSize), null);
 				}
-				StringBuffer selfUrl = new StringBuffer(baseSelfUrl);
-				int validCount = 0;
-				if (orderedParams != null && !orderedParams.isEmpty()) {
-					selfUrl.append("?");
-					for (NameValuePair param : orderedParams) {
-						log.fine("  param.name = '" + param.getName() + "'; param.value = '" + param.getValue() + "'");
-
-						// Add orderedParam to selfUrl only if param.name in validParams
-						for (String[] validParam : validParams) {
-							if (validParam[0].equals(param.getName())) {
-								if (validCount > 0) {
-									selfUrl.append("&");
-								}
-								selfUrl.append(param.getName()).append("=").append(URLEncoder.encode(param.getValue(), StandardCharsets.UTF_8));
-								validCount++;
+			}
+
+			log.fine("ResourceService.search - total = " + total + "; pageNum = " + pageNum + "; resources.size() = " + resources.size());
 
-								log.fine("      --> Adding " + param.getName() + " = '" + param.getValue() + "'");
-								break; // Only include first validParam match
+			// Extract base url from locationPath for use in Bundle.entry.fullUrl element
+			String baseSelfUrl = ServicesUtil.INSTANCE.extractBaseURL(locationPath, "?");
+			// FHIR-159 - Check for trailing forward slash and remove if present
+			if (baseSelfUrl.endsWith("/")){
+				baseSelfUrl = baseSelfUrl.substring(0, baseSelfUrl.length() - 1);
+			}
+			StringBuffer selfUrl = new StringBuffer(baseSelfUrl);
+			int validCount = 0;
+			if (orderedParams != null && !orderedParams.isEmpty()) {
+				selfUrl.append("?");
+				for (NameValuePair param : orderedParams) {
+					log.fine("  param.name = '" + param.getName() + "'; param.value = '" + param.getValue() + "'");
+
+					// Add orderedParam to selfUrl only if param.name in validParams
+					for (String[] validParam : validParams) {
+						if (validParam[0].equals(param.getName())) {
+							if (validCount > 0) {
+								selfUrl.append("&");
 							}
+							selfUrl.append(param.getName()).append("=").append(URLEncoder.encode(param.getValue(), StandardCharsets.UTF_8));
+							validCount++;
+
+							log.fine("      --> Adding " + param.getName() + " = '" + param.getValue() + "'");
+							break; // Only include first validParam match
 						}
 					}
 				}
+			}
 
-				// Process any invalidParams into a Bundle.entry.resource OperationOutcome
-				BundleEntryComponent bundleEntryOutcome = null;
-				if (!invalidParams.isEmpty()) {
-					bundleEntryOutcome = new BundleEntryComponent();
-					OperationOutcome.OperationOutcomeIssueComponent issue = null;
-					issues = new ArrayList<OperationOutcome.OperationOutcomeIssueComponent>();
+			// Process any invalidParams into a Bundle.entry.resource OperationOutcome
+			BundleEntryComponent bundleEntryOutcome = null;
+			if (!invalidParams.isEmpty()) {
+				bundleEntryOutcome = new BundleEntryComponent();
+				OperationOutcome.OperationOutcomeIssueComponent issue = null;
+				issues = new ArrayList<OperationOutcome.OperationOutcomeIssueComponent>();
 
-					for (String[] invalidParam : invalidParams) {
-						if (invalidParam[0].equals("ERROR")) {
-							issue = ServicesUtil.INSTANCE.getOperationOutcomeIssueComponent(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INVALID, invalidParam[1], null, null);
-						}
-						else {
-							issue = ServicesUtil.INSTANCE.getOperationOutcomeIssueComponent(OperationOutcome.IssueSeverity.WARNING, OperationOutcome.IssueType.INVALID, "Invalid search parameter '" + invalidParam[0] + "' found in search criteria." + (invalidParam.length > 1 && invalidParam[1] != null ? " " + invalidParam[1] : ""), null, invalidParam[0]);
-						}
-						if (issue != null) {
-							issues.add(issue);
-						}
+				for (String[] invalidParam : invalidParams) {
+					if (invalidParam[0].equals("ERROR")) {
+						issue = ServicesUtil.INSTANCE.getOperationOutcomeIssueComponent(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INVALID, invalidParam[1], null, null);
+					}
+					else {
+						issue = ServicesUtil.INSTANCE.getOperationOutcomeIssueComponent(OperationOutcome.IssueSeverity.WARNING, OperationOutcome.IssueType.INVALID, "Invalid search parameter '" + invalidParam[0] + "' found in search criteria." + (invalidParam.length > 1 && invalidParam[1] != null ? " " + invalidParam[1] : ""), null, invalidParam[0]);
+					}
+					if (issue != null) {
+						issues.add(issue);
 					}
+				}
 
-					String ooResourceId = UUIDUtil.getUUID(false);
+				String ooResourceId = UUIDUtil.getUUID(false);
 
-					outcome = ServicesUtil.INSTANCE.getOperationOutcomeResource(issues);
+				outcome = ServicesUtil.INSTANCE.getOperationOutcomeResource(issues);
 
-					outcome.setId(ooResourceId);
+				outcome.setId(ooResourceId);
 
-					bundleEntryOutcome.setFullUrl("urn:uuid:" + ooResourceId);
-					bundleEntryOutcome.setResource(outcome);
+				bundleEntryOutcome.setFullUrl("urn:uuid:" + ooResourceId);
+				bundleEntryOutcome.setResource(outcome);
 
-					BundleEntrySearchComponent bundleEntryOutcomeSearch = new BundleEntrySearchComponent();
-					bundleEntryOutcomeSearch.setMode(SearchEntryMode.OUTCOME);
-					bundleEntryOutcome.setSearch(bundleEntryOutcomeSearch);
-				}
+				BundleEntrySearchComponent bundleEntryOutcomeSearch = new BundleEntrySearchComponent();
+				bundleEntryOutcomeSearch.setMode(SearchEntryMode.OUTCOME);
+				bundleEntryOutcome.setSearch(bundleEntryOutcomeSearch);
+			}
 
-				if (resources != null && resources.size() > 0) {
+			if (total > 0) {
 
-					/*
-					 *  Check for count=0 or _summary=count parameter setting; if set, then only return total
-					 *  without any page links and without any entries
-					 */
-					if ((count_ != null && count_.intValue() == 0) || (summary_ != null && summary_.equals("count"))) {
-						Bundle bundle = new Bundle();
-
-						bundle.setId(UUIDUtil.getUUID());
-						Meta bundleMeta = new Meta();
-						bundleMeta.setVersionId("1");
-						bundleMeta.setLastUpdated(new Date());
-						bundle.setMeta(bundleMeta);
-						bundle.setType(BundleType.SEARCHSET);
-						bundle.setTotal(resources.size());
-						BundleLinkComponent selfLink = new BundleLinkComponent();
-						selfLink.setRelation("self");
-						selfLink.setUrl(selfUrl.toString());
-						bundle.getLink().add(selfLink);
+				/*
+				 *  Check for count=0 or _summary=count parameter setting; if set, then only return total
+				 *  without any page links and without any entries
+				 */
+				if (isCountOnly) {
+					Bundle bundle = new Bundle();
 
-						if (bundleEntryOutcome != null) {
-							bundle.getEntry().add(bundleEntryOutcome);
-						}
+					bundle.setId(UUIDUtil.getUUID());
+					Meta bundleMeta = new Meta();
+					bundleMeta.setVersionId("1");
+					bundleMeta.setLastUpdated(new Date());
+					bundle.setMeta(bundleMeta);
+					bundle.setType(BundleType.SEARCHSET);
+					bundle.setTotal(total);
+					BundleLinkComponent selfLink = new BundleLinkComponent();
+					selfLink.setRelation("self");
+					selfLink.setUrl(selfUrl.toString());
+					bundle.getLink().add(selfLink);
 
-						resourceContainer.setBundle(bundle);
-						resourceContainer.setResponseStatus(Response.Status.OK);
+					if (bundleEntryOutcome != null) {
+						bundle.getEntry().add(bundleEntryOutcome);
 					}
-					else {
-						// 1 or more Resources found, build Bundle list of Element entry objects for each resource
 
-						// First, populate the _matchedId list for use in _include and _revInclude duplicate check
-						for (net.aegis.fhir.model.Resource resourceEntry : resources) {
-							_matchedId.add(resourceEntry.getResourceType() + "/" + resourceEntry.getResourceId());
-						}
+					resourceContainer.setBundle(bundle);
+					resourceContainer.setResponseStatus(Response.Status.OK);
+				}
+				else {
+					// 1 or more Resources found, build Bundle list of Element entry objects for each resource
 
-						// Extract base url from locationPath for use in Bundle.entry.fullUrl element
-						String baseUrl = null;
+					// First, populate the _matchedId list for use in _include and _revInclude duplicate check
+					for (net.aegis.fhir.model.Resource resourceEntry : resources) {
+						_matchedId.add(resourceEntry.getResourceType() + "/" + resourceEntry.getResourceId());
+					}
 
-						if (resourceType != null) {
-							baseUrl = ServicesUtil.INSTANCE.extractBaseURL(locationPath, resourceType);
-						}
-						else {
-							baseUrl = ServicesUtil.INSTANCE.extractBaseURL(locationPath, "?");
-							// FHIR-159 - Check for trailing forward slash, add if not present
-							if (!baseUrl.endsWith("/")){
-								baseUrl += "/";
-							}
+					// Extract base url from locationPath for use in Bundle.entry.fullUrl element
+					String baseUrl = null;
+
+					if (resourceType != null) {
+						baseUrl = ServicesUtil.INSTANCE.extractBaseURL(locationPath, resourceType);
+					}
+					else {
+						baseUrl = ServicesUtil.INSTANCE.extractBaseURL(locationPath, "?");
+						// FHIR-159 - Check for trailing forward slash, add if not present
+						if (!baseUrl.endsWith("/")){
+							baseUrl += "/";
 						}
+					}
 
-						String revIncludeBaseUrl = baseUrl;
-						String fullUrl = "";
+					String revIncludeBaseUrl = baseUrl;
+					String fullUrl = "";
 
-						// Check for _count
-						int pageSize = 0;
-						if (count_ != null && count_.intValue() > 0) {
-							// if defined use as page size; may need to support paging
-							pageSize = count_.intValue();
-						}
-						else {
-							// if not defined set page size equal to number of found resources; i.e. no paging
-							pageSize = resources.size();
-						}
+					log.fine("ResourceService.search - pageSize = " + pageSize);
 
-						log.fine("ResourceService.search - pageSize = " + pageSize);
+					// Test whether paging is needed
+					boolean needPaging = false;
+					int pageCount = 1;
+					if (pageSize < total) {
+						needPaging = true;
+						pageCount = this.divideAndRoundUp(total, pageSize);
+					}
 
-						// Test whether paging is needed
-						boolean needPaging = false;
-						int pageCount = 1;
-						int pageNum = 1;
-						if (pageSize < resources.size()) {
-							needPaging = true;
-							pageCount = this.divideAndRoundUp(resources.size(), pageSize);
-						}
+					log.fine("ResourceService.search - pageCount = " + pageCount + "; needPaging = " + needPaging);
 
-						log.fine("ResourceService.search - pageCount = " + pageCount + "; needPaging = " + needPaging);
-
-						String currentPage = selfUrl.toString() + "&page=1";
-						String firstPage = selfUrl.toString() + "&page=1";
-						String lastPage = selfUrl.toString() + "&page=" + pageCount;
-						int nextPageNum = -1;
-						int prevPageNum = -1;
-
-						Bundle bundle = new Bundle();
-
-						bundle.setId(UUIDUtil.getUUID());
-						Meta bundleMeta = new Meta();
-						bundleMeta.setVersionId("1");
-						bundleMeta.setLastUpdated(new Date());
-						bundle.setMeta(bundleMeta);
-						bundle.setType(BundleType.SEARCHSET);
-						bundle.setTotal(resources.size());
-						BundleLinkComponent selfLink = new BundleLinkComponent();
-						selfLink.setRelation("self");
-						if (needPaging) {
-							selfLink.setUrl(currentPage);
-						}
-						else {
-							selfLink.setUrl(selfUrl.toString());
-						}
-						bundle.getLink().add(selfLink);
+					String currentPage = selfUrl.toString() + "&page=" + pageNum;
+					String firstPage = selfUrl.toString() + "&page=1";
+					String lastPage = selfUrl.toString() + "&page=" + pageCount;
+					int nextPageNum = -1;
+					int prevPageNum = -1;
 
-						int resourceCount = 0;
+					Bundle bundle = new Bundle();
 
-						XmlParser xmlP = new XmlParser();
+					bundle.setId(UUIDUtil.getUUID());
+					Meta bundleMeta = new Meta();
+					bundleMeta.setVersionId("1");
+					bundleMeta.setLastUpdated(new Date());
+					bundle.setMeta(bundleMeta);
+					bundle.setType(BundleType.SEARCHSET);
+					bundle.setTotal(total);
+					BundleLinkComponent selfLink = new BundleLinkComponent();
+					selfLink.setRelation("self");
+					if (needPaging) {
+						selfLink.setUrl(currentPage);
+					}
+					else {
+						selfLink.setUrl(selfUrl.toString());
+					}
+					bundle.getLink().add(selfLink);
 
-						org.hl7.fhir.r4.model.Resource resourceObject = null;
+					XmlParser xmlP = new XmlParser();
 
-						List<String[]> placeHolderValidParams = null;
+					org.hl7.fhir.r4.model.Resource resourceObject = null;
 
-						for (net.aegis.fhir.model.Resource resourceEntry : resources) {
-							resourceCount++;
-							if (resourceCount > pageSize) {
+					List<String[]> placeHolderValidParams = null;
 
-								log.fine("ResourceService.search - Done with pageNum = " + pageNum);
+					for (net.aegis.fhir.model.Resource resourceEntry : resources) {
 
-								// Reset resourceCount for next page Bundle
-								resourceCount = 1;
+						BundleEntryComponent bundleEntry = new BundleEntryComponent();
 
-								// Calculate next and previous pageNum values
-								nextPageNum = pageNum + 1;
-								prevPageNum = pageNum - 1;
+						// Build and set Bundle.entry.fullUrl
+						fullUrl = baseUrl + resourceEntry.getResourceType() + "/" + resourceEntry.getResourceId();
+						bundleEntry.setFullUrl(fullUrl);
 
-								// Populate paging links in current page Bundle
-								BundleLinkComponent firstPageLink = new BundleLinkComponent();
-								firstPageLink.setRelation("first");
-								firstPageLink.setUrl(firstPage);
-								bundle.getLink().add(firstPageLink);
+						net.aegis.fhir.model.Resource foundResource = resourceEntry;
 
-								if (prevPageNum >= 1) {
-									BundleLinkComponent prevPageLink = new BundleLinkComponent();
-									prevPageLink.setRelation("previous");
-									prevPageLink.setUrl(selfUrl.toString() + "&page=" + prevPageNum);
-									bundle.getLink().add(prevPageLink);
-								}
+						// Check for _summary
+						if (!StringUtils.isEmpty(summary_)) {
+							// Summary requested, modify copy of found resource
+							foundResource = resourceEntry.copy();
 
-								if (nextPageNum <= pageCount) {
-									BundleLinkComponent nextPageLink = new BundleLinkComponent();
-									nextPageLink.setRelation("next");
-									nextPageLink.setUrl(selfUrl.toString() + "&page=" + nextPageNum);
-									bundle.getLink().add(nextPageLink);
-								}
+							SummaryUtil.INSTANCE.generateResourceSummary(foundResource, summary_);
+						}
 
-								BundleLinkComponent lastPageLink = new BundleLinkComponent();
-								lastPageLink.setRelation("last");
-								lastPageLink.setUrl(lastPage);
-								bundle.getLink().add(lastPageLink);
-
-								// Cache current page Bundle
-								PagingSearchManager.INSTANCE.putInCache(currentPage, bundle);
-
-								// Increment pageNum
-								pageNum++;
-								currentPage = selfUrl.toString() + "&page=" + pageNum;
-
-								// Start new page Bundle
-								bundle = new Bundle();
-								bundle.setId(UUIDUtil.getUUID());
-								bundleMeta = new Meta();
-								bundleMeta.setVersionId("1");
-								bundleMeta.setLastUpdated(new Date());
-								bundle.setMeta(bundleMeta);
-								bundle.setType(BundleType.SEARCHSET);
-								bundle.setTotal(resources.size());
-								selfLink = new BundleLinkComponent();
-								selfLink.setRelation("self");
-								selfLink.setUrl(currentPage);
-								bundle.getLink().add(selfLink);
-							}
+						// Convert XML contents to Resource object
+						iResource = new ByteArrayInputStream(foundResource.getResourceContents());
 
-							BundleEntryComponent bundleEntry = new BundleEntryComponent();
+						resourceObject = (isStoredContents ? new StoredResourceContents(foundResource) : xmlP.parse(iResource));
 
-							// Build and set Bundle.entry.fullUrl
-							fullUrl = baseUrl + resourceEntry.getResourceType() + "/" + resourceEntry.getResourceId();
-							bundleEntry.setFullUrl(fullUrl);
+						bundleEntry.setResource(resourceObject);
 
-							// Check for _summary
-							if (!StringUtils.isEmpty(summary_)) {
-								// Summary requested, modify copy of found resource
-								net.aegis.fhir.model.Resource foundResource = resourceEntry.copy();
+						BundleEntrySearchComponent bundleEntrySearch = new BundleEntrySearchComponent();
+						bundleEntrySearch.setMode(SearchEntryMode.MATCH);
+						bundleEntrySearch.setScore(new BigDecimal(1));
+						bundleEntry.setSearch(bundleEntrySearch);
 
-								SummaryUtil.INSTANCE.generateResourceSummary(foundResource, summary_);
+						bundle.getEntry().add(bundleEntry);
 
-								// Convert XML contents of copy to Resource object
-								iResource = new ByteArrayInputStream(foundResource.getResourceContents());
-							}
-							else {
-								// Convert XML contents to Resource object
-								iResource = new ByteArrayInputStream(resourceEntry.getResourceContents());
-							}
+						// Process _include
+						if (_include != null && _include.size() > 0) {
+							log.fine("Processing _include...");
 
-							resourceObject = xmlP.parse(iResource);
+							String source = null;
+							String parameter = null;
+							String type = null;
 
-							bundleEntry.setResource(resourceObject);
+							for (String[] include : _include) {
+								// Extract include parameter parts
+								source = include[0];
+								if (include.length > 1) {
+									parameter = include[1];
+								}
+								else {
+									parameter = null;
+								}
+								if (include.length > 2) {
+									type = include[2];
+								}
+								else {
+									type = null;
+								}
 
-							BundleEntrySearchComponent bundleEntrySearch = new BundleEntrySearchComponent();
-							bundleEntrySearch.setMode(SearchEntryMode.MATCH);
-							bundleEntrySearch.setScore(new BigDecimal(1));
-							bundleEntry.setSearch(bundleEntrySearch);
+								log.fine("--> _include is '" + source + ":" + (parameter != null ? parameter : "null") + ":" + (type != null ? type : "null") + "'");
 
-							bundle.getEntry().add(bundleEntry);
+								// Proceed only if current resource type matches include source and we have a parameter
+								if (resourceEntry.getResourceType().equals(source) && parameter != null) {
+									log.fine("-->--> _include resource type match (" + source + "); _include parameter is reference (" + parameter + ")");
 
-							// Process _include
-							if (_include != null && _include.size() > 0) {
-								log.fine("Processing _include...");
+									boolean isParamRef = false;
+									String resolvedParameter = null;
+									int resolvedParamEnd = -1;
 
-								String source = null;
-								String parameter = null;
-								String type = null;
+									List<Resourcemetadata> paramMetaData = null;
 
-								for (String[] include : _include) {
-									// Extract include parameter parts
-									source = include[0];
-									if (include.length > 1) {
-										parameter = include[1];
-									}
-									else {
-										parameter = null;
-									}
-									if (include.length > 2) {
-										type = include[2];
+									// Check for wild card parameter
+									if (parameter.equals("*")) {
+										paramMetaData = resourcemetadataService.findMetadataByResourceIdTypeLevel1Param(resourceEntry.getResourceId(), source);
 									}
 									else {
-										type = null;
+										// Query the resourcemetadata for the current resource parameter
+										paramMetaData = resourcemetadataService.findMetadataByResourceIdTypeParam(resourceEntry.getResourceId(), source, parameter);
 									}
 
-									log.fine("--> _include is '" + source + ":" + (parameter != null ? parameter : "null") + ":" + (type != null ? type : "null") + "'");
-
-									// Proceed only if current resource type matches include source and we have a parameter
-									if (resourceEntry.getResourceType().equals(source) && parameter != null) {
-										log.fine("-->--> _include resource type match (" + source + "); _include parameter is reference (" + parameter + ")");
-
-										boolean isParamRef = false;
-										String resolvedParameter = null;
-										int resolvedParamEnd = -1;
-
-										List<Resourcemetadata> paramMetaData = null;
-
-										// Check for wild card parameter
-										if (parameter.equals("*")) {
-											paramMetaData = resourcemetadataService.findMetadataByResourceIdTypeLevel1Param(resourceEntry.getResourceId(), source);
-										}
-										else {
-											// Query the resourcemetadata for the current resource parameter
-											paramMetaData = resourcemetadataService.findMetadataByResourceIdTypeParam(resourceEntry.getResourceId(), source, parameter);
-										}
+									if (paramMetaData != null && paramMetaData.size() > 0) {
+										log.fine("-->-->-->--> _include parameter meta data found");
 
-										if (paramMetaData != null && paramMetaData.size() > 0) {
-											log.fine("-->-->-->--> _include parameter meta data found");
-
-											for (Resourcemetadata metadata : paramMetaData) {
-												if (parameter.equals("*")) {
-													resolvedParamEnd = metadata.getParamName().indexOf("[");
-													if (resolvedParamEnd < 0) {
-														resolvedParamEnd = metadata.getParamName().length();
-													}
-													resolvedParameter = metadata.getParamName().substring(0, resolvedParamEnd);
+										for (Resourcemetadata metadata : paramMetaData) {
+											if (parameter.equals("*")) {
+												resolvedParamEnd = metadata.getParamName().indexOf("[");
+												if (resolvedParamEnd < 0) {
+													resolvedParamEnd = metadata.getParamName().length();
 												}
-												else {
-													resolvedParameter = parameter;
-												}
-												isParamRef = (net.aegis.fhir.model.ResourceType.findResourceTypeResourceCriteriaType(source, resolvedParameter).equalsIgnoreCase("REFERENCE") ? true : false);
+												resolvedParameter = metadata.getParamName().substring(0, resolvedParamEnd);
+											}
+											else {
+												resolvedParameter = parameter;
+											}
+											isParamRef = (net.aegis.fhir.model.ResourceType.findResourceTypeResourceCriteriaType(source, resolvedParameter).equalsIgnoreCase("REFERENCE") ? true : false);
 
-												if (isParamRef == true && !metadata.getParamValue().isEmpty()) {
-													log.fine("-->-->-->--> _include parameter (" + resolvedParameter + ") meta data reference found (" + metadata.getParamValue() + ")");
+											if (isParamRef == true && !metadata.getParamValue().isEmpty()) {
+												log.fine("-->-->-->--> _include parameter (" + resolvedParameter + ") meta data reference found (" + metadata.getParamValue() + ")");
 
-													// Extract resource type and id
-													String[] refParts = metadata.getParamValue().split("/");
+												// Extract resource type and id
+												String[] refParts = metadata.getParamValue().split("/");
 
-													int refPartsLength = refParts.length;
-													if (refPartsLength > 1) {
-														String refResourceType = refParts[refPartsLength - 2];
-														String refResourceId = refParts[refPartsLength - 1];
+												int refPartsLength = refParts.length;
+												if (refPartsLength > 1) {
+													String refResourceType = refParts[refPartsLength - 2];
+													String refResourceId = refParts[refPartsLength - 1];
 
-														// Check already _includedId and _matchedId lists for this included resource; if found, skip
-														String refResourceCheckId = refResourceType + "/" + refResourceId;
-														if (!_includedId.contains(refResourceCheckId) && !_matchedId.contains(refResourceCheckId)) {
-															log.fine("-->-->-->-->--> _include resource (" + refResourceCheckId + ")");
+													// Check already _includedId and _matchedId lists for this included resource; if found, skip
+													String refResourceCheckId = refResourceType + "/" + refResourceId;
+													if (!_includedId.contains(refResourceCheckId) && !_matchedId.contains(refResourceCheckId)) {
+														log.fine("-->-->-->-->--> _include resource (" + refResourceCheckId + ")");
 
-															// If type defined, check for match
-															if (type == null || refResourceType.equals(type)) {
-																if (type != null) {
-																	log.fine("-->-->-->-->--> _include type match (" + type + ")");
-																}
-																ResourceContainer refResource = this.read(refResourceType, refResourceId, summary_);
+														// If type defined, check for match
+														if (type == null || refResourceType.equals(type)) {
+															if (type != null) {
+																log.fine("-->-->-->-->--> _include type match (" + type + ")");
+															}
+															ResourceContainer refResource = this.read(refResourceType, refResourceId, summary_);
 
-																if (refResource.getResponseStatus().equals(Response.Status.OK)) {
-																	log.fine("-->-->-->-->--> _include resource read OK (" + refResourceId + ")");
+															if (refResource.getResponseStatus().equals(Response.Status.OK)) {
+																log.fine("-->-->-->-->--> _include resource read OK (" + refResourceId + ")");
 
-																	// Create and add bundle entry for included resource
-																	bundleEntry = new BundleEntryComponent();
+																// Create and add bundle entry for included resource
+																bundleEntry = new BundleEntryComponent();
 
-																	// Set Bundle.entry.fullUrl
-																	fullUrl = baseUrl + refResourceType + "/" + refResourceId;
-																	bundleEntry.setFullUrl(fullUrl);
+																// Set Bundle.entry.fullUrl
+																fullUrl = baseUrl + refResourceType + "/" + refResourceId;
+																bundleEntry.setFullUrl(fullUrl);
 
-																	// Convert XML contents to Resource object
-																	iResource = new ByteArrayInputStream(refResource.getResource().getResourceContents());
+																// Convert XML contents to Resource object
+																iResource = new ByteArrayInputStream(refResource.getResource().getResourceContents());
 
-																	resourceObject = xmlP.parse(iResource);
+																resourceObject = (isStoredContents ? new StoredResourceContents(refResource.getResource()) : xmlP.parse(iResource));
 
-																	bundleEntry.setResource(resourceObject);
+																bundleEntry.setResource(resourceObject);
 
-																	bundleEntrySearch = new BundleEntrySearchComponent();
-																	bundleEntrySearch.setMode(SearchEntryMode.INCLUDE);
-																	bundleEntry.setSearch(bundleEntrySearch);
+																bundleEntrySearch = new BundleEntrySearchComponent();
+																bundleEntrySearch.setMode(SearchEntryMode.INCLUDE);
+																bundleEntry.setSearch(bundleEntrySearch);
 
-																	bundle.getEntry().add(bundleEntry);
+																bundle.getEntry().add(bundleEntry);
 
-																	// Add to _includedId
-																	_includedId.add(refResourceCheckId);
-																}
-																else {
-																	log.fine("-->-->-->-->--> _include resource read NOT OK (" + refResourceId + ") --> " + refResource.getResponseStatus().name());
-																}
+																// Add to _includedId
+																_includedId.add(refResourceCheckId);
 															}
 															else {
-																log.fine("-->-->-->-->--> _type mismatch! refResourceType = '" + refResourceType + "', type = '" + (type != null ? type : "null") + "'");
+																log.fine("-->-->-->-->--> _include resource read NOT OK (" + refResourceId + ") --> " + refResource.getResponseStatus().name());
 															}
 														}
 														else {
-															log.fine("-->-->-->-->--> _include resource (" + refResourceCheckId + ") - already included!");
+															log.fine("-->-->-->-->--> _type mismatch! refResourceType = '" + refResourceType + "', type = '" + (type != null ? type : "null") + "'");
 														}
 													}
+													else {
+														log.fine("-->-->-->-->--> _include resource (" + refResourceCheckId + ") - already included!");
+													}
 												}
 											}
 										}
 									}
 								}
 							}
+						}
 
-							// Process _include:iterate
-							if (_includeIterate != null && _includeIterate.size() > 0) {
-								log.fine("Processing _include:iterate...");
+						// Process _include:iterate
+						if (_includeIterate != null && _includeIterate.size() > 0) {
+							log.fine("Processing _include:iterate...");
 
-								String source = null;
-								String parameter = null;
-								String type = null;
+							String source = null;
+							String parameter = null;
+							String type = null;
 
-								for (String[] includeIterate : _includeIterate) {
-									// Extract include parameter parts
-									source = includeIterate[0];
-									if (includeIterate.length > 1) {
-										parameter = includeIterate[1];
-									}
-									else {
-										parameter = null;
-									}
-									if (includeIterate.length > 2) {
-										type = includeIterate[2];
-									}
-									else {
-										type = null;
-									}
+							for (String[] includeIterate : _includeIterate) {
+								// Extract include parameter parts
+								source = includeIterate[0];
+								if (includeIterate.length > 1) {
+									parameter = includeIterate[1];
+								}
+								else {
+									parameter = null;
+								}
+								if (includeIterate.length > 2) {
+									type = includeIterate[2];
+								}
+								else {
+									type = null;
+								}
 
-									log.fine("--> _include:iterate is '" + source + ":" + (parameter != null ? parameter : "null") + ":" + (type != null ? type : "null") + "'");
+								log.fine("--> _include:iterate is '" + source + ":" + (parameter != null ? parameter : "null") + ":" + (type != null ? type : "null") + "'");
 
-									// Proceed only if current resource type matches include source and we have a parameter
-									if (resourceEntry.getResourceType().equals(source) && parameter != null) {
-										log.fine("-->--> _include:iterate resource type match (" + source + "); _include:iterate parameter is reference (" + parameter + ")");
+								// Proceed only if current resource type matches include source and we have a parameter
+								if (resourceEntry.getResourceType().equals(source) && parameter != null) {
+									log.fine("-->--> _include:iterate resource type match (" + source + "); _include:iterate parameter is reference (" + parameter + ")");
 
-										boolean isParamRef = false;
-										String resolvedParameter = null;
-										int resolvedParamEnd = -1;
+									boolean isParamRef = false;
+									String resolvedParameter = null;
+									int resolvedParamEnd = -1;
 
-										List<Resourcemetadata> paramMetaData = null;
+									List<Resourcemetadata> paramMetaData = null;
 
-										// Check for wild card parameter
-										if (parameter.equals("*")) {
-											paramMetaData = resourcemetadataService.findMetadataByResourceIdTypeLevel1Param(resourceEntry.getResourceId(), source);
-										}
-										else {
-											// Query the resourcemetadata for the current resource parameter
-											paramMetaData = resourcemetadataService.findMetadataByResourceIdTypeParam(resourceEntry.getResourceId(), source, parameter);
-										}
+									// Check for wild card parameter
+									if (parameter.equals("*")) {
+										paramMetaData = resourcemetadataService.findMetadataByResourceIdTypeLevel1Param(resourceEntry.getResourceId(), source);
+									}
+									else {
+										// Query the resourcemetadata for the current resource parameter
+										paramMetaData = resourcemetadataService.findMetadataByResourceIdTypeParam(resourceEntry.getResourceId(), source, parameter);
+									}
 
-										if (paramMetaData != null && paramMetaData.size() > 0) {
-											log.fine("-->-->-->--> _include:iterate parameter meta data found");
+									if (paramMetaData != null && paramMetaData.size() > 0) {
+										log.fine("-->-->-->--> _include:iterate parameter meta data found");
 
-											for (Resourcemetadata metadata : paramMetaData) {
-												if (parameter.equals("*")) {
-													resolvedParamEnd = metadata.getParamName().indexOf("[");
-													if (resolvedParamEnd < 0) {
-														resolvedParamEnd = metadata.getParamName().length();
-													}
-													resolvedParameter = metadata.getParamName().substring(0, resolvedParamEnd);
-												}
-												else {
-													resolvedParameter = parameter;
+										for (Resourcemetadata metadata : paramMetaData) {
+											if (parameter.equals("*")) {
+												resolvedParamEnd = metadata.getParamName().indexOf("[");
+												if (resolvedParamEnd < 0) {
+													resolvedParamEnd = metadata.getParamName().length();
 												}
-												isParamRef = (net.aegis.fhir.model.ResourceType.findResourceTypeResourceCriteriaType(source, resolvedParameter).equalsIgnoreCase("REFERENCE") ? true : false);
+												resolvedParameter = metadata.getParamName().substring(0, resolvedParamEnd);
+											}
+											else {
+												resolvedParameter = parameter;
+											}
+											isParamRef = (net.aegis.fhir.model.ResourceType.findResourceTypeResourceCriteriaType(source, resolvedParameter).equalsIgnoreCase("REFERENCE") ? true : false);
 
-												if (isParamRef == true && !metadata.getParamValue().isEmpty()) {
-													log.fine("-->-->-->--> _include:iterate parameter (" + resolvedParameter + ") meta data reference found (" + metadata.getParamValue() + ")");
+											if (isParamRef == true && !metadata.getParamValue().isEmpty()) {
+												log.fine("-->-->-->--> _include:iterate parameter (" + resolvedParameter + ") meta data reference found (" + metadata.getParamValue() + ")");
 
-													// Extract resource type and id
-													String[] refParts = metadata.getParamValue().split("/");
+												// Extract resource type and id
+												String[] refParts = metadata.getParamValue().split("/");
 
-													int refPartsLength = refParts.length;
-													if (refPartsLength > 1) {
-														String refResourceType = refParts[refPartsLength - 2];
-														String refResourceId = refParts[refPartsLength - 1];
+												int refPartsLength = refParts.length;
+												if (refPartsLength > 1) {
+													String refResourceType = refParts[refPartsLength - 2];
+													String refResourceId = refParts[refPartsLength - 1];
 
-														// Check already _includedId and _matchedId lists for this included resource; if found, skip
-														String refResourceCheckId = refResourceType + "/" + refResourceId;
-														if (!_includedId.contains(refResourceCheckId) && !_matchedId.contains(refResourceCheckId)) {
-															log.fine("-->-->-->-->--> _include:iterate resource (" + refResourceCheckId + ")");
+													// Check already _includedId and _matchedId lists for this included resource; if found, skip
+													String refResourceCheckId = refResourceType + "/" + refResourceId;
+													if (!_includedId.contains(refResourceCheckId) && !_matchedId.contains(refResourceCheckId)) {
+														log.fine("-->-->-->-->--> _include:iterate resource (" + refResourceCheckId + ")");
 
-															// If type defined, check for match
-															if (type == null || refResourceType.equals(type)) {
-																if (type != null) {
-																	log.fine("-->-->-->-->--> _include:iterate type match (" + type + ")");
-																}
-																ResourceContainer refResource = this.read(refResourceType, refResourceId, summary_);
+														// If type defined, check for match
+														if (type == null || refResourceType.equals(type)) {
+															if (type != null) {
+																log.fine("-->-->-->-->--> _include:iterate type match (" + type + ")");
+															}
+															ResourceContainer refResource = this.read(refResourceType, refResourceId, summary_);
 
-																if (refResource.getResponseStatus().equals(Response.Status.OK)) {
-																	log.fine("-->-->-->-->--> _include:iterate resource read OK (" + refResourceId + ")");
+															if (refResource.getResponseStatus().equals(Response.Status.OK)) {
+																log.fine("-->-->-->-->--> _include:iterate resource read OK (" + refResourceId + ")");
 
-																	// Create and add bundle entry for included resource
-																	bundleEntry = new BundleEntryComponent();
+																// Create and add bundle entry for included resource
+																bundleEntry = new BundleEntryComponent();
 
-																	// Set Bundle.entry.fullUrl
-																	fullUrl = baseUrl + refResourceType + "/" + refResourceId;
-																	bundleEntry.setFullUrl(fullUrl);
+																// Set Bundle.entry.fullUrl
+																fullUrl = baseUrl + refResourceType + "/" + refResourceId;
+																bundleEntry.setFullUrl(fullUrl);
 
-																	// Convert XML contents to Resource object
-																	iResource = new ByteArrayInputStream(refResource.getResource().getResourceContents());
+																// Convert XML contents to Resource object
+																iResource = new ByteArrayInputStream(refResource.getResource().getResourceContents());
 
-																	resourceObject = xmlP.parse(iResource);
+																resourceObject = (isStoredContents ? new StoredResourceContents(refResource.getResource()) : xmlP.parse(iResource));
 
-																	bundleEntry.setResource(resourceObject);
+																bundleEntry.setResource(resourceObject);
 
-																	bundleEntrySearch = new BundleEntrySearchComponent();
-																	bundleEntrySearch.setMode(SearchEntryMode.INCLUDE);
-																	bundleEntry.setSearch(bundleEntrySearch);
+																bundleEntrySearch = new BundleEntrySearchComponent();
+																bundleEntrySearch.setMode(SearchEntryMode.INCLUDE);
+																bundleEntry.setSearch(bundleEntrySearch);
 
-																	bundle.getEntry().add(bundleEntry);
+																bundle.getEntry().add(bundleEntry);
 
-																	// Add to _includedId
-																	_includedId.add(refResourceCheckId);
+																// Add to _includedId
+																_includedId.add(refResourceCheckId);
 
-																	// Call includeIterate for this resource instance
-																	includeIterate(bundle, _includedId, refResourceId, source, parameter, type, summary_, baseUrl, xmlP);
-																}
-																else {
-																	log.fine("-->-->-->-->--> _include:iterate resource read NOT OK (" + refResourceId + ") --> " + refResource.getResponseStatus().name());
-																}
+																// Call includeIterate for this resource instance
+																includeIterate(bundle, _includedId, refResourceId, source, parameter, type, summary_, baseUrl, xmlP, isStoredContents);
 															}
 															else {
-																log.fine("-->-->-->-->--> _include:iterate _type mismatch! refResourceType = '" + refResourceType + "', type = '" + (type != null ? type : "null") + "'");
+																log.fine("-->-->-->-->--> _include:iterate resource read NOT OK (" + refResourceId + ") --> " + refResource.getResponseStatus().name());
 															}
 														}
 														else {
-															log.fine("-->-->-->-->--> _include:iterate resource (" + refResourceCheckId + ") - already included!");
+															log.fine("-->-->-->-->--> _include:iterate _type mismatch! refResourceType = '" + refResourceType + "', type = '" + (type != null ? type : "null") + "'");
 														}
 													}
+													else {
+														log.fine("-->-->-->-->--> _include:iterate resource (" + refResourceCheckId + ") - already included!");
+													}
 												}
 											}
 										}
 									}
 								}
 							}
+						}
 
-							// Process _revinclude
-							if (_revinclude != null && _revinclude.size() > 0) {
-								log.fine("Processing _revinclude...");
+						// Process _revinclude
+						if (_revinclude != null && _revinclude.size() > 0) {
+							log.fine("Processing _revinclude...");
 
-								String source = null;
-								String parameter = null;
-								String type = null;
+							String source = null;
+							String parameter = null;
+							String type = null;
 
-								for (String[] revinclude : _revinclude) {
-									log.fine("--> _revinclude is '" + revinclude[0] + ":" + revinclude[1] + "'");
+							for (String[] revinclude : _revinclude) {
+								log.fine("--> _revinclude is '" + revinclude[0] + ":" + revinclude[1] + "'");
 
-									// Extract revinclude parameter parts
-									source = revinclude[0];
-									if (revinclude.length > 1) {
-										parameter = revinclude[1];
-									}
-									else {
-										parameter = null;
-									}
-									if (revinclude.length > 2) {
-										type = revinclude[2];
-									}
-									else {
-										type = null;
-									}
+								// Extract revinclude parameter parts
+								source = revinclude[0];
+								if (revinclude.length > 1) {
+									parameter = revinclude[1];
+								}
+								else {
+									parameter = null;
+								}
+								if (revinclude.length > 2) {
+									type = revinclude[2];
+								}
+								else {
+									type = null;
+								}
 
-									// Proceed based on revinclude source and current resource type
-									log.fine("-->--> _revinclude resource type (" + source + "); current resource type (" + resourceEntry.getResourceType() + ")");
+								// Proceed based on revinclude source and current resource type
+								log.fine("-->--> _revinclude resource type (" + source + "); current resource type (" + resourceEntry.getResourceType() + ")");
 
-									// Proceed only if we have a parameter
-									if (parameter != null) {
-										boolean isParamRef = (net.aegis.fhir.model.ResourceType.findResourceTypeResourceCriteriaType(source, parameter).equalsIgnoreCase("REFERENCE") ? true : false);
+								// Proceed only if we have a parameter
+								if (parameter != null) {
+									boolean isParamRef = (net.aegis.fhir.model.ResourceType.findResourceTypeResourceCriteriaType(source, parameter).equalsIgnoreCase("REFERENCE") ? true : false);
 
-										if (isParamRef) {
-											log.fine("-->-->--> _revinclude parameter is reference (" + parameter + "); current resource id entry (" + resourceEntry.getResourceId() + ")");
+									if (isParamRef) {
+										log.fine("-->-->--> _revinclude parameter is reference (" + parameter + "); current resource id entry (" + resourceEntry.getResourceId() + ")");
 
-											// If type defined, check for current resource type match
-											if (type == null || resourceEntry.getResourceType().equals(type)) {
-												if (type != null) {
-													log.fine("-->-->-->-->--> _revinclude type match (" + type + ")");
-												}
+										// If type defined, check for current resource type match
+										if (type == null || resourceEntry.getResourceType().equals(type)) {
+											if (type != null) {
+												log.fine("-->-->-->-->--> _revinclude type match (" + type + ")");
+											}
 
-												// Build reverse search parameter
-												String revSearchParameter = parameter + "=" + resourceEntry.getResourceType() + "/" + resourceEntry.getResourceId();
+											// Build reverse search parameter
+											String revSearchParameter = parameter + "=" + resourceEntry.getResourceType() + "/" + resourceEntry.getResourceId();
 
-												// Convert search parameter string into queryParams map
-												List<NameValuePair> params = URLEncodedUtils.parse(revSearchParameter, Charset.defaultCharset());
-												MultivaluedMap<String, String> queryParams = ServicesUtil.INSTANCE.listNameValuePairToMultivaluedMapString(params);
+											// Convert search parameter string into queryParams map
+											List<NameValuePair> params = URLEncodedUtils.parse(revSearchParameter, Charset.defaultCharset());
+											MultivaluedMap<String, String> queryParams = ServicesUtil.INSTANCE.listNameValuePairToMultivaluedMapString(params);
 
-												// Search for resources with reverse search
-												placeHolderValidParams = new ArrayList<String[]>();
-												List<net.aegis.fhir.model.Resource> revSearch = this.searchQuery(queryParams, null, source, false, null, null, null, placeHolderValidParams, null);
+											// Search for resources with reverse search
+											placeHolderValidParams = new ArrayList<String[]>();
+											List<net.aegis.fhir.model.Resource> revSearch = this.searchQuery(queryParams, null, source, false, null, null, null, placeHolderValidParams, null);
 
-												if (revSearch != null && revSearch.size() > 0) {
-													log.fine("-->-->-->--> _revinclude reverse search found matches (" + revSearch.size() + ")");
+											if (revSearch != null && revSearch.size() > 0) {
+												log.fine("-->-->-->--> _revinclude reverse search found matches (" + revSearch.size() + ")");
 
-													for (net.aegis.fhir.model.Resource revResource : revSearch) {
-														String revResourceCheckId = revResource.getResourceType() + "/" + revResource.getResourceId();
-														log.fine("-->-->-->-->--> _revinclude resource (" + revResourceCheckId + ")");
+												for (net.aegis.fhir.model.Resource revResource : revSearch) {
+													String revResourceCheckId = revResource.getResourceType() + "/" + revResource.getResourceId();
+													log.fine("-->-->-->-->--> _revinclude resource (" + revResourceCheckId + ")");
 
-														// Check already _revincludedId and _matchedId lists for this revincluded resource; if found, skip
-														if (!_revincludedId.contains(revResourceCheckId) && !_matchedId.contains(revResourceCheckId)) {
+													// Check already _revincludedId and _matchedId lists for this revincluded resource; if found, skip
+													if (!_revincludedId.contains(revResourceCheckId) && !_matchedId.contains(revResourceCheckId)) {
 
-															// Create and add bundle entry for included resource
-															bundleEntry = new BundleEntryComponent();
+														// Create and add bundle entry for included resource
+														bundleEntry = new BundleEntryComponent();
 
-															// Set Bundle.entry.fullUrl
-															bundleEntry.setFullUrl(revIncludeBaseUrl + revResourceCheckId);
+														// Set Bundle.entry.fullUrl
+														bundleEntry.setFullUrl(revIncludeBaseUrl + revResourceCheckId);
 
-															// Check for _summary
-															if (!StringUtils.isEmpty(summary_)) {
-																// Summary requested, modify copy of found resource
-																net.aegis.fhir.model.Resource foundRevResource = revResource.copy();
+														net.aegis.fhir.model.Resource foundRevResource = revResource;
 
-																SummaryUtil.INSTANCE.generateResourceSummary(foundRevResource, summary_);
+														// Check for _summary
+														if (!StringUtils.isEmpty(summary_)) {
+															// Summary requested, modify copy of found resource
+															foundRevResource = revResource.copy();
 
-																// Convert XML contents of copy to Resource object
-																iResource = new ByteArrayInputStream(foundRevResource.getResourceContents());
-															}
-															else {
-																// Convert XML contents to Resource object
-																iResource = new ByteArrayInputStream(revResource.getResourceContents());
-															}
+															SummaryUtil.INSTANCE.generateResourceSummary(foundRevResource, summary_);
+														}
+
+														// Convert XML contents to Resource object
+														iResource = new ByteArrayInputStream(foundRevResource.getResourceContents());
 
-															resourceObject = xmlP.parse(iResource);
+														resourceObject = (isStoredContents ? new StoredResourceContents(foundRevResource) : xmlP.parse(iResource));
 
-															bundleEntry.setResource(resourceObject);
+														bundleEntry.setResource(resourceObject);
 
-															bundleEntrySearch = new BundleEntrySearchComponent();
-															bundleEntrySearch.setMode(SearchEntryMode.INCLUDE);
-															bundleEntry.setSearch(bundleEntrySearch);
+														bundleEntrySearch = new BundleEntrySearchComponent();
+														bundleEntrySearch.setMode(SearchEntryMode.INCLUDE);
+														bundleEntry.setSearch(bundleEntrySearch);
 
-															bundle.getEntry().add(bundleEntry);
+														bundle.getEntry().add(bundleEntry);
 
-															// Add to _revincludedId
-															_revincludedId.add(revResourceCheckId);
-														}
-														else {
-															log.fine("-->-->-->-->--> _revinclude resource (" + revResourceCheckId + ") - already included!");
-														}
+														// Add to _revincludedId
+														_revincludedId.add(revResourceCheckId);
+													}
+													else {
+														log.fine("-->-->-->-->--> _revinclude resource (" + revResourceCheckId + ") - already included!");
 													}
 												}
 											}
@@ -2462,107 +2673,101 @@ public class ResourceService {
 								}
 							}
 						}
+					}
 
-						// Call processIncluded
-						processIncluded(0, bundle, _includedId, _matchedId, _include, _includeIterate, summary_, baseUrl, xmlP);
-
-						if (bundleEntryOutcome != null) {
-							bundle.getEntry().add(bundleEntryOutcome);
-						}
-
-						if (needPaging) {
-							// Calculate next and previous pageNum values
-							nextPageNum = pageNum + 1;
-							prevPageNum = pageNum - 1;
-
-							// Populate paging links in current page Bundle
-							BundleLinkComponent firstPageLink = new BundleLinkComponent();
-							firstPageLink.setRelation("first");
-							firstPageLink.setUrl(firstPage);
-							bundle.getLink().add(firstPageLink);
-
-							if (prevPageNum >= 1) {
-								BundleLinkComponent prevPageLink = new BundleLinkComponent();
-								prevPageLink.setRelation("previous");
-								prevPageLink.setUrl(selfUrl.toString() + "&page=" + prevPageNum);
-								bundle.getLink().add(prevPageLink);
-							}
-
-							if (nextPageNum <= pageCount) {
-								BundleLinkComponent nextPageLink = new BundleLinkComponent();
-								nextPageLink.setRelation("next");
-								nextPageLink.setUrl(selfUrl.toString() + "&page=" + nextPageNum);
-								bundle.getLink().add(nextPageLink);
-							}
-
-							BundleLinkComponent lastPageLink = new BundleLinkComponent();
-							lastPageLink.setRelation("last");
-							lastPageLink.setUrl(lastPage);
-							bundle.getLink().add(lastPageLink);
+					// Call processIncluded
+					processIncluded(0, bundle, _includedId, _matchedId, _include, _includeIterate, summary_, baseUrl, xmlP, isStoredContents);
 
-							// Cache current page Bundle
-							PagingSearchManager.INSTANCE.putInCache(currentPage, bundle);
+					if (bundleEntryOutcome != null) {
+						bundle.getEntry().add(bundleEntryOutcome);
+					}
 
-							// Get first page from cache
-							bundle = PagingSearchManager.INSTANCE.retrieveFromCache(firstPage);
-						}
+					if (needPaging) {
+						// Calculate next and previous pageNum values
+						nextPageNum = pageNum + 1;
+						prevPageNum = pageNum - 1;
 
-						resourceContainer.setBundle(bundle);
-						resourceContainer.setResponseStatus(Response.Status.OK);
-					}
-				}
-				else {
-					// No match found
-					Bundle bundle = new Bundle();
+						// Populate paging links in current page Bundle
+						BundleLinkComponent firstPageLink = new BundleLinkComponent();
+						firstPageLink.setRelation("first");
+						firstPageLink.setUrl(firstPage);
+						bundle.getLink().add(firstPageLink);
 
-					bundle.setId(UUIDUtil.getUUID());
-					Meta bundleMeta = new Meta();
-					bundleMeta.setVersionId("1");
-					bundleMeta.setLastUpdated(new Date());
-					bundle.setMeta(bundleMeta);
-					bundle.setType(BundleType.SEARCHSET);
-					bundle.setTotal(0);
-					BundleLinkComponent selfLink = new BundleLinkComponent();
-					selfLink.setRelation("self");
-					selfLink.setUrl(selfUrl.toString());
-					bundle.getLink().add(selfLink);
+						if (prevPageNum >= 1) {
+							BundleLinkComponent prevPageLink = new BundleLinkComponent();
+							prevPageLink.setRelation("previous");
+							prevPageLink.setUrl(selfUrl.toString() + "&page=" + prevPageNum);
+							bundle.getLink().add(prevPageLink);
+						}
 
-					if (searchResponsePayload != null && searchResponsePayload.equals("OperationOutcome")) {
-						OperationOutcome.OperationOutcomeIssueComponent issue = ServicesUtil.INSTANCE.getOperationOutcomeIssueComponent(OperationOutcome.IssueSeverity.INFORMATION, OperationOutcome.IssueType.NOTFOUND, "No matches were found for the given search criteria.", null, null);
+						if (nextPageNum <= pageCount) {
+							BundleLinkComponent nextPageLink = new BundleLinkComponent();
+							nextPageLink.setRelation("next");
+							nextPageLink.setUrl(selfUrl.toString() + "&page=" + nextPageNum);
+							bundle.getLink().add(nextPageLink);
+						}
 
-						if (bundleEntryOutcome == null) {
-							bundleEntryOutcome = new BundleEntryComponent();
-							if (issues == null) {
-								issues = new ArrayList<OperationOutcome.OperationOutcomeIssueComponent>();
-							}
-							issues.add(issue);
+						BundleLinkComponent lastPageLink = new BundleLinkComponent();
+						lastPageLink.setRelation("last");
+						lastPageLink.setUrl(lastPage);
+						bundle.getLink().add(lastPageLink);
+					}
+
+					resourceContainer.setBundle(bundle);
+					resourceContainer.setResponseStatus(Response.Status.OK);
+				}
+			}
+			else {
+				// No match found
+				Bundle bundle = new Bundle();
+
+				bundle.setId(UUIDUtil.getUUID());
+				Meta bundleMeta = new Meta();
+				bundleMeta.setVersionId("1");
+				bundleMeta.setLastUpdated(new Date());
+				bundle.setMeta(bundleMeta);
+				bundle.setType(BundleType.SEARCHSET);
+				bundle.setTotal(0);
+				BundleLinkComponent selfLink = new BundleLinkComponent();
+				selfLink.setRelation("self");
+				selfLink.setUrl(selfUrl.toString());
+				bundle.getLink().add(selfLink);
+
+				if (searchResponsePayload != null && searchResponsePayload.equals("OperationOutcome")) {
+					OperationOutcome.OperationOutcomeIssueComponent issue = ServicesUtil.INSTANCE.getOperationOutcomeIssueComponent(OperationOutcome.IssueSeverity.INFORMATION, OperationOutcome.IssueType.NOTFOUND, "No matches were found for the given search criteria.", null, null);
+
+					if (bundleEntryOutcome == null) {
+						bundleEntryOutcome = new BundleEntryComponent();
+						if (issues == null) {
+							issues = new ArrayList<OperationOutcome.OperationOutcomeIssueComponent>();
+						}
+						issues.add(issue);
 
-							String ooResourceId = UUIDUtil.getUUID(false);
+						String ooResourceId = UUIDUtil.getUUID(false);
 
-							outcome = ServicesUtil.INSTANCE.getOperationOutcomeResource(issues);
+						outcome = ServicesUtil.INSTANCE.getOperationOutcomeResource(issues);
 
-							outcome.setId(ooResourceId);
+						outcome.setId(ooResourceId);
 
-							bundleEntryOutcome.setFullUrl("urn:uuid:" + ooResourceId);
-							bundleEntryOutcome.setResource(outcome);
+						bundleEntryOutcome.setFullUrl("urn:uuid:" + ooResourceId);
+						bundleEntryOutcome.setResource(outcome);
 
-							BundleEntrySearchComponent bundleEntryOutcomeSearch = new BundleEntrySearchComponent();
-							bundleEntryOutcomeSearch.setMode(SearchEntryMode.OUTCOME);
-							bundleEntryOutcome.setSearch(bundleEntryOutcomeSearch);
-						}
-						else {
-							outcome = (OperationOutcome)bundleEntryOutcome.getResource();
-							outcome.addIssue(issue);
-						}
+						BundleEntrySearchComponent bundleEntryOutcomeSearch = new BundleEntrySearchComponent();
+						bundleEntryOutcomeSearch.setMode(SearchEntryMode.OUTCOME);
+						bundleEntryOutcome.setSearch(bundleEntryOutcomeSearch);
 					}
-
-					if (bundleEntryOutcome != null) {
-						bundle.getEntry().add(bundleEntryOutcome);
+					else {
+						outcome = (OperationOutcome)bundleEntryOutcome.getResource();
+						outcome.addIssue(issue);
 					}
+				}
 
-					resourceContainer.setBundle(bundle);
-					resourceContainer.setResponseStatus(Response.Status.OK);
+				if (bundleEntryOutcome != null) {
+					bundle.getEntry().add(bundleEntryOutcome);
 				}
+
+				resourceContainer.setBundle(bundle);
+				resourceContainer.setResponseStatus(Response.Status.OK);
 			}
 		} catch (Exception e) {
 			// Exception caught
@@ -2589,7 +2794,7 @@ public class ResourceService {
 	 * Called after processing initial search results. This method processes any
 	 * additional _include parameters based on just those included resources.
 	 */
-	private void processIncluded(int recurseLevel, Bundle bundle, List<String> _includedId, List<String> _matchedId, List<String[]> _include, List<String[]> _includeIterate, String summary_, String baseUrl, XmlParser xmlP) throws Exception {
+	private void processIncluded(int recurseLevel, Bundle bundle, List<String> _includedId, List<String> _matchedId, List<String[]> _include, List<String[]> _includeIterate, String summary_, String baseUrl, XmlParser xmlP, boolean isStoredContents) throws Exception {
 
 		log.fine("[START] ResourceService.processIncluded(" + recurseLevel + ", bundle, _includedId, _include, '" + summary_ + "', '" + baseUrl + "', xmlP)");
 
@@ -2724,7 +2929,7 @@ public class ResourceService {
 														// Convert XML contents to Resource object
 														iResource = new ByteArrayInputStream(refResource.getResource().getResourceContents());
 
-														resourceObject = xmlP.parse(iResource);
+														resourceObject = (isStoredContents ? new StoredResourceContents(refResource.getResource()) : xmlP.parse(iResource));
 
 														bundleEntry.setResource(resourceObject);
 
@@ -2853,7 +3058,7 @@ public class ResourceService {
 														// Convert XML contents to Resource object
 														iResource = new ByteArrayInputStream(refResource.getResource().getResourceContents());
 
-														resourceObject = xmlP.parse(iResource);
+														resourceObject = (isStoredContents ? new StoredResourceContents(refResource.getResource()) : xmlP.parse(iResource));
 
 														bundleEntry.setResource(resourceObject);
 
@@ -2867,7 +3072,7 @@ public class ResourceService {
 														_includedId.add(refResourceCheckId);
 
 														// Call includeIterate for this resource instance
-														includeIterate(bundle, _includedId, refResourceId, source, parameter, type, summary_, baseUrl, xmlP);
+														includeIterate(bundle, _includedId, refResourceId, source, parameter, type, summary_, baseUrl, xmlP, isStoredContents);
 													}
 													else {
 														log.fine("-->-->-->-->--> _include:iterate resource read NOT OK (" + refResourceId + ") --> " + refResource.getResponseStatus().name());
@@ -2892,7 +3097,7 @@ public class ResourceService {
 		} // End for (includeId)
 	}
 
-	private void includeIterate(Bundle bundle, List<String> _includedId, String resourceId, String source, String parameter, String type, String summary_, String baseUrl, XmlParser xmlP) throws Exception {
+	private void includeIterate(Bundle bundle, List<String> _includedId, String resourceId, String source, String parameter, String type, String summary_, String baseUrl, XmlParser xmlP, boolean isStoredContents) throws Exception {
 
 		log.fine("[START] ResourceService.includeIterate(bundle, _includedId, '" + resourceId + "', '" + source + "', '" + parameter + "', '" + (type == null ? "null" : type) + "', '");
 
@@ -2968,7 +3173,7 @@ public class ResourceService {
 									// Convert XML contents to Resource object
 									iResource = new ByteArrayInputStream(refResource.getResource().getResourceContents());
 
-									resourceObject = xmlP.parse(iResource);
+									resourceObject = (isStoredContents ? new StoredResourceContents(refResource.getResource()) : xmlP.parse(iResource));
 
 									bundleEntry.setResource(resourceObject);
 
@@ -2982,7 +3187,7 @@ public class ResourceService {
 									_includedId.add(refResourceCheckId);
 
 									// Call includeIterate for this resource instance
-									includeIterate(bundle, _includedId, refResourceId, source, parameter, type, summary_, baseUrl, xmlP);
+									includeIterate(bundle, _includedId, refResourceId, source, parameter, type, summary_, baseUrl, xmlP, isStoredContents);
 								}
 								else {
 									log.fine("-->-->-->-->--> includeIterate resource read NOT OK (" + refResourceId + ") --> " + refResource.getResponseStatus().name());
@@ -3016,10 +3221,97 @@ public class ResourceService {
 	 * @return CriteriaQuery<Resource>
 	 * @throws Exception
 	 */
-	@SuppressWarnings("unchecked")
 	public List<net.aegis.fhir.model.Resource> searchQuery(MultivaluedMap<String,String> parameterMap, MultivaluedMap<String,String> formMap, String resourceType, boolean isCompartment, List<String[]> _include, List<String[]> _includeIterate, List<String[]> _revinclude, List<String[]> validParams, List<String[]> invalidParams) throws Exception {
 
-		log.fine("[START] ResourceService.searchQuery");
+		return searchQuery(parameterMap, formMap, resourceType, isCompartment, _include, _includeIterate, _revinclude, validParams, invalidParams, null, null, null);
+	}
+
+	/**
+	 * Paged variant of searchQuery. Only the rows of the requested page are returned from the database; the offset and
+	 * limit are applied in the SQL statement. If totalCount is not null, a separate count query is executed against the
+	 * same search criteria and the total number of matches is added to the totalCount list.
+	 *
+	 * @param parameterMap
+	 * @param formMap
+	 * @param resourceType
+	 * @param isCompartment
+	 * @param _include
+	 * @param _includeIterate
+	 * @param _revinclude
+	 * @param validParams
+	 * @param invalidParams
+	 * @param pageOffset - zero based offset of the first row to return; null for 0
+	 * @param pageLimit - maximum number of rows to return; null for the maximum count; 0 for count only
+	 * @param totalCount - if not null, the total number of matches is added to this list
+	 * @return List<Resource>
+	 * @throws Exception
+	 */
+	public List<net.aegis.fhir.model.Resource> searchQuery(MultivaluedMap<String,String> parameterMap, MultivaluedMap<String,String> formMap, String resourceType, boolean isCompartment, List<String[]> _include, List<String[]> _includeIterate, List<String[]> _revinclude, List<String[]> validParams, List<String[]> invalidParams, Integer pageOffset, Integer pageLimit, List<Integer> totalCount) throws Exception {
+
+		return searchQuery(parameterMap, formMap, resourceType, isCompartment, _include, _includeIterate, _revinclude, validParams, invalidParams, pageOffset, pageLimit, totalCount, null, null, null);
+	}
+
+	/**
+	 * Id only variant of searchQuery used to build a search cursor. Only the ordered resource row ids of the matches are
+	 * returned; the resource contents are not read. If totalCount is not null, the total number of matches is added to
+	 * the totalCount list.
+	 *
+	 * @param parameterMap
+	 * @param formMap
+	 * @param resourceType
+	 * @param isCompartment
+	 * @param _include
+	 * @param _includeIterate
+	 * @param _revinclude
+	 * @param validParams
+	 * @param invalidParams
+	 * @param idLimit - maximum number of ids to return; null for the maximum count; less than zero for all matches
+	 * @param totalCount - if not null, the total number of matches is added to this list
+	 * @return List<Integer>
+	 * @throws Exception
+	 */
+	public List<Integer> searchQueryIds(MultivaluedMap<String,String> parameterMap, MultivaluedMap<String,String> formMap, String resourceType, boolean isCompartment, List<String[]> _include, List<String[]> _includeIterate, List<String[]> _revinclude, List<String[]> validParams, List<String[]> invalidParams, Integer idLimit, List<Integer> totalCount) throws Exception {
+
+		List<Integer> resultIds = new ArrayList<Integer>();
+
+		searchQuery(parameterMap, formMap, resourceType, isCompartment, _include, _includeIterate, _revinclude, validParams, invalidParams, null, idLimit, totalCount, resultIds, null, null);
+
+		return resultIds;
+	}
+
+	/**
+	 * Observation $lastn variant of the id only searchQuery. The matches are ranked per Observation code by their
+	 * effective date in a single statement with a window function; only the resource row ids of the most recent max
+	 * Observations of each code are returned, ordered by code, effective date descending. Observations with the same
+	 * code and effective date share a rank. The resource contents are not read.
+	 *
+	 * @param parameterMap
+	 * @param formMap
+	 * @param _include
+	 * @param _includeIterate
+	 * @param _revinclude
+	 * @param validParams
+	 * @param invalidParams
+	 * @param max - maximum number of Observations per code; less than zero for all
+	 * @param emptyDateValue - effective date in DATETIME_SORT_FORMAT used for Observations without an effective date;
+	 *        null to skip these Observations
+	 * @return List<Integer>
+	 * @throws Exception
+	 */
+	public List<Integer> searchQueryLastNIds(MultivaluedMap<String,String> parameterMap, MultivaluedMap<String,String> formMap, List<String[]> _include, List<String[]> _includeIterate, List<String[]> _revinclude, List<String[]> validParams, List<String[]> invalidParams, int max, String emptyDateValue) throws Exception {
+
+		List<Integer> resultIds = new ArrayList<Integer>();
+
+		// All ranked ids are returned; a limit on the rows ordered by code would drop the codes last in the order
+		searchQuery(parameterMap, formMap, "Observation", false, _include, _includeIterate, _revinclude, validParams, invalidParams, null, Integer.valueOf(-1), null, resultIds, Integer.valueOf(max), emptyDateValue);
+
+		return resultIds;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<net.aegis.fhir.model.Resource> searchQuery(MultivaluedMap<String,String> parameterMap, MultivaluedMap<String,String> formMap, String resourceType, boolean isCompartment, List<String[]> _include, List<String[]> _includeIterate, List<String[]> _revinclude, List<String[]> validParams, List<String[]> invalidParams, Integer pageOffset, Integer pageLimit, List<Integer> totalCount, List<Integer> resultIds, Integer lastnMax, String lastnEmptyDate) throws Exception {
+
+		log.fine("[START] ResourceService.searchQuery - pageOffset: " + pageOffset + "; pageLimit: " + pageLimit + "; idsOnly: " + (resultIds != null));
 
 		Query resourceQuery = null;
 		List<net.aegis.fhir.model.Resource> resourcesReturned = null;
@@ -3034,30 +3326,34 @@ public class ResourceService {
 		try {
 			log.fine("Native query based on resource type and parameters");
 
-			String tempTableName = "temp" + UUIDUtil.getGUID();
+			/*
+			 * Temporary tables are scoped to the database connection; a fixed table name keeps the statement text stable
+			 * so that the prepared statements are reused. Any table left behind by a failed search is dropped first.
+			 */
+			String tempTableName = "tempsearch";
 
-			// Build native query based on resource type and parameters
-			StringBuffer sbQuery = new StringBuffer("select r1.id, r1.resourceId, r1.versionId, r1.resourceType, r1.status, r1.lastUser, r1.lastUpdate, r1.resourceContents");
-			StringBuffer sbCriteria = new StringBuffer(" from resource r1 where");
+			// Build native query based on resource type and parameters; all criteria values are bind parameters
+			SqlQueryBuffer sbQuery = new SqlQueryBuffer("select r1.id, r1.resourceId, r1.versionId, r1.resourceType, r1.status, r1.lastUser, r1.lastUpdate, r1.resourceContents, r1.resourceContentsJson, r1.isCurrent");
+			SqlQueryBuffer sbCriteria = new SqlQueryBuffer(" from resource r1 where");
 
 			// FHIR-??? - SQL performance modifications: add engine=memory, remove unnecessary outer select * from () AS t1
 			//StringBuffer sbCreateTempTable = new StringBuffer("create temporary table ").append(tempTableName).append(" as select * from ( ");
-			StringBuffer sbCreateTempTable = new StringBuffer("create temporary table ").append(tempTableName).append(" engine=memory as ");
+			SqlQueryBuffer sbCreateTempTable = new SqlQueryBuffer("create temporary table ").append(tempTableName).append(" engine=memory as ");
 
 			StringBuffer sbCreateTempSelect = new StringBuffer("select rm.resourceJoinId as id from resourcemetadata rm"); // Append " where " when combining
 			StringBuffer sbCreateTempWhereJoin = new StringBuffer(" "); // If where join length > 5 then append " and " when combining
-			StringBuffer sbCreateTempWhereCriteria = new StringBuffer("");
+			SqlQueryBuffer sbCreateTempWhereCriteria = new SqlQueryBuffer();
 
-			sbDropTempTable.append("drop temporary table ").append(tempTableName);
+			sbDropTempTable.append("drop temporary table if exists ").append(tempTableName);
 
 			if (resourceType != null && !resourceType.isEmpty()) {
-				sbCriteria.append(" r1.resourceType = '").append(resourceType).append("'").append(" and r1.status = 'valid'");
-				sbCriteria.append(" and r1.versionId = (select max(r2.versionId) from resource r2 where r2.resourceType = '").append(resourceType).append("' and r2.resourceId = r1.resourceId)");
+				sbCriteria.append(" r1.resourceType = ").appendParameter(resourceType).append(" and r1.status = 'valid'");
+				sbCriteria.append(" and r1.isCurrent = 1");
 			}
 			else {
 				resourceType = null;
 				sbCriteria.append(" r1.status = 'valid'");
-				sbCriteria.append(" and r1.versionId = (select max(r2.versionId) from resource r2 where r2.resourceType = r1.resourceType and r2.resourceId = r1.resourceId)");
+				sbCriteria.append(" and r1.isCurrent = 1");
 			}
 
 			List<Entry<String, List<String>>> compartmentSet = new ArrayList<Entry<String, List<String>>>();
@@ -3101,20 +3397,20 @@ public class ResourceService {
 							int idListCount = idList.length;
 
 							if (idListCount == 1) {
-								sbCriteria.append(" and r1.resourceId = '").append(value).append("'");
+								sbCriteria.append(" and r1.resourceId = ").appendParameter(value);
 							}
 							else {
-								sbCriteria.append(" and r1.resourceId IN ('");
+								sbCriteria.append(" and r1.resourceId IN (");
 								for (String idValue : idList) {
-									sbCriteria.append(idValue);
+									sbCriteria.appendParameter(idValue);
 
 									idListInd++;
 
 									if (idListInd < idListCount) {
-										sbCriteria.append("','");
+										sbCriteria.append(",");
 									}
 								}
-								sbCriteria.append("')");
+								sbCriteria.append(")");
 							}
 						}
 
@@ -3134,6 +3430,10 @@ public class ResourceService {
 				String sExistsBase = "rm";
 				String sExists = "rm";
 
+				// Token, date, number, quantity and near criteria target the typed search index tables if enabled
+				boolean useIndexTables = resourceindexService.isEnabled();
+				int iIndex = 0;
+
 				// Iterate thru the parameter map and build temporary table select definition
 				for (Entry<String, List<String>> entry : paramSet) {
 
@@ -3216,21 +3516,11 @@ public class ResourceService {
 						boolean isUriType = (criteriaType.equalsIgnoreCase("URI") ? true : false);
 						boolean splitCriteriaWritten = false;
 
-						String sqValue = "";
-
 						for (String value : entry.getValue()) {
 
 							// First, decode URL query parameter value
 							value = URLDecoder.decode(value, "UTF-8");
 
-							// Set single quote escaped string value
-							if (value.contains("'")) {
-								sqValue = value.replaceAll("'", "''");
-							}
-							else {
-								sqValue = value;
-							}
-
 							// Save valid parameter name IF validParams is not null
 
 							String[] validParam = new String[2];
@@ -3238,7 +3528,7 @@ public class ResourceService {
 							validParam[1] = value;
 							if (validParams != null) {
 								validParams.add(validParam);
-								//log.fine("   --> Valid Param [" + key + "] Value [" + value + "] sqValue [" + sqValue + "]");
+								//log.fine("   --> Valid Param [" + key + "] Value [" + value + "]");
 							}
 
 							// Next process known, special parameters
@@ -3323,13 +3613,13 @@ public class ResourceService {
 									stringValue = utcDateUtil.formatDate(dateValue, UTCDateUtil.DATETIME_SORT_FORMAT, TimeZone.getTimeZone(UTCDateUtil.TIME_ZONE_UTC));
 
 									sbCreateTempWhereCriteria.append("(")
-										.append(sExists).append(".paramName = '_lastUpdated' and ").append(sExists).append(".paramValue >= '").append(stringValue).append("')");
+										.append(sExists).append(".paramName = '_lastUpdated' and ").append(sExists).append(".paramValue >= ").appendParameter(stringValue).append(")");
 								}
 								else {
 									stringValue = utcDateUtil.formatDate(dateValue, UTCDateUtil.DATETIME_SORT_FORMAT, TimeZone.getDefault());
 
 									sbCreateTempWhereCriteria.append("(")
-										.append(sExists).append(".paramName = '_lastUpdated' and ").append(sExists).append(".codeValue >= '").append(stringValue).append("')");
+										.append(sExists).append(".paramName = '_lastUpdated' and ").append(sExists).append(".codeValue >= ").appendParameter(stringValue).append(")");
 								}
 
 							}
@@ -3344,7 +3634,7 @@ public class ResourceService {
 											if (typeCount > 0) {
 												sbCriteria.append(",");
 											}
-											sbCriteria.append("'").append(type).append("'");
+											sbCriteria.appendParameter(type);
 											typeCount++;
 										}
 										sbCriteria.append(")");
@@ -3356,10 +3646,10 @@ public class ResourceService {
 								key = key.substring(0, key.indexOf(":missing"));
 
 								if (value.equalsIgnoreCase("true")) {
-									sbCriteria.append(" and r1.id NOT IN (select rm.resourceJoinId as id from resourcemetadata rm where rm.paramName = '").append(key).append("')");
+									sbCriteria.append(" and r1.id NOT IN (select rm.resourceJoinId as id from resourcemetadata rm where rm.paramName = ").appendParameter(key).append(")");
 								}
 								else if (value.equalsIgnoreCase("false")) {
-									sbCriteria.append(" and r1.id IN (select rm.resourceJoinId as id from resourcemetadata rm where rm.paramName = '").append(key).append("')");
+									sbCriteria.append(" and r1.id IN (select rm.resourceJoinId as id from resourcemetadata rm where rm.paramName = ").appendParameter(key).append(")");
 								}
 
 							}
@@ -3377,8 +3667,8 @@ public class ResourceService {
 									}
 									sbCreateTempWhereJoin.append(sExists).append(".resourceJoinId = rm.resourceJoinId");
 								}
-								sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = '")
-									.append(key).append("' and ").append(sExists).append(".paramValue like '").append(sqValue.toUpperCase()).append("')");
+								sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = ")
+									.appendParameter(key).append(" and ").append(sExists).append(".paramValue like ").appendParameter(value.toUpperCase()).append(")");
 
 							}
 							else if (key.contains(":text") && value != null && value.length() > 0) {
@@ -3395,8 +3685,8 @@ public class ResourceService {
 									}
 									sbCreateTempWhereJoin.append(sExists).append(".resourceJoinId = rm.resourceJoinId");
 								}
-								sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = '")
-									.append(key).append("' and ").append(sExists).append(".textValueU like '%").append(sqValue.toUpperCase()).append("%')");
+								sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = ")
+									.appendParameter(key).append(" and ").append(sExists).append(".textValueU like ").appendParameter("%" + value.toUpperCase() + "%").append(")");
 
 							}
 							else if (key.contains("COMPARTMENT-") && value != null && value.length() > 0) {
@@ -3422,9 +3712,8 @@ public class ResourceService {
 									sbCreateTempWhereJoin.append(sExists).append(".resourceJoinId = rm.resourceJoinId");
 								}
 
-								sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = '")
-									.append("age' and ").append(sExists).append(".codeValue >= '").append(stringStartValue).append("' and ").append(sExists).append(".codeValue <= '")
-										.append(stringEndValue).append("')");
+								sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = 'age' and ").append(sExists).append(".codeValue >= ").appendParameter(stringStartValue).append(" and ").append(sExists).append(".codeValue <= ")
+										.appendParameter(stringEndValue).append(")");
 
 							}
 							else if (key.equals("name") || key.contains(".name")) {
@@ -3439,8 +3728,8 @@ public class ResourceService {
 									}
 									sbCreateTempWhereJoin.append(sExists).append(".resourceJoinId = rm.resourceJoinId");
 								}
-								sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = '")
-									.append(key).append("' and ").append(sExists).append(".paramValue like '%").append(sqValue).append("%')");
+								sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = ")
+									.appendParameter(key).append(" and ").append(sExists).append(".paramValue like ").appendParameter("%" + value + "%").append(")");
 
 							}
 							else if (key.equals("near") || key.contains(".near")) {
@@ -3542,9 +3831,9 @@ public class ResourceService {
 									}
 									sbCreateTempWhereJoin.append(sExists).append(".resourceJoinId = rm.resourceJoinId");
 								}
-								sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = '")
-									.append(key).append("' and cast(left(").append(sExists).append(".paramValue,9) as signed) > ").append(lowValue)
-									.append(" and cast(right(").append(sExists).append(".paramValue,9) as signed) < ").append(highValue).append(")");
+								sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = ")
+									.appendParameter(key).append(" and cast(left(").append(sExists).append(".paramValue,9) as signed) > ").appendParameter(lowValue)
+									.append(" and cast(right(").append(sExists).append(".paramValue,9) as signed) < ").appendParameter(highValue).append(")");
 
 							}
 							else if (key.equals("max")) {
@@ -3570,9 +3859,9 @@ public class ResourceService {
 									TimeZone timeZoneUTC = TimeZone.getTimeZone(UTCDateUtil.TIME_ZONE_UTC);
 
 									/*
-									 * Check for comma separated list of sqValues
+									 * Check for comma separated list of values
 									 */
-									String[] valueList = sqValue.split("\\,");
+									String[] valueList = value.split("\\,");
 									int valueListInd = 0;
 									int valueListCount = valueList.length;
 
@@ -3841,7 +4130,30 @@ public class ResourceService {
 									if (isValidParamValues) {
 										valueListInd = 0;
 
-										if (sbCreateTempWhereCriteria.length() > 5) {
+										// Typed search index table criteria are written as a separate EXISTS on the resource row
+										String indexTableName = (useIndexTables ? ResourceindexService.getIndexTableName(key, criteriaType) : null);
+										String sExistsMetadata = sExists;
+										SqlQueryBuffer sbParamCriteria = sbCreateTempWhereCriteria;
+
+										// Date and period value columns: UTC start, UTC end, server time zone start, server time zone end
+										String utcStartColName = ".paramValue";
+										String utcEndColName = ".systemValue";
+										String localStartColName = ".codeValue";
+										String localEndColName = ".textValue";
+
+										if (indexTableName != null) {
+											iIndex++;
+											sExists = "ri" + iIndex;
+											sbParamCriteria = new SqlQueryBuffer();
+
+											if (ResourceindexService.INDEX_DATE.equals(indexTableName)) {
+												utcStartColName = ".startUtc";
+												utcEndColName = ".endUtc";
+												localStartColName = ".startLocal";
+												localEndColName = ".endLocal";
+											}
+										}
+										else if (sbCreateTempWhereCriteria.length() > 5) {
 											iExists++;
 											sExists = sExistsBase + iExists;
 
@@ -3853,10 +4165,10 @@ public class ResourceService {
 											sbCreateTempWhereJoin.append(sExists).append(".resourceJoinId = rm.resourceJoinId");
 										}
 										if (valueListCount == 1) {
-											sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = '").append(key).append("' and");
+											sbParamCriteria.append("(").append(sExists).append(".paramName = ").appendParameter(key).append(" and");
 										}
 										else {
-											sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = '").append(key).append("' and ((");
+											sbParamCriteria.append("(").append(sExists).append(".paramName = ").appendParameter(key).append(" and ((");
 										}
 
 										for (String listValue : validValueList) {
@@ -3870,7 +4182,7 @@ public class ResourceService {
 											splitCriteriaWritten = false;
 
 											if (valueListInd > 0) {
-												sbCreateTempWhereCriteria.append(") or (");
+												sbParamCriteria.append(") or (");
 											}
 
 											String prefixControl = "";
@@ -3878,9 +4190,10 @@ public class ResourceService {
 											String lowRangeValue = "";
 											String highRangeValue = "";
 											Integer dateFormatLength = Integer.valueOf(14);
-											String dateParamValueColName = sExists + ".paramValue";
-											String periodStartValueColName = sExists + ".paramValue";
-											String periodEndValueColName = sExists + ".systemValue";
+											String dateParamValueColName = sExists + utcStartColName;
+											String periodStartValueColName = sExists + utcStartColName;
+											String periodEndValueColName = sExists + utcEndColName;
+											String numberValueColName = (indexTableName != null ? sExists + ".numberValue" : "CAST(" + sExists + ".paramValue AS DECIMAL(30,15))");
 
 											/*
 											 * Process system|value|code if found
@@ -3941,16 +4254,16 @@ public class ResourceService {
 																if (utcDateUtil.hasTimeZone(prefixValue)) {
 																	prefixValue = utcDateUtil.formatDate(dateValue, UTCDateUtil.DATETIME_SORT_FORMAT, timeZoneUTC);
 
-																	dateParamValueColName = sExists + ".paramValue";
-																	periodStartValueColName = sExists + ".paramValue";
-																	periodEndValueColName = sExists + ".systemValue";
+																	dateParamValueColName = sExists + utcStartColName;
+																	periodStartValueColName = sExists + utcStartColName;
+																	periodEndValueColName = sExists + utcEndColName;
 																}
 																else {
 																	prefixValue = utcDateUtil.formatDate(dateValue, UTCDateUtil.DATETIME_SORT_FORMAT, timeZoneDefault, dateFormatLength);
 
-																	dateParamValueColName = sExists + ".codeValue";
-																	periodStartValueColName = sExists + ".codeValue";
-																	periodEndValueColName = sExists + ".textValue";
+																	dateParamValueColName = sExists + localStartColName;
+																	periodStartValueColName = sExists + localStartColName;
+																	periodEndValueColName = sExists + localEndColName;
 																}
 															}
 
@@ -3967,48 +4280,48 @@ public class ResourceService {
 															if (prefixControl.equals("eq") || prefixControl.equals("sa") || prefixControl.equals("eb") || prefixControl.equals("ap")) {
 																if (isNumericType || isQuantityType) {
 																	// Value is numeric, do not enclose value in quotes
-																	sbCreateTempWhereCriteria.append(" (CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) >= ").append(lowRangeValue)
-																		.append(" AND CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) <= ").append(highRangeValue).append(")");
+																	sbParamCriteria.append(" (").append(numberValueColName).append(" >= ").appendDecimalParameter(lowRangeValue)
+																		.append(" AND ").append(numberValueColName).append(" <= ").appendDecimalParameter(highRangeValue).append(")");
 																}
 																else if (isPeriodType) {
 																	// isPeriodType EQUALS, APPROXIMATE
 																	if (prefixControl.equals("eq") || prefixControl.equals("ap")) {
-																		sbCreateTempWhereCriteria.append(" (").append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName)
-																			.append(" >= '").append(lowRangeValue).append("' AND ").append(periodEndValueColName).append(" IS NOT NULL AND ")
-																			.append(periodEndValueColName).append(" <= '").append(highRangeValue).append("')");
+																		sbParamCriteria.append(" (").append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName)
+																			.append(" >= ").appendParameter(lowRangeValue).append(" AND ").append(periodEndValueColName).append(" IS NOT NULL AND ")
+																			.append(periodEndValueColName).append(" <= ").appendParameter(highRangeValue).append(")");
 																	}
 																	// isPeriodType STARTS AFTER
 																	if (prefixControl.equals("sa")) {
-																		sbCreateTempWhereCriteria.append(" (").append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName)
-																			.append(" > '").append(highRangeValue).append("')");
+																		sbParamCriteria.append(" (").append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName)
+																			.append(" > ").appendParameter(highRangeValue).append(")");
 																	}
 																	// isPeriodType ENDS BEFORE
 																	if (prefixControl.equals("eb")) {
-																		sbCreateTempWhereCriteria.append(" (").append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName)
-																			.append(" < '").append(lowRangeValue).append("')");
+																		sbParamCriteria.append(" (").append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName)
+																			.append(" < ").appendParameter(lowRangeValue).append(")");
 																	}
 																}
 																else {
 																	// isDateType - must check actual paramType in criteria; if PERIOD, apply isPeriodType logic
 																	// -- EQUALS, APPROXIMATE
 																	if (prefixControl.equals("eq") || prefixControl.equals("ap")) {
-																		sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ").append(periodStartValueColName)
-																			.append(" IS NOT NULL AND ").append(periodStartValueColName).append(" >= '").append(lowRangeValue).append("' AND ")
-																			.append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= '")
-																			.append(highRangeValue).append("') OR (").append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" >= '")
-																			.append(lowRangeValue).append("' AND ").append(dateParamValueColName).append(" <= '").append(highRangeValue).append("'))");
+																		sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ").append(periodStartValueColName)
+																			.append(" IS NOT NULL AND ").append(periodStartValueColName).append(" >= ").appendParameter(lowRangeValue).append(" AND ")
+																			.append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= ")
+																			.appendParameter(highRangeValue).append(") OR (").append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" >= ")
+																			.appendParameter(lowRangeValue).append(" AND ").append(dateParamValueColName).append(" <= ").appendParameter(highRangeValue).append("))");
 																	}
 																	// -- STARTS AFTER
 																	if (prefixControl.equals("sa")) {
-																		sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ").append(periodStartValueColName)
-																			.append(" IS NOT NULL AND ").append(periodStartValueColName).append(" > '").append(highRangeValue).append("') OR (")
-																			.append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" > '").append(highRangeValue).append("'))");
+																		sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ").append(periodStartValueColName)
+																			.append(" IS NOT NULL AND ").append(periodStartValueColName).append(" > ").appendParameter(highRangeValue).append(") OR (")
+																			.append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" > ").appendParameter(highRangeValue).append("))");
 																	}
 																	// -- ENDS BEFORE
 																	if (prefixControl.equals("eb")) {
-																		sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ").append(periodEndValueColName)
-																			.append(" IS NOT NULL AND ").append(periodEndValueColName).append(" < '").append(lowRangeValue).append("') OR (")
-																			.append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" < '").append(lowRangeValue).append("'))");
+																		sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ").append(periodEndValueColName)
+																			.append(" IS NOT NULL AND ").append(periodEndValueColName).append(" < ").appendParameter(lowRangeValue).append(") OR (")
+																			.append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" < ").appendParameter(lowRangeValue).append("))");
 																	}
 																}
 																splitCriteriaWritten = true;
@@ -4019,24 +4332,24 @@ public class ResourceService {
 															else if (prefixControl.equals("ne")) {
 																if (isNumericType || isQuantityType) {
 																	// Value is numeric, do not enclose value in quotes
-																	sbCreateTempWhereCriteria.append(" (CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) > ").append(lowRangeValue)
-																		.append(" OR CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) < ").append(highRangeValue).append(")");
+																	sbParamCriteria.append(" (").append(numberValueColName).append(" > ").appendDecimalParameter(lowRangeValue)
+																		.append(" OR ").append(numberValueColName).append(" < ").appendDecimalParameter(highRangeValue).append(")");
 																}
 																else if (isPeriodType) {
 																	// isPeriodType NOT EQUALS
-																	sbCreateTempWhereCriteria.append(" ((").append(periodStartValueColName).append(" IS NULL OR ").append(periodEndValueColName)
+																	sbParamCriteria.append(" ((").append(periodStartValueColName).append(" IS NULL OR ").append(periodEndValueColName)
 																		.append(" IS NULL) OR ((").append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName)
-																		.append(" < '").append(lowRangeValue).append("') OR (").append(periodEndValueColName).append(" IS NOT NULL AND ")
-																		.append(periodEndValueColName).append(" > '").append(highRangeValue).append("')))");
+																		.append(" < ").appendParameter(lowRangeValue).append(") OR (").append(periodEndValueColName).append(" IS NOT NULL AND ")
+																		.append(periodEndValueColName).append(" > ").appendParameter(highRangeValue).append(")))");
 																}
 																else {
 																	// isDateType NOT EQUALS - must check actual paramType in criteria; if PERIOD, apply isPeriodType logic
-																	sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ((").append(periodStartValueColName)
+																	sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ((").append(periodStartValueColName)
 																		.append(" IS NULL OR ").append(periodEndValueColName).append(" IS NULL) OR ((").append(periodStartValueColName).append(" IS NOT NULL AND ")
-																		.append(periodStartValueColName).append(" < '").append(lowRangeValue).append("') OR (").append(periodEndValueColName).append(" IS NOT NULL AND ")
-																		.append(periodEndValueColName).append(" > '").append(highRangeValue).append("')))) OR (").append(sExists).append(".paramType = 'DATE' AND (")
-																		.append(dateParamValueColName).append(" < '").append(lowRangeValue).append("' OR ").append(dateParamValueColName).append(" > '")
-																		.append(highRangeValue).append("')))");
+																		.append(periodStartValueColName).append(" < ").appendParameter(lowRangeValue).append(") OR (").append(periodEndValueColName).append(" IS NOT NULL AND ")
+																		.append(periodEndValueColName).append(" > ").appendParameter(highRangeValue).append(")))) OR (").append(sExists).append(".paramType = 'DATE' AND (")
+																		.append(dateParamValueColName).append(" < ").appendParameter(lowRangeValue).append(" OR ").append(dateParamValueColName).append(" > ")
+																		.appendParameter(highRangeValue).append(")))");
 																}
 																splitCriteriaWritten = true;
 															}
@@ -4046,18 +4359,18 @@ public class ResourceService {
 															else if (prefixControl.equals("gt")) {
 																if (isNumericType || isQuantityType) {
 																	// Value is numeric, do not enclose value in quotes
-																	sbCreateTempWhereCriteria.append(" CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) > ").append(highRangeValue);
+																	sbParamCriteria.append(" ").append(numberValueColName).append(" > ").appendDecimalParameter(highRangeValue);
 																}
 																else if (isPeriodType) {
 																	// isPeriodType GREATER THAN
-																	sbCreateTempWhereCriteria.append(" (").append(periodEndValueColName).append(" IS NULL OR ").append(periodEndValueColName)
-																		.append(" > '").append(highRangeValue).append("')");
+																	sbParamCriteria.append(" (").append(periodEndValueColName).append(" IS NULL OR ").append(periodEndValueColName)
+																		.append(" > ").appendParameter(highRangeValue).append(")");
 																}
 																else {
 																	// isDateType GREATER THAN - must check actual paramType in criteria; if PERIOD, apply isPeriodType logic
-																	sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND (").append(periodEndValueColName)
-																		.append(" IS NULL or ").append(periodEndValueColName).append(" > '").append(highRangeValue).append("')) OR (").append(sExists)
-																		.append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" > '").append(highRangeValue).append("'))");
+																	sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND (").append(periodEndValueColName)
+																		.append(" IS NULL or ").append(periodEndValueColName).append(" > ").appendParameter(highRangeValue).append(")) OR (").append(sExists)
+																		.append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" > ").appendParameter(highRangeValue).append("))");
 																}
 																splitCriteriaWritten = true;
 															}
@@ -4067,18 +4380,18 @@ public class ResourceService {
 															else if (prefixControl.equals("lt")) {
 																if (isNumericType || isQuantityType) {
 																	// Value is numeric, do not enclose value in quotes
-																	sbCreateTempWhereCriteria.append(" CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) < ").append(lowRangeValue);
+																	sbParamCriteria.append(" ").append(numberValueColName).append(" < ").appendDecimalParameter(lowRangeValue);
 																}
 																else if (isPeriodType) {
 																	// isPeriodType LESS THAN
-																	sbCreateTempWhereCriteria.append(" (").append(periodStartValueColName).append(" IS NULL OR ").append(periodStartValueColName)
-																		.append(" < '").append(lowRangeValue).append("')");
+																	sbParamCriteria.append(" (").append(periodStartValueColName).append(" IS NULL OR ").append(periodStartValueColName)
+																		.append(" < ").appendParameter(lowRangeValue).append(")");
 																}
 																else {
 																	// isDateType LESS THAN - must check actual paramType in criteria; if PERIOD, apply isPeriodType logic
-																	sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' and (").append(periodStartValueColName)
-																		.append(" IS NULL OR ").append(periodStartValueColName).append(" < '").append(lowRangeValue).append("')) OR (")
-																		.append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" < '").append(lowRangeValue).append("'))");
+																	sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' and (").append(periodStartValueColName)
+																		.append(" IS NULL OR ").append(periodStartValueColName).append(" < ").appendParameter(lowRangeValue).append(")) OR (")
+																		.append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" < ").appendParameter(lowRangeValue).append("))");
 																}
 																splitCriteriaWritten = true;
 															}
@@ -4088,24 +4401,24 @@ public class ResourceService {
 															else if (prefixControl.equals("ge")) {
 																if (isNumericType || isQuantityType) {
 																	// Value is numeric, do not enclose value in quotes
-																	sbCreateTempWhereCriteria.append(" CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) >= ").append(highRangeValue);
+																	sbParamCriteria.append(" ").append(numberValueColName).append(" >= ").appendDecimalParameter(highRangeValue);
 																}
 																else if (isPeriodType) {
 																	// isPeriodType GREATER THAN OR EQUALS
-																	sbCreateTempWhereCriteria.append(" ((").append(periodEndValueColName).append(" IS NULL OR ").append(periodEndValueColName)
-																		.append(" > '").append(highRangeValue).append("') OR (").append(periodStartValueColName).append(" IS NOT NULL AND ")
-																		.append(periodStartValueColName).append(" >= '").append(lowRangeValue).append("' AND ").append(periodEndValueColName)
-																		.append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= '").append(highRangeValue).append("'))");
+																	sbParamCriteria.append(" ((").append(periodEndValueColName).append(" IS NULL OR ").append(periodEndValueColName)
+																		.append(" > ").appendParameter(highRangeValue).append(") OR (").append(periodStartValueColName).append(" IS NOT NULL AND ")
+																		.append(periodStartValueColName).append(" >= ").appendParameter(lowRangeValue).append(" AND ").append(periodEndValueColName)
+																		.append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= ").appendParameter(highRangeValue).append("))");
 																}
 																else {
 																	// isDateType GREATER THAN OR EQUALS - must check actual paramType in criteria; if PERIOD, apply isPeriodType logic
-																	sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ((").append(periodEndValueColName)
-																		.append(" IS NULL OR ").append(periodEndValueColName).append(" > '").append(highRangeValue).append("') OR (")
-																		.append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName).append(" >= '").append(lowRangeValue)
-																		.append("' AND ").append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= '")
-																		.append(highRangeValue).append("'))) OR (").append(sExists).append(".paramType = 'DATE' AND ((").append(dateParamValueColName)
-																		.append(" >= '").append(highRangeValue).append("') OR (").append(dateParamValueColName).append(" >= '").append(lowRangeValue)
-																		.append("' AND ").append(dateParamValueColName).append(" <= '").append(highRangeValue).append("'))))");
+																	sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ((").append(periodEndValueColName)
+																		.append(" IS NULL OR ").append(periodEndValueColName).append(" > ").appendParameter(highRangeValue).append(") OR (")
+																		.append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName).append(" >= ").appendParameter(lowRangeValue)
+																		.append(" AND ").append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= ")
+																		.appendParameter(highRangeValue).append("))) OR (").append(sExists).append(".paramType = 'DATE' AND ((").append(dateParamValueColName)
+																		.append(" >= ").appendParameter(highRangeValue).append(") OR (").append(dateParamValueColName).append(" >= ").appendParameter(lowRangeValue)
+																		.append(" AND ").append(dateParamValueColName).append(" <= ").appendParameter(highRangeValue).append("))))");
 																}
 																splitCriteriaWritten = true;
 															}
@@ -4115,24 +4428,24 @@ public class ResourceService {
 															else if (prefixControl.equals("le")) {
 																if (isNumericType || isQuantityType) {
 																	// Value is numeric, do not enclose value in quotes
-																	sbCreateTempWhereCriteria.append(" CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) <= ").append(lowRangeValue);
+																	sbParamCriteria.append(" ").append(numberValueColName).append(" <= ").appendDecimalParameter(lowRangeValue);
 																}
 																else if (isPeriodType) {
 																	// isPeriodType LESS THAN OR EQUALS
-																	sbCreateTempWhereCriteria.append(" ((").append(periodStartValueColName).append(" IS NULL OR ").append(periodStartValueColName)
-																		.append(" < '").append(lowRangeValue).append("') OR (").append(periodStartValueColName).append(" IS NOT NULL AND ")
-																		.append(periodStartValueColName).append(" >= '").append(lowRangeValue).append("' AND ").append(periodEndValueColName)
-																		.append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= '").append(highRangeValue).append("'))");
+																	sbParamCriteria.append(" ((").append(periodStartValueColName).append(" IS NULL OR ").append(periodStartValueColName)
+																		.append(" < ").appendParameter(lowRangeValue).append(") OR (").append(periodStartValueColName).append(" IS NOT NULL AND ")
+																		.append(periodStartValueColName).append(" >= ").appendParameter(lowRangeValue).append(" AND ").append(periodEndValueColName)
+																		.append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= ").appendParameter(highRangeValue).append("))");
 																}
 																else {
 																	// isDateType LESS THAN OR EQUALS - must check actual paramType in criteria; if PERIOD, apply isPeriodType logic
-																	sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ((").append(periodStartValueColName)
-																		.append(" IS NULL OR ").append(periodStartValueColName).append(" < '").append(lowRangeValue).append("') OR (")
-																		.append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName).append(" >= '")
-																		.append(lowRangeValue).append("' AND ").append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName)
-																		.append(" <= '").append(highRangeValue).append("'))) OR (").append(sExists).append(".paramType = 'DATE' AND ((")
-																		.append(dateParamValueColName).append(" <= '").append(lowRangeValue).append("') OR (").append(dateParamValueColName).append(" >= '")
-																		.append(lowRangeValue).append("' AND ").append(dateParamValueColName).append(" <= '").append(highRangeValue).append("'))))");
+																	sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ((").append(periodStartValueColName)
+																		.append(" IS NULL OR ").append(periodStartValueColName).append(" < ").appendParameter(lowRangeValue).append(") OR (")
+																		.append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName).append(" >= ")
+																		.appendParameter(lowRangeValue).append(" AND ").append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName)
+																		.append(" <= ").appendParameter(highRangeValue).append("))) OR (").append(sExists).append(".paramType = 'DATE' AND ((")
+																		.append(dateParamValueColName).append(" <= ").appendParameter(lowRangeValue).append(") OR (").append(dateParamValueColName).append(" >= ")
+																		.appendParameter(lowRangeValue).append(" AND ").append(dateParamValueColName).append(" <= ").appendParameter(highRangeValue).append("))))");
 																}
 																splitCriteriaWritten = true;
 															}
@@ -4159,16 +4472,16 @@ public class ResourceService {
 															if (utcDateUtil.hasTimeZone(pairValue)) {
 																pairValue = utcDateUtil.formatDate(dateValue, UTCDateUtil.DATETIME_SORT_FORMAT, timeZoneUTC);
 
-																dateParamValueColName = sExists + ".paramValue";
-																periodStartValueColName = sExists + ".paramValue";
-																periodEndValueColName = sExists + ".systemValue";
+																dateParamValueColName = sExists + utcStartColName;
+																periodStartValueColName = sExists + utcStartColName;
+																periodEndValueColName = sExists + utcEndColName;
 															}
 															else {
 																pairValue = utcDateUtil.formatDate(dateValue, UTCDateUtil.DATETIME_SORT_FORMAT, timeZoneDefault, dateFormatLength);
 
-																dateParamValueColName = sExists + ".codeValue";
-																periodStartValueColName = sExists + ".codeValue";
-																periodEndValueColName = sExists + ".textValue";
+																dateParamValueColName = sExists + localStartColName;
+																periodStartValueColName = sExists + localStartColName;
+																periodEndValueColName = sExists + localEndColName;
 															}
 														}
 
@@ -4179,44 +4492,44 @@ public class ResourceService {
 														highRangeValue = this.computeHighRangeValue(pairValue, isDateType, isPeriodType, isNumericType, isQuantityType);
 
 														if (splitCriteriaWritten == true) {
-															sbCreateTempWhereCriteria.append(" and");
+															sbParamCriteria.append(" and");
 														}
 														if (isNumericType || isQuantityType) {
 															// Value is numeric, do not enclose value in quotes
-															sbCreateTempWhereCriteria.append(" (CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) >= ").append(lowRangeValue)
-																.append(" and CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) <= ").append(highRangeValue).append(")");
+															sbParamCriteria.append(" (").append(numberValueColName).append(" >= ").appendDecimalParameter(lowRangeValue)
+																.append(" and ").append(numberValueColName).append(" <= ").appendDecimalParameter(highRangeValue).append(")");
 														}
 														else if (isPeriodType) {
 															// isPeriodType DEFAULT TO EQUALS
-															sbCreateTempWhereCriteria.append(" (").append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName)
-																.append(" >= '").append(lowRangeValue).append("' AND ").append(periodEndValueColName).append(" IS NOT NULL AND ")
-																.append(periodEndValueColName).append(" <= '").append(highRangeValue).append("')");
+															sbParamCriteria.append(" (").append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName)
+																.append(" >= ").appendParameter(lowRangeValue).append(" AND ").append(periodEndValueColName).append(" IS NOT NULL AND ")
+																.append(periodEndValueColName).append(" <= ").appendParameter(highRangeValue).append(")");
 														}
 														else {
 															// isDateType DEFAULT TO EQUALS - must check actual paramType in criteria; if PERIOD, apply isPeriodType logic
-															sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ").append(periodStartValueColName)
-																.append(" IS NOT NULL AND ").append(periodStartValueColName).append(" >= '").append(lowRangeValue).append("' AND ")
-																.append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= '")
-																.append(highRangeValue).append("') OR (").append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" >= '")
-																.append(lowRangeValue).append("' AND ").append(dateParamValueColName).append(" <= '").append(highRangeValue).append("'))");
+															sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ").append(periodStartValueColName)
+																.append(" IS NOT NULL AND ").append(periodStartValueColName).append(" >= ").appendParameter(lowRangeValue).append(" AND ")
+																.append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= ")
+																.appendParameter(highRangeValue).append(") OR (").append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" >= ")
+																.appendParameter(lowRangeValue).append(" AND ").append(dateParamValueColName).append(" <= ").appendParameter(highRangeValue).append("))");
 														}
 													}
 												}
 												else {
 													// FHIR-164/KT-130 - exclude paramValue criteria if empty
 													if (!StringUtils.isEmpty(pairValue)) {
-														sbCreateTempWhereCriteria.append(" ").append(sExists).append(".paramValue = '").append(pairValue).append("'");
+														sbParamCriteria.append(" ").append(sExists).append(".paramValue = ").appendParameter(pairValue);
 													}
 													else {
-														sbCreateTempWhereCriteria.append(" 1 = 1");
+														sbParamCriteria.append(" 1 = 1");
 													}
 												}
 
 												if (!StringUtils.isEmpty(pairNamespace)) {
-													sbCreateTempWhereCriteria.append(" and ").append(sExists).append(".systemValue = '").append(pairNamespace).append("'");
+													sbParamCriteria.append(" and ").append(sExists).append(".systemValue = ").appendParameter(pairNamespace);
 												}
 												if (!StringUtils.isEmpty(pairCodeValue)) {
-													sbCreateTempWhereCriteria.append(" and ").append(sExists).append(".codeValue = '").append(pairCodeValue).append("'");
+													sbParamCriteria.append(" and ").append(sExists).append(".codeValue = ").appendParameter(pairCodeValue);
 												}
 											}
 											/*
@@ -4251,16 +4564,16 @@ public class ResourceService {
 																if (utcDateUtil.hasTimeZone(prefixValue)) {
 																	prefixValue = utcDateUtil.formatDate(dateValue, UTCDateUtil.DATETIME_SORT_FORMAT, timeZoneUTC);
 
-																	dateParamValueColName = sExists + ".paramValue";
-																	periodStartValueColName = sExists + ".paramValue";
-																	periodEndValueColName = sExists + ".systemValue";
+																	dateParamValueColName = sExists + utcStartColName;
+																	periodStartValueColName = sExists + utcStartColName;
+																	periodEndValueColName = sExists + utcEndColName;
 																}
 																else {
 																	prefixValue = utcDateUtil.formatDate(dateValue, UTCDateUtil.DATETIME_SORT_FORMAT, timeZoneDefault, dateFormatLength);
 
-																	dateParamValueColName = sExists + ".codeValue";
-																	periodStartValueColName = sExists + ".codeValue";
-																	periodEndValueColName = sExists + ".textValue";
+																	dateParamValueColName = sExists + localStartColName;
+																	periodStartValueColName = sExists + localStartColName;
+																	periodEndValueColName = sExists + localEndColName;
 																}
 															}
 
@@ -4273,48 +4586,48 @@ public class ResourceService {
 															if (prefixControl.equals("eq") || prefixControl.equals("sa") || prefixControl.equals("eb") || prefixControl.equals("ap")) {
 																if (isNumericType || isQuantityType) {
 																	// Value is numeric, do not enclose value in quotes
-																	sbCreateTempWhereCriteria.append(" (CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) >= ").append(lowRangeValue)
-																		.append(" AND CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) <= ").append(highRangeValue).append(")");
+																	sbParamCriteria.append(" (").append(numberValueColName).append(" >= ").appendDecimalParameter(lowRangeValue)
+																		.append(" AND ").append(numberValueColName).append(" <= ").appendDecimalParameter(highRangeValue).append(")");
 																}
 																else if (isPeriodType) {
 																	// isPeriodType EQUALS, APPROXIMATE
 																	if (prefixControl.equals("eq") || prefixControl.equals("ap")) {
-																		sbCreateTempWhereCriteria.append(" (").append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName)
-																			.append(" >= '").append(lowRangeValue).append("' AND ").append(periodEndValueColName).append(" IS NOT NULL AND ")
-																			.append(periodEndValueColName).append(" <= '").append(highRangeValue).append("')");
+																		sbParamCriteria.append(" (").append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName)
+																			.append(" >= ").appendParameter(lowRangeValue).append(" AND ").append(periodEndValueColName).append(" IS NOT NULL AND ")
+																			.append(periodEndValueColName).append(" <= ").appendParameter(highRangeValue).append(")");
 																	}
 																	// isPeriodType STARTS AFTER
 																	if (prefixControl.equals("sa")) {
-																		sbCreateTempWhereCriteria.append(" (").append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName)
-																			.append(" > '").append(highRangeValue).append("')");
+																		sbParamCriteria.append(" (").append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName)
+																			.append(" > ").appendParameter(highRangeValue).append(")");
 																	}
 																	// isPeriodType ENDS BEFORE
 																	if (prefixControl.equals("eb")) {
-																		sbCreateTempWhereCriteria.append(" (").append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName)
-																			.append(" < '").append(lowRangeValue).append("')");
+																		sbParamCriteria.append(" (").append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName)
+																			.append(" < ").appendParameter(lowRangeValue).append(")");
 																	}
 																}
 																else {
 																	// isDateType - must check actual paramType in criteria; if PERIOD, apply isPeriodType logic
 																	// -- EQUALS, APPROXIMATE
 																	if (prefixControl.equals("eq") || prefixControl.equals("ap")) {
-																		sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ").append(periodStartValueColName)
-																			.append(" IS NOT NULL AND ").append(periodStartValueColName).append(" >= '").append(lowRangeValue).append("' AND ")
-																			.append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= '")
-																			.append(highRangeValue).append("') OR (").append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" >= '")
-																			.append(lowRangeValue).append("' AND ").append(dateParamValueColName).append(" <= '").append(highRangeValue).append("'))");
+																		sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ").append(periodStartValueColName)
+																			.append(" IS NOT NULL AND ").append(periodStartValueColName).append(" >= ").appendParameter(lowRangeValue).append(" AND ")
+																			.append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= ")
+																			.appendParameter(highRangeValue).append(") OR (").append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" >= ")
+																			.appendParameter(lowRangeValue).append(" AND ").append(dateParamValueColName).append(" <= ").appendParameter(highRangeValue).append("))");
 																	}
 																	// -- STARTS AFTER
 																	if (prefixControl.equals("sa")) {
-																		sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ").append(periodStartValueColName)
-																			.append(" IS NOT NULL AND ").append(periodStartValueColName).append(" > '").append(highRangeValue).append("') OR (")
-																			.append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" > '").append(highRangeValue).append("'))");
+																		sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ").append(periodStartValueColName)
+																			.append(" IS NOT NULL AND ").append(periodStartValueColName).append(" > ").appendParameter(highRangeValue).append(") OR (")
+																			.append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" > ").appendParameter(highRangeValue).append("))");
 																	}
 																	// -- ENDS BEFORE
 																	if (prefixControl.equals("eb")) {
-																		sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ").append(periodEndValueColName)
-																			.append(" IS NOT NULL AND ").append(periodEndValueColName).append(" < '").append(lowRangeValue).append("') OR (")
-																			.append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" < '").append(lowRangeValue).append("'))");
+																		sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ").append(periodEndValueColName)
+																			.append(" IS NOT NULL AND ").append(periodEndValueColName).append(" < ").appendParameter(lowRangeValue).append(") OR (")
+																			.append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" < ").appendParameter(lowRangeValue).append("))");
 																	}
 																}
 																splitCriteriaWritten = true;
@@ -4325,24 +4638,24 @@ public class ResourceService {
 															else if (prefixControl.equals("ne")) {
 																if (isNumericType || isQuantityType) {
 																	// Value is numeric, do not enclose value in quotes
-																	sbCreateTempWhereCriteria.append(" (CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) > ").append(lowRangeValue)
-																		.append(" OR CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) < ").append(highRangeValue).append(")");
+																	sbParamCriteria.append(" (").append(numberValueColName).append(" > ").appendDecimalParameter(lowRangeValue)
+																		.append(" OR ").append(numberValueColName).append(" < ").appendDecimalParameter(highRangeValue).append(")");
 																}
 																else if (isPeriodType) {
 																	// isPeriodType NOT EQUALS
-																	sbCreateTempWhereCriteria.append(" ((").append(periodStartValueColName).append(" IS NULL OR ").append(periodEndValueColName)
+																	sbParamCriteria.append(" ((").append(periodStartValueColName).append(" IS NULL OR ").append(periodEndValueColName)
 																		.append(" IS NULL) OR ((").append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName)
-																		.append(" < '").append(lowRangeValue).append("') OR (").append(periodEndValueColName).append(" IS NOT NULL AND ")
-																		.append(periodEndValueColName).append(" > '").append(highRangeValue).append("')))");
+																		.append(" < ").appendParameter(lowRangeValue).append(") OR (").append(periodEndValueColName).append(" IS NOT NULL AND ")
+																		.append(periodEndValueColName).append(" > ").appendParameter(highRangeValue).append(")))");
 																}
 																else {
 																	// isDateType NOT EQUALS - must check actual paramType in criteria; if PERIOD, apply isPeriodType logic
-																	sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ((").append(periodStartValueColName)
+																	sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ((").append(periodStartValueColName)
 																		.append(" IS NULL OR ").append(periodEndValueColName).append(" IS NULL) OR ((").append(periodStartValueColName).append(" IS NOT NULL AND ")
-																		.append(periodStartValueColName).append(" < '").append(lowRangeValue).append("') OR (").append(periodEndValueColName).append(" IS NOT NULL AND ")
-																		.append(periodEndValueColName).append(" > '").append(highRangeValue).append("')))) OR (").append(sExists).append(".paramType = 'DATE' AND (")
-																		.append(dateParamValueColName).append(" < '").append(lowRangeValue).append("' OR ").append(dateParamValueColName).append(" > '")
-																		.append(highRangeValue).append("')))");
+																		.append(periodStartValueColName).append(" < ").appendParameter(lowRangeValue).append(") OR (").append(periodEndValueColName).append(" IS NOT NULL AND ")
+																		.append(periodEndValueColName).append(" > ").appendParameter(highRangeValue).append(")))) OR (").append(sExists).append(".paramType = 'DATE' AND (")
+																		.append(dateParamValueColName).append(" < ").appendParameter(lowRangeValue).append(" OR ").append(dateParamValueColName).append(" > ")
+																		.appendParameter(highRangeValue).append(")))");
 																}
 																splitCriteriaWritten = true;
 															}
@@ -4352,18 +4665,18 @@ public class ResourceService {
 															else if (prefixControl.equals("gt")) {
 																if (isNumericType || isQuantityType) {
 																	// Value is numeric, do not enclose value in quotes
-																	sbCreateTempWhereCriteria.append(" CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) > ").append(highRangeValue);
+																	sbParamCriteria.append(" ").append(numberValueColName).append(" > ").appendDecimalParameter(highRangeValue);
 																}
 																else if (isPeriodType) {
 																	// isPeriodType GREATER THAN
-																	sbCreateTempWhereCriteria.append(" (").append(periodEndValueColName).append(" IS NULL OR ").append(periodEndValueColName)
-																		.append(" > '").append(highRangeValue).append("')");
+																	sbParamCriteria.append(" (").append(periodEndValueColName).append(" IS NULL OR ").append(periodEndValueColName)
+																		.append(" > ").appendParameter(highRangeValue).append(")");
 																}
 																else {
 																	// isDateType GREATER THAN - must check actual paramType in criteria; if PERIOD, apply isPeriodType logic
-																	sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND (").append(periodEndValueColName)
-																		.append(" IS NULL or ").append(periodEndValueColName).append(" > '").append(highRangeValue).append("')) OR (").append(sExists)
-																		.append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" > '").append(highRangeValue).append("'))");
+																	sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND (").append(periodEndValueColName)
+																		.append(" IS NULL or ").append(periodEndValueColName).append(" > ").appendParameter(highRangeValue).append(")) OR (").append(sExists)
+																		.append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" > ").appendParameter(highRangeValue).append("))");
 																}
 																splitCriteriaWritten = true;
 															}
@@ -4373,18 +4686,18 @@ public class ResourceService {
 															else if (prefixControl.equals("lt")) {
 																if (isNumericType || isQuantityType) {
 																	// Value is numeric, do not enclose value in quotes
-																	sbCreateTempWhereCriteria.append(" CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) < ").append(lowRangeValue);
+																	sbParamCriteria.append(" ").append(numberValueColName).append(" < ").appendDecimalParameter(lowRangeValue);
 																}
 																else if (isPeriodType) {
 																	// isPeriodType LESS THAN
-																	sbCreateTempWhereCriteria.append(" (").append(periodStartValueColName).append(" IS NULL OR ").append(periodStartValueColName)
-																		.append(" < '").append(lowRangeValue).append("')");
+																	sbParamCriteria.append(" (").append(periodStartValueColName).append(" IS NULL OR ").append(periodStartValueColName)
+																		.append(" < ").appendParameter(lowRangeValue).append(")");
 																}
 																else {
 																	// isDateType LESS THAN - must check actual paramType in criteria; if PERIOD, apply isPeriodType logic
-																	sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' and (").append(periodStartValueColName)
-																		.append(" IS NULL OR ").append(periodStartValueColName).append(" < '").append(lowRangeValue).append("')) OR (")
-																		.append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" < '").append(lowRangeValue).append("'))");
+																	sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' and (").append(periodStartValueColName)
+																		.append(" IS NULL OR ").append(periodStartValueColName).append(" < ").appendParameter(lowRangeValue).append(")) OR (")
+																		.append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" < ").appendParameter(lowRangeValue).append("))");
 																}
 																splitCriteriaWritten = true;
 															}
@@ -4394,24 +4707,24 @@ public class ResourceService {
 															else if (prefixControl.equals("ge")) {
 																if (isNumericType || isQuantityType) {
 																	// Value is numeric, do not enclose value in quotes
-																	sbCreateTempWhereCriteria.append(" CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) >= ").append(highRangeValue);
+																	sbParamCriteria.append(" ").append(numberValueColName).append(" >= ").appendDecimalParameter(highRangeValue);
 																}
 																else if (isPeriodType) {
 																	// isPeriodType GREATER THAN OR EQUALS
-																	sbCreateTempWhereCriteria.append(" ((").append(periodEndValueColName).append(" IS NULL OR ").append(periodEndValueColName)
-																		.append(" > '").append(highRangeValue).append("') OR (").append(periodStartValueColName).append(" IS NOT NULL AND ")
-																		.append(periodStartValueColName).append(" >= '").append(lowRangeValue).append("' AND ").append(periodEndValueColName)
-																		.append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= '").append(highRangeValue).append("'))");
+																	sbParamCriteria.append(" ((").append(periodEndValueColName).append(" IS NULL OR ").append(periodEndValueColName)
+																		.append(" > ").appendParameter(highRangeValue).append(") OR (").append(periodStartValueColName).append(" IS NOT NULL AND ")
+																		.append(periodStartValueColName).append(" >= ").appendParameter(lowRangeValue).append(" AND ").append(periodEndValueColName)
+																		.append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= ").appendParameter(highRangeValue).append("))");
 																}
 																else {
 																	// isDateType GREATER THAN OR EQUALS - must check actual paramType in criteria; if PERIOD, apply isPeriodType logic
-																	sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ((").append(periodEndValueColName)
-																		.append(" IS NULL OR ").append(periodEndValueColName).append(" > '").append(highRangeValue).append("') OR (")
-																		.append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName).append(" >= '").append(lowRangeValue)
-																		.append("' AND ").append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= '")
-																		.append(highRangeValue).append("'))) OR (").append(sExists).append(".paramType = 'DATE' AND ((").append(dateParamValueColName)
-																		.append(" >= '").append(highRangeValue).append("') OR (").append(dateParamValueColName).append(" >= '").append(lowRangeValue)
-																		.append("' AND ").append(dateParamValueColName).append(" <= '").append(highRangeValue).append("'))))");
+																	sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ((").append(periodEndValueColName)
+																		.append(" IS NULL OR ").append(periodEndValueColName).append(" > ").appendParameter(highRangeValue).append(") OR (")
+																		.append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName).append(" >= ").appendParameter(lowRangeValue)
+																		.append(" AND ").append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= ")
+																		.appendParameter(highRangeValue).append("))) OR (").append(sExists).append(".paramType = 'DATE' AND ((").append(dateParamValueColName)
+																		.append(" >= ").appendParameter(highRangeValue).append(") OR (").append(dateParamValueColName).append(" >= ").appendParameter(lowRangeValue)
+																		.append(" AND ").append(dateParamValueColName).append(" <= ").appendParameter(highRangeValue).append("))))");
 																}
 																splitCriteriaWritten = true;
 															}
@@ -4421,24 +4734,24 @@ public class ResourceService {
 															else if (prefixControl.equals("le")) {
 																if (isNumericType || isQuantityType) {
 																	// Value is numeric, do not enclose value in quotes
-																	sbCreateTempWhereCriteria.append(" CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) <= ").append(lowRangeValue);
+																	sbParamCriteria.append(" ").append(numberValueColName).append(" <= ").appendDecimalParameter(lowRangeValue);
 																}
 																else if (isPeriodType) {
 																	// isPeriodType LESS THAN OR EQUALS
-																	sbCreateTempWhereCriteria.append(" ((").append(periodStartValueColName).append(" IS NULL OR ").append(periodStartValueColName)
-																		.append(" < '").append(lowRangeValue).append("') OR (").append(periodStartValueColName).append(" IS NOT NULL AND ")
-																		.append(periodStartValueColName).append(" >= '").append(lowRangeValue).append("' AND ").append(periodEndValueColName)
-																		.append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= '").append(highRangeValue).append("'))");
+																	sbParamCriteria.append(" ((").append(periodStartValueColName).append(" IS NULL OR ").append(periodStartValueColName)
+																		.append(" < ").appendParameter(lowRangeValue).append(") OR (").append(periodStartValueColName).append(" IS NOT NULL AND ")
+																		.append(periodStartValueColName).append(" >= ").appendParameter(lowRangeValue).append(" AND ").append(periodEndValueColName)
+																		.append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= ").appendParameter(highRangeValue).append("))");
 																}
 																else {
 																	// isDateType LESS THAN OR EQUALS - must check actual paramType in criteria; if PERIOD, apply isPeriodType logic
-																	sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ((").append(periodStartValueColName)
-																		.append(" IS NULL OR ").append(periodStartValueColName).append(" < '").append(lowRangeValue).append("') OR (")
-																		.append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName).append(" >= '")
-																		.append(lowRangeValue).append("' AND ").append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName)
-																		.append(" <= '").append(highRangeValue).append("'))) OR (").append(sExists).append(".paramType = 'DATE' AND ((")
-																		.append(dateParamValueColName).append(" <= '").append(lowRangeValue).append("') OR (").append(dateParamValueColName).append(" >= '")
-																		.append(lowRangeValue).append("' AND ").append(dateParamValueColName).append(" <= '").append(highRangeValue).append("'))))");
+																	sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ((").append(periodStartValueColName)
+																		.append(" IS NULL OR ").append(periodStartValueColName).append(" < ").appendParameter(lowRangeValue).append(") OR (")
+																		.append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName).append(" >= ")
+																		.appendParameter(lowRangeValue).append(" AND ").append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName)
+																		.append(" <= ").appendParameter(highRangeValue).append("))) OR (").append(sExists).append(".paramType = 'DATE' AND ((")
+																		.append(dateParamValueColName).append(" <= ").appendParameter(lowRangeValue).append(") OR (").append(dateParamValueColName).append(" >= ")
+																		.appendParameter(lowRangeValue).append(" AND ").append(dateParamValueColName).append(" <= ").appendParameter(highRangeValue).append("))))");
 																}
 																splitCriteriaWritten = true;
 															}
@@ -4465,16 +4778,16 @@ public class ResourceService {
 															if (utcDateUtil.hasTimeZone(listValue)) {
 																listValue = utcDateUtil.formatDate(dateValue, UTCDateUtil.DATETIME_SORT_FORMAT, timeZoneUTC);
 
-																dateParamValueColName = sExists + ".paramValue";
-																periodStartValueColName = sExists + ".paramValue";
-																periodEndValueColName = sExists + ".systemValue";
+																dateParamValueColName = sExists + utcStartColName;
+																periodStartValueColName = sExists + utcStartColName;
+																periodEndValueColName = sExists + utcEndColName;
 															}
 															else {
 																listValue = utcDateUtil.formatDate(dateValue, UTCDateUtil.DATETIME_SORT_FORMAT, timeZoneDefault, dateFormatLength);
 
-																dateParamValueColName = sExists + ".codeValue";
-																periodStartValueColName = sExists + ".codeValue";
-																periodEndValueColName = sExists + ".textValue";
+																dateParamValueColName = sExists + localStartColName;
+																periodStartValueColName = sExists + localStartColName;
+																periodEndValueColName = sExists + localEndColName;
 															}
 														}
 
@@ -4485,26 +4798,26 @@ public class ResourceService {
 														highRangeValue = this.computeHighRangeValue(listValue, isDateType, isPeriodType, isNumericType, isQuantityType);
 
 														if (splitCriteriaWritten == true) {
-															sbCreateTempWhereCriteria.append(" and");
+															sbParamCriteria.append(" and");
 														}
 														if (isNumericType || isQuantityType) {
 															// Value is numeric, do not enclose value in quotes
-															sbCreateTempWhereCriteria.append(" (CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) >= ").append(lowRangeValue)
-																.append(" and CAST(").append(sExists).append(".paramValue AS DECIMAL(30,15)) <= ").append(highRangeValue).append(")");
+															sbParamCriteria.append(" (").append(numberValueColName).append(" >= ").appendDecimalParameter(lowRangeValue)
+																.append(" and ").append(numberValueColName).append(" <= ").appendDecimalParameter(highRangeValue).append(")");
 														}
 														else if (isPeriodType) {
 															// isPeriodType DEFAULT TO EQUALS
-															sbCreateTempWhereCriteria.append(" (").append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName)
-																.append(" >= '").append(lowRangeValue).append("' AND ").append(periodEndValueColName).append(" IS NOT NULL AND ")
-																.append(periodEndValueColName).append(" <= '").append(highRangeValue).append("')");
+															sbParamCriteria.append(" (").append(periodStartValueColName).append(" IS NOT NULL AND ").append(periodStartValueColName)
+																.append(" >= ").appendParameter(lowRangeValue).append(" AND ").append(periodEndValueColName).append(" IS NOT NULL AND ")
+																.append(periodEndValueColName).append(" <= ").appendParameter(highRangeValue).append(")");
 														}
 														else {
 															// isDateType DEFAULT TO EQUALS - must check actual paramType in criteria; if PERIOD, apply isPeriodType logic
-															sbCreateTempWhereCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ").append(periodStartValueColName)
-																.append(" IS NOT NULL AND ").append(periodStartValueColName).append(" >= '").append(lowRangeValue).append("' AND ")
-																.append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= '")
-																.append(highRangeValue).append("') OR (").append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" >= '")
-																.append(lowRangeValue).append("' AND ").append(dateParamValueColName).append(" <= '").append(highRangeValue).append("'))");
+															sbParamCriteria.append(" ((").append(sExists).append(".paramType = 'PERIOD' AND ").append(periodStartValueColName)
+																.append(" IS NOT NULL AND ").append(periodStartValueColName).append(" >= ").appendParameter(lowRangeValue).append(" AND ")
+																.append(periodEndValueColName).append(" IS NOT NULL AND ").append(periodEndValueColName).append(" <= ")
+																.appendParameter(highRangeValue).append(") OR (").append(sExists).append(".paramType = 'DATE' AND ").append(dateParamValueColName).append(" >= ")
+																.appendParameter(lowRangeValue).append(" AND ").append(dateParamValueColName).append(" <= ").appendParameter(highRangeValue).append("))");
 														}
 													}
 												}
@@ -4514,25 +4827,25 @@ public class ResourceService {
 													 */
 													if (isStringType) {
 														// CASE-INSENSITIVE, STARTS WITH OR EXACT MATCH
-														sbCreateTempWhereCriteria.append(" ").append(sExists).append(".paramValueU like '").append(listValue.toUpperCase()).append("%'");
+														sbParamCriteria.append(" ").append(sExists).append(".paramValueU like ").appendParameter(listValue.toUpperCase() + "%");
 													}
 													else if (isTokenType) {
 														// CASE-INSENSITIVE, EXACT MATCH
-														sbCreateTempWhereCriteria.append(" ").append(sExists).append(".paramValueU = '").append(listValue.toUpperCase()).append("'");
+														sbParamCriteria.append(" ").append(sExists).append(".paramValueU = ").appendParameter(listValue.toUpperCase());
 													}
 													else if (isUriType) {
 														// CASE-SENSITIVE, EXACT MATCH
 														// Force parameter value comparison to be case-sensitive via MySQL binary qualifier on string value
-														sbCreateTempWhereCriteria.append(" ").append(sExists).append(".paramValue = binary '").append(listValue).append("'");
+														sbParamCriteria.append(" ").append(sExists).append(".paramValue = binary ").appendParameter(listValue);
 													}
 													else if (isReferenceType) {
 														// (REFERENCE) CASE-SENSITIVE, ENDS WITH OR EXACT MATCH
 														// Force parameter value comparison to be case-sensitive via MySQL binary qualifier on string value
-														sbCreateTempWhereCriteria.append(" ").append(sExists).append(".paramValue like binary '%").append(listValue).append("'");
+														sbParamCriteria.append(" ").append(sExists).append(".paramValue like binary ").appendParameter("%" + listValue);
 													}
 													else {
 														// (default) CASE-INSENSITIVE, CONTAINS OR EXACT MATCH
-														sbCreateTempWhereCriteria.append(" ").append(sExists).append(".paramValueU like '%").append(listValue.toUpperCase()).append("%'");
+														sbParamCriteria.append(" ").append(sExists).append(".paramValueU like ").appendParameter("%" + listValue.toUpperCase() + "%");
 													}
 												}
 											}
@@ -4541,10 +4854,17 @@ public class ResourceService {
 										}
 
 										if (valueListCount > 1) {
-											sbCreateTempWhereCriteria.append(")))");
+											sbParamCriteria.append(")))");
 										}
 										else {
-											sbCreateTempWhereCriteria.append(")");
+											sbParamCriteria.append(")");
+										}
+
+										if (indexTableName != null) {
+											sbCriteria.append(" and exists (select 1 from ").append(indexTableName).append(" ").append(sExists).append(" where ").append(sExists)
+												.append(".resourceJoinId = r1.id and ").append(sbParamCriteria).append(")");
+
+											sExists = sExistsMetadata;
 										}
 									}
 								}
@@ -4570,7 +4890,18 @@ public class ResourceService {
 						log.fine("searchQuery - process near parameter '" + entry.getKey() + "'");
 
 						// build near SQL criteria based on distance units
-						if (entry.getValue()[3].contains("mi")) {
+						if (useIndexTables) {
+							// Typed coordinate index table; latitude and longitude are DOUBLE columns
+							String distanceFunction = (entry.getValue()[3].contains("mi") ? "calcDistanceMi" : "calcDistanceKm");
+							iIndex++;
+							String sIndex = "ri" + iIndex;
+
+							sbCriteria.append(" and exists (select 1 from ").append(ResourceindexService.INDEX_COORDINATE).append(" ").append(sIndex).append(" where ").append(sIndex)
+								.append(".resourceJoinId = r1.id and ").append(sIndex).append(".paramName = ").appendParameter(entry.getKey())
+								.append(" and ").append(distanceFunction).append("(").append(sIndex).append(".latitude, ").append(sIndex).append(".longitude, ")
+								.appendParameter(entry.getValue()[0]).append(", ").appendParameter(entry.getValue()[1]).append(") <= ").appendParameter(entry.getValue()[2]).append(")");
+						}
+						else if (entry.getValue()[3].contains("mi")) {
 							if (sbCreateTempWhereCriteria.length() > 5) {
 								iExists++;
 								sExists = sExistsBase + iExists;
@@ -4582,10 +4913,10 @@ public class ResourceService {
 								}
 								sbCreateTempWhereJoin.append(sExists).append(".resourceJoinId = rm.resourceJoinId");
 							}
-							sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = '")
-								.append(entry.getKey()).append("' and ").append(sExists).append(".paramValue is not null and ").append(sExists).append(".systemValue is not null ")
+							sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = ")
+								.appendParameter(entry.getKey()).append(" and ").append(sExists).append(".paramValue is not null and ").append(sExists).append(".systemValue is not null ")
 								.append(" and calcDistanceMi(").append(sExists).append(".paramValue, ").append(sExists).append(".systemValue, ")
-								.append(entry.getValue()[0]).append(", ").append(entry.getValue()[1]).append(") <= ").append(entry.getValue()[2]).append(")");
+								.appendParameter(entry.getValue()[0]).append(", ").appendParameter(entry.getValue()[1]).append(") <= ").appendParameter(entry.getValue()[2]).append(")");
 						}
 						else if (entry.getValue()[3].contains("km")) {
 							if (sbCreateTempWhereCriteria.length() > 5) {
@@ -4599,10 +4930,10 @@ public class ResourceService {
 								}
 								sbCreateTempWhereJoin.append(sExists).append(".resourceJoinId = rm.resourceJoinId");
 							}
-							sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = '")
-								.append(entry.getKey()).append("' and ").append(sExists).append(".paramValue is not null and ").append(sExists).append(".systemValue is not null ")
+							sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = ")
+								.appendParameter(entry.getKey()).append(" and ").append(sExists).append(".paramValue is not null and ").append(sExists).append(".systemValue is not null ")
 								.append(" and calcDistanceKm(").append(sExists).append(".paramValue, ").append(sExists).append(".systemValue, ")
-								.append(entry.getValue()[0]).append(", ").append(entry.getValue()[1]).append(") <= ").append(entry.getValue()[2]).append(")");
+								.appendParameter(entry.getValue()[0]).append(", ").appendParameter(entry.getValue()[1]).append(") <= ").appendParameter(entry.getValue()[2]).append(")");
 						}
 						else {
 							// Should not get here
@@ -4639,8 +4970,8 @@ public class ResourceService {
 							sbCreateTempWhereCriteria.append(" or ");
 						}
 
-						sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = '").append(key).append("' and ")
-							.append(sExists).append(".paramValue like '%").append(value).append("%')");
+						sbCreateTempWhereCriteria.append("(").append(sExists).append(".paramName = ").appendParameter(key).append(" and ")
+							.append(sExists).append(".paramValue like ").appendParameter("%" + value + "%").append(")");
 
 						firstEntry = false;
 					}
@@ -4689,8 +5020,19 @@ public class ResourceService {
 					needTransaction = true;
 				}
 
-				// Add final criteria for temp table if present
-				if (sbCreateTempWhereCriteria.length() > 5) {
+				// Add final criteria for resourcemetadata if present
+				if (sbCreateTempWhereCriteria.length() > 5 && codeService.isSupported("searchSemiJoinPlan")) {
+					/*
+					 * Single statement plan - correlate the resourcemetadata self-joins to the resource row as an EXISTS
+					 * semi-join instead of materializing the matching ids in a temporary table
+					 */
+					sbCriteria.append(" and exists (").append(sbCreateTempSelect.toString()).append(" where rm.resourceJoinId = r1.id and ");
+					if (sbCreateTempWhereJoin.length() > 5) {
+						sbCriteria.append(sbCreateTempWhereJoin.toString()).append(" and ");
+					}
+					sbCriteria.append(sbCreateTempWhereCriteria).append(")");
+				}
+				else if (sbCreateTempWhereCriteria.length() > 5) {
 					sbCriteria.append(" and r1.id IN (select id from ").append(tempTableName).append(")");
 
 					// FHIR-??? - SQL performance modifications: remove unnecessary outer select * from () AS t1
@@ -4699,18 +5041,38 @@ public class ResourceService {
 					if (sbCreateTempWhereJoin.length() > 5) {
 						sbCreateTempWhereJoin.append(" and ");
 					}
-					sbCreateTempTable.append(sbCreateTempWhereJoin.toString()).append(sbCreateTempWhereCriteria.toString());
+					sbCreateTempTable.append(sbCreateTempWhereJoin.toString()).append(sbCreateTempWhereCriteria);
 
-					log.fine("Create Temp Table: " + sbCreateTempTable.toString());
+					log.fine("Create Temp Table: " + sbCreateTempTable.toString() + " " + sbCreateTempTable.getParameters());
 
-					// Create temporary table for main Query
-					em.createNativeQuery(sbCreateTempTable.toString()).executeUpdate();
+					// Drop any temporary table left behind on this connection, then create temporary table for main Query
+					em.createNativeQuery(sbDropTempTable.toString()).executeUpdate();
+					sbCreateTempTable.bindParameters(em.createNativeQuery(sbCreateTempTable.toString())).executeUpdate();
 
 					bDropTempTable = true;
 				}
 
+				// Count query uses the search criteria before any order by is appended
+				SqlQueryBuffer sbCountQuery = new SqlQueryBuffer("select count(*)").append(sbCriteria);
+
+				// Observation $lastn query ranks the matches using the search criteria before any order by is appended
+				SqlQueryBuffer sbLastNQuery = null;
+				if (lastnMax != null) {
+					sbLastNQuery = getLastNQuery(sbCriteria, lastnMax.intValue(), lastnEmptyDate, resourceindexService.isEnabled());
+				}
+
+				// Count all matches; for the id only query the count is only needed if the ids reach the limit
+				if (totalCount != null && resultIds == null) {
+					log.fine("Native Count Query: " + sbCountQuery.toString() + " " + sbCountQuery.getParameters());
+
+					Number matchCount = (Number) sbCountQuery.bindParameters(em.createNativeQuery(sbCountQuery.toString())).getSingleResult();
+
+					totalCount.add(Integer.valueOf(matchCount != null ? matchCount.intValue() : 0));
+				}
+
 				// Check for sort
 				int sortCount = 0;
+				SqlQueryBuffer sbSortColumns = new SqlQueryBuffer();
 
 				if (NullChecker.isNotNullish(_sort)) {
 
@@ -4722,18 +5084,18 @@ public class ResourceService {
 					for (String[] sortCriteria : _sort) {
 
 						// Append sort column to query
-						sbQuery.append(", (select ");
+						sbSortColumns.append(", (select ");
 						// determine sort column type
 						if (sortCriteria[2] != null && sortCriteria[2].equalsIgnoreCase("DATE")) {
-							sbQuery.append(" ifnull(rmsort").append(sortCount).append(".systemValue, rmsort").append(sortCount).append(".paramValue)");
+							sbSortColumns.append(" ifnull(rmsort").append(sortCount).append(".systemValue, rmsort").append(sortCount).append(".paramValue)");
 						}
 						else {
-							sbQuery.append(" rmsort").append(sortCount).append(".paramValue");
+							sbSortColumns.append(" rmsort").append(sortCount).append(".paramValue");
 						}
-						sbQuery.append(" from resourcemetadata rmsort").append(sortCount)
+						sbSortColumns.append(" from resourcemetadata rmsort").append(sortCount)
 							.append(" where rmsort").append(sortCount)
 							.append(".resourceJoinId = r1.id and rmsort").append(sortCount)
-							.append(".paramName = '").append(sortCriteria[0]).append("' limit 1) sort").append(sortCount);
+							.append(".paramName = ").appendParameter(sortCriteria[0]).append(" limit 1) sort").append(sortCount);
 
 						// Next append sort order by to criteria
 
@@ -4750,6 +5112,8 @@ public class ResourceService {
 					}
 				}
 
+				sbQuery.append(sbSortColumns);
+
 				// Fill remaining sort columns to query column list
 				if (sortCount < 10) {
 					for (int remainingCount=sortCount; remainingCount<10; remainingCount++) {
@@ -4757,31 +5121,69 @@ public class ResourceService {
 					}
 				}
 
-				sbQuery.append(sbCriteria.toString());
+				// Always order by the resource row id last so that paged results are stable
+				if (sortCount > 0) {
+					sbCriteria.append(", r1.id");
+				}
+				else {
+					sbCriteria.append(" order by r1.id");
+				}
+
+				sbQuery.append(sbCriteria);
 
-				log.fine("Native Query: " + sbQuery.toString());
+				// Limit the rows returned by the database to the requested page; maxCount is the upper bound for any page
+				int firstResult = (pageOffset != null && pageOffset.intValue() > 0 ? pageOffset.intValue() : 0);
+				int maxResults = maxCount.intValue();
+				if (pageLimit != null && pageLimit.intValue() >= 0 && pageLimit.intValue() < maxResults) {
+					maxResults = pageLimit.intValue();
+				}
 
-				resourceQuery = em.createNativeQuery(sbQuery.toString(), net.aegis.fhir.model.Resource.class);
+				if (resultIds != null) {
+					// Id only query; select the resource row id and only the sort columns needed for the order by
+					SqlQueryBuffer sbIdQuery = new SqlQueryBuffer("select r1.id").append(sbSortColumns).append(sbCriteria);
+					if (sbLastNQuery != null) {
+						sbIdQuery = sbLastNQuery;
+					}
 
-				// Execute query
-				List<net.aegis.fhir.model.Resource> resources = (List<net.aegis.fhir.model.Resource>) resourceQuery.getResultList();
+					// A negative limit returns all matched ids
+					int maxIds = (pageLimit != null && pageLimit.intValue() != 0 ? pageLimit.intValue() : maxCount.intValue());
 
-				if (resources.size() > 0 && resources.size() > maxCount.intValue()) {
-					// Maximum count allowed for is less than number of resources returned; reduce resources to maxCount limit
-					log.fine("Total resources returned: " + resources.size() + "; Maximum count allowed for: " + maxCount);
+					log.fine("Native Id Query: " + sbIdQuery.toString() + " " + sbIdQuery.getParameters() + " [maxResults: " + maxIds + "]");
 
-					int totalCount = 0;
+					Query idQuery = sbIdQuery.bindParameters(em.createNativeQuery(sbIdQuery.toString()));
+					if (maxIds > 0) {
+						idQuery.setMaxResults(maxIds);
+					}
 
-					for (net.aegis.fhir.model.Resource resource : resources) {
-						resourcesReturned.add(resource);
-						totalCount++;
-						if (totalCount >= maxCount.intValue()) {
-							break;
+					// Execute query; the row is a single id or an array of id and sort columns
+					List<Object> idsReturned = (List<Object>) idQuery.getResultList();
+					for (Object idReturned : idsReturned) {
+						Object id = (idReturned instanceof Object[] ? ((Object[]) idReturned)[0] : idReturned);
+						resultIds.add(Integer.valueOf(((Number) id).intValue()));
+					}
+
+					if (totalCount != null) {
+						if (maxIds < 0 || resultIds.size() < maxIds) {
+							totalCount.add(Integer.valueOf(resultIds.size()));
+						}
+						else {
+							log.fine("Native Count Query: " + sbCountQuery.toString() + " " + sbCountQuery.getParameters());
+
+							Number matchCount = (Number) sbCountQuery.bindParameters(em.createNativeQuery(sbCountQuery.toString())).getSingleResult();
+
+							totalCount.add(Integer.valueOf(matchCount != null ? matchCount.intValue() : 0));
 						}
 					}
+				}
+				else if (maxResults > 0) {
+					log.fine("Native Query: " + sbQuery.toString() + " " + sbQuery.getParameters() + " [firstResult: " + firstResult + "; maxResults: " + maxResults + "]");
 
-				} else {
-					resourcesReturned = resources;
+					resourceQuery = sbQuery.bindParameters(em.createNativeQuery(sbQuery.toString(), net.aegis.fhir.model.Resource.class));
+					resourceQuery.setFirstResult(firstResult);
+					resourceQuery.setMaxResults(maxResults);
+
+					// Execute query
+					resourcesReturned = (List<net.aegis.fhir.model.Resource>) resourceQuery.getResultList();
 				}
 
 				if (bDropTempTable) {
@@ -5087,6 +5489,267 @@ public class ResourceService {
 		return highRangeValue;
 	}
 
+	/**
+	 * Persist a new resource version as the current version of the resource. The current version flag of all prior
+	 * versions is cleared so that the current version is read as a single row by index. Must be called within an active
+	 * transaction.
+	 *
+	 * @param newResource
+	 * @throws Exception
+	 */
+	private void persistCurrentVersion(net.aegis.fhir.model.Resource newResource) throws Exception {
+
+		newResource.setCurrent(true);
+
+		em.persist(newResource);
+
+		// A written resource must be resolved again by later chained references
+		ChainedResourceResolutionCache.evict(newResource.getResourceType(), newResource.getResourceId());
+
+		// Only clear prior versions (lower ids) so that concurrent writes always leave the latest version as current
+		Query currentQuery = em.createNativeQuery("update resource set isCurrent = 0 where resourceType = ? and resourceId = ? and isCurrent = 1 and id < ?");
+		currentQuery.setParameter(1, newResource.getResourceType());
+		currentQuery.setParameter(2, newResource.getResourceId());
+		currentQuery.setParameter(3, newResource.getId());
+
+		int cleared = currentQuery.executeUpdate();
+
+		log.fine("ResourceService.persistCurrentVersion - " + newResource.getResourceType() + "/" + newResource.getResourceId() + " version " + newResource.getVersionId() + "; cleared " + cleared);
+	}
+
+	/**
+	 * Read the current versions of the resources of the update and delete writes of a transaction with queries of up
+	 * to TRANSACTION_BATCH_SIZE resources each. Must be called within an active transaction.
+	 *
+	 * @param writes
+	 * @return map of resource type/id to current version row
+	 * @throws Exception
+	 */
+	private Map<String, net.aegis.fhir.model.Resource> readCurrentVersions(List<ResourceWriteContainer> writes) throws Exception {
+
+		Map<String, net.aegis.fhir.model.Resource> currentVersions = new HashMap<String, net.aegis.fhir.model.Resource>();
+
+		List<ResourceWriteContainer> existingWrites = new ArrayList<ResourceWriteContainer>();
+		for (ResourceWriteContainer write : writes) {
+			// Created resources have new ids
+			if (!write.getMethod().equals(HTTPVerb.POST)) {
+				existingWrites.add(write);
+			}
+		}
+
+		for (int fromIndex = 0; fromIndex < existingWrites.size(); fromIndex += TRANSACTION_BATCH_SIZE) {
+			List<ResourceWriteContainer> batchWrites = existingWrites.subList(fromIndex, Math.min(fromIndex + TRANSACTION_BATCH_SIZE, existingWrites.size()));
+
+			CriteriaBuilder cb = em.getCriteriaBuilder();
+			CriteriaQuery<net.aegis.fhir.model.Resource> criteria = cb.createQuery(net.aegis.fhir.model.Resource.class);
+			Root<net.aegis.fhir.model.Resource> resource = criteria.from(net.aegis.fhir.model.Resource.class);
+
+			List<Predicate> resourcePredicates = new ArrayList<Predicate>();
+			for (ResourceWriteContainer write : batchWrites) {
+				resourcePredicates.add(cb.and(cb.equal(resource.get("resourceType"), write.getResourceType()), cb.equal(resource.get("resourceId"), write.getResourceId())));
+			}
+
+			criteria.select(resource)
+				.where(cb.and(cb.isTrue(resource.get("isCurrent")), cb.or(resourcePredicates.toArray(new Predicate[resourcePredicates.size()]))));
+
+			List<net.aegis.fhir.model.Resource> resources = em.createQuery(criteria).getResultList();
+
+			for (net.aegis.fhir.model.Resource currentResource : resources) {
+				String resourceKey = currentResource.getResourceType() + "/" + currentResource.getResourceId();
+				net.aegis.fhir.model.Resource foundResource = currentVersions.get(resourceKey);
+
+				if (foundResource == null || foundResource.getVersionId().intValue() < currentResource.getVersionId().intValue()) {
+					currentVersions.put(resourceKey, currentResource);
+				}
+			}
+		}
+
+		return currentVersions;
+	}
+
+	/**
+	 * Clear the current version flag of the prior versions of the new resource versions with multi-row statements of
+	 * up to TRANSACTION_BATCH_SIZE resources each. Only lower ids are cleared as in persistCurrentVersion. Must be called
+	 * within an active transaction.
+	 *
+	 * @param newResources
+	 * @throws Exception
+	 */
+	private void clearPriorCurrentVersions(List<net.aegis.fhir.model.Resource> newResources) throws Exception {
+
+		for (int fromIndex = 0; fromIndex < newResources.size(); fromIndex += TRANSACTION_BATCH_SIZE) {
+			List<net.aegis.fhir.model.Resource> batchResources = newResources.subList(fromIndex, Math.min(fromIndex + TRANSACTION_BATCH_SIZE, newResources.size()));
+
+			SqlQueryBuffer sbUpdate = new SqlQueryBuffer("update resource set isCurrent = 0 where isCurrent = 1 and (");
+
+			for (int i = 0; i < batchResources.size(); i++) {
+				net.aegis.fhir.model.Resource newResource = batchResources.get(i);
+
+				if (i > 0) {
+					sbUpdate.append(" or ");
+				}
+				sbUpdate.append("(resourceType = ").appendParameter(newResource.getResourceType());
+				sbUpdate.append(" and resourceId = ").appendParameter(newResource.getResourceId());
+				sbUpdate.append(" and id < ").appendParameter(newResource.getId()).append(")");
+			}
+			sbUpdate.append(")");
+
+			int cleared = sbUpdate.bindParameters(em.createNativeQuery(sbUpdate.toString())).executeUpdate();
+
+			log.fine("ResourceService.clearPriorCurrentVersions - " + batchResources.size() + " resources; cleared " + cleared);
+		}
+	}
+
+	/**
+	 * If the resourceJsonStorage setting is supported, set the minified JSON representation of the resource object
+	 * so that it is persisted with the XML contents; JSON read paths then return it without converting the XML.
+	 *
+	 * @param newResource
+	 * @param resourceObject
+	 * @throws Exception
+	 */
+	private void setResourceContentsJson(net.aegis.fhir.model.Resource newResource, org.hl7.fhir.r4.model.Resource resourceObject) throws Exception {
+
+		if (codeService.isSupported("resourceJsonStorage")) {
+			JsonParser jsonP = new JsonParser();
+			jsonP.setOutputStyle(OutputStyle.NORMAL);
+
+			newResource.setResourceContentsJson(jsonP.composeBytes(resourceObject));
+		}
+	}
+
+	/**
+	 * Used in paging logic; read the resource rows for the ordered list of resource row ids held by a search cursor.
+	 * The returned list is in the same order as the ids.
+	 *
+	 * @param ids
+	 * @return List<Resource>
+	 */
+	public List<net.aegis.fhir.model.Resource> findResourcesByIds(List<Integer> ids) {
+
+		log.fine("[START] ResourceService.findResourcesByIds - ids.size(): " + (ids != null ? ids.size() : 0));
+
+		List<net.aegis.fhir.model.Resource> resources = new ArrayList<net.aegis.fhir.model.Resource>();
+
+		if (ids != null && !ids.isEmpty()) {
+			CriteriaBuilder cb = em.getCriteriaBuilder();
+			CriteriaQuery<net.aegis.fhir.model.Resource> criteria = cb.createQuery(net.aegis.fhir.model.Resource.class);
+			Root<net.aegis.fhir.model.Resource> resource = criteria.from(net.aegis.fhir.model.Resource.class);
+
+			criteria.select(resource).where(resource.get("id").in(ids));
+
+			Map<Integer, net.aegis.fhir.model.Resource> resourcesById = new HashMap<Integer, net.aegis.fhir.model.Resource>();
+			for (net.aegis.fhir.model.Resource resourceEntry : em.createQuery(criteria).getResultList()) {
+				resourcesById.put(resourceEntry.getId(), resourceEntry);
+			}
+
+			for (Integer id : ids) {
+				net.aegis.fhir.model.Resource resourceEntry = resourcesById.get(id);
+				if (resourceEntry != null) {
+					resources.add(resourceEntry);
+				}
+			}
+		}
+
+		return resources;
+	}
+
+	/**
+	 * Used in Observation $lastn logic; build the id query that ranks the search matches per Observation code by their
+	 * latest effective date using DENSE_RANK() OVER (PARTITION BY code ORDER BY date DESC). The code is the first code
+	 * search parameter value and the effective date is the latest end or start value of the date search parameter.
+	 * If the typed search index tables are enabled the code is read from resourceindextoken and the effective date is
+	 * ranked on the DATETIME columns of resourceindexdate; otherwise only the resourcemetadata index rows are read.
+	 *
+	 * @param sbCriteria - search criteria from resource r1 without an order by
+	 * @param max - maximum rank returned; less than zero for all
+	 * @param emptyDateValue - effective date in DATETIME_SORT_FORMAT used if none; null to skip Observations without an effective date
+	 * @param useIndexTables - rank using the typed search index tables
+	 * @return SqlQueryBuffer
+	 */
+	private SqlQueryBuffer getLastNQuery(SqlQueryBuffer sbCriteria, int max, String emptyDateValue, boolean useIndexTables) {
+
+		SqlQueryBuffer sbLastNQuery = new SqlQueryBuffer("select lastnRanked.id from (")
+			.append("select lastnMatch.id, lastnMatch.lastnCode, lastnMatch.lastnDate, dense_rank() over (partition by lastnMatch.lastnCode order by lastnMatch.lastnDate desc) lastnRank from (");
+
+		if (useIndexTables) {
+			sbLastNQuery.append("select r1.id, (select ritcode.paramValue from ").append(ResourceindexService.INDEX_TOKEN).append(" ritcode where ritcode.resourceJoinId = r1.id and ritcode.paramName = ").appendParameter("code")
+				.append(" order by ritcode.id limit 1) lastnCode, ");
+		}
+		else {
+			sbLastNQuery.append("select r1.id, (select rmcode.paramValue from resourcemetadata rmcode where rmcode.resourceJoinId = r1.id and rmcode.paramName = ").appendParameter("code")
+				.append(" order by rmcode.id limit 1) lastnCode, ");
+		}
+
+		if (emptyDateValue != null) {
+			sbLastNQuery.append("ifnull(");
+		}
+		if (useIndexTables) {
+			// DATETIME comparison of the latest period end or start in UTC
+			sbLastNQuery.append("(select max(ifnull(ridate.endUtc, ridate.startUtc)) from ").append(ResourceindexService.INDEX_DATE).append(" ridate where ridate.resourceJoinId = r1.id and ridate.paramName = ").appendParameter("date").append(")");
+			if (emptyDateValue != null) {
+				sbLastNQuery.append(", str_to_date(").appendParameter(emptyDateValue).append(", '%Y%m%d%H%i%s'))");
+			}
+		}
+		else {
+			sbLastNQuery.append("(select max(ifnull(nullif(rmdate.systemValue, ''), rmdate.paramValue)) from resourcemetadata rmdate where rmdate.resourceJoinId = r1.id and rmdate.paramName = ").appendParameter("date").append(")");
+			if (emptyDateValue != null) {
+				sbLastNQuery.append(", ").appendParameter(emptyDateValue).append(")");
+			}
+		}
+
+		sbLastNQuery.append(" lastnDate").append(sbCriteria)
+			.append(") lastnMatch where lastnMatch.lastnCode is not null and lastnMatch.lastnDate is not null) lastnRanked");
+
+		if (max >= 0) {
+			sbLastNQuery.append(" where lastnRanked.lastnRank <= ").appendParameter(Integer.valueOf(max));
+		}
+
+		sbLastNQuery.append(" order by lastnRanked.lastnCode, lastnRanked.lastnDate desc, lastnRanked.id");
+
+		return sbLastNQuery;
+	}
+
+	/**
+	 * Used in paging logic; return the _sort parameter values recorded in a search cursor
+	 *
+	 * @param parameterMap
+	 * @param formMap
+	 * @return
+	 */
+	private String getSortKeys(MultivaluedMap<String,String> parameterMap, MultivaluedMap<String,String> formMap) {
+
+		List<String> sortKeys = new ArrayList<String>();
+
+		if (parameterMap != null && parameterMap.get("_sort") != null) {
+			sortKeys.addAll(parameterMap.get("_sort"));
+		}
+		if (formMap != null && formMap.get("_sort") != null) {
+			sortKeys.addAll(formMap.get("_sort"));
+		}
+
+		return String.join(",", sortKeys);
+	}
+
+	/**
+	 * Used in paging logic; return a copy of the parameter map without the page parameter
+	 *
+	 * @param parameterMap
+	 * @return
+	 */
+	private MultivaluedMap<String,String> removePageParameter(MultivaluedMap<String,String> parameterMap) {
+
+		if (parameterMap == null || !parameterMap.containsKey("page")) {
+			return parameterMap;
+		}
+
+		MultivaluedMap<String,String> searchParameterMap = new MultivaluedHashMap<String,String>();
+		searchParameterMap.putAll(parameterMap);
+		searchParameterMap.remove("page");
+
+		return searchParameterMap;
+	}
+
 	/**
 	 * Used in paging logic
 	 *
@@ -0,0 +1,396 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import jakarta.ejb.Stateless;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import net.aegis.fhir.model.Resourcemetadata;
+import net.aegis.fhir.service.util.SqlQueryBuffer;
+
+/**
+ * Typed search index services. When the searchIndexTables setting is enabled, the searchable metadata of a resource
+ * is also written to typed index tables where the values are stored in their native database types:
+ *
+ * - resourceindextoken : token system, value and code with composite (paramName, systemValue, paramValue) indexes
+ * - resourceindexdate : date and period ranges as DATETIME columns in UTC and in the server time zone
+ * - resourceindexnumber : number and quantity values as DECIMAL with the quantity system and code
+ * - resourceindexcoordinate : near latitude and longitude as DOUBLE
+ *
+ * String, reference and uri values remain in the resourcemetadata table.
+ *
+ * The @Stateless annotation eliminates the need for manual transaction demarcation
+ *
+ * @author richard.ettema
+ *
+ */
+@Stateless
+public class ResourceindexService {
+
+	public static final String INDEX_TOKEN = "resourceindextoken";
+	public static final String INDEX_DATE = "resourceindexdate";
+	public static final String INDEX_NUMBER = "resourceindexnumber";
+	public static final String INDEX_COORDINATE = "resourceindexcoordinate";
+
+	public static final String[] INDEX_TABLES = {INDEX_TOKEN, INDEX_DATE, INDEX_NUMBER, INDEX_COORDINATE};
+
+	// Insert column list of each index table
+	private static final Map<String, String> INDEX_COLUMNS = Map.of(
+			INDEX_TOKEN, "(resourceJoinId, paramName, systemValue, paramValue, paramValueU, codeValue)",
+			INDEX_DATE, "(resourceJoinId, paramName, paramType, startUtc, endUtc, startLocal, endLocal)",
+			INDEX_NUMBER, "(resourceJoinId, paramName, numberValue, systemValue, codeValue)",
+			INDEX_COORDINATE, "(resourceJoinId, paramName, latitude, longitude)");
+
+	// Maximum number of rows written by a single multi-row insert statement
+	private static final int INSERT_BATCH_SIZE = 100;
+
+	@Inject
+	private Logger log;
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Inject
+	private CodeService codeService;
+
+	/**
+	 * @return boolean - true, if the typed search index tables are enabled; false, otherwise
+	 * @throws Exception
+	 */
+	public boolean isEnabled() throws Exception {
+		return codeService.isSupported("searchIndexTables");
+	}
+
+	/**
+	 * Create the typed search index rows for the Resourcemetadata instances of a Resource
+	 *
+	 * @param resource
+	 * @param resourcemetadataList
+	 * @return integer - number of index rows created
+	 * @throws Exception
+	 */
+	public int createAllForResource(net.aegis.fhir.model.Resource resource, List<Resourcemetadata> resourcemetadataList) throws Exception {
+
+		log.fine("[START] ResourceindexService.createAllForResource");
+
+		int result = 0;
+
+		try {
+			if (resource != null && resource.getId() != null && resourcemetadataList != null) {
+				Map<String, List<Object[]>> indexRowMap = new HashMap<String, List<Object[]>>();
+
+				for (Resourcemetadata resourcemetadata : resourcemetadataList) {
+					String indexTable = getIndexTableName(resourcemetadata.getParamName(), resourcemetadata.getParamType());
+
+					if (indexTable != null) {
+						Object[] indexRow = generateIndexRow(resource.getId(), resourcemetadata, indexTable);
+
+						if (indexRow != null) {
+							List<Object[]> indexRows = indexRowMap.get(indexTable);
+							if (indexRows == null) {
+								indexRows = new ArrayList<Object[]>();
+								indexRowMap.put(indexTable, indexRows);
+							}
+							indexRows.add(indexRow);
+						}
+					}
+				}
+
+				for (Map.Entry<String, List<Object[]>> indexRows : indexRowMap.entrySet()) {
+					result += insertIndexRows(indexRows.getKey(), indexRows.getValue());
+				}
+			}
+		} catch (Exception e) {
+			// Exception caught
+			log.severe(e.getMessage());
+			throw e;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Delete all typed search index rows for the Resource
+	 *
+	 * @param resource
+	 * @return integer - 0 failure; 1 success
+	 * @throws Exception
+	 */
+	public int deleteAllForResource(net.aegis.fhir.model.Resource resource) throws Exception {
+
+		log.fine("[START] ResourceindexService.deleteAllForResource");
+
+		int result = 0;
+
+		try {
+			if (resource != null && resource.getId() != null) {
+				for (String indexTable : INDEX_TABLES) {
+					em.createNativeQuery("delete from " + indexTable + " where resourceJoinId = ?").setParameter(1, resource.getId()).executeUpdate();
+				}
+			}
+
+			// Success if we made it this far...
+			result = 1;
+		} catch (Exception e) {
+			// Exception caught
+			log.severe(e.getMessage());
+			throw e;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Delete the chained (parameter names containing '.') typed search index rows for the Resource
+	 *
+	 * @param resource
+	 * @return integer - 0 failure; 1 success
+	 * @throws Exception
+	 */
+	public int deleteChainedForResource(net.aegis.fhir.model.Resource resource) throws Exception {
+
+		log.fine("[START] ResourceindexService.deleteChainedForResource");
+
+		int result = 0;
+
+		try {
+			if (resource != null && resource.getId() != null) {
+				for (String indexTable : INDEX_TABLES) {
+					em.createNativeQuery("delete from " + indexTable + " where resourceJoinId = ? and paramName like '%.%'").setParameter(1, resource.getId()).executeUpdate();
+				}
+			}
+
+			// Success if we made it this far...
+			result = 1;
+		} catch (Exception e) {
+			// Exception caught
+			log.severe(e.getMessage());
+			throw e;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Return the typed search index table name for the search parameter criteria type; null if the criteria type
+	 * is only searched in the resourcemetadata table
+	 *
+	 * @param paramName
+	 * @param criteriaType
+	 * @return String - index table name or null
+	 */
+	public static String getIndexTableName(String paramName, String criteriaType) {
+
+		String indexTable = null;
+
+		if (paramName != null && (paramName.equals("near") || paramName.endsWith(".near"))) {
+			indexTable = INDEX_COORDINATE;
+		}
+		else if (criteriaType != null) {
+			if (criteriaType.equalsIgnoreCase("TOKEN")) {
+				indexTable = INDEX_TOKEN;
+			}
+			else if (criteriaType.equalsIgnoreCase("DATE") || criteriaType.equalsIgnoreCase("PERIOD")) {
+				indexTable = INDEX_DATE;
+			}
+			else if (criteriaType.equalsIgnoreCase("NUMBER") || criteriaType.equalsIgnoreCase("QUANTITY")) {
+				indexTable = INDEX_NUMBER;
+			}
+		}
+
+		return indexTable;
+	}
+
+	/**
+	 * Generate the typed search index row values for a single Resourcemetadata instance in the column order of the
+	 * index table insert statement
+	 *
+	 * @param resourceJoinId
+	 * @param resourcemetadata
+	 * @param indexTable
+	 * @return Object[] - index row values; null if no index row for the metadata value
+	 */
+	private Object[] generateIndexRow(Integer resourceJoinId, Resourcemetadata resourcemetadata, String indexTable) {
+
+		Object[] indexRow = null;
+
+		if (INDEX_COORDINATE.equals(indexTable)) {
+			// near : value=latitude; system=longitude
+			Double latitude = toDouble(resourcemetadata.getParamValue());
+			Double longitude = toDouble(resourcemetadata.getSystemValue());
+
+			if (latitude != null && longitude != null) {
+				indexRow = new Object[] {resourceJoinId, resourcemetadata.getParamName(), latitude, longitude};
+			}
+		}
+		else if (INDEX_TOKEN.equals(indexTable)) {
+			indexRow = new Object[] {resourceJoinId, resourcemetadata.getParamName(), resourcemetadata.getSystemValue(), resourcemetadata.getParamValue(),
+					resourcemetadata.getParamValueU(), resourcemetadata.getCodeValue()};
+		}
+		else if (INDEX_DATE.equals(indexTable)) {
+			/*
+			 * DATE : value=UTC; code=server time zone
+			 * PERIOD : value=UTC start; system=UTC end; code=server time zone start; text=server time zone end
+			 */
+			boolean isPeriod = "PERIOD".equalsIgnoreCase(resourcemetadata.getParamType());
+			String startUtc = toDateTime(resourcemetadata.getParamValue());
+			String endUtc = (isPeriod ? toDateTime(resourcemetadata.getSystemValue()) : startUtc);
+			String startLocal = toDateTime(resourcemetadata.getCodeValue());
+			String endLocal = (isPeriod ? toDateTime(resourcemetadata.getTextValue()) : startLocal);
+
+			if (startUtc != null || endUtc != null) {
+				indexRow = new Object[] {resourceJoinId, resourcemetadata.getParamName(), resourcemetadata.getParamType(), startUtc, endUtc, startLocal, endLocal};
+			}
+		}
+		else if (INDEX_NUMBER.equals(indexTable)) {
+			// QUANTITY : value=number; system=system; code=code or unit
+			BigDecimal numberValue = toDecimal(resourcemetadata.getParamValue());
+
+			if (numberValue != null) {
+				indexRow = new Object[] {resourceJoinId, resourcemetadata.getParamName(), numberValue, resourcemetadata.getSystemValue(), resourcemetadata.getCodeValue()};
+			}
+		}
+
+		return indexRow;
+	}
+
+	/**
+	 * Write the index rows with multi-row inserts of up to INSERT_BATCH_SIZE rows per statement
+	 *
+	 * @param indexTable
+	 * @param indexRows
+	 * @return integer - number of index rows created
+	 */
+	private int insertIndexRows(String indexTable, List<Object[]> indexRows) {
+
+		int result = 0;
+
+		for (int fromIndex = 0; fromIndex < indexRows.size(); fromIndex += INSERT_BATCH_SIZE) {
+			int toIndex = Math.min(fromIndex + INSERT_BATCH_SIZE, indexRows.size());
+
+			SqlQueryBuffer sbInsert = new SqlQueryBuffer("insert into ").append(indexTable).append(" ").append(INDEX_COLUMNS.get(indexTable)).append(" values ");
+
+			for (int i = fromIndex; i < toIndex; i++) {
+				if (i > fromIndex) {
+					sbInsert.append(", ");
+				}
+				sbInsert.appendParameterRow(indexRows.get(i));
+			}
+
+			result += sbInsert.bindParameters(em.createNativeQuery(sbInsert.toString())).executeUpdate();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Pad a sort formatted date value to the full yyyyMMddHHmmss length accepted as a DATETIME value; null if the
+	 * value is not a sort formatted date value
+	 *
+	 * @param value
+	 * @return String
+	 */
+	private String toDateTime(String value) {
+
+		String dateTime = null;
+
+		if (value != null && value.length() >= 4 && value.length() <= 14 && value.length() % 2 == 0 && value.matches("[0-9]+")) {
+			// Pad year, month, day, hours and minutes precision values: "yyyy" + "0101000000", "yyyyMM" + "01000000", ...
+			dateTime = value + "0101000000".substring(value.length() - 4);
+			if (Integer.parseInt(dateTime.substring(0, 4)) < 1000) {
+				dateTime = null;
+			}
+		}
+
+		return dateTime;
+	}
+
+	/**
+	 * @param value
+	 * @return BigDecimal value limited to DECIMAL(30,15); null if not numeric or out of range
+	 */
+	private BigDecimal toDecimal(String value) {
+
+		BigDecimal decimal = null;
+
+		try {
+			if (value != null && !value.isEmpty()) {
+				decimal = new BigDecimal(value);
+				if (decimal.scale() > 15) {
+					decimal = decimal.setScale(15, RoundingMode.HALF_UP);
+				}
+				if (decimal.precision() - decimal.scale() > 15) {
+					decimal = null;
+				}
+			}
+		}
+		catch (Exception e) {
+			// Not a numeric value; no index row
+			decimal = null;
+		}
+
+		return decimal;
+	}
+
+	/**
+	 * @param value
+	 * @return Double value; null if not numeric
+	 */
+	private Double toDouble(String value) {
+
+		Double number = null;
+
+		try {
+			if (value != null && !value.isEmpty()) {
+				number = Double.valueOf(value);
+			}
+		}
+		catch (Exception e) {
+			// Not a numeric value; no index row
+			number = null;
+		}
+
+		return number;
+	}
+
+}
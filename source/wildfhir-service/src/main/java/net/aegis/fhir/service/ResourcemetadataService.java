@@ -47,9 +47,11 @@ import jakarta.persistence.criteria.CriteriaQuery;
 import jakarta.persistence.criteria.Root;
 
 import net.aegis.fhir.model.Resourcemetadata;
+import net.aegis.fhir.service.metadata.ChainedResourceResolutionCache;
 import net.aegis.fhir.service.metadata.ResourcemetadataProxy;
 import net.aegis.fhir.service.metadata.ResourcemetadataProxyObjectFactory;
 import net.aegis.fhir.service.util.ServicesUtil;
+import net.aegis.fhir.service.util.SqlQueryBuffer;
 
 /**
  * Resource services for basic data operations: create, delete, read and update.
@@ -62,6 +64,9 @@ import net.aegis.fhir.service.util.ServicesUtil;
 @Stateless
 public class ResourcemetadataService {
 
+	// Maximum number of rows written by a single multi-row insert statement
+	private static final int INSERT_BATCH_SIZE = 100;
+
 	@Inject
 	private Logger log;
 
@@ -71,6 +76,9 @@ public class ResourcemetadataService {
 	@Inject
 	private Event<Resourcemetadata> resourcemetadataSvc;
 
+	@Inject
+	private ResourceindexService resourceindexService;
+
     /**
 	 * Create a single instance of resourcemetadata
 	 *
@@ -172,8 +180,67 @@ public class ResourcemetadataService {
 					if (resourcemetadata.getResource() == null || resourcemetadata.getResource().getId() == null) {
 						resourcemetadata.setResource(resource);
 					}
+				}
+
+				insertAll(resourcemetadataList);
+
+				for (Resourcemetadata resourcemetadata : resourcemetadataList) {
+					resourcemetadataSvc.fire(resourcemetadata);
+				}
+
+				// Write the typed search index rows if enabled
+				if (resourceindexService.isEnabled()) {
+					resourceindexService.createAllForResource(resource, resourcemetadataList);
+				}
+			}
+
+			// Success if we made it this far...
+			result = 1;
+		} catch (Exception e) {
+			// Exception caught
+			log.severe(e.getMessage());
+			throw e;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Create new Resourcemetadata instances for multiple Resources with the same multi-row insert statements. Each
+	 * Resourcemetadata must reference its persisted Resource and the rows of a Resource must be contiguous.
+	 *
+	 * @param resourcemetadataList
+	 * @return integer - 0 failure; 1 success
+	 * @throws Exception
+	 */
+	public int createAllForResources(List<Resourcemetadata> resourcemetadataList) throws Exception {
+
+		log.fine("[START] ResourcemetadataService.createAllForResources");
+
+		int result = 0;
+
+		try {
+			insertAll(resourcemetadataList);
+
+			for (Resourcemetadata resourcemetadata : resourcemetadataList) {
+				resourcemetadataSvc.fire(resourcemetadata);
+			}
+
+			// Write the typed search index rows if enabled; one call per contiguous run of rows of the same Resource
+			if (resourceindexService.isEnabled()) {
+				int fromIndex = 0;
+
+				while (fromIndex < resourcemetadataList.size()) {
+					net.aegis.fhir.model.Resource resource = resourcemetadataList.get(fromIndex).getResource();
+					int toIndex = fromIndex + 1;
+
+					while (toIndex < resourcemetadataList.size() && resourcemetadataList.get(toIndex).getResource() == resource) {
+						toIndex++;
+					}
+
+					resourceindexService.createAllForResource(resource, resourcemetadataList.subList(fromIndex, toIndex));
 
-					create(resourcemetadata);
+					fromIndex = toIndex;
 				}
 			}
 
@@ -188,6 +255,35 @@ public class ResourcemetadataService {
 		return result;
 	}
 
+	/**
+	 * Insert the Resourcemetadata rows; each row must reference its persisted Resource
+	 *
+	 * @param resourcemetadataList
+	 * @throws Exception
+	 */
+	private void insertAll(List<Resourcemetadata> resourcemetadataList) throws Exception {
+
+		// Write the rows with multi-row inserts of up to INSERT_BATCH_SIZE rows per statement
+		for (int fromIndex = 0; fromIndex < resourcemetadataList.size(); fromIndex += INSERT_BATCH_SIZE) {
+			List<Resourcemetadata> batchList = resourcemetadataList.subList(fromIndex, Math.min(fromIndex + INSERT_BATCH_SIZE, resourcemetadataList.size()));
+
+			SqlQueryBuffer sbInsert = new SqlQueryBuffer("insert into resourcemetadata (resourceJoinId, paramName, paramType, paramValue, systemValue, codeValue, textValue, paramValueU, textValueU) values ");
+
+			for (int i = 0; i < batchList.size(); i++) {
+				Resourcemetadata resourcemetadata = batchList.get(i);
+
+				if (i > 0) {
+					sbInsert.append(", ");
+				}
+				sbInsert.appendParameterRow(resourcemetadata.getResource().getId(), resourcemetadata.getParamName(), resourcemetadata.getParamType(),
+						resourcemetadata.getParamValue(), resourcemetadata.getSystemValue(), resourcemetadata.getCodeValue(), resourcemetadata.getTextValue(),
+						resourcemetadata.getParamValueU(), resourcemetadata.getTextValueU());
+			}
+
+			sbInsert.bindParameters(em.createNativeQuery(sbInsert.toString())).executeUpdate();
+		}
+	}
+
 	/**
 	 * Delete all Resourcemetadata for the Resource
 	 *
@@ -203,10 +299,51 @@ public class ResourcemetadataService {
 
 		try {
 			if (resource != null && resource.getId() != null) {
-				List<Resourcemetadata> resourcemetadataList = readAllForResource(resource);
+				// Single statement delete of all rows for the resource
+				em.createNativeQuery("delete from resourcemetadata where resourceJoinId = ?").setParameter(1, resource.getId()).executeUpdate();
 
-				for (Resourcemetadata resourcemetadata : resourcemetadataList) {
-					delete(resourcemetadata.getId());
+				// Remove the typed search index rows if enabled
+				if (resourceindexService.isEnabled()) {
+					resourceindexService.deleteAllForResource(resource);
+				}
+			}
+
+			// Success if we made it this far...
+			result = 1;
+		} catch (Exception e) {
+			// Exception caught
+			log.severe(e.getMessage());
+			throw e;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Replace the chained Resourcemetadata (parameter names containing '.') of a Resource
+	 *
+	 * @param resource
+	 * @param chainedList - the regenerated chained Resourcemetadata
+	 * @return integer - 0 failure; 1 success
+	 * @throws Exception
+	 */
+	public int replaceChainedForResource(net.aegis.fhir.model.Resource resource, List<Resourcemetadata> chainedList) throws Exception {
+
+		log.fine("[START] ResourcemetadataService.replaceChainedForResource");
+
+		int result = 0;
+
+		try {
+			if (resource != null && resource.getId() != null) {
+				em.createNativeQuery("delete from resourcemetadata where resourceJoinId = ? and paramName like '%.%'").setParameter(1, resource.getId()).executeUpdate();
+
+				// Remove the typed search index rows if enabled
+				if (resourceindexService.isEnabled()) {
+					resourceindexService.deleteChainedForResource(resource);
+				}
+
+				if (chainedList != null && !chainedList.isEmpty()) {
+					createAllForResource(resource, chainedList);
 				}
 			}
 
@@ -221,6 +358,49 @@ public class ResourcemetadataService {
 		return result;
 	}
 
+	/**
+	 * Return the row ids of the current versions of all resources with a reference to the resource type and id
+	 *
+	 * @param resourceType
+	 * @param resourceId
+	 * @param baseUrl
+	 * @return <code>List<Integer></code>
+	 * @throws Exception
+	 */
+	public List<Integer> findReferencingResourceIds(String resourceType, String resourceId, String baseUrl) throws Exception {
+
+		log.fine("[START] ResourcemetadataService.findReferencingResourceIds");
+
+		List<Integer> referencingIds = new ArrayList<Integer>();
+
+		try {
+			String reference = resourceType + "/" + resourceId;
+			String fullReference = reference;
+			if (baseUrl != null && !baseUrl.isEmpty()) {
+				fullReference = (baseUrl.endsWith("/") ? baseUrl : baseUrl + "/") + reference;
+			}
+
+			// Reference rows only; chained rows are keyed by the referencing parameter and not the referenced resource
+			Query query = em.createNativeQuery("select distinct rm.resourceJoinId from resourcemetadata rm join resource r on r.id = rm.resourceJoinId where rm.paramValue in (?, ?) and rm.paramName not like '%.%' and r.isCurrent = 1");
+			query.setParameter(1, fullReference);
+			query.setParameter(2, reference);
+
+			@SuppressWarnings("unchecked")
+			List<Object> results = query.getResultList();
+
+			for (Object id : results) {
+				referencingIds.add(Integer.valueOf(((Number) id).intValue()));
+			}
+
+		} catch (Exception e) {
+			// Exception caught
+			log.severe(e.getMessage());
+			throw e;
+		}
+
+		return referencingIds;
+	}
+
 	/**
 	 * Return the List of Resourcemetadata instances for a single Resource
 	 *
@@ -271,6 +451,9 @@ public class ResourcemetadataService {
 		/*
 		 * Generate the Resourcemetadata list based on the Resource Type
 		 */
+		// Referenced resources are resolved once per resource, batch or transaction
+		ChainedResourceResolutionCache.begin();
+
 		try {
 			// Remove Resource type if present from baseUrl
 			String baseUrl2 = baseUrl;
@@ -291,6 +474,8 @@ public class ResourcemetadataService {
 			// Exception caught
 			log.severe(e.getMessage());
 			throw e;
+		} finally {
+			ChainedResourceResolutionCache.end();
 		}
 
 		return resourcemetadataList;
@@ -360,8 +545,7 @@ public class ResourcemetadataService {
 			sbQuery.append(" from resourcemetadata rm");
 			sbQuery.append(" where rm.resourceJoinId in");
 			sbQuery.append("   (select r1.resourceId from resource r1");
-			sbQuery.append("    where r1.versionId =");
-			sbQuery.append("      (select max(r2.versionId) from resource r2 where r2.resourceId = r1.resourceId)");
+			sbQuery.append("    where r1.isCurrent = 1");
 			sbQuery.append("    and r1.status <> 'deleted'");
 			sbQuery.append("    and r1.resourceType = '").append(resourceType).append("')");
 			sbQuery.append(" and rm.paramType = 'tag'");
@@ -0,0 +1,358 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2025 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Logger;
+
+import jakarta.annotation.Resource;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionManagement;
+import jakarta.ejb.TransactionManagementType;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.UserTransaction;
+
+import net.aegis.fhir.model.Subscriptionactivity;
+import net.aegis.fhir.model.Subscriptionnotification;
+
+/**
+ * SubscriptionnotificationService services for the outbound rest-hook notification queue: enqueue, claim, delivered
+ * and failed.
+ *
+ * Due notifications are claimed with SELECT ... FOR UPDATE SKIP LOCKED so that concurrent dispatchers never claim the
+ * same notification. A delivered notification is removed from the queue; a failed notification is retried with an
+ * exponential backoff and dead-lettered (status dead) after the maximum number of attempts. The delivered and
+ * dead-lettered outcomes are recorded as Subscriptionactivity.
+ *
+ * @author richard.ettema
+ *
+ */
+@Stateless
+@TransactionManagement(TransactionManagementType.BEAN)
+public class SubscriptionnotificationService {
+
+	// Retry delay of the first failed attempt; doubled for each further attempt
+	private static final long INITIAL_RETRY_MILLIS = 30000L;
+
+	// Maximum retry delay
+	private static final long MAX_RETRY_MILLIS = 3600000L;
+
+	// A claimed notification not completed within this time is returned to the queue (dispatcher stopped)
+	private static final long SENDING_TIMEOUT_MILLIS = 600000L;
+
+	@Inject
+	private Logger log;
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Resource
+	private UserTransaction userTransaction;
+
+	/**
+	 * Enqueue a list of new notifications in a single transaction
+	 *
+	 * @param notifications
+	 * @throws Exception
+	 */
+	public void enqueue(List<Subscriptionnotification> notifications) throws Exception {
+
+		log.fine("[START] SubscriptionnotificationService.enqueue");
+
+		try {
+			Date now = new Date();
+
+			/*
+			 * TRANSACTION BEGIN
+			 */
+			userTransaction.begin();
+
+			for (Subscriptionnotification notification : notifications) {
+				notification.setId(null);
+				notification.setRecorded(now);
+				notification.setStatus(Subscriptionnotification.STATUS_PENDING);
+				notification.setAttempts(Integer.valueOf(0));
+				notification.setNextAttempt(now);
+				notification.setLastUpdate(now);
+
+				em.persist(notification);
+			}
+
+			/*
+			 * TRANSACTION COMMIT(END)
+			 */
+			userTransaction.commit();
+		} catch (Exception e) {
+			// Exception caught
+			log.severe(e.getMessage());
+			throw e;
+		}
+	}
+
+	/**
+	 * Claim up to max due pending notifications in queue order; claimed notifications are marked as sending
+	 *
+	 * @param max
+	 * @return <code>List<Subscriptionnotification></code>
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Subscriptionnotification> claimDue(int max) throws Exception {
+
+		log.fine("[START] SubscriptionnotificationService.claimDue");
+
+		List<Subscriptionnotification> claimed = new ArrayList<Subscriptionnotification>();
+
+		try {
+			Date now = new Date();
+
+			/*
+			 * TRANSACTION BEGIN
+			 */
+			userTransaction.begin();
+
+			// Return notifications of a stopped dispatcher to the queue
+			em.createQuery("update Subscriptionnotification n set n.status = :pending, n.lastUpdate = :now where n.status = :sending and n.lastUpdate < :timeout")
+				.setParameter("pending", Subscriptionnotification.STATUS_PENDING)
+				.setParameter("now", now)
+				.setParameter("sending", Subscriptionnotification.STATUS_SENDING)
+				.setParameter("timeout", new Date(now.getTime() - SENDING_TIMEOUT_MILLIS))
+				.executeUpdate();
+
+			List<Number> ids = (List<Number>) em.createNativeQuery("select id from subscriptionnotification where status = ? and nextAttempt <= ? order by id limit ? for update skip locked")
+				.setParameter(1, Subscriptionnotification.STATUS_PENDING)
+				.setParameter(2, now)
+				.setParameter(3, Integer.valueOf(max))
+				.getResultList();
+
+			Subscriptionnotification notification = null;
+			for (Number id : ids) {
+				notification = em.find(Subscriptionnotification.class, Integer.valueOf(id.intValue()));
+
+				if (notification != null) {
+					notification.setStatus(Subscriptionnotification.STATUS_SENDING);
+					notification.setLastUpdate(now);
+					claimed.add(notification);
+				}
+			}
+
+			/*
+			 * TRANSACTION COMMIT(END)
+			 */
+			userTransaction.commit();
+		} catch (Exception e) {
+			// Exception caught
+			log.severe(e.getMessage());
+			throw e;
+		}
+
+		return claimed;
+	}
+
+	/**
+	 * Return claimed notifications to the queue without counting an attempt
+	 *
+	 * @param notifications
+	 * @throws Exception
+	 */
+	public void unclaim(List<Subscriptionnotification> notifications) throws Exception {
+
+		log.fine("[START] SubscriptionnotificationService.unclaim");
+
+		try {
+			Date now = new Date();
+
+			/*
+			 * TRANSACTION BEGIN
+			 */
+			userTransaction.begin();
+
+			Subscriptionnotification notification = null;
+			for (Subscriptionnotification claimed : notifications) {
+				notification = em.find(Subscriptionnotification.class, claimed.getId());
+
+				if (notification != null) {
+					notification.setStatus(Subscriptionnotification.STATUS_PENDING);
+					notification.setLastUpdate(now);
+				}
+			}
+
+			/*
+			 * TRANSACTION COMMIT(END)
+			 */
+			userTransaction.commit();
+		} catch (Exception e) {
+			// Exception caught
+			log.severe(e.getMessage());
+			throw e;
+		}
+	}
+
+	/**
+	 * Remove delivered notifications from the queue and record the delivery as Subscriptionactivity
+	 *
+	 * @param notifications - notifications of a single Subscription
+	 * @param description
+	 * @throws Exception
+	 */
+	public void delivered(List<Subscriptionnotification> notifications, String description) throws Exception {
+
+		log.fine("[START] SubscriptionnotificationService.delivered");
+
+		try {
+			/*
+			 * TRANSACTION BEGIN
+			 */
+			userTransaction.begin();
+
+			Subscriptionnotification notification = null;
+			for (Subscriptionnotification claimed : notifications) {
+				notification = em.find(Subscriptionnotification.class, claimed.getId());
+
+				if (notification != null) {
+					em.remove(notification);
+				}
+			}
+
+			if (!notifications.isEmpty()) {
+				em.persist(newActivity(notifications.get(0).getSubscriptionId(), "delivered", description));
+			}
+
+			/*
+			 * TRANSACTION COMMIT(END)
+			 */
+			userTransaction.commit();
+		} catch (Exception e) {
+			// Exception caught
+			log.severe(e.getMessage());
+			throw e;
+		}
+	}
+
+	/**
+	 * Schedule the retry of failed notifications with an exponential backoff; notifications reaching maxAttempts are
+	 * dead-lettered and recorded as Subscriptionactivity
+	 *
+	 * @param notifications - notifications of a single Subscription
+	 * @param error
+	 * @param maxAttempts - zero or less to dead-letter on the first failure
+	 * @throws Exception
+	 */
+	public void failed(List<Subscriptionnotification> notifications, String error, int maxAttempts) throws Exception {
+
+		log.fine("[START] SubscriptionnotificationService.failed");
+
+		try {
+			Date now = new Date();
+
+			if (error != null && error.length() > 1000) {
+				error = error.substring(0, 1000);
+			}
+
+			/*
+			 * TRANSACTION BEGIN
+			 */
+			userTransaction.begin();
+
+			int deadCount = 0;
+			Subscriptionnotification notification = null;
+			for (Subscriptionnotification claimed : notifications) {
+				notification = em.find(Subscriptionnotification.class, claimed.getId());
+
+				if (notification != null) {
+					int attempts = (notification.getAttempts() != null ? notification.getAttempts().intValue() : 0) + 1;
+
+					notification.setAttempts(Integer.valueOf(attempts));
+					notification.setLastError(error);
+					notification.setLastUpdate(now);
+
+					if (attempts >= maxAttempts) {
+						notification.setStatus(Subscriptionnotification.STATUS_DEAD);
+						deadCount++;
+					}
+					else {
+						notification.setStatus(Subscriptionnotification.STATUS_PENDING);
+						notification.setNextAttempt(new Date(now.getTime() + getRetryDelay(attempts)));
+					}
+				}
+			}
+
+			if (deadCount > 0) {
+				em.persist(newActivity(notifications.get(0).getSubscriptionId(), "dead",
+						deadCount + " notification(s) dead-lettered after " + maxAttempts + " attempt(s); " + error));
+			}
+
+			/*
+			 * TRANSACTION COMMIT(END)
+			 */
+			userTransaction.commit();
+		} catch (Exception e) {
+			// Exception caught
+			log.severe(e.getMessage());
+			throw e;
+		}
+	}
+
+	/*
+	 * Private methods
+	 */
+
+	private long getRetryDelay(int attempts) {
+
+		long delay = INITIAL_RETRY_MILLIS;
+
+		for (int i = 1; i < attempts && delay < MAX_RETRY_MILLIS; i++) {
+			delay = delay * 2;
+		}
+
+		return Math.min(delay, MAX_RETRY_MILLIS);
+	}
+
+	private Subscriptionactivity newActivity(String subscriptionId, String status, String description) {
+
+		Subscriptionactivity activity = new Subscriptionactivity();
+
+		activity.setSubscriptionId(subscriptionId);
+		activity.setRecorded(new Date());
+		activity.setType("notification");
+		activity.setStatus(status);
+		activity.setDescription(description != null && description.length() > 1000 ? description.substring(0, 1000) : (description != null ? description : ""));
+
+		return activity;
+	}
+
+}
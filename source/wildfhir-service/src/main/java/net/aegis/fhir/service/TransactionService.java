@@ -49,13 +49,17 @@ import org.hl7.fhir.r4.elementmodel.Element;
 import org.hl7.fhir.r4.elementmodel.ObjectConverter;
 import org.hl7.fhir.r4.formats.JsonParser;
 import org.hl7.fhir.r4.formats.XmlParser;
+import org.hl7.fhir.r4.model.Base;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryResponseComponent;
 import org.hl7.fhir.r4.model.Bundle.BundleType;
 import org.hl7.fhir.r4.model.Bundle.HTTPVerb;
+import org.hl7.fhir.r4.model.DomainResource;
 import org.hl7.fhir.r4.model.Meta;
 import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Property;
+import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.Resource;
 
 import jakarta.ejb.Stateless;
@@ -67,7 +71,11 @@ import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
 import net.aegis.fhir.model.ResourceContainer;
 import net.aegis.fhir.model.ResourceType;
+import net.aegis.fhir.model.ResourceWriteContainer;
+import net.aegis.fhir.service.metadata.ChainedResourceResolutionCache;
+import net.aegis.fhir.service.narrative.FHIRNarrativeGeneratorClient;
 import net.aegis.fhir.service.util.ServicesUtil;
+import net.aegis.fhir.service.util.StringUtils;
 import net.aegis.fhir.service.util.UTCDateUtil;
 import net.aegis.fhir.service.util.UUIDUtil;
 import net.aegis.fhir.service.validation.FHIRValidatorClient;
@@ -92,6 +100,12 @@ public class TransactionService {
 	@Inject
 	RESTResourceOps resourceOps;
 
+	@Inject
+	ResourceService resourceService;
+
+	@Inject
+	CodeService codeService;
+
 	@Inject
     UTCDateUtil utcDateUtil;
 
@@ -120,6 +134,9 @@ public class TransactionService {
 		ResourceContainer resourceContainer = new ResourceContainer();
 		Bundle bundleResponse = null;
 
+		// Referenced resources are resolved once for all transaction entries
+		ChainedResourceResolutionCache.begin();
+
 		try {
 			resourceContainer.setBundle(bundleResponse);
 			resourceContainer.setResponseStatus(Response.Status.NOT_IMPLEMENTED);
@@ -165,6 +182,13 @@ public class TransactionService {
 					bundleResponseEntries.add(bundleResponseEntry);
 				}
 
+				// 02a - Process DELETE, POST and PUT entries natively as a single unit of work when possible
+				if (codeService.isSupported("transactionUnitOfWork") && isUnitOfWorkSupported(bundleResponseEntries)) {
+					log.fine("===== TransactionService - 02a - Process DELETE, POST, PUT as a single unit of work");
+
+					processUnitOfWork(request, headers, bundleResponseEntries, postFullUrlMap);
+				}
+
 				MultivaluedMap<String, String> requestHeaderParams = null;
 				MultivaluedMap<String, String> urlPathParams = null;
 
@@ -530,6 +554,8 @@ public class TransactionService {
 
 			log.severe(e.getMessage());
 			// Exception not thrown to allow operation to complete
+		} finally {
+			ChainedResourceResolutionCache.end();
 		}
 
 		log.fine("[END] TransactionService.transaction()");
@@ -538,6 +564,201 @@ public class TransactionService {
 
 	}
 
+	/**
+	 * Check if all DELETE, POST and PUT entries are simple creates, updates and deletes by id that can be processed as
+	 * a single unit of work; conditional interactions and Subscription resources require the individual processing.
+	 *
+	 * @param bundleEntries
+	 * @return boolean
+	 */
+	private boolean isUnitOfWorkSupported(List<BundleEntryComponent> bundleEntries) {
+
+		boolean isSupported = false;
+
+		for (BundleEntryComponent bundleEntry : bundleEntries) {
+			if (bundleEntry.hasRequest() && bundleEntry.getRequest().hasMethod()) {
+				HTTPVerb method = bundleEntry.getRequest().getMethod();
+
+				if (method.equals(HTTPVerb.DELETE) || method.equals(HTTPVerb.POST) || method.equals(HTTPVerb.PUT)) {
+					if (!bundleEntry.getRequest().hasUrl() || bundleEntry.getRequest().hasIfMatch() || bundleEntry.getRequest().hasIfNoneExist()) {
+						return false;
+					}
+
+					String urlValue = bundleEntry.getRequest().getUrl();
+					String resourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(urlValue);
+					String resourceType = ResourceType.findValidResourceType(ServicesUtil.INSTANCE.extractBaseURL(urlValue));
+
+					if (resourceType == null || !ResourceType.isSupportedResourceType(resourceType) || resourceType.equals("Subscription") ||
+							urlValue.contains("_history") || !ServicesUtil.INSTANCE.extractURLParams(urlValue).isEmpty()) {
+						return false;
+					}
+
+					if (method.equals(HTTPVerb.POST)) {
+						if ((resourceId != null && !resourceId.isEmpty()) || !bundleEntry.hasResource() || !bundleEntry.getResource().fhirType().equals(resourceType)) {
+							return false;
+						}
+					}
+					else {
+						if (resourceId == null || !StringUtils.isValidFhirId(resourceId)) {
+							return false;
+						}
+
+						if (method.equals(HTTPVerb.PUT) && (!bundleEntry.hasResource() || !bundleEntry.getResource().fhirType().equals(resourceType) ||
+								!bundleEntry.getResource().hasIdElement() || !resourceId.equals(bundleEntry.getResource().getIdElement().getIdPart()))) {
+							return false;
+						}
+					}
+
+					isSupported = true;
+				}
+			}
+		}
+
+		return isSupported;
+	}
+
+	/**
+	 * Process the DELETE, POST and PUT entries as a single unit of work. Resource ids of the POST entries are assigned
+	 * first so that all variable (urn:) references are resolved in memory on the entry resources. All writes are then
+	 * persisted in a single database transaction; any failure rolls back all writes and is thrown back.
+	 *
+	 * @param request
+	 * @param headers
+	 * @param bundleEntries
+	 * @param postFullUrlMap
+	 * @throws Exception
+	 */
+	private void processUnitOfWork(HttpServletRequest request, HttpHeaders headers, List<BundleEntryComponent> bundleEntries, Map<String,String> postFullUrlMap) throws Exception {
+
+		// Build the writes in the DELETE, POST, PUT processing order
+		List<ResourceWriteContainer> writes = new ArrayList<ResourceWriteContainer>();
+		List<BundleEntryComponent> writeEntries = new ArrayList<BundleEntryComponent>();
+
+		HTTPVerb[] methodOrder = { HTTPVerb.DELETE, HTTPVerb.POST, HTTPVerb.PUT };
+
+		for (HTTPVerb method : methodOrder) {
+			for (BundleEntryComponent bundleEntry : bundleEntries) {
+				if (bundleEntry.hasRequest() && bundleEntry.getRequest().hasMethod() && bundleEntry.getRequest().getMethod().equals(method)) {
+					String urlValue = bundleEntry.getRequest().getUrl();
+					String resourceType = ResourceType.findValidResourceType(ServicesUtil.INSTANCE.extractBaseURL(urlValue));
+					String resourceId = null;
+
+					if (method.equals(HTTPVerb.POST)) {
+						resourceId = UUIDUtil.getUUID();
+					}
+					else {
+						resourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(urlValue);
+					}
+
+					// Map the variable reference of the entry to the assigned resource
+					if (!method.equals(HTTPVerb.DELETE) && postFullUrlMap.containsKey(bundleEntry.getFullUrl())) {
+						postFullUrlMap.put(bundleEntry.getFullUrl(), resourceType + "/" + resourceId);
+					}
+
+					writes.add(new ResourceWriteContainer(method, resourceType, resourceId, bundleEntry.getResource()));
+					writeEntries.add(bundleEntry);
+				}
+			}
+		}
+
+		for (ResourceWriteContainer write : writes) {
+			if (write.getResourceObject() != null) {
+				resolveVariableReferences(write.getResourceObject(), postFullUrlMap);
+
+				// Check for no existing text narrative
+				if (write.getResourceObject() instanceof DomainResource) {
+					DomainResource dResource = (DomainResource) write.getResourceObject();
+
+					if (!dResource.hasText()) {
+						// Use RI NarrativeGenerator
+						FHIRNarrativeGeneratorClient.instance().generate(dResource);
+					}
+				}
+			}
+		}
+
+		String baseUrl = request.getRequestURL().toString();
+		if (!baseUrl.endsWith("/")) {
+			baseUrl += "/";
+		}
+
+		resourceService.transactionWrite(writes, baseUrl);
+
+		// Return preference minimal, representation (WildFHIR default) or OperationOutcome
+		String prefer = ServicesUtil.INSTANCE.getHttpHeader(headers, "Prefer");
+		String createPrefer = prefer;
+		if (createPrefer == null) {
+			createPrefer = codeService.getCodeValue("createResponsePayload");
+		}
+
+		for (int i = 0; i < writes.size(); i++) {
+			ResourceWriteContainer write = writes.get(i);
+			BundleEntryComponent bundleEntry = writeEntries.get(i);
+
+			BundleEntryResponseComponent entryResponse = new BundleEntryResponseComponent();
+			entryResponse.setStatus(Integer.toString(write.getResponseStatus().getStatusCode()));
+			bundleEntry.setResponse(entryResponse);
+			bundleEntry.setResource(null);
+
+			if (write.getResource() != null && !write.getMethod().equals(HTTPVerb.DELETE)) {
+				String resourceUrl = baseUrl + write.getResourceType() + "/" + write.getResourceId();
+
+				entryResponse.setLocation(resourceUrl + "/_history/" + write.getResource().getVersionId());
+				entryResponse.setEtag("W/\"" + write.getResource().getVersionId() + "\"");
+				entryResponse.setLastModified(write.getResource().getLastUpdate());
+				bundleEntry.setFullUrl(resourceUrl);
+
+				String entryPrefer = (write.getMethod().equals(HTTPVerb.POST) ? createPrefer : prefer);
+
+				if (entryPrefer != null && entryPrefer.indexOf("OperationOutcome") >= 0) {
+					entryResponse.setOutcome(ServicesUtil.INSTANCE.getOperationOutcomeResource(OperationOutcome.IssueSeverity.INFORMATION, OperationOutcome.IssueType.INFORMATIONAL,
+							write.getResourceType() + " resource " + (write.getResponseStatus().equals(Response.Status.CREATED) ? "created" : "updated") + " with resource id " + write.getResourceId() + ".", null, null));
+				}
+				else if (entryPrefer == null || entryPrefer.indexOf("minimal") < 0) {
+					bundleEntry.setResource(write.getResourceObject());
+				}
+			}
+
+			/*
+			 * Final clean up - delete the Bundle.entry.request
+			 */
+			bundleEntry.setRequest(null);
+		}
+	}
+
+	/**
+	 * Replace all variable (urn:) references of the resource found in the fullUrl map with the assigned relative
+	 * references; the resource elements are updated in place
+	 *
+	 * @param element
+	 * @param postFullUrlMap
+	 */
+	private void resolveVariableReferences(Base element, Map<String,String> postFullUrlMap) {
+
+		for (Property property : element.children()) {
+			for (Base value : property.getValues()) {
+				if (value == null || value.isPrimitive()) {
+					continue;
+				}
+
+				if (value instanceof Reference) {
+					Reference reference = (Reference) value;
+
+					if (reference.hasReference()) {
+						String mappedReference = postFullUrlMap.get(reference.getReference());
+
+						if (mappedReference != null && !mappedReference.isEmpty()) {
+							log.fine("     ----- TransactionService - resolveVariableReferences - replace [" + reference.getReference() + "] with [" + mappedReference + "]");
+							reference.setReference(mappedReference);
+						}
+					}
+				}
+
+				resolveVariableReferences(value, postFullUrlMap);
+			}
+		}
+	}
+
 	/**
 	 * @param bundleEntry
 	 * @return
@@ -728,7 +949,7 @@ public class TransactionService {
 				}
 
 				if (response.hasEntity()) {
-					String entity = (String) response.getEntity();
+					String entity = ServicesUtil.INSTANCE.getResponseEntityString(response.getEntity());
 					Resource resource = null;
 
 					try {
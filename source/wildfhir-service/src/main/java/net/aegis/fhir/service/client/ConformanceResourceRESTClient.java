@@ -93,7 +93,7 @@ public class ConformanceResourceRESTClient implements Serializable {
 
 			// Conformance metadata read
 			String sMetadata = formatBaseUrl(baseUrl) + "/metadata";
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(sMetadata);
 
 			Builder targetBuilder = webTarget.request();
@@ -118,10 +118,6 @@ public class ConformanceResourceRESTClient implements Serializable {
 		} catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return conformanceResponse;
@@ -107,7 +107,7 @@ public class FHIRPathEvaluatorRESTClient implements Serializable {
 			// Build Operation web target reference
 			StringBuilder sbOperation = new StringBuilder(buildURL(baseUrl, "$fhirpath-evaluate"));
 
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(sbOperation.toString());
 
 			Builder targetBuilder = webTarget.request();
@@ -167,10 +167,6 @@ public class FHIRPathEvaluatorRESTClient implements Serializable {
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return operationResponse;
@@ -126,7 +126,7 @@ public class ResourceOperationRESTClient implements Serializable {
 				sbOperation.append("?").append(pathParameters);
 			}
 
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(sbOperation.toString());
 
 			Builder targetBuilder = webTarget.request();
@@ -218,10 +218,6 @@ public class ResourceOperationRESTClient implements Serializable {
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return operationResponse;
@@ -130,7 +130,7 @@ public class ResourceRESTClient implements Serializable {
 				}
 			}
 
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(sbReadUrl.toString());
 			Builder targetBuilder = webTarget.request();
 
@@ -166,10 +166,6 @@ public class ResourceRESTClient implements Serializable {
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return resourceResponse;
@@ -215,7 +211,7 @@ public class ResourceRESTClient implements Serializable {
 				}
 			}
 
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(sbVreadUrl.toString());
 			Builder targetBuilder = webTarget.request();
 
@@ -244,10 +240,6 @@ public class ResourceRESTClient implements Serializable {
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return resourceResponse;
@@ -286,7 +278,7 @@ public class ResourceRESTClient implements Serializable {
 				sbUpdateUrl.append("?_format=").append(_format);
 			}
 
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(sbUpdateUrl.toString());
 
 			// Conditional Update parameters
@@ -353,10 +345,6 @@ public class ResourceRESTClient implements Serializable {
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return resourceResponse;
@@ -396,7 +384,7 @@ public class ResourceRESTClient implements Serializable {
 				sbUpdateUrl.append("?_format=").append(_format);
 			}
 
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(sbUpdateUrl.toString());
 
 			// Conditional Update parameters
@@ -463,10 +451,6 @@ public class ResourceRESTClient implements Serializable {
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return resourceResponse;
@@ -501,7 +485,7 @@ public class ResourceRESTClient implements Serializable {
 				sbUpdateUrl.append("?_format=").append(_format);
 			}
 
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(sbUpdateUrl.toString());
 			Builder targetBuilder = webTarget.request();
 
@@ -555,16 +539,10 @@ public class ResourceRESTClient implements Serializable {
 			}
 
 			DebugUtil.debugResponse(resourceResponse);
-
-			client.close();
 		}
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return resourceResponse;
@@ -591,7 +569,7 @@ public class ResourceRESTClient implements Serializable {
 			// Response delete - latest version
 			String sDelete = buildURL(baseUrl, resourceType) + "/" + resourceId;
 
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(sDelete);
 			Builder targetBuilder = webTarget.request();
 
@@ -619,10 +597,6 @@ public class ResourceRESTClient implements Serializable {
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return resourceResponse;
@@ -677,7 +651,7 @@ public class ResourceRESTClient implements Serializable {
 				}
 			}
 
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(sbHistoryUrl.toString());
 			Builder targetBuilder = webTarget.request();
 
@@ -705,10 +679,6 @@ public class ResourceRESTClient implements Serializable {
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return resourceResponse;
@@ -734,7 +704,7 @@ public class ResourceRESTClient implements Serializable {
 			// Response history page
 			historyPageUrl = StringEscapeUtils.unescapeXml(historyPageUrl);
 
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(historyPageUrl);
 			Builder targetBuilder = webTarget.request();
 
@@ -762,10 +732,6 @@ public class ResourceRESTClient implements Serializable {
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return resourceResponse;
@@ -801,7 +767,7 @@ public class ResourceRESTClient implements Serializable {
 				sbCreateUrl.append("?_format=").append(_format);
 			}
 
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(sbCreateUrl.toString());
 			Builder targetBuilder = webTarget.request();
 
@@ -858,10 +824,6 @@ public class ResourceRESTClient implements Serializable {
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return resourceResponse;
@@ -898,7 +860,7 @@ public class ResourceRESTClient implements Serializable {
 				sbCreateUrl.append("?_format=").append(_format);
 			}
 
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(sbCreateUrl.toString());
 			Builder targetBuilder = webTarget.request();
 
@@ -955,10 +917,6 @@ public class ResourceRESTClient implements Serializable {
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return resourceResponse;
@@ -1021,7 +979,7 @@ public class ResourceRESTClient implements Serializable {
 			// Patient search
 			String sSearch = buildURL(baseUrl, resourceType);
 
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(sSearch);
 
 			// set query parameters
@@ -1055,10 +1013,6 @@ public class ResourceRESTClient implements Serializable {
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return resourceResponse;
@@ -1121,7 +1075,7 @@ public class ResourceRESTClient implements Serializable {
 			// Patient search
 			String sSearch = buildURL(baseUrl, resourceType) + "/_search";
 
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(sSearch);
 
 			// set query parameters
@@ -1162,10 +1116,6 @@ public class ResourceRESTClient implements Serializable {
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return resourceResponse;
@@ -1191,7 +1141,7 @@ public class ResourceRESTClient implements Serializable {
 			// Response history page
 			searchPageUrl = StringEscapeUtils.unescapeXml(searchPageUrl);
 
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(searchPageUrl);
 			Builder targetBuilder = webTarget.request();
 
@@ -1219,10 +1169,6 @@ public class ResourceRESTClient implements Serializable {
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return resourceResponse;
@@ -1245,7 +1191,7 @@ public class ResourceRESTClient implements Serializable {
 
 		try {
 			// Response post
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(buildURL(baseUrl, params));
 			Builder targetBuilder = webTarget.request();
 
@@ -1264,10 +1210,6 @@ public class ResourceRESTClient implements Serializable {
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return resourceResponse;
@@ -1291,7 +1233,7 @@ public class ResourceRESTClient implements Serializable {
 
 		try {
 			// Response post
-			client = WebClientHelper.createClientWihtoutHostVerification();
+			client = WebClientHelper.getSharedClient();
 			ResteasyWebTarget webTarget = client.target(buildURL(baseUrl, params));
 			Builder targetBuilder = webTarget.request();
 
@@ -1310,16 +1252,16 @@ public class ResourceRESTClient implements Serializable {
 				resourceResponse = targetBuilder.post(Entity.text(""));
 			}
 
+			if (resourceResponse.hasEntity()) {
+				resourceResponse.bufferEntity();
+			}
+
 			DebugUtil.debugResponse(resourceResponse);
 
 		}
 		catch (Exception e) {
 			// Exception caught
 			throw e;
-		} finally {
-			if (client != null) {
-				client.close();
-			}
 		}
 
 		return resourceResponse;
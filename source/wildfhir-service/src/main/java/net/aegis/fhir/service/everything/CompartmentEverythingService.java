@@ -0,0 +1,364 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.everything;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import org.hl7.fhir.r4.formats.XmlParser;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Bundle.BundleEntrySearchComponent;
+import org.hl7.fhir.r4.model.Bundle.SearchEntryMode;
+
+import jakarta.annotation.Resource;
+import jakarta.ejb.Stateless;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import net.aegis.fhir.model.LabelKeyValueBean;
+import net.aegis.fhir.model.ResourceType;
+import net.aegis.fhir.service.CodeService;
+import net.aegis.fhir.service.ResourceService;
+import net.aegis.fhir.service.linked.LinkedResourceProxy;
+import net.aegis.fhir.service.linked.LinkedResourceProxyObjectFactory;
+import net.aegis.fhir.service.util.StoredResourceContents;
+
+/**
+ * Compartment search for the $everything operation.
+ *
+ * The id only searches of the compartment resource types are run concurrently on the default managed executor by at
+ * most everythingParallelism (intValue) workers. The ordered resource row ids are held in a search cursor so that each
+ * page is built on demand from the ids of that page only. The linked resources of the resources of a page are collected
+ * into a single de-duplicated set of references and read with one query per resource type and batch of ids.
+ *
+ * @author richard.ettema
+ *
+ */
+@Stateless
+public class CompartmentEverythingService {
+
+	private Logger log = Logger.getLogger("CompartmentEverythingService");
+
+	@Resource
+	private ManagedExecutorService managedExecutorService;
+
+	@Inject
+	private CodeService codeService;
+
+	@Inject
+	private ResourceService resourceService;
+
+	/**
+	 * Search the resource row ids of all resource types of a compartment; AuditEvent and Provenance are excluded
+	 *
+	 * @param compartmentType
+	 * @param compartmentId
+	 * @param startDateCriteria
+	 * @param endDateCriteria
+	 * @param sinceCriteria - _lastUpdated criteria; null for all
+	 * @param resourceTypes - resource types to search; null or empty for all
+	 * @return List of resource row ids ordered by compartment resource type
+	 * @throws Exception
+	 */
+	public List<Integer> searchIds(String compartmentType, String compartmentId, final String startDateCriteria, final String endDateCriteria, final String sinceCriteria, Set<String> resourceTypes) throws Exception {
+
+		log.fine("[START] CompartmentEverythingService.searchIds(" + compartmentType + ", " + compartmentId + ")");
+
+		final String compartmentCriteria = compartmentType + "/" + compartmentId;
+
+		final List<LabelKeyValueBean> compartmentCriteriaList = new ArrayList<LabelKeyValueBean>();
+
+		for (LabelKeyValueBean lkvb : ResourceType.getCompartmentResourceTypeCriteria(compartmentType)) {
+			// Exclude: AuditEvent, Provenance
+			if (lkvb.getKey().equals("AuditEvent") || lkvb.getKey().equals("Provenance")) {
+				log.fine("Skipping resource type " + lkvb.getKey());
+			}
+			else if (resourceTypes != null && !resourceTypes.isEmpty() && !resourceTypes.contains(lkvb.getKey())) {
+				log.fine("Skipping resource type " + lkvb.getKey() + " not in _type");
+			}
+			else {
+				compartmentCriteriaList.add(lkvb);
+			}
+		}
+
+		final List<List<Integer>> typeResults = new ArrayList<List<Integer>>();
+		for (int i = 0; i < compartmentCriteriaList.size(); i++) {
+			typeResults.add(null);
+		}
+
+		final AtomicInteger nextIndex = new AtomicInteger(0);
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				int index;
+				while (failure.get() == null && (index = nextIndex.getAndIncrement()) < compartmentCriteriaList.size()) {
+					try {
+						List<Integer> resultIds = searchResourceTypeIds(compartmentCriteriaList.get(index), compartmentCriteria, startDateCriteria, endDateCriteria, sinceCriteria);
+
+						synchronized (typeResults) {
+							typeResults.set(index, resultIds);
+						}
+					} catch (Exception e) {
+						log.severe(e.getMessage());
+						failure.compareAndSet(null, e);
+					}
+				}
+			}
+		};
+
+		int workers = Math.min(getParallelism(), compartmentCriteriaList.size());
+
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+
+		for (int i = 1; i < workers; i++) {
+			try {
+				futures.add(managedExecutorService.submit(worker));
+			} catch (RejectedExecutionException e) {
+				// Executor saturated; continue with the workers already started
+				log.warning("CompartmentEverythingService - search worker rejected; continuing with " + i + " workers");
+				break;
+			}
+		}
+
+		// The calling thread always searches so that progress never depends on the executor
+		worker.run();
+
+		for (Future<?> future : futures) {
+			future.get();
+		}
+
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+
+		// A resource type may be searched by more than one compartment parameter; each row id is kept once
+		Set<Integer> resultIds = new LinkedHashSet<Integer>();
+
+		synchronized (typeResults) {
+			for (List<Integer> typeIds : typeResults) {
+				if (typeIds != null) {
+					resultIds.addAll(typeIds);
+				}
+			}
+		}
+
+		return new ArrayList<Integer>(resultIds);
+	}
+
+	/**
+	 * Build the Bundle entries of one page of compartment resources followed by their linked resources
+	 *
+	 * @param pageIds - resource row ids of the page
+	 * @param existingKeys - resource type/id keys already in the page; updated with the keys of the returned entries
+	 * @param resourceTypes - resource types of the linked resources; null or empty for all
+	 * @param baseUrl
+	 * @return List of <code>BundleEntryComponent</code>; compartment resources have search mode match, linked resources
+	 *         have search mode include
+	 * @throws Exception
+	 */
+	public List<BundleEntryComponent> readPage(List<Integer> pageIds, Set<String> existingKeys, Set<String> resourceTypes, String baseUrl) throws Exception {
+
+		log.fine("[START] CompartmentEverythingService.readPage(" + pageIds.size() + ")");
+
+		List<BundleEntryComponent> pageEntries = new ArrayList<BundleEntryComponent>();
+
+		// Linked references of the page resources
+		Map<String, String[]> linkedReferences = new LinkedHashMap<String, String[]>();
+
+		LinkedResourceProxyObjectFactory linkedProxyFactory = new LinkedResourceProxyObjectFactory();
+		XmlParser xmlP = new XmlParser();
+
+		for (net.aegis.fhir.model.Resource resourceEntry : resourceService.findResourcesByIds(pageIds)) {
+
+			String everythingKey = getKey(resourceEntry.getResourceType(), resourceEntry.getResourceId());
+
+			if (existingKeys.add(everythingKey)) {
+
+				// Stored contents are written to the response without being composed again
+				pageEntries.add(getBundleEntry(resourceEntry, baseUrl, SearchEntryMode.MATCH));
+
+				// Collect linked references
+				LinkedResourceProxy linkedProxy = linkedProxyFactory.getLinkedResourceProxy(resourceEntry.getResourceType());
+
+				if (linkedProxy != null) {
+					// Convert XML contents to Resource object
+					ByteArrayInputStream iResource = new ByteArrayInputStream(resourceEntry.getResourceContents());
+					org.hl7.fhir.r4.model.Resource resourceObject = xmlP.parse(iResource);
+
+					for (String[] reference : linkedProxy.getLinkedReferences(resourceService, resourceObject)) {
+						if (resourceTypes == null || resourceTypes.isEmpty() || resourceTypes.contains(reference[0])) {
+							linkedReferences.put(getKey(reference[0], reference[1]), reference);
+						}
+					}
+				}
+			}
+			else {
+				log.fine("Already in page - " + everythingKey);
+			}
+		}
+
+		// Read the linked resources not in the page with one batched read per resource type
+		Map<String, List<String>> linkedIdsByType = new LinkedHashMap<String, List<String>>();
+
+		for (Map.Entry<String, String[]> linkedReference : linkedReferences.entrySet()) {
+			if (!existingKeys.contains(linkedReference.getKey())) {
+				List<String> linkedIds = linkedIdsByType.get(linkedReference.getValue()[0]);
+
+				if (linkedIds == null) {
+					linkedIds = new ArrayList<String>();
+					linkedIdsByType.put(linkedReference.getValue()[0], linkedIds);
+				}
+				linkedIds.add(linkedReference.getValue()[1]);
+			}
+		}
+
+		for (Map.Entry<String, List<String>> linkedIds : linkedIdsByType.entrySet()) {
+
+			log.fine("Reading " + linkedIds.getValue().size() + " linked resources of resource type " + linkedIds.getKey());
+
+			for (net.aegis.fhir.model.Resource resourceEntry : resourceService.readCurrentByIds(linkedIds.getKey(), linkedIds.getValue())) {
+
+				if (existingKeys.add(getKey(resourceEntry.getResourceType(), resourceEntry.getResourceId()))) {
+					pageEntries.add(getBundleEntry(resourceEntry, baseUrl, SearchEntryMode.INCLUDE));
+				}
+			}
+		}
+
+		return pageEntries;
+	}
+
+	/**
+	 * Search the resource row ids of one compartment resource type
+	 *
+	 * @param lkvb - resource type and compartment search parameter
+	 * @param compartmentCriteria
+	 * @param startDateCriteria
+	 * @param endDateCriteria
+	 * @param sinceCriteria
+	 * @return List of resource row ids
+	 * @throws Exception
+	 */
+	private List<Integer> searchResourceTypeIds(LabelKeyValueBean lkvb, String compartmentCriteria, String startDateCriteria, String endDateCriteria, String sinceCriteria) throws Exception {
+
+		log.fine("Processing resource type " + lkvb.getKey());
+
+		// Set compartment criteria
+		MultivaluedMap<String, String> queryParams = new MultivaluedHashMap<String, String>();
+		queryParams.add(lkvb.getValue(), compartmentCriteria);
+
+		// Set date criteria (if defined)
+		if (startDateCriteria != null || endDateCriteria != null) {
+
+			LabelKeyValueBean dateCriteria = ResourceType.getEverythingDateCriteria(lkvb.getKey());
+			if (dateCriteria != null) {
+
+				// Set startDate criteria if defined
+				if (startDateCriteria != null) {
+					queryParams.add(dateCriteria.getValue(), startDateCriteria);
+				}
+				// Set endDate criteria if defined
+				if (endDateCriteria != null) {
+					queryParams.add(dateCriteria.getValue(), endDateCriteria);
+				}
+			}
+		}
+
+		// Set _since criteria (if defined)
+		if (sinceCriteria != null) {
+			queryParams.add("_lastUpdated", sinceCriteria);
+		}
+
+		List<String[]> validParams = new ArrayList<String[]>();
+		List<String[]> invalidParams = new ArrayList<String[]>();
+
+		// All matched resource row ids; pages are built from the cursor so no cap is applied here
+		List<Integer> resultIds = resourceService.searchQueryIds(queryParams, null, lkvb.getKey(), false, new ArrayList<String[]>(), new ArrayList<String[]>(), new ArrayList<String[]>(), validParams, invalidParams, Integer.valueOf(-1), null);
+
+		log.fine("Resource type " + lkvb.getKey() + " found " + resultIds.size());
+
+		return resultIds;
+	}
+
+	private BundleEntryComponent getBundleEntry(net.aegis.fhir.model.Resource resourceEntry, String baseUrl, SearchEntryMode searchMode) {
+
+		BundleEntryComponent bundleEntry = new BundleEntryComponent();
+		// Build and set Bundle.entry.fullUrl
+		bundleEntry.setFullUrl(baseUrl + "/" + resourceEntry.getResourceType() + "/" + resourceEntry.getResourceId());
+		// Set resource contents
+		bundleEntry.setResource(new StoredResourceContents(resourceEntry));
+		// Set search mode
+		BundleEntrySearchComponent bundleEntrySearch = new BundleEntrySearchComponent();
+		bundleEntrySearch.setMode(searchMode);
+		bundleEntry.setSearch(bundleEntrySearch);
+
+		return bundleEntry;
+	}
+
+	private int getParallelism() {
+
+		int parallelism = 1;
+
+		try {
+			if (codeService.isSupported("everythingParallelism")) {
+				Integer configuredParallelism = codeService.findCodeIntValueByName("everythingParallelism");
+
+				if (configuredParallelism != null && configuredParallelism.intValue() > 1) {
+					parallelism = configuredParallelism.intValue();
+				}
+			}
+		} catch (Exception e) {
+			// Default to sequential searches
+			log.warning("CompartmentEverythingService - everythingParallelism setting not available; " + e.getMessage());
+		}
+
+		return parallelism;
+	}
+
+	private String getKey(String resourceType, String resourceId) {
+		return resourceType + "/" + resourceId;
+	}
+
+}
@@ -33,6 +33,7 @@
 package net.aegis.fhir.service.linked;
 
 import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 import jakarta.ws.rs.core.Response;
@@ -52,6 +53,9 @@ public abstract class LinkedResourceProxy {
 
 	protected XmlParser xmlP = new XmlParser();
 
+	// When not null, linked references are collected instead of read
+	private List<String[]> collectedReferences = null;
+
 	/**
 	 * Execute the logic to return a List of linked or referenced Resources within the container Resource
 	 *
@@ -62,6 +66,28 @@ public abstract class LinkedResourceProxy {
 	 */
 	public abstract List<Resource> getLinkedResources(ResourceService resourceService, Resource containerResource) throws Exception;
 
+	/**
+	 * Return the resource type and id of the linked or referenced Resources within the container Resource without
+	 * reading them; used to resolve the linked Resources of many container Resources with batched reads
+	 *
+	 * @param resourceService
+	 * @param containerResource
+	 * @return List of String[] { resourceType, resourceId }
+	 * @throws Exception
+	 */
+	public List<String[]> getLinkedReferences(ResourceService resourceService, Resource containerResource) throws Exception {
+
+		collectedReferences = new ArrayList<String[]>();
+
+		try {
+			getLinkedResources(resourceService, containerResource);
+
+			return collectedReferences;
+		} finally {
+			collectedReferences = null;
+		}
+	}
+
 	/**
 	 *
 	 * @param resourceService
@@ -76,6 +102,11 @@ public abstract class LinkedResourceProxy {
 
 		String resourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(ref);
 
+		if (collectedReferences != null) {
+			collectReference(ref, resourceType, resourceId);
+			return null;
+		}
+
 		ResourceContainer resourceContainer = resourceService.read(resourceType, resourceId, null);
 
 		// If linked Resource is found, add to list of linked Resources
@@ -102,6 +133,11 @@ public abstract class LinkedResourceProxy {
 		String resourceType = ServicesUtil.INSTANCE.getResourceTypeFromReference(ref);
 		String resourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(ref);
 
+		if (collectedReferences != null) {
+			collectReference(ref, resourceType, resourceId);
+			return null;
+		}
+
 		ResourceContainer resourceContainer = resourceService.read(resourceType, resourceId, null);
 
 		// If linked Resource is found, add to list of linked Resources
@@ -115,4 +151,12 @@ public abstract class LinkedResourceProxy {
 		return linkedResource;
 	}
 
+	private void collectReference(String ref, String resourceType, String resourceId) {
+
+		// Contained references are not separate resources
+		if (ref != null && !ref.startsWith("#") && resourceType != null && !resourceType.isEmpty() && resourceId != null && !resourceId.isEmpty()) {
+			collectedReferences.add(new String[] { resourceType, resourceId });
+		}
+	}
+
 }
@@ -0,0 +1,220 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.metadata;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.aegis.fhir.model.Resource;
+import net.aegis.fhir.model.Resourcemetadata;
+
+/**
+ * Resolution cache of chained (referenced) resources used while generating search parameter metadata. A cache scope
+ * is opened for the current thread around the processing of a single resource or of a whole batch or transaction
+ * Bundle so that each referenced resource is read once and its chained metadata is generated once per scope.
+ * <p>
+ * Referenced resources are keyed by resource type and id. Generated chained metadata is keyed by the referencing
+ * resource type, chained parameter, chained index and the referenced resource type, id and version. A resource
+ * written within the scope is evicted so that later references resolve to the new version.
+ *
+ * @author richard.ettema
+ *
+ */
+public class ChainedResourceResolutionCache {
+
+	private static final int MAX_ENTRIES = 1000;
+
+	private static final ThreadLocal<ChainedResourceResolutionCache> currentCache = new ThreadLocal<ChainedResourceResolutionCache>();
+
+	private int depth = 0;
+
+	private Map<String, Resource> resources = new BoundedMap<Resource>();
+
+	private Map<String, List<Resourcemetadata>> chainedMetadata = new BoundedMap<List<Resourcemetadata>>();
+
+	private ChainedResourceResolutionCache() {
+	}
+
+	/**
+	 * Open a cache scope for the current thread; nested scopes share the outer cache. Must be paired with
+	 * <code>end()</code> in a finally block.
+	 */
+	public static void begin() {
+		ChainedResourceResolutionCache cache = currentCache.get();
+
+		if (cache == null) {
+			cache = new ChainedResourceResolutionCache();
+			currentCache.set(cache);
+		}
+		cache.depth++;
+	}
+
+	/**
+	 * Close a cache scope for the current thread; the cache is discarded when the outermost scope is closed.
+	 */
+	public static void end() {
+		ChainedResourceResolutionCache cache = currentCache.get();
+
+		if (cache != null) {
+			cache.depth--;
+			if (cache.depth <= 0) {
+				currentCache.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the cache of the current thread or null if no cache scope is open
+	 */
+	public static ChainedResourceResolutionCache current() {
+		return currentCache.get();
+	}
+
+	/**
+	 * Evict a written resource from the cache of the current thread if a cache scope is open
+	 *
+	 * @param resourceType
+	 * @param resourceId
+	 */
+	public static void evict(String resourceType, String resourceId) {
+		ChainedResourceResolutionCache cache = currentCache.get();
+
+		if (cache != null) {
+			cache.resources.remove(resourceKey(resourceType, resourceId));
+		}
+	}
+
+	public boolean containsResource(String resourceType, String resourceId) {
+		return resources.containsKey(resourceKey(resourceType, resourceId));
+	}
+
+	/**
+	 * @param resourceType
+	 * @param resourceId
+	 * @return the cached referenced resource; null if not cached or if the reference was not resolved
+	 */
+	public Resource getResource(String resourceType, String resourceId) {
+		return resources.get(resourceKey(resourceType, resourceId));
+	}
+
+	/**
+	 * Cache the referenced resource; a null resource records that the reference could not be resolved
+	 *
+	 * @param resourceType
+	 * @param resourceId
+	 * @param resource
+	 */
+	public void putResource(String resourceType, String resourceId, Resource resource) {
+		resources.put(resourceKey(resourceType, resourceId), resource);
+	}
+
+	/**
+	 * @param resource - the referencing resource
+	 * @param chainedParameter
+	 * @param chainedIndex
+	 * @param chainedResource
+	 * @return copy of the cached chained metadata assigned to the referencing resource; null if not cached
+	 */
+	public List<Resourcemetadata> getChainedMetadata(Resource resource, String chainedParameter, int chainedIndex, Resource chainedResource) {
+		List<Resourcemetadata> cachedList = chainedMetadata.get(chainedMetadataKey(resource, chainedParameter, chainedIndex, chainedResource));
+
+		List<Resourcemetadata> rList = null;
+
+		if (cachedList != null) {
+			rList = copyOf(cachedList, resource);
+		}
+
+		return rList;
+	}
+
+	/**
+	 * Cache a copy of the chained metadata generated for the referencing resource
+	 *
+	 * @param resource - the referencing resource
+	 * @param chainedParameter
+	 * @param chainedIndex
+	 * @param chainedResource
+	 * @param rList
+	 */
+	public void putChainedMetadata(Resource resource, String chainedParameter, int chainedIndex, Resource chainedResource, List<Resourcemetadata> rList) {
+		if (rList != null) {
+			chainedMetadata.put(chainedMetadataKey(resource, chainedParameter, chainedIndex, chainedResource), copyOf(rList, null));
+		}
+	}
+
+	private static String resourceKey(String resourceType, String resourceId) {
+		return resourceType + "/" + resourceId;
+	}
+
+	private static String chainedMetadataKey(Resource resource, String chainedParameter, int chainedIndex, Resource chainedResource) {
+		StringBuilder sbKey = new StringBuilder();
+
+		sbKey.append(resource.getResourceType()).append("|").append(chainedParameter).append("|").append(chainedIndex).append("|");
+		sbKey.append(chainedResource.getResourceType()).append("/").append(chainedResource.getResourceId());
+		sbKey.append("/_history/").append(chainedResource.getVersionId());
+
+		return sbKey.toString();
+	}
+
+	private static List<Resourcemetadata> copyOf(List<Resourcemetadata> rList, Resource resource) {
+		List<Resourcemetadata> copyList = new ArrayList<Resourcemetadata>(rList.size());
+
+		for (Resourcemetadata r : rList) {
+			Resourcemetadata copy = r.clone(false);
+			copy.setResource(resource);
+			copyList.add(copy);
+		}
+
+		return copyList;
+	}
+
+	/**
+	 * Access ordered map that drops the least recently used entry when full
+	 */
+	private static class BoundedMap<V> extends LinkedHashMap<String, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		BoundedMap() {
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	}
+
+}
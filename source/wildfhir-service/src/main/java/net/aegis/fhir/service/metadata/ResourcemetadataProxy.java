@@ -393,13 +393,44 @@ public abstract class ResourcemetadataProxy {
 					// Read chained resource - for now expect the resource on this local server
 					String resourceId = ServicesUtil.INSTANCE.extractResourceIdFromURL(reference);
 
-					ResourceContainer chainedResourceContainer = resourceService.read(chainedResourceType, resourceId, null);
+					// Use the resolution cache if a cache scope is open
+					ChainedResourceResolutionCache resolutionCache = ChainedResourceResolutionCache.current();
+					Resource chainedResource = null;
 
-					if (chainedResourceContainer != null &&
-							chainedResourceContainer.getResponseStatus().equals(Response.Status.OK) &&
-							chainedResourceContainer.getResource() != null) {
+					if (resolutionCache != null && resolutionCache.containsResource(chainedResourceType, resourceId)) {
+						chainedResource = resolutionCache.getResource(chainedResourceType, resourceId);
+					}
+					else {
+						ResourceContainer chainedResourceContainer = resourceService.read(chainedResourceType, resourceId, null);
+
+						if (chainedResourceContainer != null &&
+								chainedResourceContainer.getResponseStatus().equals(Response.Status.OK) &&
+								chainedResourceContainer.getResource() != null) {
+
+							chainedResource = chainedResourceContainer.getResource();
+						}
+
+						if (resolutionCache != null) {
+							resolutionCache.putResource(chainedResourceType, resourceId, chainedResource);
+						}
+					}
 
-						rList = proxy.generateAllForResource(resource, baseUrl, resourceService, chainedResourceContainer.getResource(), chainedParameter, chainedIndex, fhirResource);
+					if (chainedResource != null) {
+						List<Resourcemetadata> cachedList = null;
+						if (resolutionCache != null) {
+							cachedList = resolutionCache.getChainedMetadata(resource, chainedParameter, chainedIndex, chainedResource);
+						}
+
+						if (cachedList != null) {
+							rList = cachedList;
+						}
+						else {
+							rList = proxy.generateAllForResource(resource, baseUrl, resourceService, chainedResource, chainedParameter, chainedIndex, fhirResource);
+
+							if (resolutionCache != null) {
+								resolutionCache.putChainedMetadata(resource, chainedParameter, chainedIndex, chainedResource, rList);
+							}
+						}
 					}
 				}
 			}
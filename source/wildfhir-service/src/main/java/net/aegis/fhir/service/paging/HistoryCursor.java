@@ -0,0 +1,100 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.paging;
+
+import java.util.Date;
+
+/**
+ * Stateless continuation token of a history page. History is read newest first in (lastUpdate, id) order; the token
+ * holds the lastUpdate and row id of the last entry of the previous page so that the next page is read from the
+ * database with a keyset predicate and no page Bundles are held in a cache. The token format is
+ * <code>&lt;lastUpdate epoch millis&gt;.&lt;row id&gt;</code>.
+ *
+ * @author richard.ettema
+ *
+ */
+public class HistoryCursor {
+
+	public static final String PARAMETER_NAME = "_cursor";
+
+	private Date lastUpdate;
+
+	private int id;
+
+	public HistoryCursor(Date lastUpdate, int id) {
+		this.lastUpdate = lastUpdate;
+		this.id = id;
+	}
+
+	/**
+	 * Parse a continuation token
+	 *
+	 * @param token
+	 * @return the <code>HistoryCursor</code> or null if the token is null, empty or not valid
+	 */
+	public static HistoryCursor fromToken(String token) {
+
+		HistoryCursor cursor = null;
+
+		if (token != null) {
+			int separator = token.indexOf('.');
+
+			if (separator > 0 && separator < token.length() - 1) {
+				try {
+					long millis = Long.parseLong(token.substring(0, separator));
+					int id = Integer.parseInt(token.substring(separator + 1));
+
+					cursor = new HistoryCursor(new Date(millis), id);
+				}
+				catch (NumberFormatException e) {
+					cursor = null;
+				}
+			}
+		}
+
+		return cursor;
+	}
+
+	public String toToken() {
+		return lastUpdate.getTime() + "." + id;
+	}
+
+	public Date getLastUpdate() {
+		return lastUpdate;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+}
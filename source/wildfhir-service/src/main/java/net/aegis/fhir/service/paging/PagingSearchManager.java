@@ -32,17 +32,24 @@
  */
 package net.aegis.fhir.service.paging;
 
-import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.logging.Logger;
 
 import org.apache.commons.jcs.JCS;
 import org.apache.commons.jcs.access.CacheAccess;
 import org.apache.commons.jcs.access.exception.CacheException;
-import org.hl7.fhir.r4.formats.XmlParser;
-import org.hl7.fhir.r4.formats.IParser.OutputStyle;
-import org.hl7.fhir.r4.model.Bundle;
+
+import jakarta.ws.rs.core.MultivaluedMap;
 
 /**
+ * Search paging cache. Only a compact <code>SearchCursor</code> is cached per search; page Bundles are built on demand
+ * from the cursor when a page is requested.
+ *
  * @author richard.ettema
  *
  */
@@ -52,7 +59,7 @@ public enum PagingSearchManager {
 
 	private Logger log = Logger.getLogger("PagingSearchManager");
 
-	private CacheAccess<String, String> cache = null;
+	private CacheAccess<String, SearchCursor> cache = null;
 
 	private PagingSearchManager() {
 		try {
@@ -63,51 +70,80 @@ public enum PagingSearchManager {
 		}
 	}
 
-	public void putInCache(String key, Bundle page) {
+	/**
+	 * Compute the query fingerprint used as the cache key of a search cursor. The fingerprint is independent of the
+	 * order in which the search parameters were supplied; the page parameter must be removed before calling.
+	 *
+	 * @param resourceType
+	 * @param isCompartment
+	 * @param parameterMap
+	 * @param formMap
+	 * @return String
+	 */
+	public String fingerprint(String resourceType, boolean isCompartment, MultivaluedMap<String,String> parameterMap, MultivaluedMap<String,String> formMap) {
+
+		StringBuilder sbFingerprint = new StringBuilder("search|").append(resourceType).append("|").append(isCompartment);
+
+		appendParameters(sbFingerprint, parameterMap);
+		appendParameters(sbFingerprint, formMap);
+
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+			return HexFormat.of().formatHex(digest.digest(sbFingerprint.toString().getBytes(StandardCharsets.UTF_8)));
+		}
+		catch (Exception e) {
+			log.warning(String.format("Problem computing search fingerprint digest; using plain fingerprint%n%s", e.getMessage()));
+		}
+
+		return sbFingerprint.toString();
+	}
+
+	public void putInCache(String key, SearchCursor cursor) {
 
 		log.fine("[START] PagingSearchManager.putInCache(" + key + ")");
 
 		try {
-			// Convert FHIR Bundle to String
-			ByteArrayOutputStream oBundle = new ByteArrayOutputStream();
-			String sBundle = "";
-			XmlParser xmlParser = new XmlParser();
-			xmlParser.setOutputStyle(OutputStyle.PRETTY);
-			xmlParser.compose(oBundle, page, true);
-			sBundle = oBundle.toString();
-
-			cache.put(key, sBundle);
+			cache.put(key, cursor);
 		}
 		catch (CacheException e) {
-			log.severe(String.format("Problem putting search page in the cache, for key %s%n%s", key, e.getMessage()));
-		}
-		catch (Exception e) {
-			log.severe(String.format("Problem composing search page before putting in the cache, for key %s%n%s", key, e.getMessage()));
+			log.severe(String.format("Problem putting search cursor in the cache, for key %s%n%s", key, e.getMessage()));
 		}
 	}
 
-	public Bundle retrieveFromCache(String key) {
+	public SearchCursor retrieveFromCache(String key) {
 
 		log.fine("[START] PagingSearchManager.retrieveFromCache(" + key + ")");
 
-		Bundle page = null;
+		SearchCursor cursor = null;
 
 		try {
-			// Get cached Bundle stored as String
-			String sBundle = cache.get(key);
-
-			// Convert back to FHIR Bundle object
-			XmlParser xmlP = new XmlParser();
-			page = (Bundle) xmlP.parse(sBundle.getBytes());
+			cursor = cache.get(key);
 		}
 		catch (CacheException e) {
-			log.severe(String.format("Problem putting search page in the cache, for key %s%n%s", key, e.getMessage()));
-		}
-		catch (Exception e) {
-			log.severe(String.format("Problem parsing search page after getting from the cache, for key %s%n%s", key, e.getMessage()));
+			log.severe(String.format("Problem getting search cursor from the cache, for key %s%n%s", key, e.getMessage()));
 		}
 
-		return page;
+		return cursor;
+	}
+
+	private void appendParameters(StringBuilder sbFingerprint, MultivaluedMap<String,String> parameterMap) {
+
+		sbFingerprint.append("|");
+
+		if (parameterMap != null) {
+			List<String> keys = new ArrayList<String>(parameterMap.keySet());
+			Collections.sort(keys);
+
+			for (String key : keys) {
+				List<String> values = parameterMap.get(key);
+				sbFingerprint.append(key).append("=");
+				if (values != null) {
+					sbFingerprint.append(String.join(",", values));
+				}
+				sbFingerprint.append("&");
+			}
+		}
 	}
 
 }
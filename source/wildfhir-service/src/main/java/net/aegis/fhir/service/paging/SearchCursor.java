@@ -0,0 +1,160 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.paging;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact search cursor held in the paging cache in place of fully built page Bundles. The cursor records the query
+ * fingerprint, the sort keys and the ordered resource row ids of the matches; page N is built from the ids on demand.
+ * The search criteria state (valid and invalid parameters, _include and _revinclude) is kept so that the page Bundle
+ * can be built without re-parsing the search parameters.
+ *
+ * @author richard.ettema
+ *
+ */
+public class SearchCursor implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private String fingerprint;
+
+	private String sortKeys;
+
+	private int total;
+
+	private int[] resultIds;
+
+	private ArrayList<String[]> validParams;
+
+	private ArrayList<String[]> invalidParams;
+
+	private ArrayList<String[]> include;
+
+	private ArrayList<String[]> includeIterate;
+
+	private ArrayList<String[]> revinclude;
+
+	public SearchCursor(String fingerprint, String sortKeys, int total, List<Integer> resultIds, List<String[]> validParams, List<String[]> invalidParams, List<String[]> include, List<String[]> includeIterate, List<String[]> revinclude) {
+		this.fingerprint = fingerprint;
+		this.sortKeys = sortKeys;
+		this.total = total;
+		this.resultIds = new int[(resultIds != null ? resultIds.size() : 0)];
+		for (int i = 0; i < this.resultIds.length; i++) {
+			this.resultIds[i] = resultIds.get(i).intValue();
+		}
+		this.validParams = copyOf(validParams);
+		this.invalidParams = copyOf(invalidParams);
+		this.include = copyOf(include);
+		this.includeIterate = copyOf(includeIterate);
+		this.revinclude = copyOf(revinclude);
+	}
+
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	public String getSortKeys() {
+		return sortKeys;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return number of ordered resource row ids held by this cursor; may be less than total if the matches exceed the
+	 *         maximum cursor size
+	 */
+	public int getResultIdCount() {
+		return resultIds.length;
+	}
+
+	/**
+	 * Return the ordered resource row ids for one page of results.
+	 *
+	 * @param firstResult - zero based offset of the first id
+	 * @param pageSize - maximum number of ids
+	 * @return List<Integer>
+	 */
+	public List<Integer> getPageIds(int firstResult, int pageSize) {
+
+		List<Integer> pageIds = new ArrayList<Integer>();
+
+		if (firstResult >= 0 && pageSize > 0) {
+			int lastResult = Math.min(firstResult + pageSize, resultIds.length);
+			for (int i = firstResult; i < lastResult; i++) {
+				pageIds.add(Integer.valueOf(resultIds[i]));
+			}
+		}
+
+		return pageIds;
+	}
+
+	public List<String[]> getValidParams() {
+		return validParams;
+	}
+
+	public List<String[]> getInvalidParams() {
+		return invalidParams;
+	}
+
+	public List<String[]> getInclude() {
+		return include;
+	}
+
+	public List<String[]> getIncludeIterate() {
+		return includeIterate;
+	}
+
+	public List<String[]> getRevinclude() {
+		return revinclude;
+	}
+
+	private static ArrayList<String[]> copyOf(List<String[]> source) {
+
+		ArrayList<String[]> target = new ArrayList<String[]>();
+
+		if (source != null) {
+			for (String[] item : source) {
+				target.add(item != null ? Arrays.copyOf(item, item.length) : null);
+			}
+		}
+
+		return target;
+	}
+
+}
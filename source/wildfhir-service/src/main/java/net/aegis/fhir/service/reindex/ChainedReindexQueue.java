@@ -0,0 +1,248 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.reindex;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pending chained reindex requests and the reindex progress and lag metrics. A request is queued once per referenced
+ * resource; a request for a resource that is already pending is merged with the pending request. The queue is bounded
+ * and requests offered to a full queue are dropped and counted.
+ *
+ * @author richard.ettema
+ *
+ */
+public enum ChainedReindexQueue {
+
+	INSTANCE;
+
+	// Maximum number of pending referenced resources
+	public static final int MAX_PENDING = 10000;
+
+	private Map<String, ChainedReindexRequest> pending = new LinkedHashMap<String, ChainedReindexRequest>();
+
+	private AtomicInteger activeWorkers = new AtomicInteger(0);
+
+	private AtomicLong enqueuedCount = new AtomicLong(0);
+
+	private AtomicLong droppedCount = new AtomicLong(0);
+
+	private AtomicLong processedCount = new AtomicLong(0);
+
+	private AtomicLong reindexedResourceCount = new AtomicLong(0);
+
+	private AtomicLong failedCount = new AtomicLong(0);
+
+	private AtomicLong lastLagMillis = new AtomicLong(0);
+
+	private AtomicLong maxLagMillis = new AtomicLong(0);
+
+	private volatile Date lastCompleted = null;
+
+	/**
+	 * Queue a reindex request for the resources referencing the resource type and id
+	 *
+	 * @param resourceType
+	 * @param resourceId
+	 * @param baseUrl
+	 * @return boolean - true, if queued or merged with a pending request; false, if dropped
+	 */
+	public synchronized boolean offer(String resourceType, String resourceId, String baseUrl) {
+		String key = resourceType + "/" + resourceId;
+
+		if (pending.containsKey(key)) {
+			return true;
+		}
+
+		if (pending.size() >= MAX_PENDING) {
+			droppedCount.incrementAndGet();
+			return false;
+		}
+
+		pending.put(key, new ChainedReindexRequest(resourceType, resourceId, baseUrl));
+		enqueuedCount.incrementAndGet();
+
+		return true;
+	}
+
+	/**
+	 * @return the oldest pending request or null if none pending
+	 */
+	public synchronized ChainedReindexRequest poll() {
+		ChainedReindexRequest request = null;
+
+		Iterator<ChainedReindexRequest> iter = pending.values().iterator();
+		if (iter.hasNext()) {
+			request = iter.next();
+			iter.remove();
+
+			long lag = System.currentTimeMillis() - request.getEnqueued();
+			lastLagMillis.set(lag);
+			if (lag > maxLagMillis.get()) {
+				maxLagMillis.set(lag);
+			}
+		}
+
+		return request;
+	}
+
+	public synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * @return age in milliseconds of the oldest pending request; 0 if none pending
+	 */
+	public synchronized long getOldestPendingMillis() {
+		long oldest = 0;
+
+		Iterator<ChainedReindexRequest> iter = pending.values().iterator();
+		if (iter.hasNext()) {
+			oldest = System.currentTimeMillis() - iter.next().getEnqueued();
+		}
+
+		return oldest;
+	}
+
+	/**
+	 * Reserve a worker if fewer than maxWorkers are active
+	 *
+	 * @param maxWorkers
+	 * @return boolean - true, if a worker was reserved; false, otherwise
+	 */
+	public boolean tryStartWorker(int maxWorkers) {
+		int workers = activeWorkers.get();
+
+		while (workers < maxWorkers) {
+			if (activeWorkers.compareAndSet(workers, workers + 1)) {
+				return true;
+			}
+			workers = activeWorkers.get();
+		}
+
+		return false;
+	}
+
+	public void workerFinished() {
+		activeWorkers.decrementAndGet();
+	}
+
+	public void recordProcessed(int reindexedResources) {
+		processedCount.incrementAndGet();
+		reindexedResourceCount.addAndGet(reindexedResources);
+		lastCompleted = new Date();
+	}
+
+	public void recordFailed() {
+		failedCount.incrementAndGet();
+	}
+
+	public int getActiveWorkers() {
+		return activeWorkers.get();
+	}
+
+	public long getEnqueuedCount() {
+		return enqueuedCount.get();
+	}
+
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	public long getProcessedCount() {
+		return processedCount.get();
+	}
+
+	public long getReindexedResourceCount() {
+		return reindexedResourceCount.get();
+	}
+
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	public long getLastLagMillis() {
+		return lastLagMillis.get();
+	}
+
+	public long getMaxLagMillis() {
+		return maxLagMillis.get();
+	}
+
+	public Date getLastCompleted() {
+		return lastCompleted;
+	}
+
+	/**
+	 * Chained reindex request for the resources referencing a single resource
+	 */
+	public static class ChainedReindexRequest {
+
+		private String resourceType;
+
+		private String resourceId;
+
+		private String baseUrl;
+
+		private long enqueued;
+
+		public ChainedReindexRequest(String resourceType, String resourceId, String baseUrl) {
+			this.resourceType = resourceType;
+			this.resourceId = resourceId;
+			this.baseUrl = baseUrl;
+			this.enqueued = System.currentTimeMillis();
+		}
+
+		public String getResourceType() {
+			return resourceType;
+		}
+
+		public String getResourceId() {
+			return resourceId;
+		}
+
+		public String getBaseUrl() {
+			return baseUrl;
+		}
+
+		public long getEnqueued() {
+			return enqueued;
+		}
+	}
+
+}
@@ -0,0 +1,258 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.reindex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+import jakarta.annotation.Resource;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionManagement;
+import jakarta.ejb.TransactionManagementType;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Status;
+import jakarta.transaction.UserTransaction;
+import net.aegis.fhir.model.Resourcemetadata;
+import net.aegis.fhir.service.CodeService;
+import net.aegis.fhir.service.ResourceService;
+import net.aegis.fhir.service.ResourcemetadataService;
+import net.aegis.fhir.service.metadata.ChainedResourceResolutionCache;
+import net.aegis.fhir.service.reindex.ChainedReindexQueue.ChainedReindexRequest;
+
+/**
+ * Chained reindex services. Chained search parameter values (e.g. subject.name) are stored with the referencing
+ * resource; when a referenced resource is updated, the chained parameters of the current versions of all referencing
+ * resources are regenerated in the background.
+ *
+ * Requests are queued in the <code>ChainedReindexQueue</code> and processed on the default managed executor by at most
+ * chainedReindexEnabled (intValue) workers. Referencing resources are reindexed in batches, one transaction per batch.
+ *
+ * @author richard.ettema
+ *
+ */
+@Stateless
+@TransactionManagement(TransactionManagementType.BEAN)
+public class ChainedReindexService {
+
+	// Number of referencing resources reindexed in one transaction
+	private static final int REINDEX_BATCH_SIZE = 50;
+
+	private Logger log = Logger.getLogger("ChainedReindexService");
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Resource
+	private UserTransaction userTransaction;
+
+	@Resource
+	private SessionContext sessionContext;
+
+	@Resource
+	private ManagedExecutorService managedExecutorService;
+
+	@Inject
+	private CodeService codeService;
+
+	@Inject
+	private ResourceService resourceService;
+
+	@Inject
+	private ResourcemetadataService resourcemetadataService;
+
+	/**
+	 * Queue the chained reindex of the resources referencing an updated resource. Never fails the calling write.
+	 *
+	 * @param resourceType
+	 * @param resourceId
+	 * @param baseUrl
+	 */
+	public void submit(String resourceType, String resourceId, String baseUrl) {
+
+		log.fine("[START] ChainedReindexService.submit(" + resourceType + ", " + resourceId + ")");
+
+		try {
+			if (codeService.isSupported("chainedReindexEnabled")) {
+				if (ChainedReindexQueue.INSTANCE.offer(resourceType, resourceId, baseUrl)) {
+					startWorkers();
+				}
+				else {
+					log.warning("Chained reindex queue is full; request dropped for " + resourceType + "/" + resourceId);
+				}
+			}
+		} catch (Exception e) {
+			log.severe("Chained reindex submit failed for " + resourceType + "/" + resourceId + "! " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Process pending chained reindex requests until the queue is empty. Runs on a managed executor thread.
+	 */
+	public void processQueue() {
+
+		log.fine("[START] ChainedReindexService.processQueue()");
+
+		try {
+			ChainedReindexRequest request = ChainedReindexQueue.INSTANCE.poll();
+
+			while (request != null) {
+				try {
+					int reindexed = reindexReferencing(request);
+
+					ChainedReindexQueue.INSTANCE.recordProcessed(reindexed);
+				} catch (Exception e) {
+					ChainedReindexQueue.INSTANCE.recordFailed();
+					log.severe("Chained reindex failed for " + request.getResourceType() + "/" + request.getResourceId() + "! " + e.getMessage());
+				}
+
+				request = ChainedReindexQueue.INSTANCE.poll();
+			}
+		} finally {
+			ChainedReindexQueue.INSTANCE.workerFinished();
+		}
+
+		log.fine("ChainedReindexService.processQueue() - processed: " + ChainedReindexQueue.INSTANCE.getProcessedCount() + "; reindexed: " + ChainedReindexQueue.INSTANCE.getReindexedResourceCount() + "; last lag ms: " + ChainedReindexQueue.INSTANCE.getLastLagMillis());
+
+		// A request may have been queued after the last poll and before this worker finished
+		if (ChainedReindexQueue.INSTANCE.getPendingCount() > 0) {
+			try {
+				startWorkers();
+			} catch (Exception e) {
+				log.severe("Chained reindex worker restart failed! " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Start workers on the managed executor up to the configured maximum
+	 *
+	 * @throws Exception
+	 */
+	private void startWorkers() throws Exception {
+
+		int maxWorkers = 1;
+		Integer configuredWorkers = codeService.findCodeIntValueByName("chainedReindexEnabled");
+		if (configuredWorkers != null && configuredWorkers.intValue() > 0) {
+			maxWorkers = configuredWorkers.intValue();
+		}
+
+		while (ChainedReindexQueue.INSTANCE.getPendingCount() > 0 && ChainedReindexQueue.INSTANCE.tryStartWorker(maxWorkers)) {
+			final ChainedReindexService worker = sessionContext.getBusinessObject(ChainedReindexService.class);
+
+			try {
+				managedExecutorService.execute(new Runnable() {
+					@Override
+					public void run() {
+						worker.processQueue();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				ChainedReindexQueue.INSTANCE.workerFinished();
+				log.warning("Chained reindex worker rejected by the managed executor! " + e.getMessage());
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Regenerate the chained parameters of the current versions of all resources referencing the requested resource
+	 *
+	 * @param request
+	 * @return int - number of referencing resources reindexed
+	 * @throws Exception
+	 */
+	private int reindexReferencing(ChainedReindexRequest request) throws Exception {
+
+		log.fine("[START] ChainedReindexService.reindexReferencing(" + request.getResourceType() + "/" + request.getResourceId() + ")");
+
+		int reindexed = 0;
+
+		List<Integer> referencingIds = resourcemetadataService.findReferencingResourceIds(request.getResourceType(), request.getResourceId(), request.getBaseUrl());
+
+		for (int fromIndex = 0; fromIndex < referencingIds.size(); fromIndex += REINDEX_BATCH_SIZE) {
+			List<Integer> batchIds = referencingIds.subList(fromIndex, Math.min(fromIndex + REINDEX_BATCH_SIZE, referencingIds.size()));
+
+			// The updated resource is read once for the batch
+			ChainedResourceResolutionCache.begin();
+
+			try {
+				/*
+				 *  TRANSACTION BEGIN
+				 */
+				userTransaction.begin();
+
+				for (Integer id : batchIds) {
+					net.aegis.fhir.model.Resource resource = em.find(net.aegis.fhir.model.Resource.class, id);
+
+					if (resource != null && resource.isCurrent() && !"deleted".equalsIgnoreCase(resource.getStatus())) {
+						List<Resourcemetadata> resourcemetadataList = resourcemetadataService.generateAllForResource(resource, request.getBaseUrl(), resourceService);
+
+						// Only the chained parameters depend on the referenced resource
+						List<Resourcemetadata> chainedList = new ArrayList<Resourcemetadata>();
+						for (Resourcemetadata resourcemetadata : resourcemetadataList) {
+							if (resourcemetadata.getParamName() != null && resourcemetadata.getParamName().indexOf('.') > 0) {
+								chainedList.add(resourcemetadata);
+							}
+						}
+
+						resourcemetadataService.replaceChainedForResource(resource, chainedList);
+						reindexed++;
+					}
+				}
+
+				/*
+				 *  TRANSACTION COMMIT(END)
+				 */
+				userTransaction.commit();
+			} catch (Exception e) {
+				// Exception caught
+				if (userTransaction.getStatus() != Status.STATUS_NO_TRANSACTION) {
+					userTransaction.rollback();
+				}
+				log.severe(e.getMessage());
+				throw e;
+			} finally {
+				ChainedResourceResolutionCache.end();
+			}
+		}
+
+		return reindexed;
+	}
+
+}
@@ -0,0 +1,172 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.reindex;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State and progress of the $reindex job. At most one job runs at a time; the job scope is all resource types (*) or a
+ * single resource type.
+ *
+ * @author richard.ettema
+ *
+ */
+public enum ResourceReindexJob {
+
+	INSTANCE;
+
+	public static final String SCOPE_ALL = "*";
+
+	private AtomicBoolean running = new AtomicBoolean(false);
+
+	private AtomicBoolean stopRequested = new AtomicBoolean(false);
+
+	private volatile String scope = null;
+
+	private volatile Date started = null;
+
+	private volatile Date completed = null;
+
+	private AtomicLong lastId = new AtomicLong(0);
+
+	private AtomicLong reindexedCount = new AtomicLong(0);
+
+	private AtomicLong skippedCount = new AtomicLong(0);
+
+	private AtomicLong failedCount = new AtomicLong(0);
+
+	/**
+	 * Reserve the job for a new run
+	 *
+	 * @param scope
+	 * @param fromId - resource row id checkpoint to resume after
+	 * @return boolean - true, if reserved; false, if a job is already running
+	 */
+	public boolean tryStart(String scope, long fromId) {
+		if (!running.compareAndSet(false, true)) {
+			return false;
+		}
+
+		this.scope = scope;
+		this.started = new Date();
+		this.completed = null;
+		this.stopRequested.set(false);
+		this.lastId.set(fromId);
+		this.reindexedCount.set(0);
+		this.skippedCount.set(0);
+		this.failedCount.set(0);
+
+		return true;
+	}
+
+	public void finish() {
+		completed = new Date();
+		running.set(false);
+	}
+
+	public void requestStop() {
+		stopRequested.set(true);
+	}
+
+	public boolean isStopRequested() {
+		return stopRequested.get();
+	}
+
+	public boolean isRunning() {
+		return running.get();
+	}
+
+	public String getScope() {
+		return scope;
+	}
+
+	public Date getStarted() {
+		return started;
+	}
+
+	public Date getCompleted() {
+		return completed;
+	}
+
+	public long getLastId() {
+		return lastId.get();
+	}
+
+	public void setLastId(long id) {
+		lastId.set(id);
+	}
+
+	public long getReindexedCount() {
+		return reindexedCount.get();
+	}
+
+	public void addReindexed(int count) {
+		reindexedCount.addAndGet(count);
+	}
+
+	public long getSkippedCount() {
+		return skippedCount.get();
+	}
+
+	public void addSkipped(int count) {
+		skippedCount.addAndGet(count);
+	}
+
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	public void addFailed(int count) {
+		failedCount.addAndGet(count);
+	}
+
+	/**
+	 * @return double - average resources reindexed per second since the job started
+	 */
+	public double getRowsPerSecond() {
+		double rowsPerSecond = 0;
+
+		if (started != null) {
+			long end = (completed != null ? completed.getTime() : System.currentTimeMillis());
+			long elapsed = end - started.getTime();
+			if (elapsed > 0) {
+				rowsPerSecond = (reindexedCount.get() * 1000.0) / elapsed;
+			}
+		}
+
+		return rowsPerSecond;
+	}
+
+}
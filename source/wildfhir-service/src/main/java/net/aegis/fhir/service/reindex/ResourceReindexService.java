@@ -0,0 +1,472 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.reindex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+import jakarta.annotation.Resource;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionManagement;
+import jakarta.ejb.TransactionManagementType;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import jakarta.transaction.Status;
+import jakarta.transaction.UserTransaction;
+import net.aegis.fhir.model.Code;
+import net.aegis.fhir.model.Resourcemetadata;
+import net.aegis.fhir.service.CodeService;
+import net.aegis.fhir.service.ResourceService;
+import net.aegis.fhir.service.ResourcemetadataService;
+import net.aegis.fhir.service.metadata.ChainedResourceResolutionCache;
+
+/**
+ * Resource reindex services supporting the $reindex operation. The Resourcemetadata of the current versions of all
+ * resources, or of all resources of a single type, are regenerated on a running server.
+ *
+ * The resource table is scanned in ascending row id ranges of CHUNK_SIZE rows. The metadata of each chunk is generated
+ * in parallel on the default managed executor (reindexParallelism intValue tasks) and written in a single transaction
+ * with the batched resourcemetadata inserts. The last reindexed row id is saved in the reindexCheckpoint code after
+ * each chunk so that a stopped or interrupted job resumes where it left off; a running job is resumed at startup.
+ * The job is throttled to reindexRowsPerSecond (intValue) resources per second when that setting is enabled.
+ *
+ * @author richard.ettema
+ *
+ */
+@Stateless
+@TransactionManagement(TransactionManagementType.BEAN)
+public class ResourceReindexService {
+
+	public static final String CHECKPOINT_CODE = "reindexCheckpoint";
+
+	public static final String CHECKPOINT_RUNNING = "running";
+	public static final String CHECKPOINT_STOPPED = "stopped";
+	public static final String CHECKPOINT_COMPLETE = "complete";
+
+	// Number of resource rows read and written per chunk
+	private static final int CHUNK_SIZE = 500;
+
+	private Logger log = Logger.getLogger("ResourceReindexService");
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Resource
+	private UserTransaction userTransaction;
+
+	@Resource
+	private SessionContext sessionContext;
+
+	@Resource
+	private ManagedExecutorService managedExecutorService;
+
+	@Inject
+	private CodeService codeService;
+
+	@Inject
+	private ResourceService resourceService;
+
+	@Inject
+	private ResourcemetadataService resourcemetadataService;
+
+	/**
+	 * Start a $reindex job in the background
+	 *
+	 * @param resourceType - null for all resource types
+	 * @param baseUrl
+	 * @param restart - true, ignore any checkpoint and start from the first resource; false, resume from the checkpoint
+	 * @return String - result message
+	 * @throws Exception
+	 */
+	public String start(String resourceType, String baseUrl, boolean restart) throws Exception {
+
+		log.fine("[START] ResourceReindexService.start(" + resourceType + ", " + restart + ")");
+
+		final String scope = (resourceType != null ? resourceType : ResourceReindexJob.SCOPE_ALL);
+		long fromId = 0;
+
+		if (!restart) {
+			Code checkpoint = codeService.findCodeByName(CHECKPOINT_CODE);
+
+			if (checkpoint != null && checkpoint.getIntValue() != null &&
+					((CHECKPOINT_RUNNING + "|" + scope).equals(checkpoint.getValue()) || (CHECKPOINT_STOPPED + "|" + scope).equals(checkpoint.getValue()))) {
+				fromId = checkpoint.getIntValue().longValue();
+			}
+		}
+
+		if (!ResourceReindexJob.INSTANCE.tryStart(scope, fromId)) {
+			return "A $reindex job is already running for " + ResourceReindexJob.INSTANCE.getScope() + "; last resource row id " + ResourceReindexJob.INSTANCE.getLastId();
+		}
+
+		try {
+			saveCheckpoint(CHECKPOINT_RUNNING, scope, fromId);
+
+			final String jobBaseUrl = baseUrl;
+			final ResourceReindexService job = sessionContext.getBusinessObject(ResourceReindexService.class);
+
+			managedExecutorService.execute(new Runnable() {
+				@Override
+				public void run() {
+					job.runJob(scope, jobBaseUrl);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			ResourceReindexJob.INSTANCE.finish();
+			log.severe(e.getMessage());
+			throw e;
+		} catch (Exception e) {
+			ResourceReindexJob.INSTANCE.finish();
+			log.severe(e.getMessage());
+			throw e;
+		}
+
+		return "$reindex job started for " + scope + (fromId > 0 ? "; resuming after resource row id " + fromId : "");
+	}
+
+	/**
+	 * Request the running $reindex job to stop after the current chunk; the checkpoint is kept for a later resume
+	 *
+	 * @return String - result message
+	 */
+	public String stop() {
+
+		log.fine("[START] ResourceReindexService.stop()");
+
+		String result = "No $reindex job is running";
+
+		if (ResourceReindexJob.INSTANCE.isRunning()) {
+			ResourceReindexJob.INSTANCE.requestStop();
+			result = "$reindex job stop requested for " + ResourceReindexJob.INSTANCE.getScope();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Resume a $reindex job that was running when the server stopped
+	 *
+	 * @param baseUrl
+	 * @throws Exception
+	 */
+	public void resume(String baseUrl) throws Exception {
+
+		log.fine("[START] ResourceReindexService.resume()");
+
+		Code checkpoint = codeService.findCodeByName(CHECKPOINT_CODE);
+
+		if (checkpoint != null && checkpoint.getValue() != null && checkpoint.getValue().startsWith(CHECKPOINT_RUNNING + "|")) {
+			String scope = checkpoint.getValue().substring(CHECKPOINT_RUNNING.length() + 1);
+
+			log.info(start((ResourceReindexJob.SCOPE_ALL.equals(scope) ? null : scope), baseUrl, false));
+		}
+	}
+
+	/**
+	 * Run the $reindex job; runs on a managed executor thread
+	 *
+	 * @param scope
+	 * @param baseUrl
+	 */
+	public void runJob(String scope, String baseUrl) {
+
+		log.info("[START] ResourceReindexService.runJob(" + scope + ") - after resource row id " + ResourceReindexJob.INSTANCE.getLastId());
+
+		ResourceReindexJob job = ResourceReindexJob.INSTANCE;
+		String resourceType = (ResourceReindexJob.SCOPE_ALL.equals(scope) ? null : scope);
+
+		try {
+			long startMillis = System.currentTimeMillis();
+			long processed = 0;
+
+			List<Integer> chunkIds = nextChunk(resourceType, job.getLastId());
+
+			while (!chunkIds.isEmpty() && !job.isStopRequested()) {
+				List<net.aegis.fhir.model.Resource> resources = readResources(chunkIds);
+
+				Map<Integer, List<Resourcemetadata>> generated = generateChunk(resources, baseUrl);
+
+				writeChunk(resources, generated);
+
+				job.setLastId(chunkIds.get(chunkIds.size() - 1).longValue());
+				saveCheckpoint(CHECKPOINT_RUNNING, scope, job.getLastId());
+
+				processed += chunkIds.size();
+				throttle(startMillis, processed);
+
+				chunkIds = nextChunk(resourceType, job.getLastId());
+			}
+
+			if (chunkIds.isEmpty()) {
+				saveCheckpoint(CHECKPOINT_COMPLETE, scope, job.getLastId());
+			}
+			else {
+				saveCheckpoint(CHECKPOINT_STOPPED, scope, job.getLastId());
+			}
+		} catch (Exception e) {
+			log.severe("$reindex job for " + scope + " failed after resource row id " + job.getLastId() + "! " + e.getMessage());
+		} finally {
+			job.finish();
+		}
+
+		log.info("[END] ResourceReindexService.runJob(" + scope + ") - reindexed: " + job.getReindexedCount() + "; skipped: " + job.getSkippedCount() + "; failed: " + job.getFailedCount());
+	}
+
+	/**
+	 * @param resourceType
+	 * @param afterId
+	 * @return the ascending row ids of the next chunk of current, not deleted resources
+	 */
+	private List<Integer> nextChunk(String resourceType, long afterId) {
+
+		StringBuffer sbQuery = new StringBuffer("select id from resource where isCurrent = 1 and status <> 'deleted' and id > ?");
+		if (resourceType != null) {
+			sbQuery.append(" and resourceType = ?");
+		}
+		sbQuery.append(" order by id limit ").append(CHUNK_SIZE);
+
+		Query query = em.createNativeQuery(sbQuery.toString());
+		query.setParameter(1, Long.valueOf(afterId));
+		if (resourceType != null) {
+			query.setParameter(2, resourceType);
+		}
+
+		@SuppressWarnings("unchecked")
+		List<Object> results = query.getResultList();
+
+		List<Integer> chunkIds = new ArrayList<Integer>();
+		for (Object id : results) {
+			chunkIds.add(Integer.valueOf(((Number) id).intValue()));
+		}
+
+		return chunkIds;
+	}
+
+	private List<net.aegis.fhir.model.Resource> readResources(List<Integer> chunkIds) {
+
+		CriteriaBuilder cb = em.getCriteriaBuilder();
+		CriteriaQuery<net.aegis.fhir.model.Resource> criteria = cb.createQuery(net.aegis.fhir.model.Resource.class);
+		Root<net.aegis.fhir.model.Resource> resource = criteria.from(net.aegis.fhir.model.Resource.class);
+
+		criteria.select(resource)
+			.where(resource.get("id").in(chunkIds))
+			.orderBy(cb.asc(resource.get("id")));
+
+		return em.createQuery(criteria).getResultList();
+	}
+
+	/**
+	 * Generate the Resourcemetadata of the chunk resources in parallel partitions on the managed executor
+	 *
+	 * @param resources
+	 * @param baseUrl
+	 * @return map of resource row id to the generated Resourcemetadata; resources that failed are not present
+	 * @throws Exception
+	 */
+	private Map<Integer, List<Resourcemetadata>> generateChunk(List<net.aegis.fhir.model.Resource> resources, final String baseUrl) throws Exception {
+
+		int parallelism = 1;
+		Integer configuredParallelism = codeService.findCodeIntValueByName("reindexParallelism");
+		if (configuredParallelism != null && configuredParallelism.intValue() > 0) {
+			parallelism = configuredParallelism.intValue();
+		}
+
+		int partitionSize = (resources.size() + parallelism - 1) / parallelism;
+
+		List<Future<Map<Integer, List<Resourcemetadata>>>> futures = new ArrayList<Future<Map<Integer, List<Resourcemetadata>>>>();
+
+		for (int fromIndex = 0; fromIndex < resources.size(); fromIndex += partitionSize) {
+			final List<net.aegis.fhir.model.Resource> partition = resources.subList(fromIndex, Math.min(fromIndex + partitionSize, resources.size()));
+
+			futures.add(managedExecutorService.submit(new Callable<Map<Integer, List<Resourcemetadata>>>() {
+				@Override
+				public Map<Integer, List<Resourcemetadata>> call() {
+					return generatePartition(partition, baseUrl);
+				}
+			}));
+		}
+
+		Map<Integer, List<Resourcemetadata>> generated = new HashMap<Integer, List<Resourcemetadata>>();
+
+		for (Future<Map<Integer, List<Resourcemetadata>>> future : futures) {
+			generated.putAll(future.get());
+		}
+
+		return generated;
+	}
+
+	private Map<Integer, List<Resourcemetadata>> generatePartition(List<net.aegis.fhir.model.Resource> partition, String baseUrl) {
+
+		Map<Integer, List<Resourcemetadata>> generated = new HashMap<Integer, List<Resourcemetadata>>();
+
+		// Referenced resources are resolved once per partition
+		ChainedResourceResolutionCache.begin();
+
+		try {
+			for (net.aegis.fhir.model.Resource resource : partition) {
+				try {
+					generated.put(resource.getId(), resourcemetadataService.generateAllForResource(resource, baseUrl, resourceService));
+				} catch (Exception e) {
+					log.severe("$reindex metadata generation failed for " + resource.getResourceType() + "/" + resource.getResourceId() + "! " + e.getMessage());
+				}
+			}
+		} finally {
+			ChainedResourceResolutionCache.end();
+		}
+
+		return generated;
+	}
+
+	/**
+	 * Replace the Resourcemetadata of the chunk resources in a single transaction. Resources that are no longer the
+	 * current version were reindexed by their update and are skipped.
+	 *
+	 * @param resources
+	 * @param generated
+	 * @throws Exception
+	 */
+	private void writeChunk(List<net.aegis.fhir.model.Resource> resources, Map<Integer, List<Resourcemetadata>> generated) throws Exception {
+
+		int reindexed = 0;
+		int skipped = 0;
+		int failed = 0;
+
+		try {
+			/*
+			 *  TRANSACTION BEGIN
+			 */
+			userTransaction.begin();
+
+			for (net.aegis.fhir.model.Resource resource : resources) {
+				List<Resourcemetadata> resourcemetadataList = generated.get(resource.getId());
+
+				if (resourcemetadataList == null) {
+					failed++;
+					continue;
+				}
+
+				net.aegis.fhir.model.Resource current = em.find(net.aegis.fhir.model.Resource.class, resource.getId());
+
+				if (current != null && current.isCurrent() && !"deleted".equalsIgnoreCase(current.getStatus())) {
+					resourcemetadataService.deleteAllForResource(current);
+					resourcemetadataService.createAllForResource(current, resourcemetadataList);
+					reindexed++;
+				}
+				else {
+					skipped++;
+				}
+			}
+
+			/*
+			 *  TRANSACTION COMMIT(END)
+			 */
+			userTransaction.commit();
+		} catch (Exception e) {
+			// Exception caught
+			if (userTransaction.getStatus() != Status.STATUS_NO_TRANSACTION) {
+				userTransaction.rollback();
+			}
+			log.severe(e.getMessage());
+			throw e;
+		}
+
+		ResourceReindexJob.INSTANCE.addReindexed(reindexed);
+		ResourceReindexJob.INSTANCE.addSkipped(skipped);
+		ResourceReindexJob.INSTANCE.addFailed(failed);
+	}
+
+	/**
+	 * Sleep as needed to keep the job at or under reindexRowsPerSecond resources per second
+	 *
+	 * @param startMillis
+	 * @param processed
+	 * @throws Exception
+	 */
+	private void throttle(long startMillis, long processed) throws Exception {
+
+		if (codeService.isSupported("reindexRowsPerSecond")) {
+			Integer rowsPerSecond = codeService.findCodeIntValueByName("reindexRowsPerSecond");
+
+			if (rowsPerSecond != null && rowsPerSecond.intValue() > 0) {
+				long expectedMillis = (processed * 1000) / rowsPerSecond.intValue();
+				long elapsedMillis = System.currentTimeMillis() - startMillis;
+
+				if (expectedMillis > elapsedMillis) {
+					Thread.sleep(expectedMillis - elapsedMillis);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Save the job checkpoint in the reindexCheckpoint code; value is state|scope and intValue is the last row id
+	 *
+	 * @param state
+	 * @param scope
+	 * @param lastId
+	 * @throws Exception
+	 */
+	private void saveCheckpoint(String state, String scope, long lastId) throws Exception {
+
+		Code checkpoint = codeService.findCodeByName(CHECKPOINT_CODE);
+
+		if (checkpoint == null) {
+			checkpoint = new Code();
+			checkpoint.setCodeName(CHECKPOINT_CODE);
+			checkpoint.setValue(state + "|" + scope);
+			checkpoint.setIntValue(Integer.valueOf((int) lastId));
+			checkpoint.setDescription("$reindex job checkpoint: state|scope (value) and last reindexed resource row id (intValue)");
+
+			codeService.create(checkpoint);
+		}
+		else {
+			checkpoint.setValue(state + "|" + scope);
+			checkpoint.setIntValue(Integer.valueOf((int) lastId));
+
+			codeService.update(checkpoint);
+		}
+	}
+
+}
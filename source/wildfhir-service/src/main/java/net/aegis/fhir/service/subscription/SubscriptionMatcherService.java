@@ -0,0 +1,494 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.subscription;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.StringType;
+import org.hl7.fhir.r4.model.Subscription;
+import org.hl7.fhir.r4.model.Subscription.SubscriptionChannelType;
+
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.TransactionManagement;
+import jakarta.ejb.TransactionManagementType;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import net.aegis.fhir.model.ResourceContainer;
+import net.aegis.fhir.model.ResourceType;
+import net.aegis.fhir.model.Resourcemetadata;
+import net.aegis.fhir.model.Subscriptionnotification;
+import net.aegis.fhir.service.CodeService;
+import net.aegis.fhir.service.ResourceService;
+import net.aegis.fhir.service.ResourcemetadataService;
+import net.aegis.fhir.service.subscription.r5.topic.SubscriptionTopicProxy;
+import net.aegis.fhir.service.subscription.r5.topic.SubscriptionTopicProxyObjectFactory;
+import net.aegis.fhir.service.util.ServicesUtil;
+
+/**
+ * Subscription matching of created and updated resources.
+ *
+ * The criteria of the active rest-hook Subscription resources are compiled into an index by resource type; R5 backport
+ * topic Subscriptions are indexed by the resource triggers of the topic with their filter criteria. Each resource written
+ * by a successful transaction is matched on the default managed executor against the criteria of its resource type only.
+ * Token, reference, string and uri parameters are evaluated in memory against the Resourcemetadata generated for the
+ * resource; any other parameter, modifier or chain is evaluated by a search of the single resource. A notification is
+ * enqueued in the durable notification queue for each matched Subscription. The index is rebuilt when a Subscription
+ * is written.
+ *
+ * Matching is enabled by the code setting subscriptionServiceEnabled.
+ *
+ * @author richard.ettema
+ *
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionManagement(TransactionManagementType.BEAN)
+public class SubscriptionMatcherService {
+
+	private Logger log = Logger.getLogger("SubscriptionMatcherService");
+
+	@Resource
+	private ManagedExecutorService managedExecutorService;
+
+	@Inject
+	private CodeService codeService;
+
+	@Inject
+	private ResourceService resourceService;
+
+	@Inject
+	private ResourcemetadataService resourcemetadataService;
+
+	@Inject
+	private SubscriptionNotificationDispatcher subscriptionNotificationDispatcher;
+
+	// Compiled criteria of the active Subscriptions by resource type; null when the index must be rebuilt
+	private volatile Map<String, List<SubscriptionCriteria>> criteriaIndex = null;
+
+	// Incremented on each Subscription write so that an index built from a stale search is not kept
+	private final AtomicLong criteriaGeneration = new AtomicLong();
+
+	/**
+	 * Observe the resources written by a successful transaction and queue their matching on the managed executor
+	 *
+	 * @param resource
+	 */
+	public void onResourceChange(@Observes(during = TransactionPhase.AFTER_SUCCESS) final net.aegis.fhir.model.Resource resource) {
+
+		log.fine("[START] SubscriptionMatcherService.onResourceChange()");
+
+		if (resource == null || resource.getResourceType() == null) {
+			return;
+		}
+
+		if (resource.getResourceType().equals("Subscription")) {
+			// Active Subscriptions may have changed; rebuild the criteria index for the next match
+			criteriaGeneration.incrementAndGet();
+			criteriaIndex = null;
+			return;
+		}
+
+		if ("deleted".equals(resource.getStatus())) {
+			return;
+		}
+
+		try {
+			managedExecutorService.submit(new Runnable() {
+				@Override
+				public void run() {
+					matchResource(resource);
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			log.warning("SubscriptionMatcherService - " + resource.getResourceType() + "/" + resource.getResourceId() + " not matched; " + e.getMessage());
+		}
+	}
+
+	/*
+	 * Private methods
+	 */
+
+	/**
+	 * Match a written resource against the compiled criteria of its resource type and queue a notification for each
+	 * matched Subscription
+	 *
+	 * @param resource
+	 */
+	private void matchResource(net.aegis.fhir.model.Resource resource) {
+
+		log.fine("[START] SubscriptionMatcherService.matchResource(" + resource.getResourceType() + "/" + resource.getResourceId() + ")");
+
+		try {
+			if (!codeService.isSupported("subscriptionServiceEnabled")) {
+				return;
+			}
+
+			List<SubscriptionCriteria> resourceTypeCriteria = getCriteriaIndex().get(resource.getResourceType());
+
+			if (resourceTypeCriteria == null || resourceTypeCriteria.isEmpty()) {
+				return;
+			}
+
+			// Only match a version that is still current; purge fires for every removed version of the resource
+			List<net.aegis.fhir.model.Resource> currentRows = resourceService.findResourcesByIds(Collections.singletonList(resource.getId()));
+
+			if (currentRows.isEmpty() || !currentRows.get(0).isCurrent()) {
+				log.fine("SubscriptionMatcherService - " + resource.getResourceType() + "/" + resource.getResourceId() + " version no longer current; not matched");
+				return;
+			}
+
+			// Generated once for all in memory criteria of the resource type
+			List<Resourcemetadata> resourcemetadataList = null;
+			List<Subscriptionnotification> notifications = new ArrayList<Subscriptionnotification>();
+
+			for (SubscriptionCriteria criteria : resourceTypeCriteria) {
+
+				boolean matched = false;
+
+				if (criteria.inMemory) {
+					if (resourcemetadataList == null) {
+						resourcemetadataList = resourcemetadataService.generateAllForResource(resource, codeService.findCodeValueByName("baseUrl"), resourceService);
+					}
+					matched = criteria.matches(resourcemetadataList);
+				}
+				else {
+					matched = searchResource(criteria, resource);
+				}
+
+				log.fine("SubscriptionMatcherService - Subscription [" + criteria.subscription.getId() + "] matched = " + matched);
+
+				if (matched) {
+					Subscriptionnotification notification = new Subscriptionnotification();
+					notification.setSubscriptionId(criteria.subscription.getIdElement().getIdPart());
+					notification.setEndpoint(criteria.subscription.getChannel().getEndpoint());
+					notification.setResourceJoinId(resource.getId());
+					notification.setResourceType(resource.getResourceType());
+					notification.setResourceId(resource.getResourceId());
+					notifications.add(notification);
+				}
+			}
+
+			// Queue the notifications of all matched Subscriptions
+			subscriptionNotificationDispatcher.enqueue(notifications);
+		}
+		catch (Exception e) {
+			log.severe("SubscriptionMatcherService - " + resource.getResourceType() + "/" + resource.getResourceId() + " matching failed! " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Evaluate the criteria by a search of the single written resource
+	 *
+	 * @param criteria
+	 * @param resource
+	 * @return <code>boolean</code>
+	 * @throws Exception
+	 */
+	private boolean searchResource(SubscriptionCriteria criteria, net.aegis.fhir.model.Resource resource) throws Exception {
+
+		log.fine("[START] SubscriptionMatcherService.searchResource()");
+
+		MultivaluedMap<String, String> queryParams = new MultivaluedHashMap<String, String>();
+		queryParams.putAll(criteria.queryParams);
+		queryParams.putSingle("_id", resource.getResourceId());
+
+		ResourceContainer rcMatches = resourceService.search(queryParams, null, null, criteria.resourceType, "INTERNAL", null, null, null, false);
+
+		return (rcMatches != null && rcMatches.getBundle() != null && !rcMatches.getBundle().getEntry().isEmpty());
+	}
+
+	/**
+	 * Return the compiled criteria index; built from the active rest-hook Subscriptions when not present
+	 *
+	 * @return <code>Map<String, List<SubscriptionCriteria>></code>
+	 * @throws Exception
+	 */
+	private Map<String, List<SubscriptionCriteria>> getCriteriaIndex() throws Exception {
+
+		Map<String, List<SubscriptionCriteria>> index = criteriaIndex;
+
+		if (index == null) {
+			synchronized (this) {
+				index = criteriaIndex;
+
+				if (index == null) {
+					long generation = criteriaGeneration.get();
+
+					index = buildCriteriaIndex();
+
+					if (generation == criteriaGeneration.get()) {
+						criteriaIndex = index;
+					}
+				}
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Build the criteria index from the active rest-hook Subscriptions
+	 *
+	 * @return <code>Map<String, List<SubscriptionCriteria>></code>
+	 * @throws Exception
+	 */
+	private Map<String, List<SubscriptionCriteria>> buildCriteriaIndex() throws Exception {
+
+		log.fine("[START] SubscriptionMatcherService.buildCriteriaIndex()");
+
+		Map<String, List<SubscriptionCriteria>> index = new HashMap<String, List<SubscriptionCriteria>>();
+
+		// Search for all Subscriptions with status = active; return as searchset Bundle
+		List<NameValuePair> params = URLEncodedUtils.parse("status=active", Charset.defaultCharset());
+		MultivaluedMap<String, String> queryParams = ServicesUtil.INSTANCE.listNameValuePairToMultivaluedMapString(params);
+
+		ResourceContainer rcSubscriptions = resourceService.search(queryParams, null, null, "Subscription", "INTERNAL", null, null, null, false);
+
+		if (rcSubscriptions != null && rcSubscriptions.getBundle() != null) {
+
+			SubscriptionTopicProxyObjectFactory topicFactory = new SubscriptionTopicProxyObjectFactory();
+			Subscription subscription = null;
+
+			for (BundleEntryComponent subscriptionEntry : rcSubscriptions.getBundle().getEntry()) {
+
+				subscription = (Subscription)subscriptionEntry.getResource();
+
+				// Only rest-hook channels are supported
+				if (!subscription.hasCriteria() || !subscription.hasChannel() || subscription.getChannel().getType() != SubscriptionChannelType.RESTHOOK) {
+					continue;
+				}
+
+				SubscriptionTopicProxy topicProxy = topicFactory.getSubscriptionTopicProxy(subscription.getCriteria());
+
+				if (topicProxy != null) {
+					// Topic filter criteria apply to the topic resource triggers
+					StringBuilder sbParams = new StringBuilder();
+					for (Extension criteriaExt : subscription.getCriteriaElement().getExtension()) {
+						if (criteriaExt.hasUrl() && criteriaExt.getUrl().equals("http://hl7.org/fhir/uv/subscriptions-backport/StructureDefinition/backport-filter-criteria")) {
+							if (sbParams.length() > 0) {
+								sbParams.append("&");
+							}
+							sbParams.append(((StringType) criteriaExt.getValue()).getValueAsString());
+						}
+					}
+
+					for (String resourceTrigger : topicProxy.getResourceTriggers()) {
+						addCriteria(index, new SubscriptionCriteria(subscription, topicProxy, resourceTrigger, sbParams.toString()));
+					}
+				}
+				else {
+					String subscriptionResourceType = subscription.getCriteria();
+					String paramsOnly = "";
+
+					int paramsStart = subscription.getCriteria().indexOf("?");
+					if (paramsStart > -1) {
+						subscriptionResourceType = subscription.getCriteria().substring(0, paramsStart);
+						paramsOnly = subscription.getCriteria().substring(paramsStart + 1);
+					}
+
+					addCriteria(index, new SubscriptionCriteria(subscription, null, subscriptionResourceType, paramsOnly));
+				}
+			}
+		}
+
+		log.fine("SubscriptionMatcherService.buildCriteriaIndex() - " + index.size() + " resource types indexed");
+
+		return index;
+	}
+
+	/**
+	 * Add compiled criteria to the index list of its resource type
+	 *
+	 * @param index
+	 * @param criteria
+	 */
+	private void addCriteria(Map<String, List<SubscriptionCriteria>> index, SubscriptionCriteria criteria) {
+
+		List<SubscriptionCriteria> resourceTypeCriteria = index.get(criteria.resourceType);
+
+		if (resourceTypeCriteria == null) {
+			resourceTypeCriteria = new ArrayList<SubscriptionCriteria>();
+			index.put(criteria.resourceType, resourceTypeCriteria);
+		}
+		resourceTypeCriteria.add(criteria);
+	}
+
+	/**
+	 * Compiled search criteria of an active Subscription for a single resource type
+	 */
+	private static class SubscriptionCriteria {
+
+		private final Subscription subscription;
+		private final SubscriptionTopicProxy topicProxy;
+		private final String resourceType;
+		private final MultivaluedMap<String, String> queryParams;
+		// Parameter name, criteria type and OR values of each parameter when all parameters are evaluated in memory
+		private final List<String[]> parameters = new ArrayList<String[]>();
+		private boolean inMemory = true;
+
+		private SubscriptionCriteria(Subscription subscription, SubscriptionTopicProxy topicProxy, String resourceType, String paramsOnly) {
+
+			this.subscription = subscription;
+			this.topicProxy = topicProxy;
+			this.resourceType = resourceType;
+
+			List<NameValuePair> params = URLEncodedUtils.parse(paramsOnly, Charset.defaultCharset());
+			this.queryParams = ServicesUtil.INSTANCE.listNameValuePairToMultivaluedMapString(params);
+
+			for (NameValuePair param : params) {
+				String name = param.getName();
+				String value = param.getValue();
+
+				// Result, modifier, chained and escaped parameters are searched
+				if (name.startsWith("_") || name.contains(":") || name.contains(".") || value == null || value.isEmpty() || value.contains("\\")) {
+					inMemory = false;
+					break;
+				}
+
+				String type = ResourceType.findResourceTypeResourceCriteriaType(resourceType, name);
+
+				if (!"TOKEN".equals(type) && !"REFERENCE".equals(type) && !"STRING".equals(type) && !"URI".equals(type)) {
+					inMemory = false;
+					break;
+				}
+
+				String[] parameter = new String[] { name, type, value };
+				parameters.add(parameter);
+			}
+		}
+
+		/**
+		 * All parameters must match at least one of their values
+		 *
+		 * @param resourcemetadataList
+		 * @return <code>boolean</code>
+		 */
+		private boolean matches(List<Resourcemetadata> resourcemetadataList) {
+
+			for (String[] parameter : parameters) {
+				boolean parameterMatched = false;
+
+				for (String value : parameter[2].split(",")) {
+					for (Resourcemetadata resourcemetadata : resourcemetadataList) {
+						if (parameter[0].equals(resourcemetadata.getParamName()) && matchesValue(parameter[1], value, resourcemetadata)) {
+							parameterMatched = true;
+							break;
+						}
+					}
+					if (parameterMatched) {
+						break;
+					}
+				}
+
+				if (!parameterMatched) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * Match a single criteria value using the search semantics of its criteria type without modifier
+		 *
+		 * @param type
+		 * @param value
+		 * @param resourcemetadata
+		 * @return <code>boolean</code>
+		 */
+		private boolean matchesValue(String type, String value, Resourcemetadata resourcemetadata) {
+
+			String paramValue = resourcemetadata.getParamValue();
+
+			if (type.equals("TOKEN")) {
+				// Case insensitive code match on the upper case value as done by search
+				String paramValueU = resourcemetadata.getParamValueU();
+				int barPos = value.indexOf("|");
+
+				if (barPos < 0) {
+					return value.toUpperCase().equals(paramValueU);
+				}
+
+				String system = value.substring(0, barPos);
+				String code = value.substring(barPos + 1);
+
+				if (system.isEmpty()) {
+					// |code - code without a system
+					return code.toUpperCase().equals(paramValueU) && (resourcemetadata.getSystemValue() == null || resourcemetadata.getSystemValue().isEmpty());
+				}
+				if (code.isEmpty()) {
+					// system| - any code of the system
+					return system.equals(resourcemetadata.getSystemValue());
+				}
+				return system.equals(resourcemetadata.getSystemValue()) && code.toUpperCase().equals(paramValueU);
+			}
+
+			if (paramValue == null) {
+				return false;
+			}
+
+			if (type.equals("REFERENCE")) {
+				// Stored references are full local references
+				return paramValue.equals(value) || paramValue.endsWith("/" + value);
+			}
+
+			if (type.equals("STRING")) {
+				// Case insensitive starts with
+				return paramValue.toUpperCase().startsWith(value.toUpperCase());
+			}
+
+			return paramValue.equals(value);
+		}
+	}
+
+}
@@ -0,0 +1,435 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.subscription;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import org.hl7.fhir.r4.formats.XmlParser;
+import org.hl7.fhir.r4.model.Enumerations.ResourceType;
+import org.hl7.fhir.r4.model.Subscription;
+import org.hl7.fhir.r4.model.Subscription.SubscriptionStatus;
+
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.TransactionManagement;
+import jakarta.ejb.TransactionManagementType;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.Response;
+import net.aegis.fhir.model.LabelKeyValueBean;
+import net.aegis.fhir.model.ResourceContainer;
+import net.aegis.fhir.model.Subscriptionnotification;
+import net.aegis.fhir.service.CodeService;
+import net.aegis.fhir.service.ResourceService;
+import net.aegis.fhir.service.SubscriptionnotificationService;
+import net.aegis.fhir.service.subscription.r4.SubscriptionServiceR4;
+import net.aegis.fhir.service.subscription.r5.SubscriptionServiceR5;
+import net.aegis.fhir.service.subscription.r5.topic.SubscriptionTopicProxyObjectFactory;
+
+/**
+ * Dispatcher of the durable rest-hook notification queue (subscriptionnotification table).
+ *
+ * A single drain at a time claims the due notifications and hands them to the default managed executor grouped by
+ * Subscription. At most subscriptionNotificationBatch (intValue) notifications of a Subscription are sent as one
+ * notification; R4 criteria Subscriptions receive a batch Bundle of their matched resources and R5 backport topic
+ * Subscriptions a single topic notification Bundle. At most subscriptionDispatchParallelism (intValue) notifications are
+ * in progress, of which at most subscriptionEndpointConcurrentLimit (intValue) per endpoint, so that a slow or dead
+ * endpoint never holds back the delivery to other endpoints. Failed notifications are retried with an exponential
+ * backoff and dead-lettered after subscriptionNotificationMaxAttempts (intValue) attempts.
+ *
+ * A drain is started by each enqueue, by each completed delivery and by a timer for the scheduled retries.
+ *
+ * @author richard.ettema
+ *
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionManagement(TransactionManagementType.BEAN)
+public class SubscriptionNotificationDispatcher {
+
+	private Logger log = Logger.getLogger("SubscriptionNotificationDispatcher");
+
+	@Resource
+	private ManagedExecutorService managedExecutorService;
+
+	@Inject
+	private CodeService codeService;
+
+	@Inject
+	private ResourceService resourceService;
+
+	@Inject
+	private SubscriptionnotificationService subscriptionnotificationService;
+
+	@Inject
+	private SubscriptionServiceR4 subscriptionServiceR4;
+
+	@Inject
+	private SubscriptionServiceR5 subscriptionServiceR5;
+
+	// Single drain in progress; a drain requested meanwhile is run by the drain in progress
+	private final AtomicBoolean draining = new AtomicBoolean(false);
+	private final AtomicBoolean drainRequested = new AtomicBoolean(false);
+
+	// Notifications in progress in total and by endpoint
+	private final AtomicInteger deliveriesInProgress = new AtomicInteger(0);
+	private final ConcurrentHashMap<String, AtomicInteger> endpointDeliveriesInProgress = new ConcurrentHashMap<String, AtomicInteger>();
+
+	/**
+	 * Enqueue new notifications and start a drain
+	 *
+	 * @param notifications
+	 * @throws Exception
+	 */
+	public void enqueue(List<Subscriptionnotification> notifications) throws Exception {
+
+		log.fine("[START] SubscriptionNotificationDispatcher.enqueue(" + notifications.size() + ")");
+
+		if (!notifications.isEmpty()) {
+			subscriptionnotificationService.enqueue(notifications);
+
+			signal();
+		}
+	}
+
+	/**
+	 * Start a drain for the notifications due for retry
+	 */
+	@Schedule(hour = "*", minute = "*", second = "*/15", persistent = false)
+	public void scheduledDrain() {
+
+		signal();
+	}
+
+	/*
+	 * Private methods
+	 */
+
+	/**
+	 * Start a drain on the managed executor unless a drain is in progress
+	 */
+	private void signal() {
+
+		drainRequested.set(true);
+
+		if (draining.compareAndSet(false, true)) {
+			try {
+				managedExecutorService.submit(new Runnable() {
+					@Override
+					public void run() {
+						drain();
+					}
+				});
+			}
+			catch (RejectedExecutionException e) {
+				draining.set(false);
+				log.warning("SubscriptionNotificationDispatcher - drain not started; " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Claim the due notifications up to the available delivery capacity and submit their deliveries
+	 */
+	private void drain() {
+
+		log.fine("[START] SubscriptionNotificationDispatcher.drain()");
+
+		try {
+			while (drainRequested.getAndSet(false)) {
+
+				if (!codeService.isSupported("subscriptionServiceEnabled")) {
+					break;
+				}
+
+				int batchSize = getIntSetting("subscriptionNotificationBatch", 1);
+				int parallelism = getIntSetting("subscriptionDispatchParallelism", 1);
+				int endpointLimit = getIntSetting("subscriptionEndpointConcurrentLimit", parallelism);
+
+				boolean capacityReached = false;
+
+				while (!capacityReached) {
+					int capacity = parallelism - deliveriesInProgress.get();
+
+					if (capacity <= 0) {
+						break;
+					}
+
+					List<Subscriptionnotification> claimed = subscriptionnotificationService.claimDue(capacity * batchSize);
+
+					if (claimed.isEmpty()) {
+						break;
+					}
+
+					// Group the claimed notifications by Subscription in queue order
+					Map<String, List<Subscriptionnotification>> bySubscription = new LinkedHashMap<String, List<Subscriptionnotification>>();
+					for (Subscriptionnotification notification : claimed) {
+						List<Subscriptionnotification> subscriptionNotifications = bySubscription.get(notification.getSubscriptionId());
+						if (subscriptionNotifications == null) {
+							subscriptionNotifications = new ArrayList<Subscriptionnotification>();
+							bySubscription.put(notification.getSubscriptionId(), subscriptionNotifications);
+						}
+						subscriptionNotifications.add(notification);
+					}
+
+					List<Subscriptionnotification> unclaimed = new ArrayList<Subscriptionnotification>();
+
+					for (List<Subscriptionnotification> subscriptionNotifications : bySubscription.values()) {
+						for (int fromIndex = 0; fromIndex < subscriptionNotifications.size(); fromIndex += batchSize) {
+							List<Subscriptionnotification> chunk = new ArrayList<Subscriptionnotification>(subscriptionNotifications.subList(fromIndex, Math.min(fromIndex + batchSize, subscriptionNotifications.size())));
+
+							if (!startDelivery(chunk, parallelism, endpointLimit)) {
+								unclaimed.addAll(chunk);
+							}
+						}
+					}
+
+					if (!unclaimed.isEmpty()) {
+						// Returned to the queue; the next completed delivery starts a new drain
+						subscriptionnotificationService.unclaim(unclaimed);
+						capacityReached = true;
+					}
+				}
+			}
+		}
+		catch (Exception e) {
+			log.severe("SubscriptionNotificationDispatcher - drain failed! " + e.getMessage());
+		}
+		finally {
+			draining.set(false);
+		}
+
+		// A drain requested after the last check is run now
+		if (drainRequested.get()) {
+			signal();
+		}
+	}
+
+	/**
+	 * Submit the delivery of a chunk of notifications of a single Subscription when the total and endpoint capacity
+	 * allow
+	 *
+	 * @param chunk
+	 * @param parallelism
+	 * @param endpointLimit
+	 * @return <code>boolean</code> - true if the delivery was submitted
+	 */
+	private boolean startDelivery(final List<Subscriptionnotification> chunk, int parallelism, int endpointLimit) {
+
+		final String endpoint = chunk.get(0).getEndpoint();
+
+		final AtomicInteger endpointInProgress = endpointDeliveriesInProgress.computeIfAbsent(endpoint, new Function<String, AtomicInteger>() {
+			@Override
+			public AtomicInteger apply(String key) {
+				return new AtomicInteger(0);
+			}
+		});
+
+		if (deliveriesInProgress.get() >= parallelism || endpointInProgress.get() >= endpointLimit) {
+			return false;
+		}
+
+		deliveriesInProgress.incrementAndGet();
+		endpointInProgress.incrementAndGet();
+
+		try {
+			managedExecutorService.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						deliver(chunk);
+					}
+					finally {
+						endpointInProgress.decrementAndGet();
+						deliveriesInProgress.decrementAndGet();
+						signal();
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			endpointInProgress.decrementAndGet();
+			deliveriesInProgress.decrementAndGet();
+			log.warning("SubscriptionNotificationDispatcher - delivery not started; " + e.getMessage());
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Deliver a chunk of notifications of a single Subscription and record the outcome in the queue
+	 *
+	 * @param chunk
+	 */
+	private void deliver(List<Subscriptionnotification> chunk) {
+
+		String subscriptionId = chunk.get(0).getSubscriptionId();
+
+		log.fine("[START] SubscriptionNotificationDispatcher.deliver(" + subscriptionId + ", " + chunk.size() + ")");
+
+		int maxAttempts = getIntSetting("subscriptionNotificationMaxAttempts", 1);
+
+		try {
+			Subscription subscription = readActiveSubscription(subscriptionId);
+
+			if (subscription == null) {
+				subscriptionnotificationService.failed(chunk, "Subscription '" + subscriptionId + "' is no longer active", 0);
+				return;
+			}
+
+			List<Integer> resourceJoinIds = new ArrayList<Integer>();
+			for (Subscriptionnotification notification : chunk) {
+				resourceJoinIds.add(notification.getResourceJoinId());
+			}
+			List<net.aegis.fhir.model.Resource> resources = resourceService.findResourcesByIds(resourceJoinIds);
+
+			XmlParser xmlP = new XmlParser();
+			List<org.hl7.fhir.r4.model.Resource> matchedResources = new ArrayList<org.hl7.fhir.r4.model.Resource>();
+
+			for (net.aegis.fhir.model.Resource resource : resources) {
+				org.hl7.fhir.r4.model.Resource resourceObject = xmlP.parse(new ByteArrayInputStream(resource.getResourceContents()));
+				resourceObject.setId(resource.getResourceId());
+				matchedResources.add(resourceObject);
+			}
+
+			if (matchedResources.isEmpty()) {
+				subscriptionnotificationService.failed(chunk, "Matched resource versions no longer available", 0);
+				return;
+			}
+
+			boolean delivered = false;
+			String outcome = null;
+
+			SubscriptionTopicProxyObjectFactory topicFactory = new SubscriptionTopicProxyObjectFactory();
+
+			if (topicFactory.getSubscriptionTopicProxy(subscription.getCriteria()) != null) {
+				// One topic notification of the matched resource versions of the claimed notifications
+				LabelKeyValueBean result = subscriptionServiceR5.processNotification(subscription, matchedResources);
+
+				delivered = !"failed".equals(result.getPath());
+				outcome = result.getType();
+			}
+			else {
+				Response response = subscriptionServiceR4.sendRestHookNotifications(subscription, matchedResources);
+
+				delivered = (response != null && response.getStatus() < 400);
+				outcome = "Response from notification request '" + (response != null ? response.getStatus() : "none") + "'";
+			}
+
+			if (delivered) {
+				subscriptionnotificationService.delivered(chunk, chunk.size() + " notification(s) delivered to " + subscription.getChannel().getEndpoint() + "; " + outcome);
+			}
+			else {
+				subscriptionnotificationService.failed(chunk, outcome, maxAttempts);
+			}
+		}
+		catch (Exception e) {
+			log.warning("SubscriptionNotificationDispatcher - Subscription [" + subscriptionId + "] notification failed! " + e.getMessage());
+
+			try {
+				subscriptionnotificationService.failed(chunk, e.getMessage(), maxAttempts);
+			}
+			catch (Exception e1) {
+				// Claimed notifications are returned to the queue after the sending timeout
+				log.severe("SubscriptionNotificationDispatcher - Subscription [" + subscriptionId + "] notification outcome not recorded! " + e1.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Read the current version of an active rest-hook Subscription
+	 *
+	 * @param subscriptionId
+	 * @return <code>Subscription</code> - null if not found or no longer active
+	 * @throws Exception
+	 */
+	private Subscription readActiveSubscription(String subscriptionId) throws Exception {
+
+		Subscription subscription = null;
+
+		ResourceContainer resourceContainer = resourceService.read(ResourceType.SUBSCRIPTION.toCode(), subscriptionId, null);
+
+		if (resourceContainer != null && resourceContainer.getResponseStatus() == Response.Status.OK && resourceContainer.getResource() != null) {
+			XmlParser xmlP = new XmlParser();
+			subscription = (Subscription) xmlP.parse(new ByteArrayInputStream(resourceContainer.getResource().getResourceContents()));
+			subscription.setId(subscriptionId);
+
+			if (subscription.getStatus() != SubscriptionStatus.ACTIVE) {
+				subscription = null;
+			}
+		}
+
+		return subscription;
+	}
+
+	/**
+	 * Return the intValue of an enabled code setting; defaultValue when not enabled or less than one
+	 *
+	 * @param codeName
+	 * @param defaultValue
+	 * @return <code>int</code>
+	 */
+	private int getIntSetting(String codeName, int defaultValue) {
+
+		int value = defaultValue;
+
+		try {
+			if (codeService.isSupported(codeName)) {
+				Integer configuredValue = codeService.findCodeIntValueByName(codeName);
+
+				if (configuredValue != null && configuredValue.intValue() > 0) {
+					value = configuredValue.intValue();
+				}
+			}
+		} catch (Exception e) {
+			log.warning("SubscriptionNotificationDispatcher - " + codeName + " setting not available; " + e.getMessage());
+		}
+
+		return value;
+	}
+
+}
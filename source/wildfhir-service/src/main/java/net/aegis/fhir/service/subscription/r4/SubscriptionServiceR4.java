@@ -32,6 +32,7 @@
  */
 package net.aegis.fhir.service.subscription.r4;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Date;
@@ -40,7 +41,13 @@ import java.util.logging.Logger;
 
 import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URLEncodedUtils;
+import org.hl7.fhir.r4.formats.JsonParser;
+import org.hl7.fhir.r4.formats.XmlParser;
+import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.hl7.fhir.r4.model.Bundle.HTTPVerb;
+import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.StringType;
 import org.hl7.fhir.r4.model.Subscription;
 
@@ -50,9 +57,11 @@ import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
 import net.aegis.fhir.model.LabelKeyValueBean;
 import net.aegis.fhir.model.ResourceContainer;
+import net.aegis.fhir.model.Subscriptionnotification;
 import net.aegis.fhir.service.CodeService;
 import net.aegis.fhir.service.ResourceService;
 import net.aegis.fhir.service.client.ResourceRESTClient;
+import net.aegis.fhir.service.subscription.SubscriptionNotificationDispatcher;
 import net.aegis.fhir.service.util.ServicesUtil;
 import net.aegis.fhir.service.util.UTCDateUtil;
 
@@ -78,6 +87,9 @@ public class SubscriptionServiceR4 {
     @Inject
 	private ResourceService resourceService;
 
+	@Inject
+	private SubscriptionNotificationDispatcher subscriptionNotificationDispatcher;
+
 	@Inject
 	private UTCDateUtil utcDateUtil;
 
@@ -119,7 +131,7 @@ public class SubscriptionServiceR4 {
 		 * For each Subscription
 		 *   Perform search using criteria adding _lastUpdated=gt:since and _lastUpdated=lt:newSince parameters
 		 *   For each matched resource instance
-		 *     Send FHIR update to Subscription endpoint with matched resource instance as the payload
+		 *     Queue the notification of the matched resource instance for delivery to the Subscription endpoint
 		 * Save new since date
 		 */
 		try {
@@ -196,41 +208,30 @@ public class SubscriptionServiceR4 {
 						// Check for matched Subscription resources
 						if (rcMatches != null && rcMatches.getBundle() != null && !rcMatches.getBundle().getEntry().isEmpty()) {
 
-							int successes = 0;
-							int failures = 0;
-							Response response = null;
 							// For each matched entry
+							List<String> matchedIds = new ArrayList<String>();
 							for (BundleEntryComponent matchEntry : rcMatches.getBundle().getEntry()) {
 
 								log.fine("-- Processing Matched Resource [" + matchEntry.getResource().getResourceType().name() + "/" + matchEntry.getResource().getId() + "] using payload mime type [" + subscription.getChannel().getPayload() + "]");
 
-								response = null;
-
-								// Process HTTP headers if present
-								List<String> headers = new ArrayList<String>();
-								for (StringType header : subscription.getChannel().getHeader()) {
-									headers.add(header.asStringValue());
-								}
-
-								if (!subscription.getChannel().hasPayload()) {
-									// If subscription.payload mime type is empty; send simple POST to subscription.endpoint
-									response = resourceClient.post(subscription.getChannel().getEndpoint(), null, null, null, headers);
-								}
-								else {
-									// send FHIR update to subscription.endpoint
-									response = resourceClient.update(matchEntry.getResource().getId(), matchEntry.getResource(), subscription.getChannel().getEndpoint(), subscriptionResourceType,
-											subscription.getChannel().getPayload(), null, null, null, null, headers);
-								}
-
-								if (response.getStatus() < 400) {
-									successes++;
-								}
-								else {
-									failures++;
-								}
+								matchedIds.add(matchEntry.getResource().getIdElement().getIdPart());
 							}
 
-							result.setType(successes + " processed; " + failures + " failures");
+							// Queue the notifications of the current matched resource versions for delivery
+							List<Subscriptionnotification> notifications = new ArrayList<Subscriptionnotification>();
+							for (net.aegis.fhir.model.Resource matchedResource : resourceService.readCurrentByIds(subscriptionResourceType, matchedIds)) {
+								Subscriptionnotification notification = new Subscriptionnotification();
+								notification.setSubscriptionId(subscription.getIdElement().getIdPart());
+								notification.setEndpoint(subscription.getChannel().getEndpoint());
+								notification.setResourceJoinId(matchedResource.getId());
+								notification.setResourceType(matchedResource.getResourceType());
+								notification.setResourceId(matchedResource.getResourceId());
+								notifications.add(notification);
+							}
+
+							subscriptionNotificationDispatcher.enqueue(notifications);
+
+							result.setType(notifications.size() + " queued");
 						}
 						else {
 							result.setType("0 matches");
@@ -271,4 +272,86 @@ public class SubscriptionServiceR4 {
 
 	}
 
+	/**
+	 * Send the rest-hook notification of a matched resource to the Subscription endpoint
+	 *
+	 * @param subscription
+	 * @param subscriptionResourceType
+	 * @param matchedResource
+	 * @return <code>Response</code> - Response from the Subscription endpoint
+	 * @throws Exception
+	 */
+	public Response sendRestHookNotification(Subscription subscription, String subscriptionResourceType, Resource matchedResource) throws Exception {
+
+		log.fine("[START] SubscriptionServiceR4.sendRestHookNotification()");
+
+		Response response = null;
+
+		// Process HTTP headers if present
+		List<String> headers = new ArrayList<String>();
+		for (StringType header : subscription.getChannel().getHeader()) {
+			headers.add(header.asStringValue());
+		}
+
+		if (!subscription.getChannel().hasPayload()) {
+			// If subscription.payload mime type is empty; send simple POST to subscription.endpoint
+			response = resourceClient.post(subscription.getChannel().getEndpoint(), null, null, null, headers);
+		}
+		else {
+			// send FHIR update to subscription.endpoint
+			response = resourceClient.update(matchedResource.getId(), matchedResource, subscription.getChannel().getEndpoint(), subscriptionResourceType,
+					subscription.getChannel().getPayload(), null, null, null, null, headers);
+		}
+
+		return response;
+	}
+
+	/**
+	 * Send the rest-hook notification of one or more matched resources to the Subscription endpoint. Multiple resources
+	 * are sent as a single batch Bundle of update entries posted to the endpoint; an empty payload is sent as a single
+	 * simple POST.
+	 *
+	 * @param subscription
+	 * @param matchedResources
+	 * @return <code>Response</code> - Response from the Subscription endpoint
+	 * @throws Exception
+	 */
+	public Response sendRestHookNotifications(Subscription subscription, List<Resource> matchedResources) throws Exception {
+
+		log.fine("[START] SubscriptionServiceR4.sendRestHookNotifications()");
+
+		if (matchedResources.size() == 1 || !subscription.getChannel().hasPayload()) {
+			Resource matchedResource = matchedResources.get(0);
+			return sendRestHookNotification(subscription, matchedResource.getResourceType().name(), matchedResource);
+		}
+
+		Bundle notificationBundle = new Bundle();
+		notificationBundle.setType(BundleType.BATCH);
+
+		for (Resource matchedResource : matchedResources) {
+			BundleEntryComponent entry = notificationBundle.addEntry();
+			entry.setResource(matchedResource);
+			entry.getRequest().setMethod(HTTPVerb.PUT).setUrl(matchedResource.getResourceType().name() + "/" + matchedResource.getId());
+		}
+
+		// Parse notificationBundle to XML or JSON String based on the Subscription payload
+		ByteArrayOutputStream oResource = new ByteArrayOutputStream();
+		if (subscription.getChannel().getPayload().contains("xml")) {
+			XmlParser xmlParser = new XmlParser();
+			xmlParser.compose(oResource, notificationBundle, true);
+		}
+		else {
+			JsonParser jsonParser = new JsonParser();
+			jsonParser.compose(oResource, notificationBundle);
+		}
+
+		// Process HTTP headers if present
+		List<String> headers = new ArrayList<String>();
+		for (StringType header : subscription.getChannel().getHeader()) {
+			headers.add(header.asStringValue());
+		}
+
+		return resourceClient.post(subscription.getChannel().getEndpoint(), null, oResource.toString(), subscription.getChannel().getPayload(), headers);
+	}
+
 }
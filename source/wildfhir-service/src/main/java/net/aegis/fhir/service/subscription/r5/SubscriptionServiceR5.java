@@ -46,6 +46,7 @@ import org.hl7.fhir.r4.formats.JsonParser;
 import org.hl7.fhir.r4.formats.XmlParser;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.StringType;
 import org.hl7.fhir.r4.model.Subscription;
 
@@ -154,13 +155,6 @@ public class SubscriptionServiceR5 {
 			// Check for matched Subscription resources
 			if (rcSubscriptions != null && rcSubscriptions.getBundle() != null && !rcSubscriptions.getBundle().getEntry().isEmpty()) {
 
-				ByteArrayOutputStream oResource = null;
-				XmlParser xmlParser = new XmlParser();
-				xmlParser.setOutputStyle(OutputStyle.PRETTY);
-				JsonParser jsonParse = new JsonParser();
-				jsonParse.setOutputStyle(OutputStyle.PRETTY);
-				String payload = null;
-
 				// For each Subscription entry
 				Subscription subscription = null;
 
@@ -168,103 +162,7 @@ public class SubscriptionServiceR5 {
 
 					subscription = (Subscription)subscriptionEntry.getResource();
 
-					log.fine("Processing Subscription [" + subscription.getId() + "] with criteria [" + subscription.getCriteria() + "] for channel type [" + subscription.getChannel().getType().name() + "]");
-
-					// Initialize result bean
-					result = new LabelKeyValueBean(subscription.getId(), subscription.getChannel().getType().name() + "; " + subscription.getChannel().getEndpoint(),
-							subscription.getCriteria(), "", "processing", "");
-
-					/*
-					 * Use Factory Pattern for execution of SubscriptionTopic operation
-					 */
-					SubscriptionTopicProxyObjectFactory topicFactory = new SubscriptionTopicProxyObjectFactory();
-					SubscriptionTopicProxy topicProxy = topicFactory.getSubscriptionTopicProxy(subscription.getCriteria());
-
-					// Check for non-null topic proxy
-					if (topicProxy != null) {
-						StringBuffer returnedDetails = new StringBuffer();
-
-						Bundle subscriptionBundle = topicProxy.processTopic(resourceService, resourcemetadataService, codeService, auditEventService, provenanceService, subscription, since, returnedDetails);
-
-						// Select processing based on channel.type
-						switch (subscription.getChannel().getType()) {
-						case EMAIL:
-							result.setPath("Email channel type not supported");
-							log.fine("Email channel type not currently supported.");
-							break;
-						case MESSAGE:
-							result.setPath("FHIR messaging channel not supported");
-							log.fine("FHIR messaging channel type not currently supported.");
-							break;
-						case NULL:
-							result.setPath("NULL channel type not supported");
-							log.fine("NULL channel type not currently supported.");
-							break;
-						case RESTHOOK:
-							/*
-							 * If returnedDetails not empty topic processing either did not find any updated resources or failed, record outcome in result
-							 *
-							 * Else, post subscriptionBundle to subscription end point
-							 */
-							boolean okToPost = false;
-							Response response = null;
-							if (returnedDetails != null && returnedDetails.length() > 0) {
-								result.setType(returnedDetails.toString());
-								log.fine("REST Hook " + returnedDetails.toString());
-							}
-							else {
-								// Parse subscriptionBundle to XML or JSON String based on the Subscription payload
-								oResource = new ByteArrayOutputStream();
-								if (subscription.getChannel().getPayload().contains("xml")) {
-									xmlParser.compose(oResource, subscriptionBundle, true);
-									payload = oResource.toString();
-									okToPost = true;
-								}
-								else if (subscription.getChannel().getPayload().contains("json")) {
-									jsonParse.compose(oResource, subscriptionBundle);
-									payload = oResource.toString();
-									okToPost = true;
-								}
-								else {
-									// Unsupported mime type format
-									result.setType("Invalid channel payload mime type '" + subscription.getChannel().getPayload() + "'!");
-									log.fine("REST Hook Invalid channel payload mime type '" + subscription.getChannel().getPayload() + "'!");
-								}
-							}
-
-							if (okToPost == true) {
-								// Process HTTP headers if present
-								List<String> headers = new ArrayList<String>();
-								for (StringType header : subscription.getChannel().getHeader()) {
-									headers.add(header.asStringValue());
-								}
-								response = resourceClient.post(subscription.getChannel().getEndpoint(), null, payload, subscription.getChannel().getPayload(), headers);
-
-								result.setRefType(payload);
-							}
-
-							// Update Subscription status based on current result and post response
-							this.setSubscriptionStatus(subscription, response, result);
-
-							result.setPath("complete");
-							break;
-						case SMS:
-							result.setPath("SMS channel type not supported");
-							log.fine("SMS channel type not currently supported.");
-							break;
-						case WEBSOCKET:
-							result.setPath("Websocket channel type not supported");
-							log.fine("Websocket channel type not currently supported.");
-							break;
-						default:
-							result.setPath("Unknown channel type");
-							log.fine("Unknown channel type!");
-							break;
-						}
-					}
-					else {
-						result.setType("Unsupported subscription topic '" + subscription.getCriteria() + "'!");
-					}
+					result = processSubscription(subscription, since);
 
 					// Add result bean to results
 					results.add(result);
@@ -284,10 +182,182 @@ public class SubscriptionServiceR5 {
 		return results;
 	}
 
+	/**
+	 * Process a single active Subscription resource based on since datetime
+	 *
+	 * @param subscription
+	 * @param since
+	 * @return LabelKeyValueBean - Result
+	 * @throws Exception
+	 */
+	public LabelKeyValueBean processSubscription(Subscription subscription, Date since) throws Exception {
+
+		log.fine("[START] SubscriptionServiceR5.processSubscription()");
+
+		log.fine("Processing Subscription [" + subscription.getId() + "] with criteria [" + subscription.getCriteria() + "] for channel type [" + subscription.getChannel().getType().name() + "]");
+
+		// Initialize result bean
+		LabelKeyValueBean result = new LabelKeyValueBean(subscription.getId(), subscription.getChannel().getType().name() + "; " + subscription.getChannel().getEndpoint(),
+				subscription.getCriteria(), "", "processing", "");
+
+		/*
+		 * Use Factory Pattern for execution of SubscriptionTopic operation
+		 */
+		SubscriptionTopicProxyObjectFactory topicFactory = new SubscriptionTopicProxyObjectFactory();
+		SubscriptionTopicProxy topicProxy = topicFactory.getSubscriptionTopicProxy(subscription.getCriteria());
+
+		// Check for non-null topic proxy
+		if (topicProxy != null) {
+			StringBuffer returnedDetails = new StringBuffer();
+
+			Bundle subscriptionBundle = topicProxy.processTopic(resourceService, resourcemetadataService, codeService, auditEventService, provenanceService, subscription, since, returnedDetails);
+
+			sendNotification(subscription, subscriptionBundle, returnedDetails, result);
+		}
+		else {
+			result.setType("Unsupported subscription topic '" + subscription.getCriteria() + "'!");
+		}
+
+		return result;
+	}
+
+	/**
+	 * Send the topic notification of resources already matched to a single active Subscription
+	 *
+	 * @param subscription
+	 * @param matchedResources
+	 * @return LabelKeyValueBean - Result
+	 * @throws Exception
+	 */
+	public LabelKeyValueBean processNotification(Subscription subscription, List<Resource> matchedResources) throws Exception {
+
+		log.fine("[START] SubscriptionServiceR5.processNotification()");
+
+		// Initialize result bean
+		LabelKeyValueBean result = new LabelKeyValueBean(subscription.getId(), subscription.getChannel().getType().name() + "; " + subscription.getChannel().getEndpoint(),
+				subscription.getCriteria(), "", "processing", "");
+
+		SubscriptionTopicProxyObjectFactory topicFactory = new SubscriptionTopicProxyObjectFactory();
+		SubscriptionTopicProxy topicProxy = topicFactory.getSubscriptionTopicProxy(subscription.getCriteria());
+
+		if (topicProxy != null) {
+			StringBuffer returnedDetails = new StringBuffer();
+
+			Bundle subscriptionBundle = topicProxy.buildNotification(resourceService, codeService, subscription, matchedResources, returnedDetails);
+
+			sendNotification(subscription, subscriptionBundle, returnedDetails, result);
+		}
+		else {
+			result.setType("Unsupported subscription topic '" + subscription.getCriteria() + "'!");
+		}
+
+		return result;
+	}
+
 	/*
 	 * Private methods
 	 */
 
+	/**
+	 * Send the topic notification Bundle to the Subscription channel and record the outcome in the result
+	 *
+	 * @param subscription
+	 * @param subscriptionBundle
+	 * @param returnedDetails
+	 * @param result
+	 * @throws Exception
+	 */
+	private void sendNotification(Subscription subscription, Bundle subscriptionBundle, StringBuffer returnedDetails, LabelKeyValueBean result) throws Exception {
+
+		ByteArrayOutputStream oResource = null;
+		XmlParser xmlParser = new XmlParser();
+		xmlParser.setOutputStyle(OutputStyle.PRETTY);
+		JsonParser jsonParse = new JsonParser();
+		jsonParse.setOutputStyle(OutputStyle.PRETTY);
+		String payload = null;
+
+		// Select processing based on channel.type
+		switch (subscription.getChannel().getType()) {
+		case EMAIL:
+			result.setPath("Email channel type not supported");
+			log.fine("Email channel type not currently supported.");
+			break;
+		case MESSAGE:
+			result.setPath("FHIR messaging channel not supported");
+			log.fine("FHIR messaging channel type not currently supported.");
+			break;
+		case NULL:
+			result.setPath("NULL channel type not supported");
+			log.fine("NULL channel type not currently supported.");
+			break;
+		case RESTHOOK:
+			/*
+			 * If returnedDetails not empty topic processing either did not find any updated resources or failed, record outcome in result
+			 *
+			 * Else, post subscriptionBundle to subscription end point
+			 */
+			boolean okToPost = false;
+			Response response = null;
+			if (returnedDetails != null && returnedDetails.length() > 0) {
+				result.setType(returnedDetails.toString());
+				log.fine("REST Hook " + returnedDetails.toString());
+			}
+			else {
+				// Parse subscriptionBundle to XML or JSON String based on the Subscription payload
+				oResource = new ByteArrayOutputStream();
+				if (subscription.getChannel().getPayload().contains("xml")) {
+					xmlParser.compose(oResource, subscriptionBundle, true);
+					payload = oResource.toString();
+					okToPost = true;
+				}
+				else if (subscription.getChannel().getPayload().contains("json")) {
+					jsonParse.compose(oResource, subscriptionBundle);
+					payload = oResource.toString();
+					okToPost = true;
+				}
+				else {
+					// Unsupported mime type format
+					result.setType("Invalid channel payload mime type '" + subscription.getChannel().getPayload() + "'!");
+					log.fine("REST Hook Invalid channel payload mime type '" + subscription.getChannel().getPayload() + "'!");
+				}
+			}
+
+			if (okToPost == true) {
+				// Process HTTP headers if present
+				List<String> headers = new ArrayList<String>();
+				for (StringType header : subscription.getChannel().getHeader()) {
+					headers.add(header.asStringValue());
+				}
+				response = resourceClient.post(subscription.getChannel().getEndpoint(), null, payload, subscription.getChannel().getPayload(), headers);
+
+				result.setRefType(payload);
+			}
+
+			// Update Subscription status based on current result and post response
+			this.setSubscriptionStatus(subscription, response, result);
+
+			if (okToPost == true && (response == null || response.getStatus() >= 400)) {
+				result.setPath("failed");
+			}
+			else {
+				result.setPath("complete");
+			}
+			break;
+		case SMS:
+			result.setPath("SMS channel type not supported");
+			log.fine("SMS channel type not currently supported.");
+			break;
+		case WEBSOCKET:
+			result.setPath("Websocket channel type not supported");
+			log.fine("Websocket channel type not currently supported.");
+			break;
+		default:
+			result.setPath("Unknown channel type");
+			log.fine("Unknown channel type!");
+			break;
+		}
+	}
+
 	/**
 	 * Update Subscription status and result outcome (path) based on current result and post response
 	 *
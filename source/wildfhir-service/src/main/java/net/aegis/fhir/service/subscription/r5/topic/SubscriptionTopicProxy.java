@@ -33,8 +33,10 @@
 package net.aegis.fhir.service.subscription.r5.topic;
 
 import java.util.Date;
+import java.util.List;
 
 import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.Subscription;
 
 import net.aegis.fhir.service.CodeService;
@@ -49,6 +51,13 @@ import net.aegis.fhir.service.provenance.ProvenanceService;
  */
 public abstract class SubscriptionTopicProxy {
 
+	/**
+	 * Resource types whose create or update trigger the Subscription Topic
+	 *
+	 * @return <code>String[]</code>
+	 */
+	public abstract String[] getResourceTriggers();
+
 	/**
 	 * Process the Subscription Topic
 	 *
@@ -65,4 +74,18 @@ public abstract class SubscriptionTopicProxy {
 	 */
 	public abstract Bundle processTopic(ResourceService resourceService, ResourcemetadataService resourcemetadataService, CodeService codeService, AuditEventService auditEventService, ProvenanceService provenanceService, Subscription subscription, Date since, StringBuffer returnedDetails) throws Exception;
 
+	/**
+	 * Build the Subscription Topic notification for resources already matched to the Subscription, without
+	 * searching for them again
+	 *
+	 * @param resourceService
+	 * @param codeService
+	 * @param subscription
+	 * @param matchedResources
+	 * @param returnedDetails
+	 * @return <code>Bundle</code>
+	 * @throws Exception
+	 */
+	public abstract Bundle buildNotification(ResourceService resourceService, CodeService codeService, Subscription subscription, List<Resource> matchedResources, StringBuffer returnedDetails) throws Exception;
+
 }
@@ -34,6 +34,7 @@ package net.aegis.fhir.service.subscription.r5.topic;
 
 import java.io.ByteArrayOutputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.logging.Logger;
@@ -52,6 +53,7 @@ import org.hl7.fhir.r4.model.CodeType;
 import org.hl7.fhir.r4.model.Extension;
 import org.hl7.fhir.r4.model.Meta;
 import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.StringType;
 import org.hl7.fhir.r4.model.Subscription;
 import org.hl7.fhir.r5.model.Enumerations.SubscriptionStatusCodes;
@@ -84,6 +86,14 @@ public class WildfhirCESubscriptionTopic extends SubscriptionTopicProxy {
 
 	private UTCDateUtil utcDateUtil = new UTCDateUtil();
 
+	/* (non-Javadoc)
+	 * @see net.aegis.fhir.service.subscription.r5.topic.SubscriptionTopicProxy#getResourceTriggers()
+	 */
+	@Override
+	public String[] getResourceTriggers() {
+		return new String[] { "Consent" };
+	}
+
 	/* (non-Javadoc)
 	 * @see net.aegis.fhir.service.subscription.r5.topic.SubscriptionTopicProxy#processTopic(net.aegis.fhir.service.ResourceService, net.aegis.fhir.service.ResourcemetadataService, net.aegis.fhir.service.CodeService, net.aegis.fhir.service.audit.AuditEventService, net.aegis.fhir.service.provenance.ProvenanceService, org.hl7.fhir.r4.model.Subscription, java.util.Date, java.lang.StringBuffer)
 	 */
@@ -96,6 +106,68 @@ public class WildfhirCESubscriptionTopic extends SubscriptionTopicProxy {
 
 		log.fine("[START] WildfhirCESubscriptionTopic.processTopic()");
 
+		Bundle subscriptionBundle = null;
+
+		try {
+			/*
+			 *  Build Consent search parameters
+			 *  - _lastUpdated=ge since date
+			 *  - subscription.criteria backport-filter-criteria extension(s)
+			 */
+			StringBuilder sbParams = new StringBuilder("_lastUpdated=ge")
+					.append(utcDateUtil.formatDate(since, UTCDateUtil.DATE_PARAMETER_FORMAT));
+
+			if (subscription.hasCriteria() && subscription.getCriteriaElement().hasExtension()) {
+
+				for (Extension criteriaExt : subscription.getCriteriaElement().getExtension()) {
+					if (criteriaExt.hasUrl() && criteriaExt.getUrl().equals("http://hl7.org/fhir/uv/subscriptions-backport/StructureDefinition/backport-filter-criteria")) {
+						sbParams.append("&").append(((StringType) criteriaExt.getValue()).getValueAsString());
+					}
+				}
+			}
+
+			List<NameValuePair> params = URLEncodedUtils.parse(sbParams.toString(), Charset.defaultCharset());
+			MultivaluedMap<String, String> queryParams = ServicesUtil.INSTANCE.listNameValuePairToMultivaluedMapString(params);
+
+			// Search for all Consent matching criteria; return as searchset Bundle
+			ResourceContainer rc = resourceService.search(queryParams, null, null, "Consent", "INTERNAL", null, null, null, false);
+
+			// Check for matched Subscription resources
+			if (rc != null && rc.getBundle() != null && !rc.getBundle().getEntry().isEmpty()) {
+
+				List<Resource> matchedResources = new ArrayList<Resource>();
+				for (BundleEntryComponent consentEntry : rc.getBundle().getEntry()) {
+					matchedResources.add(consentEntry.getResource());
+				}
+
+				subscriptionBundle = buildNotification(resourceService, codeService, subscription, matchedResources, returnedDetails);
+			}
+			else {
+				// If zero matches, returnDetails = "0 matches"
+				if (returnedDetails == null) {
+					returnedDetails = new StringBuffer();
+				}
+				returnedDetails.append("No matched Consent resources found for Subscription criteria.");
+			}
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			throw e;
+		}
+
+		return subscriptionBundle;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.aegis.fhir.service.subscription.r5.topic.SubscriptionTopicProxy#buildNotification(net.aegis.fhir.service.ResourceService, net.aegis.fhir.service.CodeService, org.hl7.fhir.r4.model.Subscription, java.util.List, java.lang.StringBuffer)
+	 */
+	@Override
+	public Bundle buildNotification(ResourceService resourceService, CodeService codeService,
+			Subscription subscription, List<Resource> matchedResources, StringBuffer returnedDetails)
+			throws Exception {
+
+		log.fine("[START] WildfhirCESubscriptionTopic.buildNotification()");
+
 		Bundle subscriptionBundle = null;
 		BundleEntryComponent subscriptionEntry = null;
 		SubscriptionStatus subscriptionStatus = null;
@@ -104,6 +176,13 @@ public class WildfhirCESubscriptionTopic extends SubscriptionTopicProxy {
 		String payloadContent = "full-resource"; // Default
 
 		try {
+			if (matchedResources == null || matchedResources.isEmpty()) {
+				if (returnedDetails != null) {
+					returnedDetails.append("No matched Consent resources found for Subscription criteria.");
+				}
+				return null;
+			}
+
 			// Get subscription.channel backport-payload-content code value
 			if (subscription.hasChannel() && subscription.getChannel().hasPayload() &&
 					subscription.getChannel().getPayloadElement().hasExtension()) {
@@ -135,119 +214,84 @@ public class WildfhirCESubscriptionTopic extends SubscriptionTopicProxy {
 				existingStatus = (SubscriptionStatus) ServicesUtil.INSTANCE.convertR4ParametersToR5SubscriptionStatus(rc.getBundle().getEntryFirstRep().getResource());
 			}
 
-			/*
-			 *  Build Consent search parameters
-			 *  - _lastUpdated=ge since date
-			 *  - subscription.criteria backport-filter-criteria extension(s)
-			 */
-			StringBuilder sbParams = new StringBuilder("_lastUpdated=ge")
-					.append(utcDateUtil.formatDate(since, UTCDateUtil.DATE_PARAMETER_FORMAT));
-
-			if (subscription.hasCriteria() && subscription.getCriteriaElement().hasExtension()) {
-
-				for (Extension criteriaExt : subscription.getCriteriaElement().getExtension()) {
-					if (criteriaExt.hasUrl() && criteriaExt.getUrl().equals("http://hl7.org/fhir/uv/subscriptions-backport/StructureDefinition/backport-filter-criteria")) {
-						sbParams.append("&").append(((StringType) criteriaExt.getValue()).getValueAsString());
-					}
-				}
-			}
-
-			params = URLEncodedUtils.parse(sbParams.toString(), Charset.defaultCharset());
-			queryParams = ServicesUtil.INSTANCE.listNameValuePairToMultivaluedMapString(params);
-
-			// Search for all Consent matching criteria; return as searchset Bundle
-			rc = resourceService.search(queryParams, null, null, "Consent", "INTERNAL", null, null, null, false);
-
-			// Check for matched Subscription resources
-			if (rc != null && rc.getBundle() != null && !rc.getBundle().getEntry().isEmpty()) {
-
-				// Subscription Notification Bundle
-				subscriptionBundle = new Bundle();
-				subscriptionBundle.setId(UUIDUtil.getUUID());
-				Meta meta = new Meta();
-				meta.addProfile("http://hl7.org/fhir/uv/subscriptions-backport/StructureDefinition/backport-subscription-notification-r4");
-				subscriptionBundle.setMeta(meta);
-				subscriptionBundle.setType(BundleType.HISTORY);
-				subscriptionBundle.setTimestamp(new Date());
-
-				String baseUrl = codeService.findCodeValueByName("baseUrl");
-
-				// SubscriptionStatus for Subscription
-				subscriptionStatus = newSubscriptionStatus(subscription, existingStatus, rc.getBundle(), baseUrl, payloadContent);
-
-				pSubscriptionStatus = (Parameters) ServicesUtil.INSTANCE.convertR5SubscriptionStatusToR4Parameters(subscriptionStatus);
-
-				// Convert the Resource to XML byte[]
-				ByteArrayOutputStream oResource = new ByteArrayOutputStream();
-				XmlParser xmlParser = new XmlParser();
-				xmlParser.setOutputStyle(OutputStyle.PRETTY);
-				xmlParser.compose(oResource, pSubscriptionStatus, true);
-				byte[] bResource = oResource.toByteArray();
-
-				// Initialize a Resource to be created
-				net.aegis.fhir.model.Resource aegisResource = new net.aegis.fhir.model.Resource();
-				aegisResource.setResourceType("SubscriptionStatus");
-				aegisResource.setResourceContents(bResource);
-
-				// Create new SubscriptionStatus
-				ResourceContainer rcStatus = resourceService.create(aegisResource, null, baseUrl);
-
-				aegisResource = rcStatus.getResource();
-
-				// Add R4 Parameters (SubscriptionStatus) to subscription notification bundle
-				subscriptionEntry = new BundleEntryComponent();
-				subscriptionEntry.setFullUrl(baseUrl + "/Parameters/" + aegisResource.getResourceId());
-				pSubscriptionStatus.setId(aegisResource.getResourceId());
-				subscriptionEntry.setResource(pSubscriptionStatus);
-				// Set request and response
-				BundleEntryRequestComponent entryRequest = new BundleEntryRequestComponent();
-				entryRequest.setMethod(HTTPVerb.GET);
-				entryRequest.setUrl(baseUrl + "/Subscription/" + subscription.getId() + "/$status");
-				subscriptionEntry.setRequest(entryRequest);
-				BundleEntryResponseComponent entryResponse = new BundleEntryResponseComponent();
-				entryResponse.setStatus("200");
-				subscriptionEntry.setResponse(entryResponse);
-				subscriptionBundle.addEntry(subscriptionEntry);
-
-				// Iterate over all matched Consent; add to subscription notification bundle if payloadContent equal "full-resource"
-				if (payloadContent.equals("full-resource")) {
-					String responseCode = null;
-
-					for (BundleEntryComponent consentEntry : rc.getBundle().getEntry()) {
-						responseCode = "200";
-						subscriptionEntry = new BundleEntryComponent();
-						subscriptionEntry.setFullUrl(baseUrl + "/Consent/" + consentEntry.getResource().getId());
-						subscriptionEntry.setResource(consentEntry.getResource());
-						// Set request and response
-						entryRequest = new BundleEntryRequestComponent();
-						if (consentEntry.getResource().hasMeta() && consentEntry.getResource().getMeta().hasVersionId()) {
-							if (consentEntry.getResource().getMeta().getVersionId().equals("1")) {
-								responseCode = "201";
-							}
-						}
-						if (responseCode.equals("201")) {
-							entryRequest.setMethod(HTTPVerb.POST);
-							entryRequest.setUrl("Consent");
+			// Subscription Notification Bundle
+			subscriptionBundle = new Bundle();
+			subscriptionBundle.setId(UUIDUtil.getUUID());
+			Meta meta = new Meta();
+			meta.addProfile("http://hl7.org/fhir/uv/subscriptions-backport/StructureDefinition/backport-subscription-notification-r4");
+			subscriptionBundle.setMeta(meta);
+			subscriptionBundle.setType(BundleType.HISTORY);
+			subscriptionBundle.setTimestamp(new Date());
+
+			String baseUrl = codeService.findCodeValueByName("baseUrl");
+
+			// SubscriptionStatus for Subscription
+			subscriptionStatus = newSubscriptionStatus(subscription, existingStatus, matchedResources, baseUrl, payloadContent);
+
+			pSubscriptionStatus = (Parameters) ServicesUtil.INSTANCE.convertR5SubscriptionStatusToR4Parameters(subscriptionStatus);
+
+			// Convert the Resource to XML byte[]
+			ByteArrayOutputStream oResource = new ByteArrayOutputStream();
+			XmlParser xmlParser = new XmlParser();
+			xmlParser.setOutputStyle(OutputStyle.PRETTY);
+			xmlParser.compose(oResource, pSubscriptionStatus, true);
+			byte[] bResource = oResource.toByteArray();
+
+			// Initialize a Resource to be created
+			net.aegis.fhir.model.Resource aegisResource = new net.aegis.fhir.model.Resource();
+			aegisResource.setResourceType("SubscriptionStatus");
+			aegisResource.setResourceContents(bResource);
+
+			// Create new SubscriptionStatus
+			ResourceContainer rcStatus = resourceService.create(aegisResource, null, baseUrl);
+
+			aegisResource = rcStatus.getResource();
+
+			// Add R4 Parameters (SubscriptionStatus) to subscription notification bundle
+			subscriptionEntry = new BundleEntryComponent();
+			subscriptionEntry.setFullUrl(baseUrl + "/Parameters/" + aegisResource.getResourceId());
+			pSubscriptionStatus.setId(aegisResource.getResourceId());
+			subscriptionEntry.setResource(pSubscriptionStatus);
+			// Set request and response
+			BundleEntryRequestComponent entryRequest = new BundleEntryRequestComponent();
+			entryRequest.setMethod(HTTPVerb.GET);
+			entryRequest.setUrl(baseUrl + "/Subscription/" + subscription.getId() + "/$status");
+			subscriptionEntry.setRequest(entryRequest);
+			BundleEntryResponseComponent entryResponse = new BundleEntryResponseComponent();
+			entryResponse.setStatus("200");
+			subscriptionEntry.setResponse(entryResponse);
+			subscriptionBundle.addEntry(subscriptionEntry);
+
+			// Iterate over all matched Consent; add to subscription notification bundle if payloadContent equal "full-resource"
+			if (payloadContent.equals("full-resource")) {
+				String responseCode = null;
+
+				for (Resource consent : matchedResources) {
+					responseCode = "200";
+					subscriptionEntry = new BundleEntryComponent();
+					subscriptionEntry.setFullUrl(baseUrl + "/Consent/" + consent.getIdElement().getIdPart());
+					subscriptionEntry.setResource(consent);
+					// Set request and response
+					entryRequest = new BundleEntryRequestComponent();
+					if (consent.hasMeta() && consent.getMeta().hasVersionId()) {
+						if (consent.getMeta().getVersionId().equals("1")) {
+							responseCode = "201";
 						}
-						else {
-							entryRequest.setMethod(HTTPVerb.PUT);
-							entryRequest.setUrl("Consent/" + consentEntry.getResource().getId());
-						}
-						subscriptionEntry.setRequest(entryRequest);
-						entryResponse = new BundleEntryResponseComponent();
-						entryResponse.setStatus(responseCode);
-						subscriptionEntry.setResponse(entryResponse);
-						subscriptionBundle.addEntry(subscriptionEntry);
 					}
+					if (responseCode.equals("201")) {
+						entryRequest.setMethod(HTTPVerb.POST);
+						entryRequest.setUrl("Consent");
+					}
+					else {
+						entryRequest.setMethod(HTTPVerb.PUT);
+						entryRequest.setUrl("Consent/" + consent.getIdElement().getIdPart());
+					}
+					subscriptionEntry.setRequest(entryRequest);
+					entryResponse = new BundleEntryResponseComponent();
+					entryResponse.setStatus(responseCode);
+					subscriptionEntry.setResponse(entryResponse);
+					subscriptionBundle.addEntry(subscriptionEntry);
 				}
-
-			}
-			else {
-				// If zero matches, returnDetails = "0 matches"
-				if (returnedDetails == null) {
-					returnedDetails = new StringBuffer();
-				}
-				returnedDetails.append("No matched Consent resources found for Subscription criteria.");
 			}
 
 		} catch (Exception e) {
@@ -261,13 +305,13 @@ public class WildfhirCESubscriptionTopic extends SubscriptionTopicProxy {
 	/**
 	 * @param subscription
 	 * @param existingStatus
-	 * @param consentSearch
+	 * @param matchedResources
 	 * @param baseUrl
 	 * @param payloadContent
 	 * @return
 	 * @throws Exception
 	 */
-	private SubscriptionStatus newSubscriptionStatus(Subscription subscription, SubscriptionStatus existingStatus, Bundle consentSearch, String baseUrl, String payloadContent) throws Exception {
+	private SubscriptionStatus newSubscriptionStatus(Subscription subscription, SubscriptionStatus existingStatus, List<Resource> matchedResources, String baseUrl, String payloadContent) throws Exception {
 
 		SubscriptionStatus subscriptionStatus = new SubscriptionStatus();
 
@@ -294,12 +338,12 @@ public class WildfhirCESubscriptionTopic extends SubscriptionTopicProxy {
 		ssne.setTimestamp(new Date());
 
 		if (!payloadContent.equals("empty")) {
-			// Iterate over Consent search Bundle; add Consent reference(s)
+			// Iterate over matched Consent; add Consent reference(s)
 			int iEntry = 0;
 			Reference consentReference = null;
-			for (BundleEntryComponent consentEntry : consentSearch.getEntry()) {
+			for (Resource consent : matchedResources) {
 				consentReference = new Reference();
-				consentReference.setReference(baseUrl + "/Consent/" + consentEntry.getResource().getId());
+				consentReference.setReference(baseUrl + "/Consent/" + consent.getIdElement().getIdPart());
 
 				if (iEntry == 0) {
 					ssne.setFocus(consentReference);
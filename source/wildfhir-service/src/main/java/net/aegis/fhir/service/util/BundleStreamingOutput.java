@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.logging.Logger;
+
+import org.hl7.fhir.r4.formats.IParser.OutputStyle;
+import org.hl7.fhir.r4.formats.JsonParser;
+import org.hl7.fhir.r4.formats.XmlParser;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.StreamingOutput;
+
+/**
+ * Response entity that encodes a Bundle directly to the response output stream. The Bundle envelope and entries are
+ * written incrementally by the parser so that no encoded copy of the Bundle is held in memory; the response is sent
+ * using chunked transfer encoding.
+ * <p>
+ * Entries holding <code>StoredResourceContents</code> are spliced into an XML response as the stored bytes; for a JSON
+ * response they are parsed as each entry is written.
+ *
+ * @author richard.ettema
+ *
+ */
+public class BundleStreamingOutput implements StreamingOutput {
+
+	private Logger log = Logger.getLogger("BundleStreamingOutput");
+
+	private Bundle bundle;
+
+	private String producesType;
+
+	public BundleStreamingOutput(Bundle bundle, String producesType) {
+		this.bundle = bundle;
+		this.producesType = producesType;
+	}
+
+	@Override
+	public void write(OutputStream output) throws IOException, WebApplicationException {
+
+		log.fine("[START] BundleStreamingOutput.write()");
+
+		try {
+			if (producesType != null && producesType.indexOf("xml") >= 0) {
+				// Encode Bundle as XML
+				XmlParser xmlParser = new StoredContentsXmlParser();
+				xmlParser.setOutputStyle(OutputStyle.PRETTY);
+				xmlParser.compose(output, bundle, true);
+			}
+			else {
+				// Encode Bundle as JSON
+				JsonParser jsonParser = new StoredContentsJsonParser();
+				jsonParser.setOutputStyle(OutputStyle.PRETTY);
+				jsonParser.compose(output, bundle);
+			}
+
+			output.flush();
+		}
+		catch (IOException e) {
+			log.severe(e.getMessage());
+			throw e;
+		}
+		catch (Exception e) {
+			log.severe(e.getMessage());
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * XmlParser that writes the stored XML contents of a <code>StoredResourceContents</code> entry verbatim
+	 */
+	private static class StoredContentsXmlParser extends XmlParser {
+
+		@Override
+		protected void composeResource(Resource resource) throws IOException {
+			if (resource instanceof StoredResourceContents) {
+				xml.writeBytes(((StoredResourceContents) resource).getResourceElement());
+			}
+			else {
+				super.composeResource(resource);
+			}
+		}
+	}
+
+	/**
+	 * JsonParser that parses the stored XML contents of a <code>StoredResourceContents</code> entry when it is written
+	 */
+	private static class StoredContentsJsonParser extends JsonParser {
+
+		@Override
+		protected void composeResource(Resource resource) throws IOException {
+			if (resource instanceof StoredResourceContents) {
+				try {
+					super.composeResource(((StoredResourceContents) resource).parse());
+				}
+				catch (IOException e) {
+					throw e;
+				}
+				catch (Exception e) {
+					throw new IOException(e);
+				}
+			}
+			else {
+				super.composeResource(resource);
+			}
+		}
+	}
+
+}
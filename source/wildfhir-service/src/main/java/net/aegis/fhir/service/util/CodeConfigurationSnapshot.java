@@ -0,0 +1,111 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.aegis.fhir.model.Code;
+
+/**
+ * Immutable snapshot of the code configuration settings. A snapshot is built from all Code records and is never
+ * modified; a changed setting is published by building a new snapshot and replacing the current one.
+ *
+ * @author richard.ettema
+ *
+ */
+public final class CodeConfigurationSnapshot {
+
+	private final Map<String, Code> codes;
+
+	/**
+	 * Build the snapshot from the Code records ordered by codeName and value; the first record of a codeName is used
+	 * as is done by <code>CodeService.findCodeByName</code>
+	 *
+	 * @param codeList
+	 */
+	public CodeConfigurationSnapshot(List<Code> codeList) {
+		Map<String, Code> codeMap = new HashMap<String, Code>();
+
+		if (codeList != null) {
+			for (Code code : codeList) {
+				if (code.getCodeName() != null && !codeMap.containsKey(code.getCodeName())) {
+					codeMap.put(code.getCodeName(), code.clone(true));
+				}
+			}
+		}
+
+		this.codes = Collections.unmodifiableMap(codeMap);
+	}
+
+	public boolean containsCode(String codeName) {
+		return codes.containsKey(codeName);
+	}
+
+	/**
+	 * @param codeName
+	 * @return String code value or null if the code is not defined
+	 */
+	public String getValue(String codeName) {
+		Code code = codes.get(codeName);
+
+		return (code != null ? code.getValue() : null);
+	}
+
+	/**
+	 * @param codeName
+	 * @return Integer code int value or null if the code is not defined
+	 */
+	public Integer getIntValue(String codeName) {
+		Code code = codes.get(codeName);
+
+		return (code != null ? code.getIntValue() : null);
+	}
+
+	/**
+	 * @param codeName
+	 * @return byte[] copy of the code resource contents or null if not defined
+	 */
+	public byte[] getResourceContents(String codeName) {
+		Code code = codes.get(codeName);
+
+		return (code != null && code.getResourceContents() != null ? code.getResourceContents().clone() : null);
+	}
+
+	public int size() {
+		return codes.size();
+	}
+
+}
@@ -38,6 +38,7 @@ import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -78,6 +79,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MultivaluedHashMap;
 import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.StreamingOutput;
 import jakarta.ws.rs.core.Response;
 import net.aegis.fhir.model.Constants;
 import net.aegis.fhir.model.ResourceType;
@@ -1053,6 +1055,32 @@ public enum ServicesUtil {
 		return textValue;
 	}
 
+	/**
+	 * Get the string representation of a response entity. Streamed entities (<code>StreamingOutput</code>) are written
+	 * to memory and byte array entities are decoded as UTF-8; used where a response is consumed internally, e.g. batch and transaction entry responses.
+	 *
+	 * @param entity
+	 * @return entity string if found, otherwise null
+	 * @throws IOException
+	 */
+	public String getResponseEntityString(Object entity) throws IOException {
+		String entityString = null;
+
+		if (entity instanceof StreamingOutput) {
+			ByteArrayOutputStream oEntity = new ByteArrayOutputStream();
+			((StreamingOutput) entity).write(oEntity);
+			entityString = oEntity.toString(StandardCharsets.UTF_8);
+		}
+		else if (entity instanceof byte[]) {
+			entityString = new String((byte[]) entity, StandardCharsets.UTF_8);
+		}
+		else if (entity != null) {
+			entityString = entity.toString();
+		}
+
+		return entityString;
+	}
+
 	public String getHostName() {
 		// Get hostname from environment variable WILDFHIR_HOSTNAME (defined in docker container)
 		String hostname = System.getenv("WILDFHIR_HOSTNAME");
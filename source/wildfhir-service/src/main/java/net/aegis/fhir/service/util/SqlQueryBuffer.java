@@ -0,0 +1,171 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.util;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.persistence.Query;
+
+/**
+ * SQL statement buffer used by the search engine. Search criteria values are never inlined into the statement text;
+ * each value is appended as a '?' placeholder and kept in order as a bind parameter. The resulting statement text only
+ * depends on the shape of the search (resource type, parameter names, modifiers and prefixes) so that the same search
+ * with different values reuses the same prepared statement.
+ *
+ * @author richard.ettema
+ *
+ */
+public class SqlQueryBuffer {
+
+	private StringBuffer sql;
+
+	private List<Object> parameters;
+
+	public SqlQueryBuffer() {
+		this("");
+	}
+
+	public SqlQueryBuffer(String sql) {
+		this.sql = new StringBuffer(sql);
+		this.parameters = new ArrayList<Object>();
+	}
+
+	/**
+	 * Append statement text; must not contain search criteria values
+	 *
+	 * @param text
+	 * @return this buffer
+	 */
+	public SqlQueryBuffer append(String text) {
+		sql.append(text);
+		return this;
+	}
+
+	public SqlQueryBuffer append(int number) {
+		sql.append(number);
+		return this;
+	}
+
+	/**
+	 * Append the statement text and the bind parameters of another buffer
+	 *
+	 * @param other
+	 * @return this buffer
+	 */
+	public SqlQueryBuffer append(SqlQueryBuffer other) {
+		if (other != null) {
+			sql.append(other.sql);
+			parameters.addAll(other.parameters);
+		}
+		return this;
+	}
+
+	/**
+	 * Append a '?' placeholder and save the value as the next bind parameter
+	 *
+	 * @param value
+	 * @return this buffer
+	 */
+	public SqlQueryBuffer appendParameter(Object value) {
+		sql.append("?");
+		parameters.add(value);
+		return this;
+	}
+
+	/**
+	 * Append a '?' placeholder for a numeric or quantity value; the value is bound as a decimal when it can be parsed
+	 * so that the database compares numbers and not strings
+	 *
+	 * @param value
+	 * @return this buffer
+	 */
+	public SqlQueryBuffer appendDecimalParameter(String value) {
+		Object decimalValue = value;
+		try {
+			decimalValue = new BigDecimal(value);
+		}
+		catch (Exception e) {
+			// Not a valid decimal; bind the string value as is
+		}
+		return appendParameter(decimalValue);
+	}
+
+	/**
+	 * Append a row of '?' placeholders enclosed in parentheses, e.g. "(?, ?, ?)", for a multi-row insert and save the
+	 * values as the next bind parameters
+	 *
+	 * @param values
+	 * @return this buffer
+	 */
+	public SqlQueryBuffer appendParameterRow(Object... values) {
+		sql.append("(");
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			appendParameter(values[i]);
+		}
+		sql.append(")");
+		return this;
+	}
+
+	public int length() {
+		return sql.length();
+	}
+
+	public List<Object> getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Set the bind parameters on the native query in the order they were appended
+	 *
+	 * @param query
+	 * @return the query
+	 */
+	public Query bindParameters(Query query) {
+		int position = 1;
+		for (Object parameter : parameters) {
+			query.setParameter(position++, parameter);
+		}
+		return query;
+	}
+
+	@Override
+	public String toString() {
+		return sql.toString();
+	}
+
+}
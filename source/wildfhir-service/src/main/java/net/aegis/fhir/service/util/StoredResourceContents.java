@@ -0,0 +1,172 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.util;
+
+import java.io.ByteArrayInputStream;
+
+import org.hl7.fhir.r4.formats.JsonParser;
+import org.hl7.fhir.r4.formats.XmlParser;
+import org.hl7.fhir.r4.model.Binary;
+import org.hl7.fhir.r4.model.Resource;
+
+/**
+ * Bundle entry placeholder for a resource that is held as its stored XML contents. The contents are not parsed when the
+ * search Bundle is built; <code>BundleStreamingOutput</code> copies the stored bytes into an XML response verbatim and
+ * only parses them, one entry at a time, for a JSON response. If the stored JSON contents are present, those are
+ * parsed instead of the XML contents.
+ *
+ * @author richard.ettema
+ *
+ */
+public class StoredResourceContents extends Binary {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final byte[] XML_DECLARATION_START = "<?xml".getBytes();
+	private static final byte[] XML_DECLARATION_END = "?>".getBytes();
+
+	private byte[] resourceContents;
+
+	private byte[] resourceContentsJson;
+
+	public StoredResourceContents(byte[] resourceContents, byte[] resourceContentsJson) {
+		super();
+		this.resourceContents = resourceContents;
+		this.resourceContentsJson = resourceContentsJson;
+	}
+
+	public StoredResourceContents(net.aegis.fhir.model.Resource resource) {
+		this(resource.getResourceContents(), resource.getResourceContentsJson());
+	}
+
+	/**
+	 * @return stored XML contents of the resource
+	 */
+	public byte[] getResourceContents() {
+		return resourceContents;
+	}
+
+	/**
+	 * @return stored JSON contents of the resource if present, otherwise null
+	 */
+	public byte[] getResourceContentsJson() {
+		return resourceContentsJson;
+	}
+
+	/**
+	 * @return stored XML contents of the resource without any XML declaration; suitable for nesting in a Bundle
+	 */
+	public byte[] getResourceElement() {
+
+		int start = 0;
+
+		// Skip leading whitespace
+		while (start < resourceContents.length && Character.isWhitespace(resourceContents[start])) {
+			start++;
+		}
+
+		// Skip XML declaration if present
+		if (startsWith(resourceContents, start, XML_DECLARATION_START)) {
+			int end = indexOf(resourceContents, start, XML_DECLARATION_END);
+			if (end >= 0) {
+				start = end + XML_DECLARATION_END.length;
+				while (start < resourceContents.length && Character.isWhitespace(resourceContents[start])) {
+					start++;
+				}
+			}
+		}
+
+		if (start == 0) {
+			return resourceContents;
+		}
+
+		byte[] resourceElement = new byte[resourceContents.length - start];
+		System.arraycopy(resourceContents, start, resourceElement, 0, resourceElement.length);
+
+		return resourceElement;
+	}
+
+	/**
+	 * @return parsed resource of the stored JSON contents if present, otherwise of the stored XML contents
+	 * @throws Exception
+	 */
+	public Resource parse() throws Exception {
+
+		if (resourceContentsJson != null) {
+			JsonParser jsonP = new JsonParser();
+
+			return jsonP.parse(new ByteArrayInputStream(resourceContentsJson));
+		}
+
+		XmlParser xmlP = new XmlParser();
+
+		return xmlP.parse(new ByteArrayInputStream(resourceContents));
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return (resourceContents == null || resourceContents.length == 0);
+	}
+
+	@Override
+	public StoredResourceContents copy() {
+		return new StoredResourceContents(resourceContents, resourceContentsJson);
+	}
+
+	private static boolean startsWith(byte[] source, int offset, byte[] prefix) {
+
+		if (source.length - offset < prefix.length) {
+			return false;
+		}
+
+		for (int i = 0; i < prefix.length; i++) {
+			if (source[offset + i] != prefix[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static int indexOf(byte[] source, int offset, byte[] target) {
+
+		for (int i = offset; i <= source.length - target.length; i++) {
+			if (startsWith(source, i, target)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+}
@@ -32,16 +32,165 @@
  */
 package net.aegis.fhir.service.util;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
 
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+
+import org.jboss.resteasy.client.jaxrs.ClientHttpEngine;
 import org.jboss.resteasy.client.jaxrs.ResteasyClient;
 import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
+import org.jboss.resteasy.client.jaxrs.internal.ClientInvocation;
+
+import jakarta.ws.rs.client.Invocation;
+import jakarta.ws.rs.core.Response;
 
 /**
+ * Outbound REST client factory. The shared client is thread safe and reuses keep-alive connections of a single
+ * connection pool limited in total and per host; it must not be closed by its callers. Responses must be buffered or
+ * closed so that their connection is returned to the pool.
+ *
  * @author richard.ettema
  *
  */
 public class WebClientHelper {
+
+	private static Logger log = Logger.getLogger("WebClientHelper");
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 200;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+	public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+	public static final int DEFAULT_READ_TIMEOUT_MILLIS = 60000;
+
+	// Pooled connections are closed after this time to follow DNS changes
+	private static final long CONNECTION_TTL_SECONDS = 300L;
+
+	private static SharedClient sharedClient;
+
+	// Clients replaced by a configuration change; closed with their connection pool after their retire deadline
+	private static List<SharedClient> retiredClients = new ArrayList<SharedClient>();
+
+	// Daemon timer closing the replaced clients at their retire deadline; created on the first replacement
+	private static Timer retireTimer;
+
+	/**
+	 * Returns the shared pooled ResteasyClient which disables host verification; built with the default settings if
+	 * not configured
+	 */
+	public static synchronized ResteasyClient getSharedClient() {
+		if (!retiredClients.isEmpty()) {
+			closeRetiredClients();
+		}
+		if (sharedClient == null) {
+			sharedClient = new SharedClient(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+		}
+		return sharedClient.client;
+	}
+
+	/**
+	 * Configure the shared client; the shared client is replaced when a setting changes. The replaced client is closed,
+	 * with its connection pool, at its retire deadline of twice its connect timeout plus its read timeout after the
+	 * replacement, whether or not requests started on it are still in flight.
+	 *
+	 * @param maxConnections
+	 * @param maxConnectionsPerHost
+	 * @param connectTimeoutMillis
+	 * @param readTimeoutMillis
+	 */
+	public static synchronized void configure(int maxConnections, int maxConnectionsPerHost, int connectTimeoutMillis, int readTimeoutMillis) {
+		if (!retiredClients.isEmpty()) {
+			closeRetiredClients();
+		}
+
+		if (sharedClient == null || sharedClient.maxConnections != maxConnections || sharedClient.maxConnectionsPerHost != maxConnectionsPerHost
+				|| sharedClient.connectTimeoutMillis != connectTimeoutMillis || sharedClient.readTimeoutMillis != readTimeoutMillis) {
+
+			SharedClient replaced = sharedClient;
+
+			sharedClient = new SharedClient(maxConnections, maxConnectionsPerHost, connectTimeoutMillis, readTimeoutMillis);
+
+			if (replaced != null) {
+				// Allow requests started on the replaced client to complete; a response entity is read after its response is returned
+				long retireDelay = (long) replaced.connectTimeoutMillis * 2 + replaced.readTimeoutMillis;
+				replaced.retireDeadline = System.currentTimeMillis() + retireDelay;
+				retiredClients.add(replaced);
+
+				if (retireTimer == null) {
+					retireTimer = new Timer("WebClientHelper-retire", true);
+				}
+				retireTimer.schedule(new TimerTask() {
+
+					@Override
+					public void run() {
+						synchronized (WebClientHelper.class) {
+							closeRetiredClients();
+						}
+					}
+
+				}, retireDelay);
+			}
+
+			log.info("WebClientHelper - shared client pool configured; maxConnections " + maxConnections + ", maxConnectionsPerHost " + maxConnectionsPerHost +
+					", connectTimeoutMillis " + connectTimeoutMillis + ", readTimeoutMillis " + readTimeoutMillis);
+		}
+	}
+
+	/**
+	 * @return the number of shared client requests awaiting a response
+	 */
+	public static synchronized int getInFlightCount() {
+		return (sharedClient != null ? sharedClient.engine.inFlight.get() : 0);
+	}
+
+	/**
+	 * @return the number of shared client requests sent since the shared client was built
+	 */
+	public static synchronized long getRequestCount() {
+		return (sharedClient != null ? sharedClient.engine.requestCount.get() : 0L);
+	}
+
+	/**
+	 * @return the number of shared client requests failed without a response since the shared client was built
+	 */
+	public static synchronized long getFailureCount() {
+		return (sharedClient != null ? sharedClient.engine.failureCount.get() : 0L);
+	}
+
+	/**
+	 * @return the number of shared client requests awaiting a response by host (scheme://host:port) in host order
+	 */
+	public static synchronized Map<String, Integer> getHostInFlightCounts() {
+		Map<String, Integer> hostCounts = new TreeMap<String, Integer>();
+
+		if (sharedClient != null) {
+			for (Map.Entry<String, AtomicInteger> hostEntry : sharedClient.engine.hostInFlight.entrySet()) {
+				hostCounts.put(hostEntry.getKey(), Integer.valueOf(hostEntry.getValue().get()));
+			}
+		}
+
+		return hostCounts;
+	}
+
+	/**
+	 * @return the shared client settings as maxConnections, maxConnectionsPerHost, connectTimeoutMillis and readTimeoutMillis
+	 */
+	public static synchronized int[] getPoolSettings() {
+		getSharedClient();
+		return new int[] { sharedClient.maxConnections, sharedClient.maxConnectionsPerHost, sharedClient.connectTimeoutMillis, sharedClient.readTimeoutMillis };
+	}
+
 	/**
 	 * Returns a new ResteasyClient which disables host verification
 	 */
@@ -59,4 +208,167 @@ public class WebClientHelper {
 			.build();
 		return client;
 	}
+
+	/**
+	 * Close the shared client and all replaced clients with their connection pools; called when the application is
+	 * stopped. A later getSharedClient call builds a new shared client with the default settings.
+	 */
+	public static synchronized void shutdown() {
+		if (retireTimer != null) {
+			retireTimer.cancel();
+			retireTimer = null;
+		}
+
+		for (SharedClient retired : retiredClients) {
+			close(retired);
+		}
+		retiredClients.clear();
+
+		if (sharedClient != null) {
+			close(sharedClient);
+			sharedClient = null;
+		}
+
+		log.info("WebClientHelper - shared client pool shut down");
+	}
+
+	/**
+	 * Close the replaced clients past their retire deadline. The number of requests in flight is not checked as a
+	 * response entity may still be read after its request has returned; requests exceeding the deadline fail.
+	 */
+	private static void closeRetiredClients() {
+		long now = System.currentTimeMillis();
+
+		Iterator<SharedClient> iter = retiredClients.iterator();
+		while (iter.hasNext()) {
+			SharedClient retired = iter.next();
+
+			if (now >= retired.retireDeadline) {
+				close(retired);
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Closing the client closes its engine and shuts down its connection pool
+	 */
+	private static void close(SharedClient closing) {
+		try {
+			closing.client.close();
+		}
+		catch (Exception e) {
+			log.warning("WebClientHelper - client close failed; " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Shared ResteasyClient with its connection pool and settings
+	 */
+	private static class SharedClient {
+
+		private final int maxConnections;
+		private final int maxConnectionsPerHost;
+		private final int connectTimeoutMillis;
+		private final int readTimeoutMillis;
+		private final CountingHttpEngine engine;
+		private final ResteasyClient client;
+		private long retireDeadline = 0L;
+
+		private SharedClient(int maxConnections, int maxConnectionsPerHost, int connectTimeoutMillis, int readTimeoutMillis) {
+			this.maxConnections = maxConnections;
+			this.maxConnectionsPerHost = maxConnectionsPerHost;
+			this.connectTimeoutMillis = connectTimeoutMillis;
+			this.readTimeoutMillis = readTimeoutMillis;
+
+			// The connection checkout timeout bounds the wait for a pooled connection when the pool is exhausted
+			ResteasyClient pooledClient = ((ResteasyClientBuilder) ResteasyClientBuilder.newBuilder())
+				.connectionPoolSize(maxConnections)
+				.maxPooledPerRoute(maxConnectionsPerHost)
+				.connectionTTL(CONNECTION_TTL_SECONDS, TimeUnit.SECONDS)
+				.connectionCheckoutTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+				.connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+				.readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+				.hostnameVerifier((s, sslSession) -> true)
+				.build();
+
+			engine = new CountingHttpEngine(pooledClient.httpEngine());
+
+			client = ((ResteasyClientBuilder) ResteasyClientBuilder.newBuilder())
+				.httpEngine(engine)
+				.build();
+		}
+	}
+
+	/**
+	 * Pooled client engine counting the requests awaiting a response in total and by host
+	 */
+	private static class CountingHttpEngine implements ClientHttpEngine {
+
+		private final ClientHttpEngine delegate;
+		private final AtomicInteger inFlight = new AtomicInteger(0);
+		private final AtomicLong requestCount = new AtomicLong(0);
+		private final AtomicLong failureCount = new AtomicLong(0);
+		private final ConcurrentHashMap<String, AtomicInteger> hostInFlight = new ConcurrentHashMap<String, AtomicInteger>();
+
+		private CountingHttpEngine(ClientHttpEngine delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public SSLContext getSslContext() {
+			return delegate.getSslContext();
+		}
+
+		@Override
+		public HostnameVerifier getHostnameVerifier() {
+			return delegate.getHostnameVerifier();
+		}
+
+		@Override
+		public boolean isFollowRedirects() {
+			return delegate.isFollowRedirects();
+		}
+
+		@Override
+		public void setFollowRedirects(boolean followRedirects) {
+			delegate.setFollowRedirects(followRedirects);
+		}
+
+		@Override
+		public Response invoke(Invocation request) {
+			AtomicInteger hostCount = hostInFlight.computeIfAbsent(getHost(request), host -> new AtomicInteger(0));
+
+			requestCount.incrementAndGet();
+			inFlight.incrementAndGet();
+			hostCount.incrementAndGet();
+
+			try {
+				return delegate.invoke(request);
+			}
+			catch (RuntimeException e) {
+				failureCount.incrementAndGet();
+				throw e;
+			}
+			finally {
+				hostCount.decrementAndGet();
+				inFlight.decrementAndGet();
+			}
+		}
+
+		@Override
+		public void close() {
+			delegate.close();
+		}
+
+		private String getHost(Invocation request) {
+			if (request instanceof ClientInvocation) {
+				URI uri = ((ClientInvocation) request).getUri();
+				if (uri != null) {
+					return uri.getScheme() + "://" + uri.getHost() + (uri.getPort() >= 0 ? ":" + uri.getPort() : "");
+				}
+			}
+			return "unknown";
+		}
+	}
 }
@@ -61,9 +61,11 @@ import org.hl7.fhir.validation.instance.advisor.BasePolicyAdvisorForFullValidati
 import org.hl7.fhir.validation.service.model.InstanceValidatorParameters;
 
 import net.aegis.fhir.service.util.ServicesUtil;
+import net.aegis.fhir.service.validation.ValidationEnginePool.PooledValidationEngine;
 
 /**
- * Singleton class to provide access to FHIR Validator.
+ * Singleton class to provide access to FHIR Validator. Requests check out an engine from a bounded pool of
+ * Validation Engines copied from one initialized template engine.
  *
  * @author richard.ettema
  *
@@ -72,21 +74,28 @@ public class FHIRValidatorClient {
 
 	private static Logger log = Logger.getLogger("FHIRValidatorClient");
 
-    private static FHIRValidatorClient me;
+    private static volatile FHIRValidatorClient me;
 
     private static String FHIR_PACKAGES_ENV_VAR = "FHIR_PACKAGES";
 
-	private ValidationEngine engine = null;
+    private static String FHIR_VALIDATOR_POOL_SIZE_ENV_VAR = "FHIR_VALIDATOR_POOL_SIZE";
 
-	private org.hl7.fhir.r4.context.SimpleWorkerContext contextR4 = null;
+    private static String FHIR_VALIDATOR_TIMEOUT_ENV_VAR = "FHIR_VALIDATOR_TIMEOUT";
+
+    private static long DEFAULT_CHECKOUT_TIMEOUT_MILLIS = 30000;
+
+    private static String FHIR_VALIDATOR_CACHE_SIZE_ENV_VAR = "FHIR_VALIDATOR_CACHE_SIZE";
+
+    private static int DEFAULT_CACHE_SIZE = 1000;
+
+	// Template engine holding the loaded packages; copied into the pool and never used for validation
+	private volatile ValidationEngine engine = null;
 
-	private JsonParser jsonParser = new JsonParser();
-	private org.hl7.fhir.r4.formats.JsonParser jsonParserR4 = new org.hl7.fhir.r4.formats.JsonParser();
+	private volatile ValidationEnginePool pool = null;
 
-	private org.hl7.fhir.r4.formats.RdfParser rdfParserR4 = new org.hl7.fhir.r4.formats.RdfParser();
+	private volatile ValidationResultCache resultCache = null;
 
-	private XmlParser xmlParser = new XmlParser();
-	private org.hl7.fhir.r4.formats.XmlParser xmlParserR4 = new org.hl7.fhir.r4.formats.XmlParser();
+	private org.hl7.fhir.r4.context.SimpleWorkerContext contextR4 = null;
 
 	private void initializeClient() {
 
@@ -104,18 +113,32 @@ public class FHIRValidatorClient {
 			defaultInstanceValidatorParameters.setBestPracticeLevel(BestPracticeWarningLevel.Hint);
 
 			ValidationEngineBuilder builder = new ValidationEngine.ValidationEngineBuilder().withDefaultInstanceValidatorParameters(defaultInstanceValidatorParameters);
-			engine = builder.fromSource("hl7.fhir.r4.core");
+			ValidationEngine template = builder.fromSource("hl7.fhir.r4.core");
 
 			IValidationPolicyAdvisor policyAdvisor = new BasePolicyAdvisorForFullValidation(ReferenceValidationPolicy.IGNORE, null);
-			engine.setPolicyAdvisor(policyAdvisor);
+			template.setPolicyAdvisor(policyAdvisor);
 
 			// Check for additional packages via environment variable
 			String fhirPackages = System.getenv(FHIR_PACKAGES_ENV_VAR);
 			if (fhirPackages != null && !fhirPackages.isEmpty()) {
-				loadPackages(fhirPackages);
+				loadPackages(template, fhirPackages);
 			}
 
-			engine.connectToTSServer("http://tx.fhir.org/r4", null, FhirPublication.R4, false);
+			template.connectToTSServer("http://tx.fhir.org/r4", null, FhirPublication.R4, false);
+
+			// Pool sized to the available processors unless overridden via environment variable
+			int poolSize = getEnvInt(FHIR_VALIDATOR_POOL_SIZE_ENV_VAR, Runtime.getRuntime().availableProcessors(), false);
+			long timeoutMillis = getEnvInt(FHIR_VALIDATOR_TIMEOUT_ENV_VAR, (int) DEFAULT_CHECKOUT_TIMEOUT_MILLIS, false);
+
+			// Results cached per initialization; keyed with the loaded package list
+			// A cache size of 0 disables the cache
+			int cacheSize = getEnvInt(FHIR_VALIDATOR_CACHE_SIZE_ENV_VAR, DEFAULT_CACHE_SIZE, true);
+
+			engine = template;
+			pool = new ValidationEnginePool(template, policyAdvisor, poolSize, timeoutMillis);
+			resultCache = new ValidationResultCache(cacheSize, "hl7.fhir.r4.core," + (fhirPackages != null ? fhirPackages : ""));
+
+			log.info("FHIR Validation Engine pool size " + poolSize + ", checkout timeout " + timeoutMillis + " ms, result cache size " + cacheSize);
 
 			log.info("FHIR R4 v4.0.1 Validation Engine initialization completed in " + ServicesUtil.INSTANCE.getElapsedTime(start));
 		}
@@ -129,21 +152,33 @@ public class FHIRValidatorClient {
 		if (me == null) {
 			synchronized (FHIRValidatorClient.class) {
 				if (me == null) {
-					me = new FHIRValidatorClient();
+					FHIRValidatorClient client = new FHIRValidatorClient();
 
-					if (me.engine == null) {
-						me.initializeClient();
-					}
+					// Publish the instance only after its engine pool is initialized
+					client.initializeClient();
+
+					me = client;
 				}
 			}
 		}
 		return me;
 	}
 
+	/**
+	 * @return the template <code>ValidationEngine</code>; validation requests use the engines of the pool
+	 */
 	public ValidationEngine getEngine() {
 		return engine;
 	}
 
+	public ValidationEnginePool getPool() {
+		return pool;
+	}
+
+	public ValidationResultCache getResultCache() {
+		return resultCache;
+	}
+
 	public org.hl7.fhir.r4.context.SimpleWorkerContext getContextR4() {
 		return contextR4;
 	}
@@ -153,7 +188,8 @@ public class FHIRValidatorClient {
 	}
 
 	/**
-	 * Process FHIR validation request using available pooled FHIRValidator object.
+	 * Process FHIR validation request using an available pooled Validation Engine. Results of completed validations
+	 * are cached; a resubmission of the same contents and profile is answered from the cache.
 	 *
 	 * @param resourceName
 	 * @param resourceContents
@@ -168,6 +204,10 @@ public class FHIRValidatorClient {
 
 		OperationOutcome rOutcome = null;
 
+		ValidationResultCache currentCache = resultCache;
+		String cacheKey = null;
+		boolean completed = false;
+
 		try {
 			List<String> profiles = null;
 			if (profileUri != null) {
@@ -175,21 +215,38 @@ public class FHIRValidatorClient {
 				profiles.add(profileUri);
 			}
 
+			if (currentCache.isEnabled()) {
+				cacheKey = currentCache.getKey(resourceContents, profiles);
+
+				org.hl7.fhir.r4.model.OperationOutcome cachedOutcome = currentCache.get(cacheKey);
+
+				if (cachedOutcome != null) {
+					log.fine("FHIR Validator - validation result returned from cache in " + ServicesUtil.INSTANCE.getElapsedTime(start));
+
+					return cachedOutcome;
+				}
+			}
+
 			FhirFormat cntType = getFhirFormat(resourceContents);
 
-			rOutcome = engine.validate(cntType, new ByteArrayInputStream(resourceContents), profiles);
+			ValidationEnginePool currentPool = pool;
+			PooledValidationEngine pooled = currentPool.checkout();
 
 			try {
+				rOutcome = pooled.getEngine().validate(cntType, new ByteArrayInputStream(resourceContents), profiles);
+
 				// Now parse the Resource contents; this is the last validation to insure the contents is a valid FHIR resource instance
 				if (cntType.equals(FhirFormat.JSON)) {
-					jsonParserR4.parse((byte[])resourceContents);
+					pooled.getJsonParserR4().parse((byte[])resourceContents);
 				}
 				else if (cntType.equals(FhirFormat.XML)) {
-					xmlParserR4.parse((byte[])resourceContents);
+					pooled.getXmlParserR4().parse((byte[])resourceContents);
 				}
 				else if (cntType.equals(FhirFormat.TURTLE)) {
-					rdfParserR4.parse((byte[])resourceContents);
+					pooled.getRdfParserR4().parse((byte[])resourceContents);
 				}
+
+				completed = true;
 			}
 			catch (Exception ie) {
 				ie.printStackTrace();
@@ -197,17 +254,20 @@ public class FHIRValidatorClient {
 				// FHIR resource parsing failed, content is not a valid FHIR resource; throw appropriate exception to catch below
 				throw ie;
 			}
+			finally {
+				currentPool.checkin(pooled);
+			}
 
 		} catch (Exception e) {
 			String outcome = getOperationOutcome(OperationOutcome.IssueSeverity.FATAL, OperationOutcome.IssueType.PROCESSING,
 					"Exception validating resource " + resourceName + ". " + e.getMessage(), null, "application/xml+fhir");
 
-			rOutcome = (OperationOutcome) xmlParser.parse(outcome);
+			rOutcome = (OperationOutcome) new XmlParser().parse(outcome);
 		} catch (Throwable e) {
 			String outcome = getOperationOutcome(OperationOutcome.IssueSeverity.FATAL, OperationOutcome.IssueType.PROCESSING,
 					"Exception validating resource " + (String)resourceName + ". " + e.getMessage(), null, "application/xml+fhir");
 
-			rOutcome = (OperationOutcome) xmlParser.parse(outcome);
+			rOutcome = (OperationOutcome) new XmlParser().parse(outcome);
 		}
 
 		log.fine("FHIRValidatorClient.validateResource() - END");
@@ -216,6 +276,11 @@ public class FHIRValidatorClient {
 
 		org.hl7.fhir.r4.model.OperationOutcome r4Outcome = convertR5OOR4(rOutcome);
 
+		// Only cache results of completed validations; exception outcomes may be transient
+		if (completed && cacheKey != null) {
+			currentCache.put(cacheKey, r4Outcome);
+		}
+
 		return r4Outcome;
 	}
 
@@ -240,21 +305,30 @@ public class FHIRValidatorClient {
 
 			FhirFormat cntType = getFhirFormat(resourceContents);
 
-			if (cntType.equals(FhirFormat.JSON)) {
+			ValidationEnginePool currentPool = pool;
+			PooledValidationEngine pooled = currentPool.checkout();
 
-				resource = jsonParserR4.parse(resourceContents);
-			}
-			else if (cntType.equals(FhirFormat.TURTLE)) {
+			try {
+				if (cntType.equals(FhirFormat.JSON)) {
 
-				resource = rdfParserR4.parse(resourceContents);
-			}
-			else if (cntType.equals(FhirFormat.XML)) {
+					resource = pooled.getJsonParserR4().parse(resourceContents);
+				}
+				else if (cntType.equals(FhirFormat.TURTLE)) {
+
+					resource = pooled.getRdfParserR4().parse(resourceContents);
+				}
+				else if (cntType.equals(FhirFormat.XML)) {
 
-				resource = xmlParserR4.parse(resourceContents);
+					resource = pooled.getXmlParserR4().parse(resourceContents);
+				}
+
+				org.hl7.fhir.r5.model.Resource resourceR5 = VersionConvertorFactory_40_50.convertResource(resource);
+				resultR5 = pooled.getEngine().getValidator(null).getFHIRPathEngine().evaluate((org.hl7.fhir.r5.model.Base)resourceR5, pathExpression);
+			}
+			finally {
+				currentPool.checkin(pooled);
 			}
 
-			org.hl7.fhir.r5.model.Resource resourceR5 = VersionConvertorFactory_40_50.convertResource(resource);
-			resultR5 = engine.getValidator(null).getFHIRPathEngine().evaluate((org.hl7.fhir.r5.model.Base)resourceR5, pathExpression);
 			result = this.convertR5ListBaseToR4(resultR5);
 		}
 		catch (Exception e) {
@@ -291,24 +365,32 @@ public class FHIRValidatorClient {
 
 			FhirFormat cntType = getFhirFormat(resourceContents);
 
-			if (cntType.equals(FhirFormat.JSON)) {
+			ValidationEnginePool currentPool = pool;
+			PooledValidationEngine pooled = currentPool.checkout();
 
-				resource = jsonParserR4.parse(resourceContents);
-			}
-			else if (cntType.equals(FhirFormat.TURTLE)) {
+			try {
+				if (cntType.equals(FhirFormat.JSON)) {
 
-				resource = rdfParserR4.parse(resourceContents);
-			}
-			else if (cntType.equals(FhirFormat.XML)) {
+					resource = pooled.getJsonParserR4().parse(resourceContents);
+				}
+				else if (cntType.equals(FhirFormat.TURTLE)) {
 
-				resource = xmlParserR4.parse(resourceContents);
-			}
+					resource = pooled.getRdfParserR4().parse(resourceContents);
+				}
+				else if (cntType.equals(FhirFormat.XML)) {
 
-			org.hl7.fhir.r5.model.Resource resourceR5 = VersionConvertorFactory_40_50.convertResource(resource);
-			FHIRPathEngine fpe = engine.getValidator(null).getFHIRPathEngine();
-			resultR5 = fpe.evaluate((org.hl7.fhir.r5.model.Base)resourceR5, pathExpression);
+					resource = pooled.getXmlParserR4().parse(resourceContents);
+				}
 
-			result = fpe.convertToBoolean(resultR5);
+				org.hl7.fhir.r5.model.Resource resourceR5 = VersionConvertorFactory_40_50.convertResource(resource);
+				FHIRPathEngine fpe = pooled.getEngine().getValidator(null).getFHIRPathEngine();
+				resultR5 = fpe.evaluate((org.hl7.fhir.r5.model.Base)resourceR5, pathExpression);
+
+				result = fpe.convertToBoolean(resultR5);
+			}
+			finally {
+				currentPool.checkin(pooled);
+			}
 		}
 		catch (Exception e) {
 			throw new Exception("Evaluate To Boolean exception evaluating fhirpath expression [" + pathExpression + "]. " + e.getMessage());
@@ -343,24 +425,32 @@ public class FHIRValidatorClient {
 
 			FhirFormat cntType = getFhirFormat(resourceContents);
 
-			if (cntType.equals(FhirFormat.JSON)) {
+			ValidationEnginePool currentPool = pool;
+			PooledValidationEngine pooled = currentPool.checkout();
 
-				resource = jsonParserR4.parse(resourceContents);
-			}
-			else if (cntType.equals(FhirFormat.TURTLE)) {
+			try {
+				if (cntType.equals(FhirFormat.JSON)) {
 
-				resource = rdfParserR4.parse(resourceContents);
-			}
-			else if (cntType.equals(FhirFormat.XML)) {
+					resource = pooled.getJsonParserR4().parse(resourceContents);
+				}
+				else if (cntType.equals(FhirFormat.TURTLE)) {
 
-				resource = xmlParserR4.parse(resourceContents);
-			}
+					resource = pooled.getRdfParserR4().parse(resourceContents);
+				}
+				else if (cntType.equals(FhirFormat.XML)) {
+
+					resource = pooled.getXmlParserR4().parse(resourceContents);
+				}
 
-			org.hl7.fhir.r5.model.Resource resourceR5 = VersionConvertorFactory_40_50.convertResource(resource);
-			FHIRPathEngine fpe = engine.getValidator(null).getFHIRPathEngine();
-			resultR5 = fpe.evaluate((org.hl7.fhir.r5.model.Base)resourceR5, pathExpression);
+				org.hl7.fhir.r5.model.Resource resourceR5 = VersionConvertorFactory_40_50.convertResource(resource);
+				FHIRPathEngine fpe = pooled.getEngine().getValidator(null).getFHIRPathEngine();
+				resultR5 = fpe.evaluate((org.hl7.fhir.r5.model.Base)resourceR5, pathExpression);
 
-			result = fpe.convertToString(resultR5);
+				result = fpe.convertToString(resultR5);
+			}
+			finally {
+				currentPool.checkin(pooled);
+			}
 		}
 		catch (Exception e) {
 			throw new Exception("Evaluate To String exception evaluating fhirpath expression [" + pathExpression + "]. " + e.getMessage());
@@ -384,7 +474,7 @@ public class FHIRValidatorClient {
 	 *
 	 * @param fhirPackages
 	 */
-	private void loadPackages(String fhirPackages) throws Exception {
+	private void loadPackages(ValidationEngine template, String fhirPackages) throws Exception {
 
 		// Instantiate R4 context
 		contextR4 = new org.hl7.fhir.r4.context.SimpleWorkerContext();
@@ -404,7 +494,7 @@ public class FHIRValidatorClient {
 
 			try {
 				log.info("Load package " + pkgName + "#" + (pkgVersion != null ? pkgVersion : "null"));
-				engine.loadPackage(pkgName, pkgVersion);
+				template.loadPackage(pkgName, pkgVersion);
 				contextR4.loadFromPackage(pcm.loadPackage(pkgName, pkgVersion), null);
 			} catch (Exception e) {
 				log.severe("Load package " + pkgName + "#" + (pkgVersion != null ? pkgVersion : "null") + " failed! " + e.getMessage());
@@ -442,11 +532,13 @@ public class FHIRValidatorClient {
 			ByteArrayOutputStream oOp = new ByteArrayOutputStream();
 
 			if (producesType == null || producesType.indexOf("xml") >= 0) {
+				XmlParser xmlParser = new XmlParser();
 				xmlParser.setOutputStyle(OutputStyle.PRETTY);
 				xmlParser.compose(oOp, op, true);
 				sOp = oOp.toString();
 			}
 			else {
+				JsonParser jsonParser = new JsonParser();
 				jsonParser.setOutputStyle(OutputStyle.PRETTY);
 				jsonParser.compose(oOp, op);
 				sOp = oOp.toString();
@@ -537,6 +629,22 @@ public class FHIRValidatorClient {
 		return r4Outcome;
 	}
 
+	private int getEnvInt(String envVar, int defaultValue, boolean allowZero) {
+		int value = defaultValue;
+
+		String envValue = System.getenv(envVar);
+		if (envValue != null && !envValue.isEmpty()) {
+			try {
+				value = Integer.parseInt(envValue.trim());
+			}
+			catch (NumberFormatException e) {
+				log.warning("Invalid " + envVar + " value '" + envValue + "'; using " + defaultValue);
+			}
+		}
+
+		return (value > 0 || (allowZero && value == 0) ? value : defaultValue);
+	}
+
 	private FhirFormat getFhirFormat(byte[] source) {
 		FhirFormat cntType = FhirFormat.TEXT;
 
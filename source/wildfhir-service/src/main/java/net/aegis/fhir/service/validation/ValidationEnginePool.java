@@ -0,0 +1,266 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.validation;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.hl7.fhir.r5.utils.validation.IValidationPolicyAdvisor;
+import org.hl7.fhir.validation.ValidationEngine;
+
+import net.aegis.fhir.service.util.ServicesUtil;
+
+/**
+ * Bounded pool of FHIR Validation Engines copied from a single initialized template engine. The copies share the
+ * loaded package and structure definition content of the template; each copy and its parsers are used by one
+ * thread at a time.
+ *
+ * @author richard.ettema
+ *
+ */
+public class ValidationEnginePool {
+
+	private static Logger log = Logger.getLogger("ValidationEnginePool");
+
+	private final ValidationEngine template;
+
+	private final IValidationPolicyAdvisor policyAdvisor;
+
+	private final int size;
+
+	private final long timeoutMillis;
+
+	private final LinkedBlockingQueue<PooledValidationEngine> available = new LinkedBlockingQueue<PooledValidationEngine>();
+
+	private final AtomicInteger created = new AtomicInteger(0);
+	private final AtomicInteger inUse = new AtomicInteger(0);
+	private final AtomicInteger waiting = new AtomicInteger(0);
+
+	private final AtomicLong checkoutCount = new AtomicLong(0);
+	private final AtomicLong timeoutCount = new AtomicLong(0);
+	private final AtomicLong totalWaitNanos = new AtomicLong(0);
+	private final AtomicLong maxWaitNanos = new AtomicLong(0);
+
+	public ValidationEnginePool(ValidationEngine template, IValidationPolicyAdvisor policyAdvisor, int size, long timeoutMillis) {
+		this.template = template;
+		this.policyAdvisor = policyAdvisor;
+		this.size = (size > 0 ? size : 1);
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Check out an engine for the exclusive use of the calling thread. A new engine is copied from the template while
+	 * the pool is below its size; otherwise wait up to the checkout timeout for an engine to be checked in.
+	 *
+	 * @return <code>PooledValidationEngine</code>
+	 * @throws Exception when no engine became available within the checkout timeout
+	 */
+	public PooledValidationEngine checkout() throws Exception {
+
+		long start = System.nanoTime();
+
+		PooledValidationEngine pooled = available.poll();
+
+		if (pooled == null) {
+			pooled = create();
+		}
+
+		if (pooled == null) {
+			waiting.incrementAndGet();
+			try {
+				pooled = available.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+			}
+			finally {
+				waiting.decrementAndGet();
+			}
+		}
+
+		long waitNanos = System.nanoTime() - start;
+		totalWaitNanos.addAndGet(waitNanos);
+		long max = maxWaitNanos.get();
+		while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+			max = maxWaitNanos.get();
+		}
+
+		if (pooled == null) {
+			timeoutCount.incrementAndGet();
+			throw new Exception("No FHIR Validation Engine available within " + timeoutMillis + " ms; all " + size + " engines in use!");
+		}
+
+		checkoutCount.incrementAndGet();
+		inUse.incrementAndGet();
+
+		return pooled;
+	}
+
+	/**
+	 * Return a checked out engine to the pool.
+	 *
+	 * @param pooled
+	 */
+	public void checkin(PooledValidationEngine pooled) {
+
+		if (pooled != null) {
+			inUse.decrementAndGet();
+			available.offer(pooled);
+		}
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	public int getCreated() {
+		return created.get();
+	}
+
+	public int getInUse() {
+		return inUse.get();
+	}
+
+	public int getAvailable() {
+		return available.size();
+	}
+
+	public int getWaiting() {
+		return waiting.get();
+	}
+
+	public long getCheckoutCount() {
+		return checkoutCount.get();
+	}
+
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	public long getAverageWaitMillis() {
+		long requests = checkoutCount.get() + timeoutCount.get();
+		return (requests > 0 ? TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / requests) : 0);
+	}
+
+	public long getMaxWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+	}
+
+	/*
+	 * Private methods
+	 */
+
+	private PooledValidationEngine create() throws Exception {
+
+		// Reserve a slot in the pool; null when the pool is already at its size
+		int count;
+		do {
+			count = created.get();
+			if (count >= size) {
+				return null;
+			}
+		} while (!created.compareAndSet(count, count + 1));
+
+		try {
+			long start = System.currentTimeMillis();
+
+			ValidationEngine engine = copyTemplate();
+
+			log.info("FHIR Validation Engine " + (count + 1) + " of " + size + " created in " + ServicesUtil.INSTANCE.getElapsedTime(start));
+
+			return new PooledValidationEngine(engine);
+		}
+		catch (Exception e) {
+			created.decrementAndGet();
+			log.severe("FHIR Validation Engine creation failed! " + e.getMessage());
+			throw e;
+		}
+	}
+
+	/**
+	 * Copy a new engine from the template.
+	 *
+	 * @return <code>ValidationEngine</code>
+	 * @throws Exception
+	 */
+	ValidationEngine copyTemplate() throws Exception {
+
+		ValidationEngine engine;
+
+		// The template is never used for validation; copy it one engine at a time
+		synchronized (template) {
+			engine = new ValidationEngine(template);
+		}
+		engine.setPolicyAdvisor(policyAdvisor);
+
+		return engine;
+	}
+
+	/**
+	 * Validation Engine with its own R4 resource parsers.
+	 */
+	public static class PooledValidationEngine {
+
+		private final ValidationEngine engine;
+
+		private final org.hl7.fhir.r4.formats.JsonParser jsonParserR4 = new org.hl7.fhir.r4.formats.JsonParser();
+		private final org.hl7.fhir.r4.formats.RdfParser rdfParserR4 = new org.hl7.fhir.r4.formats.RdfParser();
+		private final org.hl7.fhir.r4.formats.XmlParser xmlParserR4 = new org.hl7.fhir.r4.formats.XmlParser();
+
+		private PooledValidationEngine(ValidationEngine engine) {
+			this.engine = engine;
+		}
+
+		public ValidationEngine getEngine() {
+			return engine;
+		}
+
+		public org.hl7.fhir.r4.formats.JsonParser getJsonParserR4() {
+			return jsonParserR4;
+		}
+
+		public org.hl7.fhir.r4.formats.RdfParser getRdfParserR4() {
+			return rdfParserR4;
+		}
+
+		public org.hl7.fhir.r4.formats.XmlParser getXmlParserR4() {
+			return xmlParserR4;
+		}
+
+	}
+
+}
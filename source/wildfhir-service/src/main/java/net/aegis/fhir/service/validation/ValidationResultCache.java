@@ -0,0 +1,225 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.validation;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.hl7.fhir.r4.model.OperationOutcome;
+
+/**
+ * Bounded least recently used cache of validation results keyed by a digest of the resource contents, the profiles
+ * validated against and the loaded package list. A new cache is created on each FHIRValidatorClient initialization.
+ *
+ * @author richard.ettema
+ *
+ */
+public class ValidationResultCache {
+
+	private static Logger log = Logger.getLogger("ValidationResultCache");
+
+	private final int maxEntries;
+
+	private final String packageVersion;
+
+	private final LinkedHashMap<String, OperationOutcome> entries;
+
+	private final AtomicLong hitCount = new AtomicLong(0);
+	private final AtomicLong missCount = new AtomicLong(0);
+	private final AtomicLong evictionCount = new AtomicLong(0);
+
+	/**
+	 * @param maxEntries maximum number of cached results; zero or less disables the cache
+	 * @param packageVersion loaded package list included in every key
+	 */
+	public ValidationResultCache(int maxEntries, String packageVersion) {
+		this.maxEntries = maxEntries;
+		this.packageVersion = (packageVersion != null ? packageVersion : "");
+		this.entries = new LinkedHashMap<String, OperationOutcome>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, OperationOutcome> eldest) {
+				if (size() > ValidationResultCache.this.maxEntries) {
+					evictionCount.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+
+		};
+	}
+
+	public boolean isEnabled() {
+		return maxEntries > 0;
+	}
+
+	/**
+	 * Build the cache key for the resource contents and profiles. Leading and trailing whitespace and a byte order mark
+	 * are ignored; any other difference in the contents is a different key as it may change the validation result.
+	 *
+	 * @param resourceContents
+	 * @param profiles
+	 * @return String key or null if the key could not be computed
+	 */
+	public String getKey(byte[] resourceContents, List<String> profiles) {
+
+		try {
+			int from = 0;
+			int to = resourceContents.length;
+
+			// Skip UTF-8 byte order mark
+			if (to >= 3 && (resourceContents[0] & 0xFF) == 0xEF && (resourceContents[1] & 0xFF) == 0xBB && (resourceContents[2] & 0xFF) == 0xBF) {
+				from = 3;
+			}
+			while (from < to && isWhitespace(resourceContents[from])) {
+				from++;
+			}
+			while (to > from && isWhitespace(resourceContents[to - 1])) {
+				to--;
+			}
+
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+			digest.update(resourceContents, from, to - from);
+			digest.update((byte) 0);
+
+			// Profile order does not change the result
+			if (profiles != null && !profiles.isEmpty()) {
+				List<String> sortedProfiles = new ArrayList<String>(profiles);
+				Collections.sort(sortedProfiles);
+				for (String profile : sortedProfiles) {
+					digest.update(profile.getBytes(StandardCharsets.UTF_8));
+					digest.update((byte) '|');
+				}
+			}
+			digest.update((byte) 0);
+
+			digest.update(packageVersion.getBytes(StandardCharsets.UTF_8));
+
+			return HexFormat.of().formatHex(digest.digest());
+		}
+		catch (Exception e) {
+			log.warning("Problem computing validation result cache key; result not cached. " + e.getMessage());
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param key
+	 * @return copy of the cached <code>OperationOutcome</code> or null if not cached
+	 */
+	public OperationOutcome get(String key) {
+
+		if (key == null) {
+			return null;
+		}
+
+		OperationOutcome outcome;
+
+		synchronized (entries) {
+			outcome = entries.get(key);
+		}
+
+		if (outcome == null) {
+			missCount.incrementAndGet();
+			return null;
+		}
+
+		hitCount.incrementAndGet();
+
+		// Callers may modify the returned outcome
+		return outcome.copy();
+	}
+
+	public void put(String key, OperationOutcome outcome) {
+
+		if (key != null && outcome != null && isEnabled()) {
+			OperationOutcome cachedOutcome = outcome.copy();
+
+			synchronized (entries) {
+				entries.put(key, cachedOutcome);
+			}
+		}
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public int getSize() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * @return percentage of lookups answered from the cache
+	 */
+	public double getHitRate() {
+		long hits = hitCount.get();
+		long lookups = hits + missCount.get();
+		return (lookups > 0 ? (hits * 100.0) / lookups : 0.0);
+	}
+
+	/*
+	 * Private methods
+	 */
+
+	private boolean isWhitespace(byte b) {
+		return (b == ' ' || b == '\t' || b == '\r' || b == '\n');
+	}
+
+}
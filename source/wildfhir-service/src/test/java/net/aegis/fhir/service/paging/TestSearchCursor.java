@@ -0,0 +1,118 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.paging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+/**
+ * @author richard.ettema
+ *
+ */
+public class TestSearchCursor {
+
+	@Test
+	public void testFingerprintIndependentOfParameterOrder() {
+		MultivaluedMap<String, String> params1 = new MultivaluedHashMap<String, String>();
+		params1.add("family", "Smith");
+		params1.add("birthdate", "ge1970-01-01");
+		params1.add("_count", "10");
+
+		MultivaluedMap<String, String> params2 = new MultivaluedHashMap<String, String>();
+		params2.add("_count", "10");
+		params2.add("birthdate", "ge1970-01-01");
+		params2.add("family", "Smith");
+
+		String fingerprint1 = PagingSearchManager.INSTANCE.fingerprint("Patient", false, params1, null);
+		String fingerprint2 = PagingSearchManager.INSTANCE.fingerprint("Patient", false, params2, null);
+
+		assertEquals(fingerprint1, fingerprint2);
+		assertEquals(fingerprint1, PagingSearchManager.INSTANCE.fingerprint("Patient", false, params1, null));
+		assertEquals(64, fingerprint1.length());
+	}
+
+	@Test
+	public void testFingerprintDistinguishesCriteria() {
+		MultivaluedMap<String, String> params = new MultivaluedHashMap<String, String>();
+		params.add("family", "Smith");
+
+		MultivaluedMap<String, String> otherValue = new MultivaluedHashMap<String, String>();
+		otherValue.add("family", "Jones");
+
+		String fingerprint = PagingSearchManager.INSTANCE.fingerprint("Patient", false, params, null);
+
+		assertNotEquals(fingerprint, PagingSearchManager.INSTANCE.fingerprint("Patient", false, otherValue, null));
+		assertNotEquals(fingerprint, PagingSearchManager.INSTANCE.fingerprint("Practitioner", false, params, null));
+		assertNotEquals(fingerprint, PagingSearchManager.INSTANCE.fingerprint("Patient", true, params, null));
+		assertNotEquals(fingerprint, PagingSearchManager.INSTANCE.fingerprint("Patient", false, null, params));
+	}
+
+	@Test
+	public void testGetPageIds() {
+		SearchCursor cursor = new SearchCursor("fp", "", 5, Arrays.asList(11, 12, 13, 14, 15), null, null, null, null, null);
+
+		assertEquals(5, cursor.getResultIdCount());
+		assertEquals(Arrays.asList(11, 12), cursor.getPageIds(0, 2));
+		assertEquals(Arrays.asList(15), cursor.getPageIds(4, 2));
+		assertTrue(cursor.getPageIds(5, 2).isEmpty());
+		assertTrue(cursor.getPageIds(-1, 2).isEmpty());
+		assertTrue(cursor.getPageIds(0, 0).isEmpty());
+	}
+
+	@Test
+	public void testSearchStateIsCopied() {
+		List<String[]> validParams = new ArrayList<String[]>();
+		String[] param = new String[] { "family", "Smith" };
+		validParams.add(param);
+
+		SearchCursor cursor = new SearchCursor("fp", "", 0, null, validParams, null, null, null, null);
+
+		param[1] = "Jones";
+		validParams.add(new String[] { "given", "John" });
+
+		assertEquals(1, cursor.getValidParams().size());
+		assertEquals("Smith", cursor.getValidParams().get(0)[1]);
+		assertTrue(cursor.getInvalidParams().isEmpty());
+	}
+
+}
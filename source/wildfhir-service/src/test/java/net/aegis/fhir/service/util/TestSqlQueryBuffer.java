@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * @author richard.ettema
+ *
+ */
+public class TestSqlQueryBuffer {
+
+	@Test
+	public void testAppendBufferKeepsParameterOrder() {
+		SqlQueryBuffer where = new SqlQueryBuffer(" WHERE r.resourceType = ").appendParameter("Patient");
+
+		SqlQueryBuffer criteria = new SqlQueryBuffer(" AND rm.paramName = ").appendParameter("family")
+				.append(" AND rm.paramValueU = ").appendParameter("SMITH");
+
+		SqlQueryBuffer sql = new SqlQueryBuffer("SELECT r.* FROM resource r").append(where).append(criteria)
+				.append(" LIMIT ").appendParameter(Integer.valueOf(10));
+
+		assertEquals("SELECT r.* FROM resource r WHERE r.resourceType = ? AND rm.paramName = ? AND rm.paramValueU = ? LIMIT ?", sql.toString());
+		assertEquals(Arrays.asList("Patient", "family", "SMITH", Integer.valueOf(10)), sql.getParameters());
+	}
+
+	@Test
+	public void testAppendNullBuffer() {
+		SqlQueryBuffer sql = new SqlQueryBuffer("SELECT 1").append((SqlQueryBuffer) null);
+
+		assertEquals("SELECT 1", sql.toString());
+		assertTrue(sql.getParameters().isEmpty());
+	}
+
+	@Test
+	public void testAppendParameterRow() {
+		SqlQueryBuffer sql = new SqlQueryBuffer("INSERT INTO t VALUES ").appendParameterRow("a", Integer.valueOf(1)).append(", ").appendParameterRow("b", Integer.valueOf(2));
+
+		assertEquals("INSERT INTO t VALUES (?, ?), (?, ?)", sql.toString());
+		assertEquals(Arrays.asList("a", Integer.valueOf(1), "b", Integer.valueOf(2)), sql.getParameters());
+	}
+
+	@Test
+	public void testAppendDecimalParameter() {
+		SqlQueryBuffer sql = new SqlQueryBuffer().appendDecimalParameter("5.40").append(" ").appendDecimalParameter("-1e2");
+
+		assertEquals("? ?", sql.toString());
+		assertEquals(new BigDecimal("5.40"), sql.getParameters().get(0));
+		assertEquals(new BigDecimal("-1e2"), sql.getParameters().get(1));
+	}
+
+	@Test
+	public void testAppendDecimalParameterFallback() {
+		SqlQueryBuffer sql = new SqlQueryBuffer().appendDecimalParameter("abc").append(" ").appendDecimalParameter("");
+
+		assertEquals("? ?", sql.toString());
+		assertEquals("abc", sql.getParameters().get(0));
+		assertEquals("", sql.getParameters().get(1));
+	}
+
+}
@@ -0,0 +1,134 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.validation.ValidationEngine;
+import org.junit.Test;
+
+import net.aegis.fhir.service.validation.ValidationEnginePool.PooledValidationEngine;
+
+/**
+ * @author richard.ettema
+ *
+ */
+public class TestValidationEnginePool {
+
+	@Test
+	public void testCheckoutTimeout() throws Exception {
+		ValidationEnginePool pool = new TestPool(1, 200);
+
+		PooledValidationEngine pooled = pool.checkout();
+		assertNotNull(pooled);
+
+		long start = System.currentTimeMillis();
+		try {
+			pool.checkout();
+			fail("Expected checkout timeout");
+		}
+		catch (Exception e) {
+			assertTrue(e.getMessage().contains("200 ms"));
+		}
+		assertTrue(System.currentTimeMillis() - start >= 150);
+
+		assertEquals(1, pool.getCheckoutCount());
+		assertEquals(1, pool.getTimeoutCount());
+		assertEquals(1, pool.getCreated());
+		assertEquals(1, pool.getInUse());
+		assertEquals(0, pool.getWaiting());
+		assertTrue(pool.getMaxWaitMillis() >= 150);
+
+		// The checked in engine is reused; no engine is created beyond the pool size
+		pool.checkin(pooled);
+		assertEquals(0, pool.getInUse());
+		assertEquals(1, pool.getAvailable());
+
+		assertSame(pooled, pool.checkout());
+		assertEquals(1, pool.getCreated());
+		assertEquals(2, pool.getCheckoutCount());
+	}
+
+	@Test
+	public void testWaitingCheckoutReceivesCheckedInEngine() throws Exception {
+		ValidationEnginePool pool = new TestPool(1, 5000);
+
+		PooledValidationEngine pooled = pool.checkout();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<PooledValidationEngine> waiter = executor.submit(() -> pool.checkout());
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while (pool.getWaiting() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, pool.getWaiting());
+
+			pool.checkin(pooled);
+
+			assertSame(pooled, waiter.get(5, TimeUnit.SECONDS));
+			assertEquals(0, pool.getTimeoutCount());
+			assertEquals(1, pool.getInUse());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Pool without a template engine; the pooling does not depend on the engine copies.
+	 */
+	private static class TestPool extends ValidationEnginePool {
+
+		private TestPool(int size, long timeoutMillis) {
+			super(null, null, size, timeoutMillis);
+		}
+
+		@Override
+		ValidationEngine copyTemplate() throws Exception {
+			return null;
+		}
+
+	}
+
+}
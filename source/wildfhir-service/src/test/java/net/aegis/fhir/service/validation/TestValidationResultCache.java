@@ -0,0 +1,160 @@
+/*
+ * #%L
+ * WildFHIR - wildfhir-service
+ * %%
+ * Copyright (C) 2024 AEGIS.net, Inc.
+ * All rights reserved.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of AEGIS nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without specific
+ *    prior written permission.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.aegis.fhir.service.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.junit.Test;
+
+/**
+ * @author richard.ettema
+ *
+ */
+public class TestValidationResultCache {
+
+	private static final String PATIENT = "{\"resourceType\":\"Patient\",\"id\":\"example\"}";
+
+	@Test
+	public void testKeyNormalization() {
+		ValidationResultCache cache = new ValidationResultCache(10, "hl7.fhir.r4.core");
+
+		String key = cache.getKey(bytes(PATIENT), null);
+		assertNotNull(key);
+
+		// Byte order mark and surrounding whitespace are ignored
+		byte[] bom = new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+		byte[] padded = bytes(" \r\n\t" + PATIENT + "\n ");
+		byte[] bomPadded = new byte[bom.length + padded.length];
+		System.arraycopy(bom, 0, bomPadded, 0, bom.length);
+		System.arraycopy(padded, 0, bomPadded, bom.length, padded.length);
+
+		assertEquals(key, cache.getKey(padded, null));
+		assertEquals(key, cache.getKey(bomPadded, null));
+
+		// No profiles and an empty profile list are the same key
+		assertEquals(key, cache.getKey(bytes(PATIENT), Arrays.asList()));
+
+		// Any other content difference is a different key
+		assertNotEquals(key, cache.getKey(bytes("{\"resourceType\":\"Patient\", \"id\":\"example\"}"), null));
+	}
+
+	@Test
+	public void testKeyProfilesAndPackages() {
+		ValidationResultCache cache = new ValidationResultCache(10, "hl7.fhir.r4.core");
+
+		String profileA = "http://example.org/StructureDefinition/a";
+		String profileB = "http://example.org/StructureDefinition/b";
+
+		String key = cache.getKey(bytes(PATIENT), Arrays.asList(profileA, profileB));
+
+		assertEquals(key, cache.getKey(bytes(PATIENT), Arrays.asList(profileB, profileA)));
+		assertNotEquals(key, cache.getKey(bytes(PATIENT), Arrays.asList(profileA)));
+		assertNotEquals(key, cache.getKey(bytes(PATIENT), null));
+
+		ValidationResultCache otherPackages = new ValidationResultCache(10, "hl7.fhir.r4.core,hl7.fhir.us.core#6.1.0");
+		assertNotEquals(key, otherPackages.getKey(bytes(PATIENT), Arrays.asList(profileA, profileB)));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		ValidationResultCache cache = new ValidationResultCache(2, "");
+
+		cache.put("a", outcome("a"));
+		cache.put("b", outcome("b"));
+
+		// Access "a" so that "b" is the least recently used
+		assertNotNull(cache.get("a"));
+
+		cache.put("c", outcome("c"));
+
+		assertEquals(2, cache.getSize());
+		assertEquals(1, cache.getEvictionCount());
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+
+		assertEquals(3, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(75.0, cache.getHitRate(), 0.001);
+	}
+
+	@Test
+	public void testGetReturnsCopy() {
+		ValidationResultCache cache = new ValidationResultCache(2, "");
+
+		OperationOutcome outcome = outcome("original");
+		cache.put("a", outcome);
+		outcome.getIssueFirstRep().setDiagnostics("changed");
+
+		OperationOutcome cached = cache.get("a");
+		assertNotSame(outcome, cached);
+		assertEquals("original", cached.getIssueFirstRep().getDiagnostics());
+
+		cached.getIssueFirstRep().setDiagnostics("changed");
+		assertEquals("original", cache.get("a").getIssueFirstRep().getDiagnostics());
+	}
+
+	@Test
+	public void testDisabledCache() {
+		ValidationResultCache cache = new ValidationResultCache(0, "");
+
+		assertFalse(cache.isEnabled());
+
+		cache.put("a", outcome("a"));
+
+		assertEquals(0, cache.getSize());
+		assertNull(cache.get("a"));
+		assertTrue(new ValidationResultCache(1, "").isEnabled());
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static OperationOutcome outcome(String diagnostics) {
+		OperationOutcome outcome = new OperationOutcome();
+		outcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.INFORMATION).setCode(OperationOutcome.IssueType.INFORMATIONAL).setDiagnostics(diagnostics);
+		return outcome;
+	}
+
+}